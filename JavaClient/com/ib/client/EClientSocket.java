@@ -3,11 +3,16 @@
 
 package com.ib.client;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 public class EClientSocket {
 
@@ -194,16 +199,31 @@ public class EClientSocket {
 
     private AnyWrapper m_anyWrapper;    // msg handler
     protected DataOutputStream m_dos;   // the socket output stream
+    private EOutputBuffer m_outBuffer;  // frames m_dos writes into one socket write per request
     private boolean m_connected;        // true if we are connected
     private EReader m_reader;           // thread which reads msgs from socket
     protected int m_serverVersion;
     private String m_TwsTime;
+    private boolean m_useNioReader;     // true to decode with ENioReader
+    private File m_captureDirectory;    // if set, inbound bytes are journaled here
+    private EWireJournal m_journal;     // capture journal of the current connection
 
     public int serverVersion()          { return m_serverVersion;   }
     public String TwsConnectionTime()   { return m_TwsTime; }
     public AnyWrapper wrapper() 		{ return m_anyWrapper; }
     public EReader reader()             { return m_reader; }
     public boolean isConnected() 		{ return m_connected; }
+    public boolean useNioReader()       { return m_useNioReader; }
+
+    /** Selects the buffered ENioReader instead of the byte-at-a-time EReader
+     *  for subsequent connections. */
+    public void setUseNioReader( boolean useNioReader) { m_useNioReader = useNioReader; }
+
+    /** Journals everything received from TWS on subsequent connections into
+     *  one EWireJournal file per connection under directory; null turns
+     *  capture off. Captured sessions are replayed with EWireReplayer. */
+    public void setCaptureDirectory( File directory) { m_captureDirectory = directory; }
+    public EWireJournal captureJournal() { return m_journal; }
 
 
     public EClientSocket( AnyWrapper anyWrapper) {
@@ -245,20 +265,28 @@ public class EClientSocket {
     }
 
     public EReader createReader(EClientSocket socket, DataInputStream dis) {
+        if( m_useNioReader) {
+            return new ENioReader(socket, dis);
+        }
         return new EReader(socket, dis);
     }
 
     public synchronized void eConnect(Socket socket, int clientId) throws IOException {
 
         // create io streams
-        m_dos = new DataOutputStream( socket.getOutputStream() );
+        m_outBuffer = new EOutputBuffer( socket.getOutputStream() );
+        m_dos = new DataOutputStream( m_outBuffer);
 
         // set client version
         send( CLIENT_VERSION);
+        endMessage();
 
         // start reader thread
-        m_reader = createReader(this, new DataInputStream(
-        		socket.getInputStream()));
+        InputStream is = socket.getInputStream();
+        if( m_captureDirectory != null) {
+            is = openCapture( is, clientId);
+        }
+        m_reader = createReader(this, new DataInputStream( is));
 
         // check server version
         m_serverVersion = m_reader.readInt();
@@ -276,6 +304,7 @@ public class EClientSocket {
         // Send the client id
         if ( m_serverVersion >= 3 ){
             send( clientId);
+            endMessage();
         }
 
         m_reader.start();
@@ -296,6 +325,10 @@ public class EClientSocket {
 
         FilterOutputStream dos = m_dos;
         m_dos = null;
+        m_outBuffer = null;
+
+        EWireJournal journal = m_journal;
+        m_journal = null;
 
         EReader reader = m_reader;
         m_reader = null;
@@ -317,6 +350,31 @@ public class EClientSocket {
         }
         catch( Exception e) {
         }
+
+        try {
+            // journal ignores anything the reader still receives after this
+            if( journal != null) {
+                journal.close();
+            }
+        }
+        catch( Exception e) {
+        }
+    }
+
+    /** Wraps the socket stream so every read is appended to a new journal.
+     *  Capture is skipped, not the connection, if the journal cannot be created. */
+    private InputStream openCapture( InputStream is, int clientId) {
+        String name = "ibwire-" + new SimpleDateFormat( "yyyyMMdd-HHmmss").format( new Date())
+                + "-" + clientId + ".ibj";
+        try {
+            m_journal = new EWireJournal( new File( m_captureDirectory, name));
+            // buffered above the journal so EReader's byte reads become one frame per socket read
+            return new BufferedInputStream( m_journal.capture( is));
+        }
+        catch( IOException e) {
+            m_anyWrapper.error( e);
+            return is;
+        }
     }
 
     public synchronized void cancelScannerSubscription( int tickerId) {
@@ -339,6 +397,7 @@ public class EClientSocket {
             send( CANCEL_SCANNER_SUBSCRIPTION);
             send( VERSION);
             send( tickerId);
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_CANSCANNER, "" + e);
@@ -364,6 +423,7 @@ public class EClientSocket {
         try {
             send(REQ_SCANNER_PARAMETERS);
             send(VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID,
@@ -416,6 +476,7 @@ public class EClientSocket {
             if (m_serverVersion >= 27) {
                 send(subscription.stockTypeFilter());
             }
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_REQSCANNER, "" + e);
@@ -535,6 +596,7 @@ public class EClientSocket {
             if (m_serverVersion >= MIN_SERVER_VER_SNAPSHOT_MKT_DATA) {
             	send (snapshot);
             }
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_REQMKT, "" + e);
@@ -562,6 +624,7 @@ public class EClientSocket {
             send( CANCEL_HISTORICAL_DATA);
             send( VERSION);
             send( tickerId);
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_CANHISTDATA, "" + e);
@@ -589,6 +652,7 @@ public class EClientSocket {
             send( CANCEL_REAL_TIME_BARS);
             send( VERSION);
             send( tickerId);
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_CANRTBARS, "" + e);
@@ -675,6 +739,7 @@ public class EClientSocket {
                   }
               }
           }
+          endMessage();
         }
         catch (Exception e) {
           error(tickerId, EClientErrors.FAIL_SEND_REQHISTDATA, "" + e);
@@ -730,7 +795,7 @@ public class EClientSocket {
             send(barSize);  // this parameter is not currently used
             send(whatToShow);
             send(useRTH);
-
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_REQRTBARS, "" + e);
@@ -804,7 +869,7 @@ public class EClientSocket {
             	send( contract.m_secIdType);
             	send( contract.m_secId);
             }
-
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQCONTRACT, "" + e);
@@ -863,6 +928,7 @@ public class EClientSocket {
             if (m_serverVersion >= 19) {
                 send( numRows);
             }
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_REQMKTDEPTH, "" + e);
@@ -884,6 +950,7 @@ public class EClientSocket {
             send( CANCEL_MKT_DATA);
             send( VERSION);
             send( tickerId);
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_CANMKT, "" + e);
@@ -912,6 +979,7 @@ public class EClientSocket {
             send( CANCEL_MKT_DEPTH);
             send( VERSION);
             send( tickerId);
+            endMessage();
         }
         catch( Exception e) {
             error( tickerId, EClientErrors.FAIL_SEND_CANMKTDEPTH, "" + e);
@@ -969,6 +1037,7 @@ public class EClientSocket {
           send(exerciseQuantity);
           send(account);
           send(override);
+          endMessage();
       }
       catch (Exception e) {
         error(tickerId, EClientErrors.FAIL_SEND_REQMKT, "" + e);
@@ -1505,6 +1574,7 @@ public class EClientSocket {
            if (m_serverVersion >= MIN_SERVER_VER_WHAT_IF_ORDERS) {
         	   send (order.m_whatIf);
            }
+            endMessage();
         }
         catch( Exception e) {
             error( id, EClientErrors.FAIL_SEND_ORDER, "" + e);
@@ -1531,6 +1601,7 @@ public class EClientSocket {
             if ( m_serverVersion >= 9 ) {
                 send( acctCode);
             }
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_ACCT, "" + e);
@@ -1568,6 +1639,7 @@ public class EClientSocket {
                 send( filter.m_exchange);
                 send( filter.m_side);
             }
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_EXEC, "" + e);
@@ -1589,6 +1661,7 @@ public class EClientSocket {
             send( CANCEL_ORDER);
             send( VERSION);
             send( id);
+            endMessage();
         }
         catch( Exception e) {
             error( id, EClientErrors.FAIL_SEND_CORDER, "" + e);
@@ -1609,6 +1682,7 @@ public class EClientSocket {
         try {
             send( REQ_OPEN_ORDERS);
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error(EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_OORDER, "" + e);
@@ -1629,6 +1703,7 @@ public class EClientSocket {
             send( REQ_IDS);
             send( VERSION);
             send( numIds);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_CORDER, "" + e);
@@ -1649,6 +1724,7 @@ public class EClientSocket {
             send( REQ_NEWS_BULLETINS);
             send( VERSION);
             send( allMsgs);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_CORDER, "" + e);
@@ -1669,6 +1745,7 @@ public class EClientSocket {
         try {
             send( CANCEL_NEWS_BULLETINS);
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_CORDER, "" + e);
@@ -1690,6 +1767,7 @@ public class EClientSocket {
                         send( SET_SERVER_LOGLEVEL);
                         send( VERSION);
                         send( logLevel);
+                        endMessage();
                 }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_SERVER_LOG_LEVEL, "" + e);
@@ -1711,6 +1789,7 @@ public class EClientSocket {
             send( REQ_AUTO_OPEN_ORDERS);
             send( VERSION);
             send( bAutoBind);
+            endMessage();
         }
         catch( Exception e) {
             error(EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_OORDER, "" + e);
@@ -1731,6 +1810,7 @@ public class EClientSocket {
         try {
             send( REQ_ALL_OPEN_ORDERS);
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error(EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_OORDER, "" + e);
@@ -1751,6 +1831,7 @@ public class EClientSocket {
         try {
             send( REQ_MANAGED_ACCTS);
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error(EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_OORDER, "" + e);
@@ -1778,6 +1859,7 @@ public class EClientSocket {
             send( REQ_FA );
             send( VERSION);
             send( faDataType);
+            endMessage();
         }
         catch( Exception e) {
             error( faDataType, EClientErrors.FAIL_SEND_FA_REQUEST, "" + e);
@@ -1806,6 +1888,7 @@ public class EClientSocket {
             send( VERSION);
             send( faDataType);
             send( xml);
+            endMessage();
         }
         catch( Exception e) {
             error( faDataType, EClientErrors.FAIL_SEND_FA_REPLACE, "" + e);
@@ -1832,6 +1915,7 @@ public class EClientSocket {
         try {
             send( REQ_CURRENT_TIME );
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQCURRTIME, "" + e);
@@ -1880,6 +1964,7 @@ public class EClientSocket {
             send( contract.m_localSymbol);
 
             send( reportType);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_REQFUNDDATA, "" + e);
@@ -1907,6 +1992,7 @@ public class EClientSocket {
             send( CANCEL_FUNDAMENTAL_DATA);
             send( VERSION);
             send( reqId);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_CANFUNDDATA, "" + e);
@@ -1963,6 +2049,7 @@ public class EClientSocket {
 
             send( optionPrice);
             send( underPrice);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_REQCALCIMPLIEDVOLAT, "" + e);
@@ -1991,6 +2078,7 @@ public class EClientSocket {
             send( CANCEL_CALC_IMPLIED_VOLAT);
             send( VERSION);
             send( reqId);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_CANCALCIMPLIEDVOLAT, "" + e);
@@ -2047,6 +2135,7 @@ public class EClientSocket {
 
             send( volatility);
             send( underPrice);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_REQCALCOPTIONPRICE, "" + e);
@@ -2075,6 +2164,7 @@ public class EClientSocket {
             send( CANCEL_CALC_OPTION_PRICE);
             send( VERSION);
             send( reqId);
+            endMessage();
         }
         catch( Exception e) {
             error( reqId, EClientErrors.FAIL_SEND_CANCALCOPTIONPRICE, "" + e);
@@ -2101,6 +2191,7 @@ public class EClientSocket {
         try {
             send( REQ_GLOBAL_CANCEL);
             send( VERSION);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQGLOBALCANCEL, "" + e);
@@ -2128,6 +2219,7 @@ public class EClientSocket {
             send( REQ_MARKET_DATA_TYPE);
             send( VERSION);
             send( marketDataType);
+            endMessage();
         }
         catch( Exception e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQMARKETDATATYPE, "" + e);
@@ -2157,6 +2249,7 @@ public class EClientSocket {
 
         try {
             m_dos.write( b.getBytes() );
+            endMessage();
         }
         catch (IOException e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQPOSITIONS, "" + e);
@@ -2184,6 +2277,7 @@ public class EClientSocket {
 
         try {
             m_dos.write( b.getBytes() );
+            endMessage();
         }
         catch (IOException e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_CANPOSITIONS, "" + e);
@@ -2214,6 +2308,7 @@ public class EClientSocket {
 
         try {
            m_dos.write( b.getBytes() );
+           endMessage();
         }
         catch (IOException e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_REQACCOUNTDATA, "" + e);
@@ -2242,6 +2337,7 @@ public class EClientSocket {
 
         try {
             m_dos.write( b.getBytes() );
+            endMessage();
         }
         catch (IOException e) {
             error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND_CANACCOUNTDATA, "" + e);
@@ -2276,6 +2372,38 @@ public class EClientSocket {
         error(id, pair.code(), pair.msg() + tail);
     }
 
+    /** Hands the request built by the preceding send() calls to the socket
+     *  as one write, or queues it while a batch is open. */
+    protected void endMessage() throws IOException {
+        if( m_outBuffer != null) {
+            m_outBuffer.endMessage();
+        }
+    }
+
+    /** Holds back complete requests until the matching endBatch() so a burst
+     *  such as a round of cancelMktData/reqMktData goes out in one write.
+     *  Batches nest and belong to the calling thread; requests from other
+     *  threads are not held back. Always pair with endBatch() in a finally
+     *  block. */
+    public synchronized void beginBatch() {
+        if( m_outBuffer != null) {
+            m_outBuffer.beginBatch();
+        }
+    }
+
+    public synchronized void endBatch() {
+        if( m_outBuffer == null) {
+            return;
+        }
+        try {
+            m_outBuffer.endBatch();
+        }
+        catch( Exception e) {
+            error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND, "" + e);
+            close();
+        }
+    }
+
     protected void send( String str) throws IOException {
         // write string to data buffer; writer thread will
         // write it to socket
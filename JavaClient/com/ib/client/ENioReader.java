@@ -0,0 +1,227 @@
+/* Copyright (C) 2013 Interactive Brokers LLC. All rights reserved.  This code is subject to the terms
+ * and conditions of the IB API Non-Commercial License or the IB API Commercial License, as applicable. */
+
+package com.ib.client;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/** Reader that pulls the socket into a reusable direct buffer and decodes
+ *  NUL delimited fields in place. Numeric fields are parsed straight from
+ *  the buffered bytes so the tick path does not create Strings; anything
+ *  the fast path does not recognise falls back to the JDK parsers, which
+ *  keeps results and exceptions identical to EReader. Enabled through
+ *  EClientSocket.setUseNioReader(). */
+public class ENioReader extends EReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAST_INT_DIGITS = 9;
+    private static final int MAX_FAST_LONG_DIGITS = 18;
+    // doubles with up to 15 significant digits and a power of ten that is
+    // exactly representable are correctly rounded by a single division
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    private final ReadableByteChannel m_channel;
+    private ByteBuffer m_buf;          // read mode : position is next unread byte
+    private char[] m_chars = new char[ 256];
+    private int m_fieldStart;          // absolute index of current field
+    private int m_fieldEnd;            // absolute index of the terminating NUL
+
+    public ENioReader( EClientSocket parent, DataInputStream dis) {
+        super( "EReader", parent, dis);
+        m_channel = Channels.newChannel( dis);
+        m_buf = ByteBuffer.allocateDirect( INITIAL_BUFFER_SIZE);
+        m_buf.flip();
+    }
+
+    protected String readStr() throws IOException {
+        int len = nextField();
+        return len == 0 ? null : fieldAsString( len);
+    }
+
+    boolean readBoolFromInt() throws IOException {
+        return nextField() == 0 ? false : (parseIntField() != 0);
+    }
+
+    protected int readInt() throws IOException {
+        return nextField() == 0 ? 0 : parseIntField();
+    }
+
+    protected int readIntMax() throws IOException {
+        return nextField() == 0 ? Integer.MAX_VALUE : parseIntField();
+    }
+
+    protected long readLong() throws IOException {
+        return nextField() == 0 ? 0l : parseLongField();
+    }
+
+    protected double readDouble() throws IOException {
+        return nextField() == 0 ? 0 : parseDoubleField();
+    }
+
+    protected double readDoubleMax() throws IOException {
+        return nextField() == 0 ? Double.MAX_VALUE : parseDoubleField();
+    }
+
+    /** Locates the next NUL terminated field, refilling the buffer as
+     *  needed, and returns its length. The field stays addressable through
+     *  m_fieldStart/m_fieldEnd until the next call. */
+    private int nextField() throws IOException {
+        int scanFrom = m_buf.position();
+        while( true) {
+            int limit = m_buf.limit();
+            for( int i = scanFrom; i < limit; i++) {
+                if( m_buf.get( i) == 0) {
+                    m_fieldStart = m_buf.position();
+                    m_fieldEnd = i;
+                    m_buf.position( i + 1);
+                    return m_fieldEnd - m_fieldStart;
+                }
+            }
+            // partial field is moved to the front of the buffer by fill()
+            scanFrom = limit - m_buf.position();
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        m_buf.compact();
+        if( !m_buf.hasRemaining()) {
+            // a single field is larger than the buffer (FA xml, fundamentals)
+            ByteBuffer bigger = ByteBuffer.allocateDirect( m_buf.capacity() * 2);
+            m_buf.flip();
+            bigger.put( m_buf);
+            m_buf = bigger;
+        }
+        int n;
+        do {
+            n = m_channel.read( m_buf);
+        } while( n == 0);
+        m_buf.flip();
+        if( n < 0) {
+            throw new EOFException();
+        }
+    }
+
+    private String fieldAsString( int len) {
+        if( m_chars.length < len) {
+            m_chars = new char[ Math.max( len, m_chars.length * 2)];
+        }
+        for( int i = 0; i < len; i++) {
+            // same widening as EReader.readStr()
+            m_chars[i] = (char)m_buf.get( m_fieldStart + i);
+        }
+        return new String( m_chars, 0, len);
+    }
+
+    private int parseIntField() {
+        int i = m_fieldStart;
+        boolean negative = false;
+        byte b = m_buf.get( i);
+        if( b == '-') {
+            negative = true;
+            i++;
+        }
+        else if( b == '+') {
+            i++;
+        }
+        int digits = m_fieldEnd - i;
+        if( digits == 0 || digits > MAX_FAST_INT_DIGITS) {
+            return Integer.parseInt( fieldAsString( m_fieldEnd - m_fieldStart));
+        }
+        int value = 0;
+        for( ; i < m_fieldEnd; i++) {
+            int d = m_buf.get( i) - '0';
+            if( d < 0 || d > 9) {
+                return Integer.parseInt( fieldAsString( m_fieldEnd - m_fieldStart));
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    private long parseLongField() {
+        int i = m_fieldStart;
+        boolean negative = false;
+        byte b = m_buf.get( i);
+        if( b == '-') {
+            negative = true;
+            i++;
+        }
+        else if( b == '+') {
+            i++;
+        }
+        int digits = m_fieldEnd - i;
+        if( digits == 0 || digits > MAX_FAST_LONG_DIGITS) {
+            return Long.parseLong( fieldAsString( m_fieldEnd - m_fieldStart));
+        }
+        long value = 0;
+        for( ; i < m_fieldEnd; i++) {
+            int d = m_buf.get( i) - '0';
+            if( d < 0 || d > 9) {
+                return Long.parseLong( fieldAsString( m_fieldEnd - m_fieldStart));
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /** Handles plain decimal notation as written by String.valueOf(double);
+     *  exponents, NaN/Infinity and long mantissas use Double.parseDouble(). */
+    private double parseDoubleField() {
+        int i = m_fieldStart;
+        boolean negative = false;
+        byte b = m_buf.get( i);
+        if( b == '-') {
+            negative = true;
+            i++;
+        }
+        else if( b == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean seenDot = false;
+        for( ; i < m_fieldEnd; i++) {
+            b = m_buf.get( i);
+            if( b == '.' && !seenDot) {
+                seenDot = true;
+                continue;
+            }
+            int d = b - '0';
+            if( d < 0 || d > 9) {
+                return slowParseDouble();
+            }
+            anyDigit = true;
+            if( seenDot) {
+                fractionDigits++;
+            }
+            if( mantissa != 0 || d != 0) {
+                mantissa = mantissa * 10 + d;
+                significantDigits++;
+            }
+        }
+        if( !anyDigit || significantDigits > MAX_FAST_DOUBLE_DIGITS
+                || fractionDigits >= POWERS_OF_TEN.length) {
+            return slowParseDouble();
+        }
+        double value = fractionDigits == 0 ? (double)mantissa
+                                           : (double)mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double slowParseDouble() {
+        return Double.parseDouble( fieldAsString( m_fieldEnd - m_fieldStart));
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright (C) 2013 Interactive Brokers LLC. All rights reserved.  This code is subject to the terms
+ * and conditions of the IB API Non-Commercial License or the IB API Commercial License, as applicable. */
+
+package com.ib.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Collects the fields of outgoing API requests in a reusable byte array so
+ *  each request reaches the socket in a single write. EClientSocket marks
+ *  request boundaries with endMessage(); between beginBatch() and endBatch()
+ *  complete requests of the thread that opened the batch are held back and
+ *  written together; a request from any other thread is written at once,
+ *  along with whatever is held back before it. Only bytes up to
+ *  the last complete request are ever written, so a request abandoned half
+ *  way through is never put on the wire. Callers synchronize externally. */
+public class EOutputBuffer extends OutputStream {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_BATCH_SIZE = 64 * 1024;
+
+    private final OutputStream m_os;
+    private byte[] m_buf = new byte[ INITIAL_SIZE];
+    private int m_count;             // bytes buffered, including a partial request
+    private int m_complete;          // bytes belonging to complete requests
+    private int m_batchDepth;        // > 0 while coalescing
+    private Thread m_batchOwner;     // thread that opened the batch
+
+    private long m_messages;
+    private long m_writes;
+
+    public EOutputBuffer( OutputStream os) {
+        m_os = os;
+    }
+
+    public long messageCount()  { return m_messages; }
+    public long writeCount()    { return m_writes; }
+    public boolean inBatch()    { return m_batchDepth > 0; }
+
+    @Override public void write( int b) {
+        ensureCapacity( 1);
+        m_buf[m_count++] = (byte)b;
+    }
+
+    @Override public void write( byte[] b, int off, int len) {
+        ensureCapacity( len);
+        System.arraycopy( b, off, m_buf, m_count, len);
+        m_count += len;
+    }
+
+    /** Marks the end of one request; it is written now unless a batch is open. */
+    public void endMessage() throws IOException {
+        m_complete = m_count;
+        m_messages++;
+        if( m_batchDepth == 0 || m_batchOwner != Thread.currentThread() || m_complete >= MAX_BATCH_SIZE) {
+            writeComplete();
+        }
+    }
+
+    /** Opens or nests a batch of the calling thread. Does nothing while
+     *  another thread holds a batch open; requests of the caller then go
+     *  out as they complete. */
+    public void beginBatch() {
+        if( m_batchDepth == 0) {
+            m_batchOwner = Thread.currentThread();
+        }
+        if( m_batchOwner == Thread.currentThread()) {
+            m_batchDepth++;
+        }
+    }
+
+    public void endBatch() throws IOException {
+        if( m_batchDepth > 0 && m_batchOwner == Thread.currentThread() && --m_batchDepth == 0) {
+            m_batchOwner = null;
+            writeComplete();
+        }
+    }
+
+    /** Drops a partially built request, e.g. after an encoding failure. */
+    public void discardPartial() {
+        m_count = m_complete;
+    }
+
+    @Override public void flush() throws IOException {
+        writeComplete();
+        m_os.flush();
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            discardPartial();
+            writeComplete();
+        }
+        finally {
+            m_batchDepth = 0;
+            m_batchOwner = null;
+            m_os.close();
+        }
+    }
+
+    private void writeComplete() throws IOException {
+        if( m_complete == 0) {
+            return;
+        }
+        int written = m_complete;
+        m_complete = 0;
+        m_writes++;
+        try {
+            m_os.write( m_buf, 0, written);
+        }
+        finally {
+            // keep any partial request at the front of the buffer
+            int partial = m_count - written;
+            if( partial > 0) {
+                System.arraycopy( m_buf, written, m_buf, 0, partial);
+            }
+            m_count = partial;
+        }
+    }
+
+    private void ensureCapacity( int len) {
+        if( m_count + len > m_buf.length) {
+            byte[] bigger = new byte[ Math.max( m_buf.length * 2, m_count + len)];
+            System.arraycopy( m_buf, 0, bigger, 0, m_count);
+            m_buf = bigger;
+        }
+    }
+}
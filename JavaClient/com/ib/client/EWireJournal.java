@@ -0,0 +1,137 @@
+/* Copyright (C) 2013 Interactive Brokers LLC. All rights reserved.  This code is subject to the terms
+ * and conditions of the IB API Non-Commercial License or the IB API Commercial License, as applicable. */
+
+package com.ib.client;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Append-only binary journal of the bytes received from TWS, written
+ *  through a memory mapped file so capture costs the reader thread a memory
+ *  copy rather than a system call. One journal holds one connection,
+ *  starting with the server version handshake, which is what
+ *  EWireReplayer needs to decode it again.
+ *
+ *  Layout : header { int MAGIC, int FORMAT_VERSION, long wall clock millis,
+ *  long nanoTime at creation } followed by frames { long nanoTime, int length,
+ *  byte[length] }, one frame per socket read. A zero length ends the data. */
+public class EWireJournal {
+
+    public static final int MAGIC = 0x49424a31; // "IBJ1"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+    public static final int FRAME_HEADER_SIZE = 12;
+
+    private static final int MAP_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final File m_file;
+    private final RandomAccessFile m_raf;
+    private final FileChannel m_channel;
+    private MappedByteBuffer m_map;
+    private long m_mapStart;            // file offset of m_map position 0
+    private long m_position;            // file offset of next frame
+    private long m_frames;
+    private boolean m_closed;
+
+    public EWireJournal( File file) throws IOException {
+        m_file = file;
+        m_raf = new RandomAccessFile( file, "rw");
+        m_channel = m_raf.getChannel();
+        m_channel.truncate( 0);
+        remap( 0, HEADER_SIZE);
+        m_map.putInt( MAGIC);
+        m_map.putInt( FORMAT_VERSION);
+        m_map.putLong( System.currentTimeMillis());
+        m_map.putLong( System.nanoTime());
+        m_position = HEADER_SIZE;
+    }
+
+    public File file()          { return m_file; }
+    public synchronized long frameCount()  { return m_frames; }
+    public synchronized long size()        { return m_position; }
+
+    /** Returns a stream that forwards reads from in and journals every chunk read. */
+    public InputStream capture( InputStream in) {
+        return new CaptureInputStream( in);
+    }
+
+    public synchronized void append( byte[] b, int off, int len) throws IOException {
+        if( m_closed || len <= 0) {
+            return;
+        }
+        long needed = FRAME_HEADER_SIZE + len;
+        if( m_position + needed > m_mapStart + m_map.capacity()) {
+            remap( m_position, needed);
+        }
+        m_map.putLong( System.nanoTime());
+        m_map.putInt( len);
+        m_map.put( b, off, len);
+        m_position += needed;
+        m_frames++;
+    }
+
+    public synchronized void close() throws IOException {
+        if( m_closed) {
+            return;
+        }
+        m_closed = true;
+        m_map.force();
+        m_map = null;
+        try {
+            m_channel.truncate( m_position);
+        }
+        finally {
+            m_raf.close();
+        }
+    }
+
+    private void remap( long start, long minSize) throws IOException {
+        if( m_map != null) {
+            m_map.force();
+        }
+        m_mapStart = start;
+        m_map = m_channel.map( FileChannel.MapMode.READ_WRITE, start, Math.max( MAP_CHUNK_SIZE, minSize));
+    }
+
+    private class CaptureInputStream extends FilterInputStream {
+
+        CaptureInputStream( InputStream in) {
+            super( in);
+        }
+
+        @Override public int read() throws IOException {
+            int c = in.read();
+            if( c >= 0) {
+                append( new byte[] { (byte)c }, 0, 1);
+            }
+            return c;
+        }
+
+        @Override public int read( byte[] b, int off, int len) throws IOException {
+            int n = in.read( b, off, len);
+            if( n > 0) {
+                append( b, off, n);
+            }
+            return n;
+        }
+
+        @Override public long skip( long n) throws IOException {
+            // skipped bytes would be missing from the journal
+            long skipped = 0;
+            byte[] buf = new byte[ 512];
+            while( skipped < n) {
+                int r = read( buf, 0, (int)Math.min( buf.length, n - skipped));
+                if( r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/* Copyright (C) 2013 Interactive Brokers LLC. All rights reserved.  This code is subject to the terms
+ * and conditions of the IB API Non-Commercial License or the IB API Commercial License, as applicable. */
+
+package com.ib.client;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Feeds a session captured by EWireJournal back through EReader.processMsg()
+ *  into any EWrapper, either at the original pacing or as fast as possible.
+ *  Frames are delivered with their original boundaries, so the reader sees
+ *  the same partial messages it saw on the socket. */
+public class EWireReplayer {
+
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final File m_file;
+    private final EWrapper m_wrapper;
+    private long m_messages;
+    private long m_elapsedNanos;
+
+    public EWireReplayer( File file, EWrapper wrapper) {
+        m_file = file;
+        m_wrapper = wrapper;
+    }
+
+    public long messageCount()  { return m_messages; }
+    public long elapsedNanos()  { return m_elapsedNanos; }
+
+    /** Replays the journal and returns the number of messages dispatched.
+     *  @param originalPacing wait between frames as long as the capture did
+     *  @param useNioReader decode with ENioReader instead of EReader */
+    public long replay( boolean originalPacing, boolean useNioReader) throws IOException {
+        ReplayClientSocket parent = new ReplayClientSocket( m_wrapper);
+        JournalInputStream in = new JournalInputStream( m_file, originalPacing);
+        DataInputStream dis = new DataInputStream( in);
+        EReader reader = useNioReader ? new ENioReader( parent, dis) : new EReader( parent, dis);
+        m_messages = 0;
+        long start = System.nanoTime();
+        try {
+            // same handshake as EClientSocket.eConnect()
+            parent.setServerVersion( reader.readInt());
+            if( parent.serverVersion() >= 20) {
+                reader.readStr();
+            }
+            while( reader.processMsg( reader.readInt())) {
+                m_messages++;
+            }
+        }
+        catch( EOFException e) {
+            // end of capture
+        }
+        finally {
+            m_elapsedNanos = System.nanoTime() - start;
+            in.close();
+        }
+        return m_messages;
+    }
+
+    /** Parent for the reader during replay; reports the captured server
+     *  version and never touches a socket. */
+    private static class ReplayClientSocket extends EClientSocket {
+        ReplayClientSocket( AnyWrapper wrapper) {
+            super( wrapper);
+        }
+
+        void setServerVersion( int serverVersion) {
+            m_serverVersion = serverVersion;
+        }
+
+        @Override public int serverVersion() {
+            return m_serverVersion;
+        }
+
+        @Override public boolean isConnected() {
+            return true;
+        }
+    }
+
+    /** Concatenated frame payloads of a journal, read through a sliding
+     *  memory mapped window. */
+    private static class JournalInputStream extends InputStream {
+        private final RandomAccessFile m_raf;
+        private final FileChannel m_channel;
+        private final long m_fileSize;
+        private final boolean m_paced;
+        private MappedByteBuffer m_window;
+        private long m_windowStart;
+        private long m_position;            // file offset of next frame header
+        private int m_frameRemaining;       // payload bytes left in current frame
+        private long m_firstFrameNanos = -1;
+        private long m_replayStartNanos;
+
+        JournalInputStream( File file, boolean paced) throws IOException {
+            m_raf = new RandomAccessFile( file, "r");
+            m_channel = m_raf.getChannel();
+            m_fileSize = m_channel.size();
+            m_paced = paced;
+            if( m_fileSize < EWireJournal.HEADER_SIZE) {
+                throw new IOException( file + " is not a wire journal");
+            }
+            map( 0, EWireJournal.HEADER_SIZE);
+            if( m_window.getInt() != EWireJournal.MAGIC
+                    || m_window.getInt() != EWireJournal.FORMAT_VERSION) {
+                throw new IOException( file + " is not a version " + EWireJournal.FORMAT_VERSION + " wire journal");
+            }
+            m_position = EWireJournal.HEADER_SIZE;
+        }
+
+        @Override public int read() throws IOException {
+            if( !nextFrame()) {
+                return -1;
+            }
+            m_frameRemaining--;
+            m_position++;
+            return m_window.get() & 0xff;
+        }
+
+        @Override public int read( byte[] b, int off, int len) throws IOException {
+            if( len == 0) {
+                return 0;
+            }
+            if( !nextFrame()) {
+                return -1;
+            }
+            int n = Math.min( len, m_frameRemaining);
+            m_window.get( b, off, n);
+            m_frameRemaining -= n;
+            m_position += n;
+            return n;
+        }
+
+        @Override public void close() throws IOException {
+            m_window = null;
+            m_raf.close();
+        }
+
+        /** Positions the window on payload bytes, returning false at the end. */
+        private boolean nextFrame() throws IOException {
+            if( m_frameRemaining > 0) {
+                return true;
+            }
+            if( m_position + EWireJournal.FRAME_HEADER_SIZE > m_fileSize) {
+                return false;
+            }
+            ensureMapped( m_position, EWireJournal.FRAME_HEADER_SIZE);
+            long frameNanos = m_window.getLong();
+            int len = m_window.getInt();
+            if( len <= 0 || m_position + EWireJournal.FRAME_HEADER_SIZE + len > m_fileSize) {
+                return false;
+            }
+            m_position += EWireJournal.FRAME_HEADER_SIZE;
+            ensureMapped( m_position, len);
+            m_frameRemaining = len;
+            if( m_paced) {
+                pace( frameNanos);
+            }
+            return true;
+        }
+
+        private void pace( long frameNanos) {
+            if( m_firstFrameNanos < 0) {
+                m_firstFrameNanos = frameNanos;
+                m_replayStartNanos = System.nanoTime();
+                return;
+            }
+            long waitNanos = (frameNanos - m_firstFrameNanos) - (System.nanoTime() - m_replayStartNanos);
+            if( waitNanos > 0) {
+                try {
+                    Thread.sleep( waitNanos / 1000000, (int)(waitNanos % 1000000));
+                }
+                catch( InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void ensureMapped( long offset, int len) throws IOException {
+            if( m_window == null || offset < m_windowStart
+                    || offset + len > m_windowStart + m_window.capacity()) {
+                map( offset, Math.max( len, (int)Math.min( WINDOW_SIZE, m_fileSize - offset)));
+            }
+            m_window.position( (int)(offset - m_windowStart));
+        }
+
+        private void map( long offset, int len) throws IOException {
+            m_windowStart = offset;
+            m_window = m_channel.map( FileChannel.MapMode.READ_ONLY, offset, len);
+        }
+    }
+
+    /** Replays a journal into a wrapper that only counts callbacks and
+     *  prints the decode and dispatch rate.
+     *  Usage : java com.ib.client.EWireReplayer <journalFile> [paced] [nio] */
+    public static void main( String[] args) throws Exception {
+        if( args.length < 1) {
+            System.out.println( " Usage : java com.ib.client.EWireReplayer <journalFile> [paced] [nio]");
+            System.exit( 1);
+        }
+        boolean paced = false;
+        boolean nio = false;
+        for( int i = 1; i < args.length; i++) {
+            paced |= args[i].equalsIgnoreCase( "paced");
+            nio |= args[i].equalsIgnoreCase( "nio");
+        }
+        final long[] callbacks = new long[ 1];
+        EWrapper counter = (EWrapper)Proxy.newProxyInstance( EWrapper.class.getClassLoader(),
+                new Class<?>[] { EWrapper.class }, new InvocationHandler() {
+            public Object invoke( Object proxy, Method method, Object[] methodArgs) {
+                callbacks[0]++;
+                return null;
+            }
+        });
+        EWireReplayer replayer = new EWireReplayer( new File( args[0]), counter);
+        long messages = replayer.replay( paced, nio);
+        double seconds = replayer.elapsedNanos() / 1e9;
+        System.out.println( "messages " + messages + " callbacks " + callbacks[0]
+                + " seconds " + String.format( "%.3f", seconds)
+                + " messagesPerSecond " + String.format( "%.0f", messages / Math.max( seconds, 1e-9)));
+    }
+}
@@ -0,0 +1,909 @@
+/* Copyright (C) 2013 Interactive Brokers LLC. All rights reserved.  This code is subject to the terms
+ * and conditions of the IB API Non-Commercial License or the IB API Commercial License, as applicable. */
+
+package com.ib.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Localhost stand-in for TWS used for offline load testing. It speaks the
+ *  socket protocol of EClientSocket/EReader at SERVER_VERSION: the version
+ *  handshake, nextValidId, streaming and snapshot reqMktData, placeOrder
+ *  (including modification of a working order), cancelOrder,
+ *  reqOpenOrders, reqExecutions and reqIds. Prices follow a random walk per
+ *  contract and orders are filled according to a FillModel. Point
+ *  IBTWSSERVERIPADDRESS/IBTWSSERVERPORTNUMBER at it to run the trading
+ *  threads unchanged.
+ *
+ *  Usage : java com.ib.client.TwsSimulator <port> [ticksPerSecond] [fillDelayMillis] */
+public class TwsSimulator extends Thread {
+
+    public static final int SERVER_VERSION = 67;
+
+    // client to TWS msg id's
+    private static final int REQ_MKT_DATA = 1;
+    private static final int CANCEL_MKT_DATA = 2;
+    private static final int PLACE_ORDER = 3;
+    private static final int CANCEL_ORDER = 4;
+    private static final int REQ_OPEN_ORDERS = 5;
+    private static final int REQ_EXECUTIONS = 7;
+    private static final int REQ_IDS = 8;
+    private static final int REQ_AUTO_OPEN_ORDERS = 15;
+    private static final int REQ_ALL_OPEN_ORDERS = 16;
+    private static final int REQ_MANAGED_ACCTS = 17;
+    private static final int REQ_CURRENT_TIME = 49;
+    private static final int REQ_GLOBAL_CANCEL = 58;
+    private static final int REQ_MARKET_DATA_TYPE = 59;
+
+    private static final String BAG_SEC_TYPE = "BAG";
+
+    /** Controls how the simulator answers orders. */
+    public static class FillModel {
+        public long m_fillDelayMillis = 50;          // receipt to fill for marketable orders
+        public int m_slippageTicks = 0;              // adverse ticks applied to market fills
+        public double m_passiveFillProbability = 0.2; // per tick, for resting LMT/REL orders
+        public double m_rejectProbability = 0;       // orders answered with error 201
+        public double m_commissionRate = 0.0002;     // fraction of traded value
+        public double m_minCommission = 0;
+    }
+
+    private final ServerSocket m_serverSocket;
+    private final FillModel m_fillModel;
+    private final int m_ticksPerSecond;
+    private final double m_tickSize;
+    private final double m_basePrice;
+    private final String m_account;
+    private final ScheduledExecutorService m_timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<Session> m_sessions = new CopyOnWriteArrayList<Session>();
+    private final ConcurrentHashMap<String, Instrument> m_instruments = new ConcurrentHashMap<String, Instrument>();
+    private final List<SimExecution> m_executions = new CopyOnWriteArrayList<SimExecution>();
+    private final AtomicInteger m_nextOrderId = new AtomicInteger( 1);
+    private final AtomicInteger m_execSeq = new AtomicInteger();
+    private final Random m_random = new Random();
+    private volatile boolean m_stopped;
+
+    // counters
+    private final AtomicLong m_ticksSent = new AtomicLong();
+    private final AtomicLong m_ordersReceived = new AtomicLong();
+    private final AtomicLong m_fills = new AtomicLong();
+    private final AtomicLong m_tickToOrderCount = new AtomicLong();
+    private final AtomicLong m_tickToOrderTotalNanos = new AtomicLong();
+    private final AtomicLong m_tickToOrderMaxNanos = new AtomicLong();
+
+    public TwsSimulator( int port, int ticksPerSecond, FillModel fillModel) throws IOException {
+        this( port, ticksPerSecond, fillModel, 0.05, 100.0, "DU000000");
+    }
+
+    public TwsSimulator( int port, int ticksPerSecond, FillModel fillModel, double tickSize, double basePrice, String account) throws IOException {
+        super( "TwsSimulator");
+        m_serverSocket = new ServerSocket( port, 50, InetAddress.getByName( "127.0.0.1"));
+        m_ticksPerSecond = Math.max( 1, ticksPerSecond);
+        m_fillModel = fillModel;
+        m_tickSize = tickSize;
+        m_basePrice = basePrice;
+        m_account = account;
+    }
+
+    /** Port actually bound; useful when constructed with port 0. */
+    public int port()                       { return m_serverSocket.getLocalPort(); }
+    public long ticksSent()                 { return m_ticksSent.get(); }
+    public long ordersReceived()            { return m_ordersReceived.get(); }
+    public long fills()                     { return m_fills.get(); }
+
+    @Override public synchronized void start() {
+        long periodMicros = Math.max( 1, 1000000L / m_ticksPerSecond);
+        m_timer.scheduleAtFixedRate( new Runnable() {
+            public void run() {
+                publishTicks();
+            }
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+        super.start();
+    }
+
+    @Override public void run() {
+        while( !m_stopped) {
+            try {
+                Socket socket = m_serverSocket.accept();
+                socket.setTcpNoDelay( true);
+                Session session = new Session( socket);
+                m_sessions.add( session);
+                session.start();
+            }
+            catch( IOException e) {
+                if( !m_stopped) {
+                    System.out.println( "TwsSimulator accept failed : " + e);
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        m_stopped = true;
+        m_timer.shutdownNow();
+        try {
+            m_serverSocket.close();
+        }
+        catch( IOException e) {
+        }
+        for( Session session : m_sessions) {
+            session.close();
+        }
+    }
+
+    public String statistics() {
+        long count = m_tickToOrderCount.get();
+        long avgMicros = count == 0 ? 0 : m_tickToOrderTotalNanos.get() / count / 1000;
+        return "sessions " + m_sessions.size()
+                + " instruments " + m_instruments.size()
+                + " ticksSent " + m_ticksSent.get()
+                + " orders " + m_ordersReceived.get()
+                + " fills " + m_fills.get()
+                + " tickToOrderAvgMicros " + avgMicros
+                + " tickToOrderMaxMicros " + m_tickToOrderMaxNanos.get() / 1000;
+    }
+
+    /** Timer task : moves every subscribed instrument one step, streams the
+     *  new quotes and lets resting orders trade against them. */
+    private void publishTicks() {
+        try {
+            for( Instrument instrument : m_instruments.values()) {
+                if( instrument.m_subscribers.get() > 0) {
+                    instrument.step();
+                }
+            }
+            for( Session session : m_sessions) {
+                session.publishTicks();
+                session.matchRestingOrders();
+            }
+        }
+        catch( Exception e) {
+            System.out.println( "TwsSimulator tick publication failed : " + e);
+        }
+    }
+
+    private Instrument instrument( Contract contract) {
+        String key = contract.m_secType + "|" + contract.m_symbol + "|" + Util.NormalizeString( contract.m_expiry)
+                + "|" + normalizeRight( contract.m_right) + "|" + contract.m_strike;
+        Instrument instrument = m_instruments.get( key);
+        if( instrument == null) {
+            instrument = new Instrument( contract, key);
+            Instrument existing = m_instruments.putIfAbsent( key, instrument);
+            if( existing != null) {
+                instrument = existing;
+            }
+        }
+        return instrument;
+    }
+
+    private static String normalizeRight( String right) {
+        if( "CALL".equalsIgnoreCase( right) || "C".equalsIgnoreCase( right)) {
+            return "C";
+        }
+        if( "PUT".equalsIgnoreCase( right) || "P".equalsIgnoreCase( right)) {
+            return "P";
+        }
+        return "";
+    }
+
+    private double roundToTick( double price) {
+        // second rounding drops the binary noise of ticks * tickSize
+        return Math.round( Math.round( price / m_tickSize) * m_tickSize * 1e8) / 1e8;
+    }
+
+    /** Random walk price source shared by every session subscribed to the contract. */
+    private class Instrument {
+        final Contract m_contract;
+        final AtomicInteger m_subscribers = new AtomicInteger();
+        final Random m_walk;
+        double m_last;
+        double m_bid;
+        double m_ask;
+        double m_close;
+        int m_volume;
+        long m_lastTickNanos;
+
+        Instrument( Contract contract, String key) {
+            m_contract = contract;
+            m_walk = new Random( key.hashCode());
+            double base = "OPT".equalsIgnoreCase( contract.m_secType) ? m_basePrice / 10 : m_basePrice;
+            m_close = Math.max( m_tickSize, roundToTick( base * (0.5 + m_walk.nextDouble())));
+            m_last = m_close;
+            quote();
+            m_lastTickNanos = System.nanoTime();
+        }
+
+        synchronized void step() {
+            int move = m_walk.nextInt( 5) - 2;
+            m_last = Math.max( m_tickSize, roundToTick( m_last + move * m_tickSize));
+            m_volume += 1 + m_walk.nextInt( 50);
+            quote();
+            m_lastTickNanos = System.nanoTime();
+        }
+
+        private void quote() {
+            m_bid = Math.max( m_tickSize, roundToTick( m_last - m_tickSize));
+            m_ask = roundToTick( m_last + m_tickSize);
+        }
+
+        synchronized double bid()      { return m_bid; }
+        synchronized double ask()      { return m_ask; }
+        synchronized long lastTickNanos() { return m_lastTickNanos; }
+    }
+
+    private static class SimOrder {
+        int m_orderId;
+        Instrument m_instrument;
+        Contract m_contract;
+        String m_action;
+        int m_totalQuantity;
+        String m_orderType;
+        double m_lmtPrice;
+        double m_auxPrice;
+        String m_orderRef;
+        String m_status = "Submitted";
+        int m_permId;
+        boolean m_fillPending;
+
+        boolean isBuy()         { return "BUY".equalsIgnoreCase( m_action); }
+        boolean isWorking()     { return "Submitted".equals( m_status) || "PreSubmitted".equals( m_status); }
+    }
+
+    private static class SimExecution {
+        int m_clientId;
+        int m_orderId;
+        Contract m_contract;
+        Execution m_exec;
+        CommissionReport m_commission;
+        String m_filterTime;                // yyyyMMdd-HH:mm:ss for reqExecutions filtering
+    }
+
+    /** One connected API client. */
+    private class Session extends Thread {
+        private final Socket m_socket;
+        private final DataInputStream m_dis;
+        private final OutputStream m_os;
+        private final StringBuilder m_out = new StringBuilder( 1024);
+        private final Map<Integer, Instrument> m_subscriptions = new ConcurrentHashMap<Integer, Instrument>();
+        private final Map<Integer, SimOrder> m_orders = new ConcurrentHashMap<Integer, SimOrder>();
+        private int m_clientId;
+
+        Session( Socket socket) throws IOException {
+            super( "TwsSimulatorSession");
+            m_socket = socket;
+            m_dis = new DataInputStream( new BufferedInputStream( socket.getInputStream()));
+            m_os = new BufferedOutputStream( socket.getOutputStream());
+        }
+
+        @Override public void run() {
+            try {
+                handshake();
+                while( !m_stopped && processRequest( readInt()));
+            }
+            catch( IOException e) {
+                // client went away
+            }
+            finally {
+                close();
+            }
+        }
+
+        void close() {
+            for( Instrument instrument : m_subscriptions.values()) {
+                instrument.m_subscribers.decrementAndGet();
+            }
+            m_subscriptions.clear();
+            m_sessions.remove( this);
+            try {
+                m_socket.close();
+            }
+            catch( IOException e) {
+            }
+        }
+
+        private void handshake() throws IOException {
+            readInt(); // client version
+            synchronized( m_out) {
+                field( SERVER_VERSION);
+                field( new SimpleDateFormat( "yyyyMMdd HH:mm:ss z").format( new Date()));
+                flushMessage();
+            }
+            m_clientId = readInt();
+            message( EReader.NEXT_VALID_ID, 1, m_nextOrderId.get());
+            message( EReader.MANAGED_ACCTS, 1, m_account);
+        }
+
+        private boolean processRequest( int msgId) throws IOException {
+            switch( msgId) {
+                case REQ_MKT_DATA:
+                    reqMktData();
+                    break;
+                case CANCEL_MKT_DATA: {
+                    readInt(); // version
+                    Instrument instrument = m_subscriptions.remove( readInt());
+                    if( instrument != null) {
+                        instrument.m_subscribers.decrementAndGet();
+                    }
+                    break;
+                }
+                case PLACE_ORDER:
+                    placeOrder();
+                    break;
+                case CANCEL_ORDER: {
+                    readInt(); // version
+                    cancelOrder( readInt());
+                    break;
+                }
+                case REQ_OPEN_ORDERS:
+                case REQ_ALL_OPEN_ORDERS:
+                    readInt(); // version
+                    for( SimOrder order : m_orders.values()) {
+                        if( order.isWorking()) {
+                            orderStatus( order, 0, 0);
+                        }
+                    }
+                    message( EReader.OPEN_ORDER_END, 1);
+                    break;
+                case REQ_AUTO_OPEN_ORDERS:
+                    readInt(); // version
+                    readInt(); // autoBind
+                    break;
+                case REQ_EXECUTIONS:
+                    reqExecutions();
+                    break;
+                case REQ_IDS:
+                    readInt(); // version
+                    readInt(); // numIds
+                    message( EReader.NEXT_VALID_ID, 1, m_nextOrderId.get());
+                    break;
+                case REQ_MANAGED_ACCTS:
+                    readInt(); // version
+                    message( EReader.MANAGED_ACCTS, 1, m_account);
+                    break;
+                case REQ_CURRENT_TIME:
+                    readInt(); // version
+                    message( EReader.CURRENT_TIME, 1, System.currentTimeMillis() / 1000);
+                    break;
+                case REQ_GLOBAL_CANCEL:
+                    readInt(); // version
+                    for( SimOrder order : m_orders.values()) {
+                        cancelOrder( order.m_orderId);
+                    }
+                    break;
+                case REQ_MARKET_DATA_TYPE:
+                    readInt(); // version
+                    readInt(); // marketDataType
+                    break;
+                default:
+                    // message boundaries are implicit, so an unknown request cannot be skipped
+                    System.out.println( "TwsSimulator unsupported request " + msgId + ". Closing session.");
+                    return false;
+            }
+            return true;
+        }
+
+        private void reqMktData() throws IOException {
+            readInt(); // version
+            int tickerId = readInt();
+            Contract contract = readContract();
+            if( BAG_SEC_TYPE.equalsIgnoreCase( contract.m_secType)) {
+                int legs = readInt();
+                for( int i = 0; i < legs; i++) {
+                    readInt(); readInt(); readStr(); readStr();
+                }
+            }
+            if( readBool()) {
+                readInt(); readDouble(); readDouble(); // underComp
+            }
+            readStr(); // genericTickList
+            boolean snapshot = readBool();
+
+            Instrument instrument = instrument( contract);
+            if( snapshot) {
+                double bid;
+                double ask;
+                synchronized( instrument) {
+                    bid = instrument.m_bid;
+                    ask = instrument.m_ask;
+                }
+                tickPrice( tickerId, TickType.BID, bid, 100);
+                tickPrice( tickerId, TickType.ASK, ask, 100);
+                message( EReader.TICK_SNAPSHOT_END, 1, tickerId);
+                return;
+            }
+            if( m_subscriptions.put( tickerId, instrument) == null) {
+                instrument.m_subscribers.incrementAndGet();
+            }
+            double close;
+            synchronized( instrument) {
+                close = instrument.m_close;
+            }
+            tickPrice( tickerId, TickType.CLOSE, close, 0);
+        }
+
+        /** Reads the contract fields common to reqMktData and placeOrder. */
+        private Contract readContract() throws IOException {
+            Contract contract = new Contract();
+            contract.m_conId = readInt();
+            contract.m_symbol = readStr();
+            contract.m_secType = readStr();
+            contract.m_expiry = readStr();
+            contract.m_strike = readDouble();
+            contract.m_right = readStr();
+            contract.m_multiplier = readStr();
+            contract.m_exchange = readStr();
+            contract.m_primaryExch = readStr();
+            contract.m_currency = readStr();
+            contract.m_localSymbol = readStr();
+            return contract;
+        }
+
+        /** Mirrors EClientSocket.placeOrder() at SERVER_VERSION. */
+        private void placeOrder() throws IOException {
+            readInt(); // version
+            SimOrder order = new SimOrder();
+            order.m_orderId = readInt();
+            Contract contract = readContract();
+            readStr(); readStr(); // secIdType, secId
+            order.m_contract = contract;
+            order.m_action = readStr();
+            order.m_totalQuantity = readInt();
+            order.m_orderType = readStr();
+            order.m_lmtPrice = readDoubleMax();
+            order.m_auxPrice = readDoubleMax();
+            readStr(); readStr(); readStr(); readStr(); // tif, ocaGroup, account, openClose
+            readInt(); // origin
+            order.m_orderRef = readStr();
+            readBool(); readInt(); // transmit, parentId
+            readBool(); readBool(); readInt(); readInt(); readBool(); // block, sweep, display, trigger, outsideRth
+            readBool(); // hidden
+            if( BAG_SEC_TYPE.equalsIgnoreCase( contract.m_secType)) {
+                int legs = readInt();
+                for( int i = 0; i < legs; i++) {
+                    readInt(); readInt(); readStr(); readStr(); readInt(); readInt(); readStr(); readInt();
+                }
+                int orderLegs = readInt();
+                for( int i = 0; i < orderLegs; i++) {
+                    readDoubleMax();
+                }
+                int routingParams = readInt();
+                for( int i = 0; i < routingParams; i++) {
+                    readStr(); readStr();
+                }
+            }
+            readStr(); // sharesAllocation
+            readDouble(); readStr(); readStr(); // discretionaryAmt, goodAfterTime, goodTillDate
+            readStr(); readStr(); readStr(); readStr(); // fa group, method, percentage, profile
+            readInt(); readStr(); readInt(); // shortSaleSlot, designatedLocation, exemptCode
+            readInt(); readStr(); readStr(); readBool(); // ocaType, rule80A, settlingFirm, allOrNone
+            readIntMax(); readDoubleMax(); readBool(); readBool(); readDoubleMax(); // minQty .. nbboPriceCap
+            readIntMax(); readDoubleMax(); readDoubleMax(); readDoubleMax(); // auctionStrategy .. delta
+            readDoubleMax(); readDoubleMax(); // stockRangeLower, stockRangeUpper
+            readBool(); // overridePercentageConstraints
+            readDoubleMax(); readIntMax(); // volatility, volatilityType
+            String deltaNeutralOrderType = readStr();
+            readDoubleMax(); // deltaNeutralAuxPrice
+            if( !Util.StringIsEmpty( deltaNeutralOrderType)) {
+                readInt(); readStr(); readStr(); readStr();
+                readStr(); readBool(); readInt(); readStr();
+            }
+            readInt(); readIntMax(); // continuousUpdate, referencePriceType
+            readDoubleMax(); readDoubleMax(); // trailStopPrice, trailingPercent
+            readIntMax(); readIntMax(); // scaleInitLevelSize, scaleSubsLevelSize
+            double scalePriceIncrement = readDoubleMax();
+            if( scalePriceIncrement > 0.0 && scalePriceIncrement != Double.MAX_VALUE) {
+                readDoubleMax(); readIntMax(); readDoubleMax(); readBool();
+                readIntMax(); readIntMax(); readBool();
+            }
+            if( !Util.StringIsEmpty( readStr())) { // hedgeType
+                readStr();
+            }
+            readBool(); // optOutSmartRouting
+            readStr(); readStr(); // clearingAccount, clearingIntent
+            readBool(); // notHeld
+            if( readBool()) {
+                readInt(); readDouble(); readDouble(); // underComp
+            }
+            if( !Util.StringIsEmpty( readStr())) { // algoStrategy
+                int params = readInt();
+                for( int i = 0; i < params; i++) {
+                    readStr(); readStr();
+                }
+            }
+            readBool(); // whatIf
+
+            acceptOrder( order);
+        }
+
+        private void acceptOrder( SimOrder order) throws IOException {
+            m_ordersReceived.incrementAndGet();
+            int next;
+            while( (next = m_nextOrderId.get()) <= order.m_orderId
+                    && !m_nextOrderId.compareAndSet( next, order.m_orderId + 1)) {
+            }
+            order.m_instrument = instrument( order.m_contract);
+            recordTickToOrder( order.m_instrument);
+
+            SimOrder working = m_orders.get( order.m_orderId);
+            if( working != null) {
+                if( !working.isWorking()) {
+                    error( order.m_orderId, 104, "Can't modify a filled order.");
+                    return;
+                }
+                // modification of a working order keeps the original identity
+                synchronized( working) {
+                    working.m_totalQuantity = order.m_totalQuantity;
+                    working.m_orderType = order.m_orderType;
+                    working.m_lmtPrice = order.m_lmtPrice;
+                    working.m_auxPrice = order.m_auxPrice;
+                }
+                orderStatus( working, 0, 0);
+                tryFill( working, false);
+                return;
+            }
+
+            if( m_fillModel.m_rejectProbability > 0 && m_random.nextDouble() < m_fillModel.m_rejectProbability) {
+                order.m_status = "Inactive";
+                m_orders.put( order.m_orderId, order);
+                error( order.m_orderId, 201, "Order rejected - reason:simulated rejection");
+                orderStatus( order, 0, 0);
+                return;
+            }
+            order.m_permId = 1000000 + order.m_orderId;
+            m_orders.put( order.m_orderId, order);
+            orderStatus( order, 0, 0);
+            tryFill( order, false);
+        }
+
+        private void recordTickToOrder( Instrument instrument) {
+            long nanos = System.nanoTime() - instrument.lastTickNanos();
+            m_tickToOrderCount.incrementAndGet();
+            m_tickToOrderTotalNanos.addAndGet( nanos);
+            long max;
+            while( (max = m_tickToOrderMaxNanos.get()) < nanos
+                    && !m_tickToOrderMaxNanos.compareAndSet( max, nanos)) {
+            }
+        }
+
+        private void cancelOrder( int orderId) throws IOException {
+            SimOrder order = m_orders.get( orderId);
+            if( order == null) {
+                error( orderId, 135, "Can't find order with id =" + orderId);
+                return;
+            }
+            synchronized( order) {
+                if( !order.isWorking()) {
+                    return;
+                }
+                order.m_status = "Cancelled";
+            }
+            error( orderId, 202, "Order Canceled - reason:");
+            orderStatus( order, 0, 0);
+        }
+
+        /** Fills the order when it is marketable, or with the passive fill
+         *  probability when called for a resting order on a new tick. */
+        private void tryFill( final SimOrder order, boolean onTick) {
+            final double price;
+            synchronized( order) {
+                if( !order.isWorking() || order.m_fillPending) {
+                    return;
+                }
+                double bid = order.m_instrument.bid();
+                double ask = order.m_instrument.ask();
+                String type = order.m_orderType;
+                if( "MKT".equalsIgnoreCase( type)) {
+                    double slip = m_fillModel.m_slippageTicks * m_tickSize;
+                    price = order.isBuy() ? roundToTick( ask + slip) : Math.max( m_tickSize, roundToTick( bid - slip));
+                }
+                else {
+                    double limit = workingPrice( order, bid, ask);
+                    boolean marketable = order.isBuy() ? limit >= ask : limit <= bid;
+                    if( marketable) {
+                        price = order.isBuy() ? ask : bid;
+                    }
+                    else if( onTick && m_random.nextDouble() < m_fillModel.m_passiveFillProbability) {
+                        price = limit;
+                    }
+                    else {
+                        return;
+                    }
+                }
+                order.m_fillPending = true;
+            }
+            m_timer.schedule( new Runnable() {
+                public void run() {
+                    fill( order, price);
+                }
+            }, m_fillModel.m_fillDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /** LMT trades at its limit; REL pegs to the near side plus the offset,
+         *  capped by the limit when one is given. */
+        private double workingPrice( SimOrder order, double bid, double ask) {
+            if( "REL".equalsIgnoreCase( order.m_orderType)) {
+                double offset = order.m_auxPrice == Double.MAX_VALUE ? 0 : order.m_auxPrice;
+                double peg = order.isBuy() ? bid + offset : ask - offset;
+                boolean capped = order.m_lmtPrice != Double.MAX_VALUE && order.m_lmtPrice > 0;
+                if( capped) {
+                    peg = order.isBuy() ? Math.min( peg, order.m_lmtPrice) : Math.max( peg, order.m_lmtPrice);
+                }
+                return roundToTick( peg);
+            }
+            return order.m_lmtPrice == Double.MAX_VALUE ? 0 : order.m_lmtPrice;
+        }
+
+        private void fill( SimOrder order, double price) {
+            synchronized( order) {
+                order.m_fillPending = false;
+                if( !order.isWorking()) {
+                    return;
+                }
+                order.m_status = "Filled";
+            }
+            SimExecution execution = new SimExecution();
+            Date now = new Date();
+            Execution exec = new Execution();
+            exec.m_orderId = order.m_orderId;
+            exec.m_execId = String.format( "%08x.%08x.01.01", m_socket.getLocalPort(), m_execSeq.incrementAndGet());
+            exec.m_time = new SimpleDateFormat( "yyyyMMdd  HH:mm:ss").format( now);
+            exec.m_acctNumber = m_account;
+            exec.m_exchange = order.m_contract.m_exchange;
+            exec.m_side = order.isBuy() ? "BOT" : "SLD";
+            exec.m_shares = order.m_totalQuantity;
+            exec.m_price = price;
+            exec.m_permId = order.m_permId;
+            exec.m_clientId = m_clientId;
+            exec.m_cumQty = order.m_totalQuantity;
+            exec.m_avgPrice = price;
+            exec.m_orderRef = order.m_orderRef;
+
+            CommissionReport commission = new CommissionReport();
+            commission.m_execId = exec.m_execId;
+            commission.m_commission = Math.max( m_fillModel.m_minCommission,
+                    m_fillModel.m_commissionRate * price * order.m_totalQuantity);
+            commission.m_currency = order.m_contract.m_currency;
+            commission.m_realizedPNL = Double.MAX_VALUE;
+            commission.m_yield = Double.MAX_VALUE;
+
+            execution.m_clientId = m_clientId;
+            execution.m_orderId = order.m_orderId;
+            execution.m_contract = order.m_contract;
+            execution.m_exec = exec;
+            execution.m_commission = commission;
+            execution.m_filterTime = new SimpleDateFormat( "yyyyMMdd-HH:mm:ss").format( now);
+            m_executions.add( execution);
+            m_fills.incrementAndGet();
+            try {
+                orderStatus( order, order.m_totalQuantity, price);
+                execDetails( -1, execution);
+                commissionReport( commission);
+            }
+            catch( IOException e) {
+                close();
+            }
+        }
+
+        private void reqExecutions() throws IOException {
+            readInt(); // version
+            int reqId = readInt();
+            int clientId = readInt();
+            String acctCode = readStr();
+            String time = readStr();
+            String symbol = readStr();
+            String secType = readStr();
+            String exchange = readStr();
+            String side = readStr();
+            for( SimExecution execution : m_executions) {
+                if( (clientId != 0 && clientId != execution.m_clientId)
+                        || (!Util.StringIsEmpty( acctCode) && !acctCode.equalsIgnoreCase( execution.m_exec.m_acctNumber))
+                        || (!Util.StringIsEmpty( time) && execution.m_filterTime.compareTo( time) < 0)
+                        || (!Util.StringIsEmpty( symbol) && !symbol.equalsIgnoreCase( execution.m_contract.m_symbol))
+                        || (!Util.StringIsEmpty( secType) && !secType.equalsIgnoreCase( execution.m_contract.m_secType))
+                        || (!Util.StringIsEmpty( exchange) && !exchange.equalsIgnoreCase( execution.m_contract.m_exchange))
+                        || (!Util.StringIsEmpty( side) && !side.regionMatches( true, 0, execution.m_exec.m_side, 0, 1))) {
+                    continue;
+                }
+                execDetails( reqId, execution);
+                commissionReport( execution.m_commission);
+            }
+            message( EReader.EXECUTION_DATA_END, 1, reqId);
+        }
+
+        void publishTicks() {
+            try {
+                for( Map.Entry<Integer, Instrument> entry : m_subscriptions.entrySet()) {
+                    Instrument instrument = entry.getValue();
+                    double last;
+                    double bid;
+                    double ask;
+                    int volume;
+                    synchronized( instrument) {
+                        last = instrument.m_last;
+                        bid = instrument.m_bid;
+                        ask = instrument.m_ask;
+                        volume = instrument.m_volume;
+                    }
+                    int tickerId = entry.getKey();
+                    synchronized( m_out) {
+                        tickPriceField( tickerId, TickType.BID, bid, 100);
+                        tickPriceField( tickerId, TickType.ASK, ask, 100);
+                        tickPriceField( tickerId, TickType.LAST, last, 1);
+                        field( EReader.TICK_SIZE); field( 6); field( tickerId); field( TickType.VOLUME); field( volume);
+                        flushMessage();
+                    }
+                    m_ticksSent.addAndGet( 4);
+                }
+            }
+            catch( IOException e) {
+                close();
+            }
+        }
+
+        void matchRestingOrders() {
+            for( SimOrder order : m_orders.values()) {
+                if( order.isWorking()) {
+                    tryFill( order, true);
+                }
+            }
+        }
+
+        // ---- outbound encoding ----
+
+        private void tickPrice( int tickerId, int tickType, double price, int size) throws IOException {
+            synchronized( m_out) {
+                tickPriceField( tickerId, tickType, price, size);
+                flushMessage();
+            }
+        }
+
+        private void tickPriceField( int tickerId, int tickType, double price, int size) {
+            field( EReader.TICK_PRICE); field( 6); field( tickerId); field( tickType);
+            field( price); field( size); field( 1);
+        }
+
+        private void orderStatus( SimOrder order, int filled, double avgPrice) throws IOException {
+            synchronized( m_out) {
+                field( EReader.ORDER_STATUS); field( 6); field( order.m_orderId);
+                field( order.m_status); field( filled); field( order.m_totalQuantity - filled);
+                field( avgPrice); field( order.m_permId); field( 0); field( avgPrice);
+                field( m_clientId); field( "");
+                flushMessage();
+            }
+        }
+
+        private void execDetails( int reqId, SimExecution execution) throws IOException {
+            Contract contract = execution.m_contract;
+            Execution exec = execution.m_exec;
+            synchronized( m_out) {
+                field( EReader.EXECUTION_DATA); field( 9); field( reqId); field( exec.m_orderId);
+                field( contract.m_conId); field( contract.m_symbol); field( contract.m_secType);
+                field( contract.m_expiry); field( contract.m_strike); field( contract.m_right);
+                field( contract.m_multiplier); field( contract.m_exchange); field( contract.m_currency);
+                field( contract.m_localSymbol);
+                field( exec.m_execId); field( exec.m_time); field( exec.m_acctNumber);
+                field( exec.m_exchange); field( exec.m_side); field( exec.m_shares);
+                field( exec.m_price); field( exec.m_permId); field( exec.m_clientId);
+                field( exec.m_liquidation); field( exec.m_cumQty); field( exec.m_avgPrice);
+                field( exec.m_orderRef); field( ""); field( "");
+                flushMessage();
+            }
+        }
+
+        private void commissionReport( CommissionReport commission) throws IOException {
+            synchronized( m_out) {
+                field( EReader.COMMISSION_REPORT); field( 1); field( commission.m_execId);
+                field( commission.m_commission); field( commission.m_currency);
+                field( commission.m_realizedPNL); field( commission.m_yield);
+                field( commission.m_yieldRedemptionDate);
+                flushMessage();
+            }
+        }
+
+        private void error( int id, int code, String msg) throws IOException {
+            message( EReader.ERR_MSG, 2, id, code, msg);
+        }
+
+        private void message( Object... fields) throws IOException {
+            synchronized( m_out) {
+                for( Object value : fields) {
+                    field( value == null ? "" : value.toString());
+                }
+                flushMessage();
+            }
+        }
+
+        private void field( int value)      { m_out.append( value).append( (char)0); }
+        private void field( double value)   { m_out.append( value).append( (char)0); }
+        private void field( String value) {
+            if( value != null) {
+                m_out.append( value);
+            }
+            m_out.append( (char)0);
+        }
+
+        /** Caller holds m_out. */
+        private void flushMessage() throws IOException {
+            int len = m_out.length();
+            for( int i = 0; i < len; i++) {
+                m_os.write( m_out.charAt( i));
+            }
+            m_out.setLength( 0);
+            m_os.flush();
+        }
+
+        // ---- inbound decoding ----
+
+        private String readStr() throws IOException {
+            StringBuilder buf = new StringBuilder();
+            while( true) {
+                byte c = m_dis.readByte();
+                if( c == 0) {
+                    break;
+                }
+                buf.append( (char)c);
+            }
+            return buf.length() == 0 ? null : buf.toString();
+        }
+
+        private int readInt() throws IOException {
+            String str = readStr();
+            return str == null ? 0 : Integer.parseInt( str);
+        }
+
+        private int readIntMax() throws IOException {
+            String str = readStr();
+            return str == null ? Integer.MAX_VALUE : Integer.parseInt( str);
+        }
+
+        private boolean readBool() throws IOException {
+            return readInt() != 0;
+        }
+
+        private double readDouble() throws IOException {
+            String str = readStr();
+            return str == null ? 0 : Double.parseDouble( str);
+        }
+
+        private double readDoubleMax() throws IOException {
+            String str = readStr();
+            return str == null ? Double.MAX_VALUE : Double.parseDouble( str);
+        }
+    }
+
+    public static void main( String[] args) throws Exception {
+        if( args.length < 1) {
+            System.out.println( " Usage : java com.ib.client.TwsSimulator <port> [ticksPerSecond] [fillDelayMillis]");
+            System.exit( 1);
+        }
+        FillModel fillModel = new FillModel();
+        int ticksPerSecond = args.length > 1 ? Integer.parseInt( args[1]) : 4;
+        if( args.length > 2) {
+            fillModel.m_fillDelayMillis = Long.parseLong( args[2]);
+        }
+        TwsSimulator simulator = new TwsSimulator( Integer.parseInt( args[0]), ticksPerSecond, fillModel);
+        simulator.start();
+        System.out.println( "TwsSimulator listening on 127.0.0.1:" + simulator.port());
+        while( true) {
+            Thread.sleep( 10000);
+            System.out.println( simulator.statistics());
+        }
+    }
+}
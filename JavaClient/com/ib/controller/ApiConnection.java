@@ -254,6 +254,7 @@ public class ApiConnection extends EClientSocket {
 			b.send( order.whatIf() );
 
 			m_dos.write( b.getBytes() );
+			endMessage();
 		}
 		catch( Exception e) {
 			e.printStackTrace();
@@ -0,0 +1,172 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+
+ */
+package com.ib.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/** Pre-encoded TWS messages and in-memory streams shared by the benchmarks.
+ *  Messages are encoded exactly as TWS sends them, one NUL terminated field
+ *  at a time, so the readers see the same bytes as on a live socket. */
+public class BenchmarkFixtures {
+
+    public static final int SERVER_VERSION = 67;
+    public static final int MESSAGES_PER_FIXTURE = 64;
+
+    /** Returns MESSAGES_PER_FIXTURE messages of one type, varied in ticker id,
+     *  price and size so the decode path is not fed a single constant. */
+    public static byte[] encode( String messageType) {
+        Encoder e = new Encoder();
+        for( int i = 0; i < MESSAGES_PER_FIXTURE; i++) {
+            int tickerId = 1 + (i % 16);
+            double price = 24950.05 + i * 0.05;
+            if( "TICK_PRICE".equals( messageType)) {
+                // version 6 : BID/ASK/LAST also produce a tickSize callback
+                int tickType = (i % 3 == 0) ? TickType.BID : (i % 3 == 1) ? TickType.ASK : TickType.LAST;
+                e.add( EReader.TICK_PRICE).add( 6).add( tickerId).add( tickType).add( price).add( 75 * (1 + i % 8)).add( 1);
+            }
+            else if( "TICK_SIZE".equals( messageType)) {
+                e.add( EReader.TICK_SIZE).add( 6).add( tickerId).add( TickType.VOLUME).add( 1250000 + i * 75);
+            }
+            else if( "ORDER_STATUS".equals( messageType)) {
+                e.add( EReader.ORDER_STATUS).add( 6).add( 1000 + i).add( (i % 2 == 0) ? "Submitted" : "Filled")
+                 .add( 75 * (i % 2)).add( 75 * (1 - i % 2)).add( price).add( 2000000 + i).add( 0)
+                 .add( price).add( 7).add( "");
+            }
+            else if( "EXECUTION_DATA".equals( messageType)) {
+                e.add( EReader.EXECUTION_DATA).add( 9).add( -1).add( 1000 + i)
+                 .add( 13000000 + tickerId).add( "NIFTY").add( "FUT").add( "20261029").add( 0.0).add( "")
+                 .add( "50").add( "NSE").add( "INR").add( "NIFTY26OCTFUT")
+                 .add( "0001f4e8." + (100000 + i) + ".01.01").add( "20261017  10:15:30").add( "DU000000")
+                 .add( "NSE").add( (i % 2 == 0) ? "BOT" : "SLD").add( 75).add( price)
+                 .add( 2000000 + i).add( 7).add( 0).add( 75).add( price)
+                 .add( "entry" + i).add( "").add( 0.0);
+            }
+            else {
+                throw new IllegalArgumentException( "No fixture for " + messageType);
+            }
+        }
+        return e.toByteArray();
+    }
+
+    /** Builds messages the way TWS does; a field is its string value followed by NUL. */
+    public static class Encoder {
+        private final ByteArrayOutputStream m_out = new ByteArrayOutputStream();
+
+        public Encoder add( String s) {
+            if( s != null) {
+                for( int i = 0; i < s.length(); i++) {
+                    m_out.write( (byte)s.charAt( i));
+                }
+            }
+            m_out.write( 0);
+            return this;
+        }
+
+        public Encoder add( int v)      { return add( String.valueOf( v)); }
+        public Encoder add( double v)   { return add( String.valueOf( v)); }
+
+        public byte[] toByteArray()     { return m_out.toByteArray(); }
+    }
+
+    /** Serves the same bytes over and over so a benchmark can decode for
+     *  as long as JMH runs it without ever reaching end of stream. */
+    public static class LoopingInputStream extends InputStream {
+        private final byte[] m_data;
+        private int m_pos;
+
+        public LoopingInputStream( byte[] data) {
+            m_data = data;
+        }
+
+        @Override public int read() {
+            int b = m_data[m_pos] & 0xff;
+            if( ++m_pos == m_data.length) {
+                m_pos = 0;
+            }
+            return b;
+        }
+
+        @Override public int read( byte[] b, int off, int len) {
+            int n = Math.min( len, m_data.length - m_pos);
+            System.arraycopy( m_data, m_pos, b, off, n);
+            m_pos += n;
+            if( m_pos == m_data.length) {
+                m_pos = 0;
+            }
+            return n;
+        }
+    }
+
+    /** Socket that answers the connect handshake, then blocks the reader
+     *  thread, and counts but otherwise discards everything written. */
+    public static class NullSocket extends Socket {
+        private final InputStream m_in;
+        private final CountingOutputStream m_out = new CountingOutputStream();
+
+        public NullSocket() {
+            byte[] handshake = new Encoder().add( SERVER_VERSION).add( "20261017 09:15:00 IST").toByteArray();
+            m_in = new HandshakeInputStream( handshake);
+        }
+
+        public long bytesWritten()  { return m_out.m_count; }
+
+        @Override public InputStream getInputStream()   { return m_in; }
+        @Override public OutputStream getOutputStream() { return m_out; }
+    }
+
+    private static class HandshakeInputStream extends InputStream {
+        private final byte[] m_handshake;
+        private int m_pos;
+
+        HandshakeInputStream( byte[] handshake) {
+            m_handshake = handshake;
+        }
+
+        @Override public synchronized int read() throws IOException {
+            if( m_pos < m_handshake.length) {
+                return m_handshake[m_pos++] & 0xff;
+            }
+            // nothing more arrives; keep the reader thread parked
+            try {
+                wait();
+            }
+            catch( InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return -1;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private volatile long m_count;
+
+        @Override public void write( int b)                       { m_count++; }
+        @Override public void write( byte[] b, int off, int len)  { m_count += len; }
+    }
+}
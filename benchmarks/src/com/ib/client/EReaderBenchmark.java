@@ -0,0 +1,74 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+
+ */
+package com.ib.client;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Decode and dispatch of one inbound message through EReader.processMsg(),
+ *  for the message types on the trading hot path, with both readers. */
+@State( Scope.Thread)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 5, time = 1)
+@Measurement( iterations = 5, time = 1)
+@Fork( 1)
+public class EReaderBenchmark {
+
+    @Param( { "TICK_PRICE", "TICK_SIZE", "ORDER_STATUS", "EXECUTION_DATA" })
+    public String messageType;
+
+    @Param( { "legacy", "nio" })
+    public String reader;
+
+    private EReader m_reader;
+
+    @Setup
+    public void setup( Blackhole bh) {
+        EClientSocket parent = new EClientSocket( new NullWrapper( bh));
+        DataInputStream dis = new DataInputStream( new BenchmarkFixtures.LoopingInputStream(
+                BenchmarkFixtures.encode( messageType)));
+        m_reader = "nio".equals( reader) ? new ENioReader( parent, dis) : new EReader( parent, dis);
+    }
+
+    @Benchmark
+    public boolean processMsg() throws IOException {
+        return m_reader.processMsg( m_reader.readInt());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+
+ */
+package com.ib.client;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/** EWrapper that hands the callbacks under benchmark to a Blackhole and
+ *  ignores everything else, so measurements cover decode and dispatch only. */
+public class NullWrapper implements EWrapper {
+
+    private final Blackhole m_bh;
+
+    public NullWrapper( Blackhole bh) {
+        m_bh = bh;
+    }
+
+    @Override public void tickPrice( int tickerId, int field, double price, int canAutoExecute) {
+        m_bh.consume( tickerId);
+        m_bh.consume( price);
+    }
+
+    @Override public void tickSize( int tickerId, int field, int size) {
+        m_bh.consume( tickerId);
+        m_bh.consume( size);
+    }
+
+    @Override public void orderStatus( int orderId, String status, int filled, int remaining,
+            double avgFillPrice, int permId, int parentId, double lastFillPrice,
+            int clientId, String whyHeld) {
+        m_bh.consume( status);
+        m_bh.consume( avgFillPrice);
+    }
+
+    @Override public void execDetails( int reqId, Contract contract, Execution execution) {
+        m_bh.consume( contract);
+        m_bh.consume( execution);
+    }
+
+    @Override public void error( Exception e) {
+        throw new IllegalStateException( e);
+    }
+
+    @Override public void error( String str) {
+        throw new IllegalStateException( str);
+    }
+
+    @Override public void error( int id, int errorCode, String errorMsg) {
+        throw new IllegalStateException( errorCode + " " + errorMsg);
+    }
+
+    @Override public void connectionClosed() { }
+    @Override public void tickOptionComputation( int tickerId, int field, double impliedVol, double delta, double optPrice,
+            double pvDividend, double gamma, double vega, double theta, double undPrice) { }
+    @Override public void tickGeneric( int tickerId, int tickType, double value) { }
+    @Override public void tickString( int tickerId, int tickType, String value) { }
+    @Override public void tickEFP( int tickerId, int tickType, double basisPoints, String formattedBasisPoints,
+            double impliedFuture, int holdDays, String futureExpiry, double dividendImpact, double dividendsToExpiry) { }
+    @Override public void openOrder( int orderId, Contract contract, Order order, OrderState orderState) { }
+    @Override public void openOrderEnd() { }
+    @Override public void updateAccountValue( String key, String value, String currency, String accountName) { }
+    @Override public void updatePortfolio( Contract contract, int position, double marketPrice, double marketValue,
+            double averageCost, double unrealizedPNL, double realizedPNL, String accountName) { }
+    @Override public void updateAccountTime( String timeStamp) { }
+    @Override public void accountDownloadEnd( String accountName) { }
+    @Override public void nextValidId( int orderId) { }
+    @Override public void contractDetails( int reqId, ContractDetails contractDetails) { }
+    @Override public void bondContractDetails( int reqId, ContractDetails contractDetails) { }
+    @Override public void contractDetailsEnd( int reqId) { }
+    @Override public void execDetailsEnd( int reqId) { }
+    @Override public void updateMktDepth( int tickerId, int position, int operation, int side, double price, int size) { }
+    @Override public void updateMktDepthL2( int tickerId, int position, String marketMaker, int operation,
+            int side, double price, int size) { }
+    @Override public void updateNewsBulletin( int msgId, int msgType, String message, String origExchange) { }
+    @Override public void managedAccounts( String accountsList) { }
+    @Override public void receiveFA( int faDataType, String xml) { }
+    @Override public void historicalData( int reqId, String date, double open, double high, double low,
+            double close, int volume, int count, double WAP, boolean hasGaps) { }
+    @Override public void scannerParameters( String xml) { }
+    @Override public void scannerData( int reqId, int rank, ContractDetails contractDetails, String distance,
+            String benchmark, String projection, String legsStr) { }
+    @Override public void scannerDataEnd( int reqId) { }
+    @Override public void realtimeBar( int reqId, long time, double open, double high, double low, double close,
+            long volume, double wap, int count) { }
+    @Override public void currentTime( long time) { }
+    @Override public void fundamentalData( int reqId, String data) { }
+    @Override public void deltaNeutralValidation( int reqId, UnderComp underComp) { }
+    @Override public void tickSnapshotEnd( int reqId) { }
+    @Override public void marketDataType( int reqId, int marketDataType) { }
+    @Override public void commissionReport( CommissionReport commissionReport) { }
+    @Override public void position( String account, Contract contract, int pos, double avgCost) { }
+    @Override public void positionEnd() { }
+    @Override public void accountSummary( int reqId, String account, String tag, String value, String currency) { }
+    @Override public void accountSummaryEnd( int reqId) { }
+}
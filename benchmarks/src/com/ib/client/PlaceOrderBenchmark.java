@@ -0,0 +1,96 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+
+ */
+package com.ib.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Encoding of EClientSocket.placeOrder() for the order types the strategy
+ *  sends, written to a socket that discards the bytes. */
+@State( Scope.Thread)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 5, time = 1)
+@Measurement( iterations = 5, time = 1)
+@Fork( 1)
+public class PlaceOrderBenchmark {
+
+    @Param( { "MKT", "LMT", "REL" })
+    public String orderType;
+
+    private EClientSocket m_client;
+    private Contract m_contract;
+    private Order m_order;
+    private int m_orderId = 1000;
+
+    @Setup
+    public void setup( Blackhole bh) throws IOException {
+        m_client = new EClientSocket( new NullWrapper( bh));
+        m_client.eConnect( new BenchmarkFixtures.NullSocket(), 7);
+
+        m_contract = new Contract();
+        m_contract.m_symbol = "NIFTY";
+        m_contract.m_secType = "OPT";
+        m_contract.m_expiry = "20261029";
+        m_contract.m_strike = 25000;
+        m_contract.m_right = "CALL";
+        m_contract.m_multiplier = "50";
+        m_contract.m_exchange = "NSE";
+        m_contract.m_currency = "INR";
+
+        m_order = new Order();
+        m_order.m_action = "BUY";
+        m_order.m_totalQuantity = 75;
+        m_order.m_orderType = orderType;
+        m_order.m_lmtPrice = "MKT".equals( orderType) ? 0 : 125.35;
+        m_order.m_auxPrice = "REL".equals( orderType) ? 0.05 : 0;
+        m_order.m_orderRef = "singleleg";
+        m_order.m_transmit = true;
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_client.eDisconnect();
+    }
+
+    @Benchmark
+    public void placeOrder() {
+        m_client.placeOrder( m_orderId++, m_contract, m_order);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+
+ */
+package singlelegtrading;
+
+import com.ib.client.TickType;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatch of tickPrice / tickSize callbacks into IBInteraction.myTickStore
+ * for a set of subscribed futures, and reading a consistent snapshot back,
+ * without a TWS connection.
+ *
+ * @author Manish Kumar Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IBInteractionBenchmark {
+
+    private static final int NUMBEROFSUBSCRIPTIONS = 16;
+    private static final int[] PRICEFIELDS = {TickType.BID, TickType.ASK, TickType.LAST};
+
+    private IBInteraction ibInteraction;
+    private int tickCount = 0;
+    private TickStore.TickSnapshot tickSnapshot = new TickStore.TickSnapshot();
+
+    @Setup
+    public void setup() {
+        MyExchangeClass exchangeObj = new MyExchangeClass(TimeZone.getTimeZone("Asia/Calcutta"));
+        // jedis is only used for order ids, which the tick path never touches
+        ibInteraction = new IBInteraction(null, "BENCHMARKORDERID", "127.0.0.1", 7496, 7, new MyUtils(), exchangeObj);
+        for (int requestId = 1; requestId <= NUMBEROFSUBSCRIPTIONS; requestId++) {
+            MyTickObjClass tickObj = new MyTickObjClass(requestId);
+            tickObj.setContractDetFut("NIFTY" + requestId, exchangeObj.getExchangeCurrency(), exchangeObj.getExchangeName(), "20261029");
+            tickObj.setSubscriptionStatus(true);
+            ibInteraction.myTickDetails.put(requestId, tickObj);
+            ibInteraction.myTickStore.activate(requestId);
+            ibInteraction.tickPrice(requestId, TickType.LAST, 24950.05, 1);
+        }
+    } // End of setup()
+
+    @Benchmark
+    public void tickPrice() {
+        tickCount++;
+        ibInteraction.tickPrice(1 + (tickCount % NUMBEROFSUBSCRIPTIONS), PRICEFIELDS[tickCount % PRICEFIELDS.length], 24950.05 + (tickCount & 63) * 0.05, 1);
+    } // End of tickPrice()
+
+    @Benchmark
+    public void tickSize() {
+        tickCount++;
+        ibInteraction.tickSize(1 + (tickCount % NUMBEROFSUBSCRIPTIONS), TickType.VOLUME, 1250000 + tickCount);
+    } // End of tickSize()
+
+    @Benchmark
+    public double readSnapshot() {
+        tickCount++;
+        ibInteraction.myTickStore.readSnapshot(1 + (tickCount % NUMBEROFSUBSCRIPTIONS), tickSnapshot);
+        return (tickSnapshot.lastPrice);
+    } // End of readSnapshot()
+
+}
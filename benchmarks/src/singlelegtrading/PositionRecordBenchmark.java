@@ -0,0 +1,95 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and rewriting position records as they come from Redis, in the
+ * comma separated and the binary format of TradingObjectCodec. scan reads
+ * what the exit and risk monitors read from every open position; persist
+ * is the status update of an exit monitor, from record to record.
+ *
+ * @author Manish Kumar Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionRecordBenchmark {
+
+    private static final String OPENPOSITION = "20261015101500,NIFTY50_75_FUT,1,NIFTY50_75_FUT,1.25,24890.40,12.50,85.25,"
+            + "24950.05/24950.10/24950.10,0.98,entryorderfilled,24950.10,20261029,1021,24850.10,25120.60,24962.35,"
+            + "20261015113000,0.00,-1,-1,-1,0/0";
+
+    @Param({"csv", "binary"})
+    public String format;
+
+    private byte[] record;
+    private int updateCount = 0;
+
+    @Setup
+    public void setup() {
+        record = TradingObjectCodec.encode(new TradingObject(OPENPOSITION), TradingObjectCodec.getFormat(format));
+    } // End of setup()
+
+    @Benchmark
+    public double scan() {
+        TradingObject myTradingObject = TradingObjectCodec.decode(record);
+        double exposure = 0.0;
+        if (myTradingObject.getOrderState().equalsIgnoreCase("entryorderfilled")) {
+            exposure = myTradingObject.getSideAndSize() * myTradingObject.getLastKnownSpreadValue()
+                    - myTradingObject.getEntrySpreadValue() + myTradingObject.getLastUpdatedTimeStampValue();
+        }
+        return (exposure);
+    } // End of scan()
+
+    @Benchmark
+    public byte[] persist() {
+        updateCount++;
+        double price = 24950.05 + (updateCount & 255) * 0.05;
+        TradingObject myTradingObject = TradingObjectCodec.decode(record);
+        myTradingObject.setLowerBreach(price - 100.125);
+        myTradingObject.setUpperBreach(price + 170.375);
+        myTradingObject.setLastKnownSpread(price);
+        myTradingObject.setLastUpdatedTimeStamp("20261015113010");
+        return (TradingObjectCodec.encode(myTradingObject, TradingObjectCodec.getFormat(format)));
+    } // End of persist()
+
+}
@@ -0,0 +1,151 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Status persist of an open position as SingleLegExit does it every few
+ * seconds - decode the record, set breach levels, last known spread and time
+ * stamp, and serialize it again - and formatting of a single two decimal
+ * value. Each is measured through TradingObject with FixedPointEncoder and
+ * through the earlier path, kept below as LegacyTradingObject, which created
+ * a DecimalFormat per value and joined the record by String concatenation.
+ * Run with -prof gc to compare allocation as well.
+ *
+ * @author Manish Kumar Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradingObjectBenchmark {
+
+    private static final String OPENPOSITION = "20261015101500,NIFTY50_75_FUT,1,NIFTY50_75_FUT,1.25,24890.40,12.50,85.25,"
+            + "24950.05/24950.10/24950.10,0.98,entryorderfilled,24950.10,20261029,1021,24850.10,25120.60,24962.35,"
+            + "20261015113000,0.00,-1,-1,-1,0/0";
+
+    private int updateCount = 0;
+    private double lastPrice;
+
+    @Setup
+    public void setup() {
+        lastPrice = 24950.05;
+    } // End of setup()
+
+    private double nextPrice() {
+        updateCount++;
+        lastPrice = 24950.05 + (updateCount & 255) * 0.05;
+        return (lastPrice);
+    }
+
+    @Benchmark
+    public String statusPersistEncoder() {
+        double price = nextPrice();
+        TradingObject myTradingObject = new TradingObject(OPENPOSITION);
+        myTradingObject.setLowerBreach(price - 100.125);
+        myTradingObject.setUpperBreach(price + 170.375);
+        myTradingObject.setLastKnownSpread(price);
+        myTradingObject.setLastUpdatedTimeStamp("20261015113010");
+        return (myTradingObject.getCompleteTradingObjectString());
+    } // End of statusPersistEncoder()
+
+    @Benchmark
+    public String statusPersistLegacy() {
+        double price = nextPrice();
+        LegacyTradingObject myTradingObject = new LegacyTradingObject(OPENPOSITION);
+        myTradingObject.setLowerBreach(price - 100.125);
+        myTradingObject.setUpperBreach(price + 170.375);
+        myTradingObject.setLastKnownSpread(price);
+        myTradingObject.setLastUpdatedTimeStamp("20261015113010");
+        return (myTradingObject.getCompleteTradingObjectString());
+    } // End of statusPersistLegacy()
+
+    @Benchmark
+    public String formatTwoDecimalsEncoder() {
+        return (FixedPointEncoder.getThreadEncoder().formatTwoDecimals(nextPrice() * 1.001));
+    } // End of formatTwoDecimalsEncoder()
+
+    @Benchmark
+    public String formatTwoDecimalsLegacy() {
+        DecimalFormat myDf = new DecimalFormat("0.00");
+        return (myDf.format(nextPrice() * 1.001));
+    } // End of formatTwoDecimalsLegacy()
+
+    // Setters and serialization of TradingObject as they were before FixedPointEncoder
+    private static class LegacyTradingObject {
+
+        private String[] tradeObjectStructure = new String[TradingObject.MAX_NUM_ELEMENTS];
+
+        LegacyTradingObject(String incomingTradeObject) {
+            String[] tempTradeObjectStructure = incomingTradeObject.split(",");
+            for (int index = 0; (index < tempTradeObjectStructure.length) && (index < TradingObject.MAX_NUM_ELEMENTS); index++) {
+                tradeObjectStructure[index] = tempTradeObjectStructure[index];
+            }
+        }
+
+        void setLowerBreach(double newBreach) {
+            DecimalFormat myDf = new DecimalFormat("0.00");
+            tradeObjectStructure[TradingObject.LOWER_BREACH_INDEX] = myDf.format(Double.valueOf(newBreach));
+        }
+
+        void setUpperBreach(double newBreach) {
+            DecimalFormat myDf = new DecimalFormat("0.00");
+            tradeObjectStructure[TradingObject.UPPER_BREACH_INDEX] = myDf.format(Double.valueOf(newBreach));
+        }
+
+        void setLastKnownSpread(double newSpread) {
+            tradeObjectStructure[TradingObject.LAST_KNOWN_SPREAD_INDEX] = Double.toString(newSpread);
+        }
+
+        void setLastUpdatedTimeStamp(String newTimeStamp) {
+            tradeObjectStructure[TradingObject.LAST_UPDATED_TIMESTAMP_INDEX] = newTimeStamp;
+        }
+
+        String getCompleteTradingObjectString() {
+            String returnString = "";
+            for (int index = 0; index < (tradeObjectStructure.length - 1); index++) {
+                returnString = returnString + tradeObjectStructure[index] + ",";
+            }
+            returnString = returnString + tradeObjectStructure[tradeObjectStructure.length - 1];
+            return (returnString);
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Console log of the IB callbacks (bid/ask snapshot ticks and order status
+ * updates) that keeps formatting and terminal output off the EReader thread.
+ * Callbacks copy their arguments into a preallocated event of a ring buffer
+ * and return; a background thread formats and writes the events. When the
+ * ring is full the event is dropped and counted instead of waiting, so a
+ * slow terminal or a full log file never stalls the reader. The writer
+ * parks while the ring is empty and is woken by the next event. Lines keep
+ * the format they had when the callbacks printed them.
+ *
+ * @author Manish Kumar Singh
+ */
+public class CallbackLogger extends Thread {
+
+    // log levels; each level includes the ones below it
+    public static final int LEVELOFF = 0;
+    public static final int LEVELORDERS = 1;
+    public static final int LEVELTICKS = 2;
+
+    private static final int EVENTBIDPRICE = 1;
+    private static final int EVENTASKPRICE = 2;
+    private static final int EVENTBIDSIZE = 3;
+    private static final int EVENTASKSIZE = 4;
+    private static final int EVENTORDERSTATUS = 5;
+
+    private static final int DEFAULTCAPACITY = 8192;
+    // poll interval of flush() only; the writer itself is woken by producers
+    private static final long IDLEPARKNANOS = 1000000L;
+
+    private Thread t;
+    private String threadName;
+    private TimeZone exchangeTimeZone;
+
+    private volatile int logLevel = LEVELTICKS;
+    private volatile int tickSamplingRate = 1;
+    // only the EReader thread logs ticks, so the sampling counter needs no synchronisation
+    private int tickCounter = 0;
+
+    // Define class to hold arguments of one callback; instances are reused by the ring
+    private static class CallbackEvent {
+
+        int eventType;
+        long eventTime;
+        int id;
+        double price;
+        int quantity;
+        int remainingQuantity;
+        double lastPrice;
+        String status;
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final CallbackEvent[] ring;
+    // sequence published in each ring slot; the writer only reads a slot carrying the sequence it expects
+    private final AtomicLongArray published;
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    private final AtomicLong writeSequence = new AtomicLong(0);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+    private long reportedDroppedEvents = 0;
+    // set by the writer before it parks on an empty ring; producers then wake it
+    private volatile boolean writerWaiting = false;
+    private volatile Thread writerThread;
+
+    private final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)), false);
+    private final StringBuilder line = new StringBuilder(256);
+    private final Calendar lineTime;
+
+    CallbackLogger(String name, TimeZone timeZone) {
+        this(name, timeZone, DEFAULTCAPACITY);
+    }
+
+    CallbackLogger(String name, TimeZone timeZone, int ringCapacity) {
+
+        threadName = name;
+        exchangeTimeZone = timeZone;
+        lineTime = Calendar.getInstance(exchangeTimeZone);
+
+        // round up to a power of two so a slot is found by masking the sequence
+        int size = 1;
+        while (size < ringCapacity) {
+            size <<= 1;
+        }
+        capacity = size;
+        mask = size - 1;
+        ring = new CallbackEvent[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int index = 0; index < capacity; index++) {
+            ring[index] = new CallbackEvent();
+            published.set(index, -1);
+        }
+
+    }
+
+    void setLogLevel(int level) {
+        logLevel = level;
+    }
+
+    int getLogLevel() {
+        return (logLevel);
+    }
+
+    // Log one out of every samplingRate bid/ask ticks; 1 logs all of them
+    void setTickSamplingRate(int samplingRate) {
+        tickSamplingRate = Math.max(1, samplingRate);
+    }
+
+    long getDroppedEvents() {
+        return (droppedEvents.get());
+    }
+
+    void logBidAskPrice(int tickerId, boolean bidSide, double price) {
+
+        if ((logLevel >= LEVELTICKS) && (sampleTick())) {
+            long sequence = claim();
+            if (sequence >= 0) {
+                CallbackEvent event = ring[(int) (sequence & mask)];
+                event.eventType = bidSide ? EVENTBIDPRICE : EVENTASKPRICE;
+                event.id = tickerId;
+                event.price = price;
+                publish(sequence, event);
+            }
+        }
+
+    } // End of logBidAskPrice()
+
+    void logBidAskSize(int tickerId, boolean bidSide, int size) {
+
+        if ((logLevel >= LEVELTICKS) && (sampleTick())) {
+            long sequence = claim();
+            if (sequence >= 0) {
+                CallbackEvent event = ring[(int) (sequence & mask)];
+                event.eventType = bidSide ? EVENTBIDSIZE : EVENTASKSIZE;
+                event.id = tickerId;
+                event.quantity = size;
+                publish(sequence, event);
+            }
+        }
+
+    } // End of logBidAskSize()
+
+    void logOrderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, double lastFillPrice) {
+
+        if (logLevel >= LEVELORDERS) {
+            long sequence = claim();
+            if (sequence >= 0) {
+                CallbackEvent event = ring[(int) (sequence & mask)];
+                event.eventType = EVENTORDERSTATUS;
+                event.id = orderId;
+                event.status = status;
+                event.quantity = filled;
+                event.remainingQuantity = remaining;
+                event.price = avgFillPrice;
+                event.lastPrice = lastFillPrice;
+                publish(sequence, event);
+            }
+        }
+
+    } // End of logOrderStatus()
+
+    private boolean sampleTick() {
+
+        int samplingRate = tickSamplingRate;
+        if (samplingRate <= 1) {
+            return (true);
+        }
+        if (++tickCounter >= samplingRate) {
+            tickCounter = 0;
+            return (true);
+        }
+        return (false);
+
+    } // End of sampleTick()
+
+    // Reserves the next ring sequence, or returns -1 (counting a drop) when the writer is a full ring behind
+    private long claim() {
+
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - writeSequence.get() >= capacity) {
+                droppedEvents.incrementAndGet();
+                return (-1);
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+
+        return (sequence);
+
+    } // End of claim()
+
+    private void publish(long sequence, CallbackEvent event) {
+
+        event.eventTime = System.currentTimeMillis();
+        // volatile write, ordered before the read of writerWaiting, so either the writer sees this event
+        // before parking or the producer sees it waiting
+        published.set((int) (sequence & mask), sequence);
+        if (writerWaiting) {
+            LockSupport.unpark(writerThread);
+        }
+
+    } // End of publish()
+
+    // Writes all published events and returns the number written
+    int drain() {
+
+        int written = 0;
+        long sequence = writeSequence.get();
+        while (published.get((int) (sequence & mask)) == sequence) {
+            CallbackEvent event = ring[(int) (sequence & mask)];
+            format(event);
+            event.status = null;
+            out.println(line);
+            sequence++;
+            writeSequence.lazySet(sequence);
+            written++;
+        }
+
+        long dropped = droppedEvents.get();
+        if (dropped != reportedDroppedEvents) {
+            out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "callback log dropped " + (dropped - reportedDroppedEvents) + " events");
+            reportedDroppedEvents = dropped;
+            written++;
+        }
+        if (written > 0) {
+            out.flush();
+        }
+        return (written);
+
+    } // End of drain()
+
+    // Same text as the println of the callback : ticks end with " Time yyyymmddhhmmss", order status starts with "yyyymmdd:hh:mm:ss "
+    private void format(CallbackEvent event) {
+
+        lineTime.setTimeInMillis(event.eventTime);
+        line.setLength(0);
+
+        switch (event.eventType) {
+            case EVENTBIDPRICE:
+                line.append("bidPrice ").append(event.price).append(" tickerId ").append(event.id).append(" Time ");
+                appendTimeStamp(false);
+                break;
+            case EVENTASKPRICE:
+                line.append("askPrice ").append(event.price).append(" tickerId ").append(event.id).append(" Time ");
+                appendTimeStamp(false);
+                break;
+            case EVENTBIDSIZE:
+                line.append("bidSize ").append(event.quantity).append(" tickerId ").append(event.id).append(" Time ");
+                appendTimeStamp(false);
+                break;
+            case EVENTASKSIZE:
+                line.append("askSize ").append(event.quantity).append(" tickerId ").append(event.id).append(" Time ");
+                appendTimeStamp(false);
+                break;
+            case EVENTORDERSTATUS:
+                appendTimeStamp(true);
+                line.append(' ');
+                line.append("OrderId ").append(event.id).append(" status ").append(event.status)
+                        .append(" filled qty ").append(event.quantity).append(" remaining qty ").append(event.remainingQuantity)
+                        .append(" average fill price ").append(event.price)
+                        .append(" last filled price ").append(event.lastPrice);
+                break;
+            default:
+                break;
+        }
+
+    } // End of format()
+
+    // yyyymmddhhmmss, or yyyymmdd:hh:mm:ss with separators
+    private void appendTimeStamp(boolean withSeparators) {
+
+        line.append(lineTime.get(Calendar.YEAR));
+        appendTwoDigits(lineTime.get(Calendar.MONTH) + 1);
+        appendTwoDigits(lineTime.get(Calendar.DAY_OF_MONTH));
+        if (withSeparators) {
+            line.append(':');
+        }
+        appendTwoDigits(lineTime.get(Calendar.HOUR_OF_DAY));
+        if (withSeparators) {
+            line.append(':');
+        }
+        appendTwoDigits(lineTime.get(Calendar.MINUTE));
+        if (withSeparators) {
+            line.append(':');
+        }
+        appendTwoDigits(lineTime.get(Calendar.SECOND));
+
+    } // End of appendTimeStamp()
+
+    private void appendTwoDigits(int value) {
+        if (value < 10) {
+            line.append('0');
+        }
+        line.append(value);
+    }
+
+    // Waits up to timeoutMillis for the writer to catch up with everything logged so far
+    void flush(long timeoutMillis) {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while ((writeSequence.get() < claimSequence.get()) && (System.currentTimeMillis() < deadline)) {
+            LockSupport.parkNanos(IDLEPARKNANOS);
+        }
+
+    } // End of flush()
+
+    @Override
+    public void run() {
+
+        writerThread = Thread.currentThread();
+        while (true) {
+            if (drain() == 0) {
+                writerWaiting = true;
+                // look again after announcing the wait, an event published meanwhile did not see it
+                if (published.get((int) (writeSequence.get() & mask)) != writeSequence.get()) {
+                    LockSupport.park(this);
+                }
+                writerWaiting = false;
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Trading calendar of the exchange, built once from MyExchangeClass session
+ * times and the exchange holiday list. Trading days from CALENDARDAYSBACK
+ * days before to CALENDARDAYSAHEAD days after the build date are numbered in
+ * order, so the trading time before any time stamp is the number of whole
+ * sessions before its day plus the time into its own session. Elapsed trading
+ * minutes / bars and holiday checks are then a hash lookup or a binary
+ * search on plain int arrays, with no calls to Redis or to Calendar
+ * arithmetic. Time stamps are in the yyyyMMddHHmmss format used across the
+ * strategy. Shared by all threads; nothing changes after build.
+ *
+ * @author Manish Kumar Singh
+ */
+public class ExchangeCalendar {
+
+    private static final int CALENDARDAYSBACK = 400;
+    private static final int CALENDARDAYSAHEAD = 400;
+
+    private final TimeZone exchangeTimeZone;
+    private final int sessionOpenSeconds;
+    private final int sessionCloseSeconds;
+    private final int sessionLengthSeconds;
+    private final Set<Integer> exchangeHolidays = new HashSet<Integer>();
+    // every calendar day in range as yyyymmdd, in order
+    private final int[] calendarDates;
+    // for each calendar day, index of the first trading day on or after it
+    private final int[] sessionIndexOnOrAfter;
+    // trading days in range as yyyymmdd, in order
+    private final int[] sessionDates;
+
+    ExchangeCalendar(MyExchangeClass exchangeObj, String holidayList) {
+
+        exchangeTimeZone = exchangeObj.getExchangeTimeZone();
+        sessionOpenSeconds = toSecondsOfDay(exchangeObj.getExchangeStartTimeHHMMSS());
+        sessionCloseSeconds = toSecondsOfDay(exchangeObj.getExchangeCloseTimeHHMMSS());
+        sessionLengthSeconds = sessionCloseSeconds - sessionOpenSeconds;
+
+        if (holidayList != null) {
+            for (String holiday : holidayList.split(",")) {
+                try {
+                    exchangeHolidays.add(Integer.parseInt(holiday.trim()));
+                } catch (NumberFormatException ex) {
+                    // not a yyyymmdd date - ignore
+                }
+            }
+        }
+
+        int numDays = CALENDARDAYSBACK + CALENDARDAYSAHEAD + 1;
+        calendarDates = new int[numDays];
+        sessionIndexOnOrAfter = new int[numDays];
+        int[] tradingDates = new int[numDays];
+        boolean[] isTradingDay = new boolean[numDays];
+        int numSessions = 0;
+
+        Calendar day = Calendar.getInstance(exchangeTimeZone);
+        day.add(Calendar.DATE, -CALENDARDAYSBACK);
+        for (int index = 0; index < numDays; index++) {
+            int yyyymmdd = day.get(Calendar.YEAR) * 10000 + (day.get(Calendar.MONTH) + 1) * 100 + day.get(Calendar.DAY_OF_MONTH);
+            int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+            calendarDates[index] = yyyymmdd;
+            isTradingDay[index] = (dayOfWeek != Calendar.SATURDAY) && (dayOfWeek != Calendar.SUNDAY) && (!exchangeHolidays.contains(yyyymmdd));
+            if (isTradingDay[index]) {
+                tradingDates[numSessions++] = yyyymmdd;
+            }
+            day.add(Calendar.DATE, 1);
+        }
+        sessionDates = Arrays.copyOf(tradingDates, numSessions);
+
+        int nextSessionIndex = numSessions;
+        for (int index = numDays - 1; index >= 0; index--) {
+            if (isTradingDay[index]) {
+                nextSessionIndex--;
+            }
+            sessionIndexOnOrAfter[index] = nextSessionIndex;
+        }
+    }
+
+    private static int toSecondsOfDay(int hhmmss) {
+        return ((hhmmss / 10000) * 3600 + ((hhmmss / 100) % 100) * 60 + hhmmss % 100);
+    }
+
+    boolean isHoliday(Calendar timeToCheck) {
+        int dayOfWeek = timeToCheck.get(Calendar.DAY_OF_WEEK);
+        int yyyymmdd = timeToCheck.get(Calendar.YEAR) * 10000 + (timeToCheck.get(Calendar.MONTH) + 1) * 100 + timeToCheck.get(Calendar.DAY_OF_MONTH);
+        return ((dayOfWeek == Calendar.SATURDAY) || (dayOfWeek == Calendar.SUNDAY) || exchangeHolidays.contains(yyyymmdd));
+    }
+
+    // Seconds of trading from start of the first precomputed session till given time stamp. -1 if time stamp is malformed
+    private long getTradingSecondsBefore(String timeStamp) {
+
+        if ((timeStamp == null) || (timeStamp.length() < 14)) {
+            return (-1);
+        }
+        int yyyymmdd, hhmmss;
+        try {
+            yyyymmdd = Integer.parseInt(timeStamp.substring(0, 8));
+            hhmmss = Integer.parseInt(timeStamp.substring(8, 14));
+        } catch (NumberFormatException ex) {
+            return (-1);
+        }
+        if (yyyymmdd < calendarDates[0]) {
+            return (0);
+        }
+        if (yyyymmdd > calendarDates[calendarDates.length - 1]) {
+            return ((long) sessionDates.length * sessionLengthSeconds);
+        }
+        int dayIndex = Arrays.binarySearch(calendarDates, yyyymmdd);
+        if (dayIndex < 0) {
+            // not a valid date
+            return (-1);
+        }
+        int sessionIndex = sessionIndexOnOrAfter[dayIndex];
+        long tradingSeconds = (long) sessionIndex * sessionLengthSeconds;
+        if ((sessionIndex < sessionDates.length) && (sessionDates[sessionIndex] == yyyymmdd)) {
+            // trading day - add time into the session
+            int secondsIntoSession = toSecondsOfDay(hhmmss) - sessionOpenSeconds;
+            tradingSeconds += Math.min(Math.max(secondsIntoSession, 0), sessionLengthSeconds);
+        }
+        return (tradingSeconds);
+    } // End of getTradingSecondsBefore()
+
+    // Trading minutes from startTime till currentTime, part minutes counted as whole. -1 if either is malformed or start is after current
+    int getElapsedTradingMinutes(String startTime, String currentTime) {
+
+        long startSeconds = getTradingSecondsBefore(startTime);
+        long currentSeconds = getTradingSecondsBefore(currentTime);
+        if ((startSeconds < 0) || (currentSeconds < 0) || (startTime.compareTo(currentTime) > 0)) {
+            return (-1);
+        }
+        return ((int) ((currentSeconds - startSeconds + 59) / 60));
+    }
+
+    // Number of ten minute bars elapsed between two time stamps. -1 if either is malformed or start is after current
+    int calcElapsedBars(String startTime, String currentTime) {
+
+        int elapsedMinutes = getElapsedTradingMinutes(startTime, currentTime);
+        if (elapsedMinutes < 0) {
+            return (-1);
+        }
+        return (elapsedMinutes / 10);
+    }
+
+}
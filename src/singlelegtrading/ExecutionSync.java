@@ -0,0 +1,322 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import com.ib.client.Contract;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Keeps the execution records of the strategy in Redis database 1
+ * (ORDERID2UNIQUEEXECUTIONIDMAPPING and IBORDEREXECUTIONRECORDS) up to date
+ * incrementally. Executions arriving through execDetails, whether live or
+ * requested, are queued by execId and written in small batches containing
+ * only execIds not written before. The time of the latest written execution
+ * is persisted as a cursor, so that syncNow() only asks IB for executions
+ * after it instead of the last thirty days. Total commission of each order,
+ * joined from commission reports by execId, is kept in ORDERCOMMISSIONS.
+ *
+ * @author Manish Kumar Singh
+ */
+public class ExecutionSync extends Thread {
+
+    // executions are written once their commission is known, or after this long without it
+    private static final long COMMISSIONWAITMILLIS = 2000;
+    private static final int SYNCINTERVALSECONDS = 5;
+    // history requested when no cursor has been persisted yet
+    private static final int INITIALSYNCDAYS = 30;
+
+    private Thread t;
+    private String threadName;
+    private boolean debugFlag;
+
+    private JedisPool jedisPool;
+    private IBInteraction ibInteractionClient;
+    private MyExchangeClass myExchangeObj;
+    private TimeZone exchangeTimeZone;
+    private MyUtils myUtils;
+
+    private String mappingKeyName;
+    private String recordsKeyName;
+    private String cursorKeyName;
+    private String orderCommissionsKeyName;
+
+    // Define class to hold one execution waiting to be written
+    private static class MyExecutionRecordClass {
+
+        int orderId;
+        String execId;
+        double filledPrice, averagePrice, commissionAmount;
+        int filledQuantity, remainingQuantity;
+        long executionTime;
+        long receivedTime;
+        boolean commissionReceived;
+        String orderReference;
+        Contract contract;
+    }
+
+    private ConcurrentHashMap<String, MyExecutionRecordClass> pendingExecutions = new ConcurrentHashMap<String, MyExecutionRecordClass>();
+    // execIds written during this session, so executions sent again by IB are not written twice
+    private Set<String> writtenExecIds = new HashSet<String>();
+    // latest total commission of orders, by order Id, waiting to be written
+    private ConcurrentHashMap<Integer, Double> pendingOrderCommissions = new ConcurrentHashMap<Integer, Double>();
+    private long cursorTime = -1;
+
+    ExecutionSync(String name, JedisPool redisConnectionPool, String strategyName, IBInteraction ibIntClient, MyUtils utils, MyExchangeClass exchangeObj, boolean debugIndicator) {
+
+        threadName = name;
+        debugFlag = debugIndicator;
+        jedisPool = redisConnectionPool;
+        ibInteractionClient = ibIntClient;
+        myUtils = utils;
+        myExchangeObj = exchangeObj;
+        exchangeTimeZone = myExchangeObj.getExchangeTimeZone();
+
+        mappingKeyName = strategyName + "ORDERID2UNIQUEEXECUTIONIDMAPPING";
+        recordsKeyName = strategyName + "IBORDEREXECUTIONRECORDS";
+        cursorKeyName = strategyName + "LASTEXECUTIONSYNCTIME";
+        orderCommissionsKeyName = strategyName + "ORDERCOMMISSIONS";
+
+    }
+
+    // Called on the EReader thread after execDetails has updated orderStatus; only queues the execution
+    void onExecution(int orderId, String execId, MyOrderStatusObjClass orderStatus) {
+
+        if ((execId == null) || (pendingExecutions.containsKey(execId))) {
+            return;
+        }
+        MyExecutionRecordClass record = new MyExecutionRecordClass();
+        record.orderId = orderId;
+        record.execId = execId;
+        record.filledPrice = orderStatus.getFilledPrice();
+        record.filledQuantity = orderStatus.getFilledQuantity();
+        record.averagePrice = orderStatus.getAveragePrice();
+        record.remainingQuantity = orderStatus.getRemainingQuantity();
+        record.executionTime = orderStatus.getUpdateTime();
+        record.orderReference = orderStatus.getOrderReference();
+        record.contract = orderStatus.getContractDet();
+        record.receivedTime = System.currentTimeMillis();
+        pendingExecutions.put(execId, record);
+
+    } // End of onExecution()
+
+    // Called on the EReader thread for each commission report joined to its order
+    void onCommission(String execId, double commissionAmount, int orderId, double orderCommissionAmount) {
+
+        MyExecutionRecordClass record = pendingExecutions.get(execId);
+        if (record != null) {
+            record.commissionAmount = commissionAmount;
+            record.commissionReceived = true;
+        }
+        pendingOrderCommissions.put(orderId, orderCommissionAmount);
+
+    } // End of onCommission()
+
+    // Requests executions after the persisted cursor, waits up to maxWaitSeconds for them and writes the new ones
+    void syncNow(int maxWaitSeconds) {
+
+        String startTime = readCursor();
+        int requestId = ibInteractionClient.getNextRequestId();
+        if (startTime == null) {
+            ibInteractionClient.requestExecutionDetailsHistorical(requestId, INITIALSYNCDAYS);
+        } else {
+            ibInteractionClient.requestExecutionDetailsSince(requestId, startTime);
+        }
+        // execDetailsEnd comes after all the executions and their commission reports
+        long deadline = System.currentTimeMillis() + maxWaitSeconds * 1000L;
+        while ((!(ibInteractionClient.requestsCompletionStatus.get(requestId)))
+                && (System.currentTimeMillis() < deadline)) {
+            myUtils.waitForNMiliSeconds(100);
+        }
+        writePendingExecutions(true);
+
+    } // End of syncNow()
+
+    private String readCursor() {
+
+        String startTime = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            jedis.select(1); // move to database 1
+            startTime = jedis.get(cursorKeyName);
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        return (startTime);
+
+    } // End of readCursor()
+
+    // Writes queued executions not written before and moves the cursor; returns number written
+    synchronized int writePendingExecutions(boolean writeAll) {
+
+        long timeNow = System.currentTimeMillis();
+        Map<String, String> newMappings = new HashMap<String, String>();
+        Map<String, String> newRecords = new HashMap<String, String>();
+        Set<String> batchExecIds = new HashSet<String>();
+        long latestExecutionTime = cursorTime;
+
+        Iterator<MyExecutionRecordClass> iterator = pendingExecutions.values().iterator();
+        while (iterator.hasNext()) {
+            MyExecutionRecordClass record = iterator.next();
+            if (writtenExecIds.contains(record.execId)) {
+                iterator.remove();
+                continue;
+            }
+            if (!(writeAll || record.commissionReceived || (timeNow - record.receivedTime >= COMMISSIONWAITMILLIS))) {
+                continue;
+            }
+            newMappings.put(Integer.toString(record.orderId), record.execId);
+            newRecords.put(record.execId, formatRecord(record));
+            batchExecIds.add(record.execId);
+            latestExecutionTime = Math.max(latestExecutionTime, record.executionTime);
+        }
+        Map<Integer, Double> batchOrderCommissions = new HashMap<Integer, Double>(pendingOrderCommissions);
+        Map<String, String> newOrderCommissions = new HashMap<String, String>();
+        for (Map.Entry<Integer, Double> entry : batchOrderCommissions.entrySet()) {
+            newOrderCommissions.put(Integer.toString(entry.getKey()), Double.toString(entry.getValue()));
+        }
+        if (batchExecIds.isEmpty() && newOrderCommissions.isEmpty()) {
+            return (0);
+        }
+
+        String cursor = String.format("%1$tY%1$tm%1$td-%1$tH:%1$tM:%1$tS", toCalendar(latestExecutionTime)); // format is - yyyymmdd-hh:mm:ss
+        boolean written = false;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            jedis.select(1); // move to database 1
+            if (!(batchExecIds.isEmpty())) {
+                jedis.hmset(mappingKeyName, newMappings);
+                jedis.hmset(recordsKeyName, newRecords);
+            }
+            if (!(newOrderCommissions.isEmpty())) {
+                jedis.hmset(orderCommissionsKeyName, newOrderCommissions);
+            }
+            if ((!(batchExecIds.isEmpty())) && (latestExecutionTime > 0)) {
+                jedis.set(cursorKeyName, cursor);
+            }
+            written = true;
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+
+        if (!written) {
+            // keep them queued for the next attempt
+            return (0);
+        }
+        for (String execId : batchExecIds) {
+            pendingExecutions.remove(execId);
+        }
+        for (Map.Entry<Integer, Double> entry : batchOrderCommissions.entrySet()) {
+            // keep it if a newer total arrived meanwhile
+            pendingOrderCommissions.remove(entry.getKey(), entry.getValue());
+        }
+        writtenExecIds.addAll(batchExecIds);
+        cursorTime = latestExecutionTime;
+        if (debugFlag) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Wrote " + batchExecIds.size() + " executions to local DB. Execution sync cursor now " + cursor);
+        }
+        return (batchExecIds.size());
+
+    } // End of writePendingExecutions()
+
+    private Calendar toCalendar(long timeMillis) {
+        Calendar cal = Calendar.getInstance(exchangeTimeZone);
+        cal.setTimeInMillis(timeMillis);
+        return (cal);
+    }
+
+    // Same layout as records written by earlier versions, so reports keep working
+    private String formatRecord(MyExecutionRecordClass record) {
+
+        return (Integer.toString(record.orderId) + ","
+                + Double.toString(record.filledPrice) + ","
+                + Integer.toString(record.filledQuantity) + ","
+                + Double.toString(record.averagePrice) + ","
+                + Integer.toString(record.remainingQuantity) + ","
+                + Double.toString(record.commissionAmount) + ","
+                + myUtils.convertTime(record.executionTime) + ","
+                + record.orderReference + ","
+                + record.contract.m_symbol + ","
+                + record.contract.m_secType + ","
+                + record.contract.m_expiry + ","
+                + record.contract.m_right + ","
+                + Double.toString(record.contract.m_strike) + ","
+                + record.contract.m_secId + ","
+                + record.contract.m_secIdType + ","
+                + record.contract.m_exchange + ","
+                + record.contract.m_currency + ","
+                + record.contract.m_primaryExch + ","
+                + record.contract.m_localSymbol);
+
+    } // End of formatRecord()
+
+    @Override
+    public void run() {
+
+        while (myUtils.marketIsOpen(myExchangeObj.getExchangeCloseTimeHHMM(), myExchangeObj.getExchangeTimeZone(), false)) {
+            writePendingExecutions(false);
+            // Wait for few seconds before writing again
+            myUtils.waitForNSeconds(SYNCINTERVALSECONDS);
+        }
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+}
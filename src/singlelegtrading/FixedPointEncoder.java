@@ -0,0 +1,197 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Writes numbers and comma separated records into one reusable character
+ * buffer. Two decimal numbers come out byte for byte as DecimalFormat("0.00")
+ * writes them in the default locale, including half even rounding of the
+ * exact binary value and "-0.00" for small negatives, without creating a
+ * DecimalFormat or any intermediate string. Values too large for the fast
+ * path, NaN and infinities are handed to a DecimalFormat held by the encoder.
+ * Fixed point values of binary position records are written back with the
+ * exact number of decimals they were read with. The buffer can be read as a
+ * CharSequence without making a string of it.
+ * An encoder is confined to one thread; getThreadEncoder() returns the one of
+ * the calling thread.
+ *
+ * @author Manish Kumar Singh
+ */
+public class FixedPointEncoder implements CharSequence {
+
+    // |value| * 100 stays below 1e9, where the error of the multiplication is far below TIEMARGIN
+    private static final double FASTPATHLIMIT = 1.0e7;
+    // fractions this close to half a cent are rounded from the exact decimal value of the double
+    private static final double TIEMARGIN = 1.0e-6;
+    // powers of ten for the decimals of fixed point values
+    private static final long[] POWERSOFTEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L,
+        10000000L, 100000000L, 1000000000L};
+
+    private static final ThreadLocal<FixedPointEncoder> THREADENCODER = new ThreadLocal<FixedPointEncoder>() {
+        @Override
+        protected FixedPointEncoder initialValue() {
+            return (new FixedPointEncoder());
+        }
+    };
+
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final DecimalFormat twoDecimalsFormat = new DecimalFormat("0.00");
+    private final char decimalSeparator;
+    private final char minusSign;
+    // locales with digits other than 0-9 always go through DecimalFormat
+    private final boolean asciiDigits;
+
+    FixedPointEncoder() {
+        DecimalFormatSymbols symbols = twoDecimalsFormat.getDecimalFormatSymbols();
+        decimalSeparator = symbols.getDecimalSeparator();
+        minusSign = symbols.getMinusSign();
+        asciiDigits = (symbols.getZeroDigit() == '0');
+    }
+
+    static FixedPointEncoder getThreadEncoder() {
+        return (THREADENCODER.get());
+    }
+
+    // Empties the buffer. Capacity is kept for the next record
+    FixedPointEncoder reset() {
+        buffer.setLength(0);
+        return (this);
+    }
+
+    FixedPointEncoder append(String text) {
+        buffer.append(text);
+        return (this);
+    }
+
+    FixedPointEncoder append(char character) {
+        buffer.append(character);
+        return (this);
+    }
+
+    // Same text as Double.toString()
+    FixedPointEncoder appendPlain(double value) {
+        buffer.append(value);
+        return (this);
+    }
+
+    // Same text as DecimalFormat("0.00").format(value)
+    FixedPointEncoder appendTwoDecimals(double value) {
+
+        double absoluteValue = Math.abs(value);
+        if (!(absoluteValue < FASTPATHLIMIT) || (!asciiDigits)) {
+            // large, NaN or infinite
+            buffer.append(twoDecimalsFormat.format(value));
+            return (this);
+        }
+
+        double scaledValue = absoluteValue * 100;
+        long cents = (long) scaledValue;
+        double fraction = scaledValue - cents;
+        if (Math.abs(fraction - 0.5) < TIEMARGIN) {
+            // rare - settle on the exact value as DecimalFormat does
+            cents = new BigDecimal(absoluteValue).setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+        } else if (fraction > 0.5) {
+            cents++;
+        }
+
+        // DecimalFormat keeps the sign of negative values rounding to zero, and of -0.0
+        if ((value < 0) || ((value == 0) && (1 / value < 0))) {
+            buffer.append(minusSign);
+        }
+        buffer.append(cents / 100);
+        int fractionDigits = (int) (cents % 100);
+        buffer.append(decimalSeparator);
+        buffer.append((char) ('0' + fractionDigits / 10));
+        buffer.append((char) ('0' + fractionDigits % 10));
+
+        return (this);
+    } // End of appendTwoDecimals()
+
+    // Formats one value on its own, reusing the buffer
+    String formatTwoDecimals(double value) {
+        reset();
+        appendTwoDecimals(value);
+        return (buffer.toString());
+    }
+
+    // Text of unscaledValue / 10^scale with scale decimals, e.g. 12.30 for 1230 and 2. Always '.' as separator
+    FixedPointEncoder appendFixedPoint(long unscaledValue, int scale) {
+
+        if (scale == 0) {
+            buffer.append(unscaledValue);
+            return (this);
+        }
+        if (unscaledValue < 0) {
+            buffer.append('-');
+        }
+        long absoluteValue = Math.abs(unscaledValue);
+        buffer.append(absoluteValue / POWERSOFTEN[scale]);
+        buffer.append('.');
+        int fractionStart = buffer.length();
+        buffer.append(absoluteValue % POWERSOFTEN[scale]);
+        while (buffer.length() - fractionStart < scale) {
+            buffer.insert(fractionStart, '0');
+        }
+
+        return (this);
+    } // End of appendFixedPoint()
+
+    String formatFixedPoint(long unscaledValue, int scale) {
+        reset();
+        appendFixedPoint(unscaledValue, scale);
+        return (buffer.toString());
+    }
+
+    // Value of a fixed point text written by appendFixedPoint(). Equal to Double.parseDouble() of the text
+    static double fixedPointValue(long unscaledValue, int scale) {
+        return (unscaledValue / (double) POWERSOFTEN[scale]);
+    }
+
+    @Override
+    public int length() {
+        return (buffer.length());
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (buffer.charAt(index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return (buffer.subSequence(start, end));
+    }
+
+    @Override
+    public String toString() {
+        return (buffer.toString());
+    }
+
+}
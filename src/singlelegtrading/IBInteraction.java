@@ -27,7 +27,12 @@ package singlelegtrading;
 import com.ib.client.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.*;
 import redis.clients.jedis.*;
 
@@ -39,6 +44,10 @@ public class IBInteraction implements EWrapper {
     // variables / constants declarations
     // variable to open socket connection 
     public EClientSocket ibClient = new EClientSocket(this);
+    // paces and prioritises requests to TWS; started by SingleLegTrading
+    public OutboundScheduler outboundScheduler;
+    // re-prices relative orders till they fill; limits may be changed by SingleLegTrading
+    public OrderChaser orderChaser;
 
     private String myIPAddress;
     private int myPortNum;
@@ -46,6 +55,8 @@ public class IBInteraction implements EWrapper {
 
     private JedisPool jedisPool;
     private String orderIDField = "INRIBPAPERORDERID";
+    // order Ids reserved from orderIDField in blocks; block size may be changed by SingleLegTrading
+    public OrderIdAllocator orderIdAllocator;
 
     // variable for uitlities class
     private MyUtils myUtils;
@@ -54,8 +65,31 @@ public class IBInteraction implements EWrapper {
 
     public ConcurrentHashMap<Integer, Boolean> requestsCompletionStatus = new ConcurrentHashMap<>();    
     public ConcurrentHashMap<Integer, MyTickObjClass> myTickDetails = new ConcurrentHashMap<Integer, MyTickObjClass>();
+    // latest prices of streaming subscriptions in myTickDetails, by request Id
+    public TickStore myTickStore = new TickStore(IBTICKARRAYINDEXOFFSET);
+    // listeners of each streaming request Id; arrays are replaced, never modified, so ticks read them without locking
+    private AtomicReferenceArray<TickListener[]> myTickListeners = new AtomicReferenceArray<TickListener[]>(IBTICKARRAYINDEXOFFSET);
+    // contract key (see getContractKey) to requestId of its active subscription in myTickDetails
+    public ConcurrentHashMap<String, Integer> mySubscriptionIndex = new ConcurrentHashMap<String, Integer>();
+    // shares market data subscriptions between slots; set up by SingleLegTrading
+    public MarketDataSubscriptionManager mktDataSubscriptions;
     public ConcurrentHashMap<Integer, MyBidAskPriceObjClass> myBidAskPriceDetails = new ConcurrentHashMap<Integer, MyBidAskPriceObjClass>();
-    public ConcurrentHashMap<Integer, MyOrderStatusObjClass> myOrderStatusDetails = new ConcurrentHashMap<Integer, MyOrderStatusObjClass>();
+    // working orders plus a bounded archive of completed ones; limits may be changed by SingleLegTrading
+    public OrderStatusStore myOrderStatusDetails = new OrderStatusStore();
+    // completion of orders placed by this client, keyed by order Id; removed once completed
+    private ConcurrentHashMap<Integer, MyOrderCompletionClass> myOrderCompletions = new ConcurrentHashMap<Integer, MyOrderCompletionClass>();
+    // order Id of each execution whose commission report is still awaited
+    private ConcurrentHashMap<String, Integer> myExecutionOrderIds = new ConcurrentHashMap<String, Integer>();
+    // writes executions to the local DB as they arrive; set up by SingleLegTrading
+    public ExecutionSync executionSync;
+    // pre-trade checks against exposure held in memory; set up by SingleLegTrading
+    public RiskEngine riskEngine;
+    // snapshot of the strategy configuration hash, refreshed on change; set up by SingleLegTrading
+    public StrategyConfig strategyConfig;
+    // trading days and sessions of the exchange, built once; set up by SingleLegTrading
+    public ExchangeCalendar exchangeCalendar;
+    // console log of tick and order status callbacks, written by its own thread; started by SingleLegTrading
+    public CallbackLogger callbackLog;
 
     private int debugLevel = 0;
 
@@ -66,6 +100,18 @@ public class IBInteraction implements EWrapper {
     private double defaultOffsetForRelativeOrder = 0.05;
 
     public static final int IBTICKARRAYINDEXOFFSET = 1947;
+    // while awaiting an order, open orders are requested again after this many seconds without a final status
+    private static final int ORDERSTATUSREFRESHSECONDS = 30;
+
+    // Define class to complete when an order reaches a final status : filled, cancelled or inactive
+    private static class MyOrderCompletionClass extends CompletableFuture<MyOrderStatusObjClass> {
+
+        int orderQuantity;
+
+        MyOrderCompletionClass(int quantity) {
+            orderQuantity = quantity;
+        }
+    }
 
     // Constructor to inititalize variables
     IBInteraction(JedisPool jedisConnectionPool, String orderIDIncrField, String ibAPIIPAddress, int ibAPIPortNumber, int ibAPIClientId, MyUtils utils, MyExchangeClass exchangeObj) {
@@ -77,6 +123,10 @@ public class IBInteraction implements EWrapper {
         myUtils = utils;
         myExchangeObj = exchangeObj;
         nextRequestId = 1;
+        orderIdAllocator = new OrderIdAllocator(jedisPool, orderIDField, myUtils, OrderIdAllocator.DEFAULTBLOCKSIZE);
+        callbackLog = new CallbackLogger("IBCallbackLoggingThread", myExchangeObj.getExchangeTimeZone());
+        outboundScheduler = new OutboundScheduler("IBOutboundRequestsThread", ibClient, myExchangeObj.getExchangeTimeZone());
+        orderChaser = new OrderChaser(this, myExchangeObj.getExchangeTimeZone());
 
         TimeZone.setDefault(myExchangeObj.getExchangeTimeZone());
 
@@ -113,8 +163,8 @@ public class IBInteraction implements EWrapper {
         }
 
         if (initialValidOrderID > 0) {
-            // Set the orderID in IB Client as next valid Order ID and keep incrementing it for all subsequent order
-            myUtils.setNextOrderID(jedisPool, orderIDField, initialValidOrderID, true);
+            // Make sure order Ids handed out from now on are at least the next valid Order ID given by IB
+            orderIdAllocator.reconcile(initialValidOrderID, true);
             return (true);
         } else {
             return (false);
@@ -156,13 +206,13 @@ public class IBInteraction implements EWrapper {
         myBidAskPriceDetails.put(requestId - IBTICKARRAYINDEXOFFSET, new MyBidAskPriceObjClass(requestId - IBTICKARRAYINDEXOFFSET));
         myBidAskPriceDetails.get(requestId - IBTICKARRAYINDEXOFFSET).setRequestId(requestId - IBTICKARRAYINDEXOFFSET);
 
-        ibClient.reqMktData(requestId, myContract, "", true);
+        outboundScheduler.reqMktData(requestId, myContract, true);
 
     } // End of getBidAskPriceForStk    
 
     void stopGettingBidAskPriceForStk(int requestID) {
 
-        ibClient.cancelMktData(requestID);
+        outboundScheduler.cancelMktData(requestID);
 
     } // End of stopGettingBidAskPriceForStk() 
     
@@ -170,44 +220,24 @@ public class IBInteraction implements EWrapper {
         // check if existing subscription exists for given symbol
         // if exists then return true
         // if subscription does not exist then return false
-        boolean subscriptionStatus = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("STK"))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionStatus = true;
-            }
-        }
-        return (subscriptionStatus);
+        return (mySubscriptionIndex.containsKey(getContractKey("STK", symbol, null, null, 0.0)));
     } // End of checkStkMktDataSubscription  
     
     int requestStkMktDataSubscription(int requestId, String symbol) {
 
-        int returnRequestId = 0;
         // check if existing subscription exists for given symbol
         // if exists then return corresponding requestId.
-        // if subscription does not exist then request one and return true
-        boolean subscriptionExists = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("STK"))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionExists = true;
-                returnRequestId = key;
-            }
+        // if subscription does not exist then request one and return its requestId
+        Integer existingRequestId = mySubscriptionIndex.get(getContractKey("STK", symbol, null, null, 0.0));
+        if (existingRequestId != null) {
+            return (existingRequestId);
         }
 
-        if (!(subscriptionExists)) {
-            // subscription does not exist so request one
-            myTickDetails.put(requestId, new MyTickObjClass(requestId));
-            myTickDetails.get(requestId).setRequestId(requestId);
-            //(String symbol, String currency, String securityType, String exchange, String expiry)            
-            myTickDetails.get(requestId).setContractDetStk(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName());
-            myTickDetails.get(requestId).setSubscriptionStatus(true);
-            ibClient.reqMktData(requestId, myTickDetails.get(requestId).getContractDet(), "", false);
-            returnRequestId = requestId;
-        }
-        return (returnRequestId);
+        // subscription does not exist so request one
+        MyTickObjClass tickObj = new MyTickObjClass(requestId);
+        tickObj.setRequestId(requestId);
+        tickObj.setContractDetStk(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName());
+        return (subscribeMktData(requestId, tickObj));
     } // End of requestStkMktDataSubscription    
 
     void getBidAskPriceForFut(int requestId, String symbol, String expiry) {
@@ -222,13 +252,13 @@ public class IBInteraction implements EWrapper {
         myBidAskPriceDetails.put(requestId - IBTICKARRAYINDEXOFFSET, new MyBidAskPriceObjClass(requestId - IBTICKARRAYINDEXOFFSET));
         myBidAskPriceDetails.get(requestId - IBTICKARRAYINDEXOFFSET).setRequestId(requestId - IBTICKARRAYINDEXOFFSET);
 
-        ibClient.reqMktData(requestId, myContract, "", true);
+        outboundScheduler.reqMktData(requestId, myContract, true);
 
     } // End of getBidAskPriceForFut    
 
     void stopGettingBidAskPriceForFut(int requestID) {
 
-        ibClient.cancelMktData(requestID);
+        outboundScheduler.cancelMktData(requestID);
 
     } // End of stopGettingBidAskPriceForFut() 
     
@@ -237,46 +267,24 @@ public class IBInteraction implements EWrapper {
         // check if existing subscription exists for given symbol
         // if exists then return true
         // if subscription does not exist then return false
-        boolean subscriptionStatus = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("FUT"))
-                    && (myTickDetails.get(key).getContractDet().m_expiry.equals(expiry))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionStatus = true;
-            }
-        }
-        return (subscriptionStatus);
+        return (mySubscriptionIndex.containsKey(getContractKey("FUT", symbol, expiry, null, 0.0)));
     } // End of checkFutMktDataSubscription    
     
     int requestFutMktDataSubscription(int requestId, String symbol, String expiry) {
 
-        int returnRequestId = 0;
         // check if existing subscription exists for given symbol
         // if exists then return request ID of subscription.
         // if subscription does not exist then request one and return request ID.
-        boolean subscriptionExists = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("FUT"))
-                    && (myTickDetails.get(key).getContractDet().m_expiry.equals(expiry))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionExists = true;
-                returnRequestId = key;
-            }
+        Integer existingRequestId = mySubscriptionIndex.get(getContractKey("FUT", symbol, expiry, null, 0.0));
+        if (existingRequestId != null) {
+            return (existingRequestId);
         }
 
-        if (!(subscriptionExists)) {
-            // subscription does not exist so request one
-            myTickDetails.put(requestId, new MyTickObjClass(requestId));
-            myTickDetails.get(requestId).setRequestId(requestId);
-            //(String symbol, String currency, String securityType, String exchange, String expiry)            
-            myTickDetails.get(requestId).setContractDetFut(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName(), expiry);
-            myTickDetails.get(requestId).setSubscriptionStatus(true);
-            ibClient.reqMktData(requestId, myTickDetails.get(requestId).getContractDet(), "", false);
-            returnRequestId = requestId;
-        }
-        return (returnRequestId);
+        // subscription does not exist so request one
+        MyTickObjClass tickObj = new MyTickObjClass(requestId);
+        tickObj.setRequestId(requestId);
+        tickObj.setContractDetFut(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName(), expiry);
+        return (subscribeMktData(requestId, tickObj));
     } // End of requestFutMktDataSubscription    
 
     void getBidAskPriceForCallOption(int requestId, String symbol, String expiry, double strikePrice) {
@@ -306,13 +314,13 @@ public class IBInteraction implements EWrapper {
         myBidAskPriceDetails.put(requestId - IBTICKARRAYINDEXOFFSET, new MyBidAskPriceObjClass(requestId - IBTICKARRAYINDEXOFFSET));
         myBidAskPriceDetails.get(requestId - IBTICKARRAYINDEXOFFSET).setRequestId(requestId - IBTICKARRAYINDEXOFFSET);
 
-        ibClient.reqMktData(requestId, myContract, "", true);
+        outboundScheduler.reqMktData(requestId, myContract, true);
 
     } // End of getBidAskPriceForOpt    
 
     void stopGettingBidAskPriceForOpt(int requestID) {
 
-        ibClient.cancelMktData(requestID);
+        outboundScheduler.cancelMktData(requestID);
 
     } // End of stopGettingBidAskPriceForOpt 
 
@@ -339,80 +347,120 @@ public class IBInteraction implements EWrapper {
         // check if existing subscription exists for given symbol
         // if exists then return true
         // if subscription does not exist then return false
-        String rights_01 = "C";
-        String rights_02 = "CALL";        
-        if (rightType.equalsIgnoreCase("C") || rightType.equalsIgnoreCase("CALL")) {
-            rights_01 = "C";
-            rights_02 = "CALL";                    
-        } else if (rightType.equalsIgnoreCase("P") || rightType.equalsIgnoreCase("PUT")) {
-            rights_01 = "P";
-            rights_02 = "PUT";            
-        }
-        boolean subscriptionStatus = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("OPT"))
-                    && (myTickDetails.get(key).getContractDet().m_right.equals(rights_01) || myTickDetails.get(key).getContractDet().m_right.equals(rights_02))
-                    && (myTickDetails.get(key).getContractDet().m_strike == strikePrice )                    
-                    && (myTickDetails.get(key).getContractDet().m_expiry.equals(expiry))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionStatus = true;
-            }
-        }
-        return (subscriptionStatus);
+        return (mySubscriptionIndex.containsKey(getContractKey("OPT", symbol, expiry, rightType, strikePrice)));
     } // End of checkFutMktDataSubscription    
     
     int requestOptMktDataSubscription(int requestId, String symbol, String expiry, String rightType, double strikePrice) {
 
-        int returnRequestId = 0;
         // check if existing subscription exists for given symbol
         // if exists then return request ID of subscription.
         // if subscription does not exist then request one and return request ID.
-        String rights_01 = "C";
-        String rights_02 = "CALL";        
-        if (rightType.equalsIgnoreCase("C") || rightType.equalsIgnoreCase("CALL")) {
-            rights_01 = "C";
-            rights_02 = "CALL";                    
-        } else if (rightType.equalsIgnoreCase("P") || rightType.equalsIgnoreCase("PUT")) {
-            rights_01 = "P";
-            rights_02 = "PUT";            
-        }
-        
-        boolean subscriptionExists = false;
-        for (int key : myTickDetails.keySet()) {
-            if ((myTickDetails.get(key).getContractDet().m_symbol.equalsIgnoreCase(symbol))
-                    && (myTickDetails.get(key).getContractDet().m_secType.equals("OPT"))
-                    && (myTickDetails.get(key).getContractDet().m_right.equals(rights_01) || myTickDetails.get(key).getContractDet().m_right.equals(rights_02))
-                    && (myTickDetails.get(key).getContractDet().m_strike == strikePrice )                    
-                    && (myTickDetails.get(key).getContractDet().m_expiry.equals(expiry))
-                    && (myTickDetails.get(key).getSubscriptionStatus())) {
-                subscriptionExists = true;
-                returnRequestId = key;
-            }
+        Integer existingRequestId = mySubscriptionIndex.get(getContractKey("OPT", symbol, expiry, rightType, strikePrice));
+        if (existingRequestId != null) {
+            return (existingRequestId);
         }
 
-        if (!(subscriptionExists)) {
-            // subscription does not exist so request one
-            myTickDetails.put(requestId, new MyTickObjClass(requestId));
-            myTickDetails.get(requestId).setRequestId(requestId);
-            //(String symbol, String currency, String securityType, String exchange, String expiry)            
-            myTickDetails.get(requestId).setContractDetOpt(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName(), expiry, rightType, strikePrice);
-            myTickDetails.get(requestId).setSubscriptionStatus(true);
-            ibClient.reqMktData(requestId, myTickDetails.get(requestId).getContractDet(), "", false);
-            returnRequestId = requestId;
-        }
-        return (returnRequestId);
+        // subscription does not exist so request one
+        MyTickObjClass tickObj = new MyTickObjClass(requestId);
+        tickObj.setRequestId(requestId);
+        tickObj.setContractDetOpt(symbol, myExchangeObj.getExchangeCurrency(), myExchangeObj.getExchangeName(), expiry, rightType, strikePrice);
+        return (subscribeMktData(requestId, tickObj));
     } // End of requestFutMktDataSubscription    
     
+    private int subscribeMktData(int requestId, MyTickObjClass tickObj) {
+
+        // requestId may still hold an earlier contract of the same slot; drop that one from the index
+        MyTickObjClass previousTickObj = myTickDetails.get(requestId);
+        if (previousTickObj != null) {
+            mySubscriptionIndex.remove(getContractKey(previousTickObj.getContractDet()), requestId);
+        }
+        tickObj.setSubscriptionStatus(true);
+        myTickDetails.put(requestId, tickObj);
+        myTickStore.activate(requestId);
+        mySubscriptionIndex.put(getContractKey(tickObj.getContractDet()), requestId);
+        outboundScheduler.reqMktData(requestId, tickObj.getContractDet(), false);
+
+        return (requestId);
+    } // End of subscribeMktData()
+
     void cancelMktDataSubscription(int requestId) {
 
-        ibClient.cancelMktData(requestId);
-        if (myTickDetails.containsKey(requestId)) {
-            myTickDetails.get(requestId).setSubscriptionStatus(false);
+        outboundScheduler.cancelMktData(requestId);
+        myTickStore.deactivate(requestId);
+        MyTickObjClass tickObj = myTickDetails.get(requestId);
+        if (tickObj != null) {
+            tickObj.setSubscriptionStatus(false);
+            mySubscriptionIndex.remove(getContractKey(tickObj.getContractDet()), requestId);
         }
 
     } // End of onCancelMktData()
 
+    synchronized void addTickListener(int requestId, TickListener listener) {
+
+        if (!(myTickStore.holds(requestId))) {
+            return;
+        }
+        TickListener[] current = myTickListeners.get(requestId);
+        if (current == null) {
+            myTickListeners.set(requestId, new TickListener[]{listener});
+        } else if (!(Arrays.asList(current).contains(listener))) {
+            TickListener[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+            myTickListeners.set(requestId, updated);
+        }
+
+    } // End of addTickListener()
+
+    synchronized void removeTickListener(int requestId, TickListener listener) {
+
+        if (!(myTickStore.holds(requestId))) {
+            return;
+        }
+        TickListener[] current = myTickListeners.get(requestId);
+        if (current == null) {
+            return;
+        }
+        List<TickListener> updated = new ArrayList<TickListener>(Arrays.asList(current));
+        updated.remove(listener);
+        myTickListeners.set(requestId, updated.isEmpty() ? null : updated.toArray(new TickListener[updated.size()]));
+
+    } // End of removeTickListener()
+
+    void resubscribeMktData(int requestId) {
+
+        MyTickObjClass tickObj = myTickDetails.get(requestId);
+        if ((tickObj == null) || (!(tickObj.getSubscriptionStatus()))) {
+            return;
+        }
+        // queued back to back, so cancel and re-request go out to TWS in sequence
+        outboundScheduler.cancelMktData(requestId);
+        outboundScheduler.reqMktData(requestId, tickObj.getContractDet(), false);
+
+    } // End of resubscribeMktData()
+
+    // Canonical key of a contract for subscription lookups : secType|SYMBOL|expiry|right|strike.
+    // Symbol is upper cased and option right reduced to C or P, matching the comparisons lookups used to make.
+    static String getContractKey(String secType, String symbol, String expiry, String rightType, double strikePrice) {
+
+        StringBuilder key = new StringBuilder(48);
+        key.append(secType).append('|').append(symbol.toUpperCase()).append('|');
+        if (!(secType.equals("OPT"))) {
+            return (key.append(secType.equals("STK") ? "" : expiry).toString());
+        }
+        String right = rightType.toUpperCase();
+        if (right.equals("CALL")) {
+            right = "C";
+        } else if (right.equals("PUT")) {
+            right = "P";
+        }
+        key.append(expiry).append('|').append(right).append('|').append(strikePrice);
+        return (key.toString());
+    } // End of getContractKey()
+
+    static String getContractKey(Contract contract) {
+        return (getContractKey(contract.m_secType, contract.m_symbol, contract.m_expiry, contract.m_right, contract.m_strike));
+    } // End of getContractKey()
+
     void requestExecutionDetailsHistorical(int requestId, int numPrevDays) {
 
         Calendar startingTimeStamp = Calendar.getInstance(myExchangeObj.getExchangeTimeZone());
@@ -420,6 +468,13 @@ public class IBInteraction implements EWrapper {
 
         String startTime = String.format("%1$tY%1$tm%1$td-00:00:00", startingTimeStamp); // format is - yyyymmdd-hh:mm:ss
 
+        requestExecutionDetailsSince(requestId, startTime);
+
+    } // end of requestExecutionDetailsHistorical
+
+    // startTime format is - yyyymmdd-hh:mm:ss
+    void requestExecutionDetailsSince(int requestId, String startTime) {
+
         ExecutionFilter myFilter = new ExecutionFilter();
         myFilter.m_exchange = myExchangeObj.getExchangeName();
         myFilter.m_time = startTime;
@@ -430,9 +485,9 @@ public class IBInteraction implements EWrapper {
         }
 
         requestsCompletionStatus.put(requestId, Boolean.FALSE);
-        ibClient.reqExecutions(requestId, myFilter);
+        outboundScheduler.reqExecutions(requestId, myFilter);
 
-    } // end of requestExecutionDetailsHistorical
+    } // end of requestExecutionDetailsSince
 
     void requestExecutionDetailsHistorical(int requestId, int numPrevDays, String symbol) {
 
@@ -452,9 +507,78 @@ public class IBInteraction implements EWrapper {
         }
 
         requestsCompletionStatus.put(requestId, Boolean.FALSE);        
-        ibClient.reqExecutions(requestId, myFilter);
+        outboundScheduler.reqExecutions(requestId, myFilter);
 
     } // end of requestExecutionDetailsHistorical
+
+    private void trackOrderCompletion(int orderId, int quantity) {
+        myOrderCompletions.put(orderId, new MyOrderCompletionClass(quantity));
+    } // End of trackOrderCompletion()
+
+    // Returns a future completed with the order status once given order is filled, cancelled or inactive.
+    // Only orders placed in this session are tracked; for any other order the future reflects the status known
+    // now and is not completed later, so callers waiting on it should ask again.
+    public CompletableFuture<MyOrderStatusObjClass> getOrderCompletion(int orderId) {
+
+        MyOrderCompletionClass completion = myOrderCompletions.get(orderId);
+        if (completion != null) {
+            checkOrderCompletion(orderId);
+            return (completion);
+        }
+        // not placed in this session or already completed
+        CompletableFuture<MyOrderStatusObjClass> untrackedCompletion = new CompletableFuture<MyOrderStatusObjClass>();
+        MyOrderStatusObjClass orderStatus = myOrderStatusDetails.get(orderId);
+        if ((orderStatus != null) && OrderStatusStore.isFinalStatus(orderStatus.getIBOrderStatus())) {
+            untrackedCompletion.complete(orderStatus);
+        }
+        return (untrackedCompletion);
+
+    } // End of getOrderCompletion()
+
+    // Waits up to maxWaitSeconds for given order to reach a final status. Returns its status, or null on timeout
+    public MyOrderStatusObjClass awaitOrderCompletion(int orderId, int maxWaitSeconds, boolean debugFlag) {
+
+        CompletableFuture<MyOrderStatusObjClass> completion = getOrderCompletion(orderId);
+        long deadline = System.currentTimeMillis() + maxWaitSeconds * 1000L;
+        long waitMillis = deadline - System.currentTimeMillis();
+        while (waitMillis > 0) {
+            try {
+                return (completion.get(Math.min(waitMillis, ORDERSTATUSREFRESHSECONDS * 1000L), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException ex) {
+                if (debugFlag) {
+                    System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Waiting for Order to be filled for Order id " + orderId + ". Requesting open orders.");
+                }
+                // an order not tracked here is only seen as complete by asking again
+                completion = getOrderCompletion(orderId);
+                // in case a status update was missed
+                outboundScheduler.reqOpenOrders();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return (null);
+            } catch (ExecutionException ex) {
+                Logger.getLogger(IBInteraction.class.getName()).log(Level.SEVERE, null, ex);
+                return (null);
+            }
+            waitMillis = deadline - System.currentTimeMillis();
+        }
+        return (null);
+
+    } // End of awaitOrderCompletion()
+
+    private void checkOrderCompletion(int orderId) {
+
+        MyOrderCompletionClass completion = myOrderCompletions.get(orderId);
+        MyOrderStatusObjClass orderStatus = myOrderStatusDetails.get(orderId);
+        if ((completion == null) || (orderStatus == null)) {
+            return;
+        }
+        if (OrderStatusStore.isFinalStatus(orderStatus.getIBOrderStatus())
+                || ((completion.orderQuantity > 0) && (orderStatus.getFilledQuantity() >= completion.orderQuantity))) {
+            myOrderCompletions.remove(orderId, completion);
+            completion.complete(orderStatus);
+        }
+
+    } // End of checkOrderCompletion()
     
     public int placeStkOrderAtRelative(String symbol, int qty, String mktAction, String referenceComments, double limitPrice, double offsetAmount, boolean debugFlag) {
 
@@ -479,8 +603,10 @@ public class IBInteraction implements EWrapper {
         myOrder.m_orderRef = referenceComments; // This is what gets displayed on TWS screen
         myOrder.m_transmit = true; // STP order i.e. transmit immediately
         synchronized (lockOrderPlacement) {
-            ibOrderId = myUtils.getNextOrderID(jedisPool, orderIDField, debugFlag);
-            ibClient.placeOrder(ibOrderId, myContract, myOrder);
+            ibOrderId = orderIdAllocator.nextOrderId(debugFlag);
+            trackOrderCompletion(ibOrderId, qty);
+            orderChaser.register(ibOrderId, myContract, myOrder);
+            outboundScheduler.placeOrder(ibOrderId, myContract, myOrder);
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed Relative Order for " + symbol + " for " + mktAction + " type STK " + " order ID " + ibOrderId + " limit " + limitPrice + " offsetAmt " + offsetAmount);
             }
@@ -508,8 +634,9 @@ public class IBInteraction implements EWrapper {
         myOrder.m_orderRef = referenceComments; // This is waht gets displayed on TWS screen
         myOrder.m_transmit = true; // STP order i.e. transmit immediately
         synchronized (lockOrderPlacement) {
-            ibOrderId = myUtils.getNextOrderID(jedisPool, orderIDField, debugFlag);
-            ibClient.placeOrder(ibOrderId, myContract, myOrder);
+            ibOrderId = orderIdAllocator.nextOrderId(debugFlag);
+            trackOrderCompletion(ibOrderId, qty);
+            outboundScheduler.placeOrder(ibOrderId, myContract, myOrder);
 
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed Market Order for " + symbol + " for " + mktAction + " type STK " + " order ID " + ibOrderId);
@@ -543,8 +670,10 @@ public class IBInteraction implements EWrapper {
         myOrder.m_orderRef = referenceComments; // This is what gets displayed on TWS screen
         myOrder.m_transmit = true; // STP order i.e. transmit immediately
         synchronized (lockOrderPlacement) {
-            ibOrderId = myUtils.getNextOrderID(jedisPool, orderIDField, debugFlag);
-            ibClient.placeOrder(ibOrderId, myContract, myOrder);
+            ibOrderId = orderIdAllocator.nextOrderId(debugFlag);
+            trackOrderCompletion(ibOrderId, qty);
+            orderChaser.register(ibOrderId, myContract, myOrder);
+            outboundScheduler.placeOrder(ibOrderId, myContract, myOrder);
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed Relative Order for " + symbol + " for " + mktAction + " type FUT " + " expiry " + expiry + " order ID " + ibOrderId + " limit " + limitPrice + " offsetAmt " + offsetAmount);
             }
@@ -573,8 +702,9 @@ public class IBInteraction implements EWrapper {
         myOrder.m_orderRef = referenceComments; // This is waht gets displayed on TWS screen
         myOrder.m_transmit = true; // STP order i.e. transmit immediately
         synchronized (lockOrderPlacement) {
-            ibOrderId = myUtils.getNextOrderID(jedisPool, orderIDField, debugFlag);
-            ibClient.placeOrder(ibOrderId, myContract, myOrder);
+            ibOrderId = orderIdAllocator.nextOrderId(debugFlag);
+            trackOrderCompletion(ibOrderId, qty);
+            outboundScheduler.placeOrder(ibOrderId, myContract, myOrder);
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed Market Order for " + symbol + " for " + mktAction + " type FUT " + " expiry " + expiry + " order ID " + ibOrderId);
             }
@@ -626,8 +756,9 @@ public class IBInteraction implements EWrapper {
         myOrder.m_orderRef = referenceComments; // This is waht gets displayed on TWS screen
         myOrder.m_transmit = true; // STP order i.e. transmit immediately
         synchronized (lockOrderPlacement) {
-            ibOrderId = myUtils.getNextOrderID(jedisPool, orderIDField, debugFlag);
-            ibClient.placeOrder(ibOrderId, myContract, myOrder);
+            ibOrderId = orderIdAllocator.nextOrderId(debugFlag);
+            trackOrderCompletion(ibOrderId, qty);
+            outboundScheduler.placeOrder(ibOrderId, myContract, myOrder);
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed Market Order for " + symbol + " for " + mktAction + " type OPT " + rightType + " for strike " + strikePrice + " expiry " + expiry + " order ID " + ibOrderId);
             }
@@ -635,6 +766,77 @@ public class IBInteraction implements EWrapper {
 
         return (ibOrderId);
     } // placeOptOrderAtMarket
+
+    // Contract as the place order functions above build it. rightType and strikePrice are used for OPT only
+    Contract getContract(String contractType, String symbol, String expiry, String rightType, double strikePrice) {
+
+        Contract myContract = new Contract();
+        myContract.m_symbol = symbol;
+        myContract.m_secType = contractType.toUpperCase();
+        myContract.m_exchange = myExchangeObj.getExchangeName();
+        myContract.m_currency = myExchangeObj.getExchangeCurrency();
+        if (!(contractType.equalsIgnoreCase("STK"))) {
+            myContract.m_expiry = expiry;
+        }
+        if (contractType.equalsIgnoreCase("OPT")) {
+            myContract.m_right = rightType; // C or CALL or P or PUT
+            myContract.m_strike = strikePrice;
+        }
+
+        return (myContract);
+    } // End of getContract()
+
+    Order getMarketOrder(int qty, String mktAction, String referenceComments) {
+
+        Order myOrder = new Order();
+        myOrder.m_action = mktAction;
+        myOrder.m_totalQuantity = qty;
+        myOrder.m_orderType = "MKT"; // At Market Price
+        myOrder.m_tif = "DAY"; // GTC - Good Till Cancel Order, DAY - Good Till Day
+        myOrder.m_orderRef = referenceComments; // This is what gets displayed on TWS screen
+        myOrder.m_transmit = true; // STP order i.e. transmit immediately
+
+        return (myOrder);
+    } // End of getMarketOrder()
+
+    // Sends order again under its order Id; TWS replaces the working order with it
+    void modifyOrder(int orderId, Contract contract, Order order) {
+        outboundScheduler.placeOrder(orderId, contract, order);
+    } // End of modifyOrder()
+
+    // Requests a snapshot of bid and ask of contract into myBidAskPriceDetails, keeping the last known values till it arrives
+    void refreshBidAskPrice(int requestId, Contract contract) {
+
+        myBidAskPriceDetails.putIfAbsent(requestId - IBTICKARRAYINDEXOFFSET, new MyBidAskPriceObjClass(requestId - IBTICKARRAYINDEXOFFSET));
+        outboundScheduler.reqMktData(requestId, contract, true);
+
+    } // End of refreshBidAskPrice()
+
+    // Queues all given orders back to back under one hold of the order placement lock, ahead of any market data
+    // or informational request; outboundScheduler sends them as fast as the TWS message rate allows.
+    // Returns order Ids in the sequence of orders, -1 for an order which was not placed as no order Id could be reserved.
+    public int[] placeOrderBurst(Contract[] contracts, Order[] orders, boolean debugFlag) {
+
+        int[] ibOrderIds = new int[orders.length];
+        synchronized (lockOrderPlacement) {
+            for (int index = 0; index < orders.length; index++) {
+                ibOrderIds[index] = orderIdAllocator.nextOrderId(debugFlag);
+                if (ibOrderIds[index] < 0) {
+                    continue;
+                }
+                trackOrderCompletion(ibOrderIds[index], orders[index].m_totalQuantity);
+                outboundScheduler.placeOrder(ibOrderIds[index], contracts[index], orders[index]);
+            }
+        }
+
+        if (debugFlag) {
+            for (int index = 0; index < orders.length; index++) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Placed " + orders[index].m_orderType + " Order for " + contracts[index].m_symbol + " for " + orders[index].m_action + " type " + contracts[index].m_secType + " order ID " + ibOrderIds[index] + " as part of burst of " + orders.length + " orders");
+            }
+        }
+
+        return (ibOrderIds);
+    } // End of placeOrderBurst()
     
     // overridden functions to receive data from IB interface / TWS
     @Override
@@ -650,30 +852,21 @@ public class IBInteraction implements EWrapper {
             if ((field == TickType.BID)) {
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setSymbolBidPrice(price);
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setBidPriceUpdateTime(System.currentTimeMillis());
-                System.out.println("bidPrice " + price + " tickerId " + tickerId + " Time " + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())));
+                callbackLog.logBidAskPrice(tickerId, true, price);
             }
             if (field == TickType.ASK) {
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setSymbolAskPrice(price);
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setAskPriceUpdateTime(System.currentTimeMillis());
-                System.out.println("askPrice " + price + " tickerId " + tickerId + " Time " + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())));
+                callbackLog.logBidAskPrice(tickerId, false, price);
             }
-        } else if (myTickDetails.containsKey(tickerId)) {
-            if ((myTickDetails.get(tickerId).getSubscriptionStatus()) && (price > 0)) {
-                if (field == TickType.CLOSE) {
-                    myTickDetails.get(tickerId).setClosePriceUpdateTime(System.currentTimeMillis());
-                    myTickDetails.get(tickerId).setSymbolClosePrice(price);
-                }
-                if (field == TickType.LAST) {
-                    myTickDetails.get(tickerId).setLastPriceUpdateTime(System.currentTimeMillis());
-                    myTickDetails.get(tickerId).setSymbolLastPrice(price);
-                }
-                if (field == TickType.BID) {
-                    myTickDetails.get(tickerId).setBidPriceUpdateTime(System.currentTimeMillis());
-                    myTickDetails.get(tickerId).setSymbolBidPrice(price);
-                }
-                if (field == TickType.ASK) {
-                    myTickDetails.get(tickerId).setAskPriceUpdateTime(System.currentTimeMillis());
-                    myTickDetails.get(tickerId).setSymbolAskPrice(price);
+        } else if (price > 0) {
+            // ignored unless tickerId is an active subscription and field is one of bid, ask, last or close
+            if (myTickStore.updatePrice(tickerId, field, price, System.currentTimeMillis())) {
+                TickListener[] listeners = myTickListeners.get(tickerId);
+                if (listeners != null) {
+                    for (TickListener listener : listeners) {
+                        listener.onTick(tickerId, field, price);
+                    }
                 }
             }
         }
@@ -683,22 +876,17 @@ public class IBInteraction implements EWrapper {
     @Override
     public void tickSize(int tickerId, int field, int size) {
 
-        if (myTickDetails.containsKey(tickerId)) {
-            if (myTickDetails.get(tickerId).getSubscriptionStatus()) {
-                if (field == TickType.VOLUME) {
-                    myTickDetails.get(tickerId).setLastVolumeUpdateTime(System.currentTimeMillis());
-                    myTickDetails.get(tickerId).setSymbolLastVolume(size);
-                }
-            }
+        if (field == TickType.VOLUME) {
+            myTickStore.updateVolume(tickerId, size, System.currentTimeMillis());
         }
         if ((tickerId > IBTICKARRAYINDEXOFFSET) && (myBidAskPriceDetails.containsKey(tickerId - IBTICKARRAYINDEXOFFSET))) {
             if ((field == TickType.BID_SIZE)) {
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setSymbolBidVolume(size);
-                System.out.println("bidSize " + size + " tickerId " + tickerId + " Time " + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())));
+                callbackLog.logBidAskSize(tickerId, true, size);
             }
             if (field == TickType.ASK_SIZE) {
                 myBidAskPriceDetails.get(tickerId - IBTICKARRAYINDEXOFFSET).setSymbolAskVolume(size);
-                System.out.println("askSize " + size + " tickerId " + tickerId + " Time " + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())));
+                callbackLog.logBidAskSize(tickerId, false, size);
             }
         }
 
@@ -756,12 +944,9 @@ public class IBInteraction implements EWrapper {
         myOrderStatusDetails.get(orderId).setUpdateTime(System.currentTimeMillis());
         myOrderStatusDetails.get(orderId).setIBOrderStatus(status);
 
-
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + 
-                "OrderId " + orderId + " status " + status + 
-                " filled qty " + filled + " remaining qty " + remaining + 
-                " average fill price " + avgFillPrice + 
-                " last filled price " + lastFillPrice);
+        callbackLog.logOrderStatus(orderId, status, filled, remaining, avgFillPrice, lastFillPrice);
+        checkOrderCompletion(orderId);
+        myOrderStatusDetails.archiveIfFinal(orderId);
 
     }
 
@@ -805,8 +990,16 @@ public class IBInteraction implements EWrapper {
         myOrderStatusDetails.get(execution.m_orderId).setFilledQuantity(execution.m_cumQty);
         myOrderStatusDetails.get(execution.m_orderId).setUniqueExecutionId(execution.m_execId);
         myOrderStatusDetails.get(execution.m_orderId).setOrderReference(execution.m_orderRef);        
-        myOrderStatusDetails.get(execution.m_orderId).setRemainingQuantity(execution.m_cumQty - execution.m_shares);
+        MyOrderCompletionClass completion = myOrderCompletions.get(execution.m_orderId);
+        if ((completion != null) && (completion.orderQuantity > 0)) {
+            // quantity still open after this execution, so the last execution of a split fill leaves 0
+            myOrderStatusDetails.get(execution.m_orderId).setRemainingQuantity(Math.max(0, completion.orderQuantity - execution.m_cumQty));
+        } else {
+            myOrderStatusDetails.get(execution.m_orderId).setRemainingQuantity(execution.m_cumQty - execution.m_shares);
+        }
         myOrderStatusDetails.get(execution.m_orderId).setContractDet(contract);       
+        // commission report for this execution follows
+        myExecutionOrderIds.put(execution.m_execId, execution.m_orderId);
         try {
             // Convert execution.m_time to long millisecond value yyyyMMddHHmmss
             Date tradeTime = new SimpleDateFormat("yyyyMMddHHmmss").parse(execution.m_time.replace(" ", "").replace(":", ""));
@@ -814,6 +1007,14 @@ public class IBInteraction implements EWrapper {
         } catch (ParseException ex) {
             Logger.getLogger(IBInteraction.class.getName()).log(Level.SEVERE, null, ex);
         }
+        if (executionSync != null) {
+            executionSync.onExecution(execution.m_orderId, execution.m_execId, myOrderStatusDetails.get(execution.m_orderId));
+        }
+        checkOrderCompletion(execution.m_orderId);
+        if (!(myOrderCompletions.containsKey(execution.m_orderId))) {
+            // nobody is waiting for this order (e.g. history of earlier sessions), so keep it out of the working set
+            myOrderStatusDetails.archive(execution.m_orderId);
+        }
     }
 
     @Override
@@ -873,6 +1074,10 @@ public class IBInteraction implements EWrapper {
     @Override
     public void execDetailsEnd(int reqId) {
         requestsCompletionStatus.put(reqId, Boolean.TRUE);
+        // identical requests queued while this one waited were answered by it
+        for (Integer mergedRequestId : outboundScheduler.takeMergedRequestIds(reqId)) {
+            requestsCompletionStatus.put(mergedRequestId, Boolean.TRUE);
+        }
     }
 
     @Override
@@ -905,10 +1110,22 @@ public class IBInteraction implements EWrapper {
 
     @Override
     public void commissionReport(CommissionReport commissionReport) {        
-        for (int orderId : myOrderStatusDetails.keySet()) {
-            if (myOrderStatusDetails.get(orderId).getUniqueExecutionId().equalsIgnoreCase(commissionReport.m_execId)) {
-                myOrderStatusDetails.get(orderId).setCommissionAmount(commissionReport.m_commission);
-            }
+
+        // join to the order by execId; IB sends Double.MAX_VALUE when the commission is not known
+        Integer orderId = myExecutionOrderIds.remove(commissionReport.m_execId);
+        if ((orderId == null) || (commissionReport.m_commission >= Double.MAX_VALUE)) {
+            return;
+        }
+        MyOrderStatusObjClass orderStatus = myOrderStatusDetails.get(orderId);
+        if (orderStatus == null) {
+            return;
+        }
+        double orderCommission = orderStatus.addExecutionCommission(commissionReport.m_execId, commissionReport.m_commission);
+        if (executionSync != null) {
+            executionSync.onCommission(commissionReport.m_execId, commissionReport.m_commission, orderId, orderCommission);
+        }
+        if (riskEngine != null) {
+            riskEngine.onCommission(orderId, orderCommission);
         }
     }
 
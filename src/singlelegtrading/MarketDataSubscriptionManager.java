@@ -0,0 +1,230 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * @author Manish Kumar Singh
+ */
+public class MarketDataSubscriptionManager extends Thread {
+
+    // request Ids of shared subscriptions; kept below IBInteraction.IBTICKARRAYINDEXOFFSET so that
+    // they never clash with slot based snapshot request Ids used for bid/ask prices
+    public static final int FIRSTREQUESTID = 1001;
+    public static final int LASTREQUESTID = IBInteraction.IBTICKARRAYINDEXOFFSET - 1;
+
+    private Thread t;
+    private String threadName;
+    private boolean debugFlag;
+
+    private IBInteraction ibInteractionClient;
+    private MyExchangeClass myExchangeObj;
+    private MyUtils myUtils;
+
+    private int staleFeedSeconds = 30;
+    private int maxResubscribeIntervalSeconds = 300;
+
+    // Define class to store one shared subscription and the slots consuming it
+    private class MySubscriptionClass {
+
+        int requestId;
+        Set<Integer> consumers = new HashSet<Integer>();
+        long subscribedTime;
+        int resubscribeIntervalSeconds;
+
+        MySubscriptionClass(int reqId) {
+            requestId = reqId;
+            subscribedTime = System.currentTimeMillis();
+            resubscribeIntervalSeconds = staleFeedSeconds;
+        }
+    }
+
+    private Map<String, MySubscriptionClass> subscriptions = new HashMap<String, MySubscriptionClass>();
+    private Map<Integer, String> slotContractKeys = new HashMap<Integer, String>();
+    // released request Ids are reused oldest first so late ticks of a cancelled feed are not mistaken for a new one
+    private ArrayDeque<Integer> freeRequestIds = new ArrayDeque<Integer>();
+    private int nextRequestId = FIRSTREQUESTID;
+    private TickStore.TickSnapshot tickSnapshot = new TickStore.TickSnapshot();
+
+    MarketDataSubscriptionManager(String name, IBInteraction ibIntClient, MyUtils utils, MyExchangeClass exchangeObj, int staleSeconds, boolean debugIndicator) {
+
+        threadName = name;
+        debugFlag = debugIndicator;
+        ibInteractionClient = ibIntClient;
+        myUtils = utils;
+        myExchangeObj = exchangeObj;
+        if (staleSeconds > 0) {
+            staleFeedSeconds = staleSeconds;
+            maxResubscribeIntervalSeconds = Math.max(maxResubscribeIntervalSeconds, staleSeconds);
+        }
+        TimeZone.setDefault(myExchangeObj.getExchangeTimeZone());
+
+    }
+
+    // Returns request Id of the subscription for given contract, subscribing only if no other slot already has it
+    synchronized int acquire(int slotNumber, String contractType, String symbol, String expiry, String rightType, double strikePrice) {
+
+        String contractKey = IBInteraction.getContractKey(contractType, symbol, expiry, rightType, strikePrice);
+        String currentKey = slotContractKeys.get(slotNumber);
+        if ((currentKey != null) && (!currentKey.equals(contractKey))) {
+            // slot has moved on to another contract
+            release(slotNumber);
+        }
+
+        MySubscriptionClass subscription = subscriptions.get(contractKey);
+        if (subscription == null) {
+            int requestId = allocateRequestId();
+            int subscribedRequestId = requestId;
+            if (contractType.equalsIgnoreCase("STK")) {
+                subscribedRequestId = ibInteractionClient.requestStkMktDataSubscription(requestId, symbol);
+            } else if (contractType.equalsIgnoreCase("FUT")) {
+                subscribedRequestId = ibInteractionClient.requestFutMktDataSubscription(requestId, symbol, expiry);
+            } else if (contractType.equalsIgnoreCase("OPT")) {
+                subscribedRequestId = ibInteractionClient.requestOptMktDataSubscription(requestId, symbol, expiry, rightType, strikePrice);
+            }
+            if (subscribedRequestId != requestId) {
+                // subscribed outside of this manager already; share that one
+                freeRequestIds.addLast(requestId);
+            }
+            subscription = new MySubscriptionClass(subscribedRequestId);
+            subscriptions.put(contractKey, subscription);
+            if (debugFlag) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Subscribed market data for " + contractKey + " with request Id " + subscribedRequestId);
+            }
+        }
+        subscription.consumers.add(slotNumber);
+        slotContractKeys.put(slotNumber, contractKey);
+
+        return (subscription.requestId);
+    } // End of acquire()
+
+    // Removes the slot as consumer; market data is cancelled only when the last consumer leaves
+    synchronized void release(int slotNumber) {
+
+        String contractKey = slotContractKeys.remove(slotNumber);
+        if (contractKey == null) {
+            return;
+        }
+        MySubscriptionClass subscription = subscriptions.get(contractKey);
+        if (subscription == null) {
+            return;
+        }
+        subscription.consumers.remove(slotNumber);
+        if (subscription.consumers.isEmpty()) {
+            subscriptions.remove(contractKey);
+            ibInteractionClient.cancelMktDataSubscription(subscription.requestId);
+            if ((subscription.requestId >= FIRSTREQUESTID) && (subscription.requestId <= LASTREQUESTID)) {
+                freeRequestIds.addLast(subscription.requestId);
+            }
+            if (debugFlag) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Cancelled market data for " + contractKey + " with request Id " + subscription.requestId);
+            }
+        }
+
+    } // End of release()
+
+    synchronized int getConsumerCount(int requestId) {
+
+        for (MySubscriptionClass subscription : subscriptions.values()) {
+            if (subscription.requestId == requestId) {
+                return (subscription.consumers.size());
+            }
+        }
+        return (0);
+    } // End of getConsumerCount()
+
+    private int allocateRequestId() {
+
+        if (nextRequestId <= LASTREQUESTID) {
+            return (nextRequestId++);
+        }
+        Integer requestId = freeRequestIds.pollFirst();
+        if (requestId == null) {
+            // all managed request Ids are in use; IB line limits are far lower than this
+            throw new IllegalStateException("No free market data request Id between " + FIRSTREQUESTID + " and " + LASTREQUESTID);
+        }
+        return (requestId);
+    } // End of allocateRequestId()
+
+    // Resubscribes feeds that have not ticked for a while. Interval doubles after every resubscription
+    // of the same feed, up to maxResubscribeIntervalSeconds, so a quiet contract is not churned.
+    synchronized void checkFeedHealth() {
+
+        long timeNow = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, MySubscriptionClass>> it = subscriptions.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, MySubscriptionClass> entry = it.next();
+            MySubscriptionClass subscription = entry.getValue();
+            if (!(ibInteractionClient.myTickStore.readSnapshot(subscription.requestId, tickSnapshot))) {
+                continue;
+            }
+            long lastTickTime = tickSnapshot.getLatestUpdateTime();
+            if (lastTickTime > subscription.subscribedTime) {
+                // feed is alive since last (re)subscription
+                subscription.resubscribeIntervalSeconds = staleFeedSeconds;
+            }
+            long referenceTime = Math.max(lastTickTime, subscription.subscribedTime);
+            if ((timeNow - referenceTime) / 1000 >= subscription.resubscribeIntervalSeconds) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "No market data for " + entry.getKey() + " since " + (timeNow - referenceTime) / 1000 + " seconds. Resubscribing request Id " + subscription.requestId);
+                ibInteractionClient.resubscribeMktData(subscription.requestId);
+                subscription.subscribedTime = timeNow;
+                subscription.resubscribeIntervalSeconds = Math.min(subscription.resubscribeIntervalSeconds * 2, maxResubscribeIntervalSeconds);
+            }
+        }
+
+    } // End of checkFeedHealth()
+
+    @Override
+    public void run() {
+
+        myUtils.waitForStartTime(myExchangeObj.getExchangeStartTimeHHMM(), myExchangeObj.getExchangeTimeZone(), "Market data feed monitoring", debugFlag);
+
+        while (myUtils.marketIsOpen(myExchangeObj.getExchangeCloseTimeHHMM(), myExchangeObj.getExchangeTimeZone(), false)) {
+            if (ibInteractionClient.ibClient.isConnected()) {
+                checkFeedHealth();
+            }
+            // Wait for five seconds before checking again
+            myUtils.waitForNSeconds(5);
+        }
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+}
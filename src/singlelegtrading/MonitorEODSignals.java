@@ -223,11 +223,11 @@ public class MonitorEODSignals extends Thread {
         jedis = jedisPool.getResource();
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
+            Map<String, TradingObject> retrieveMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
             // Go through all open position slots to check for existance of Current Symbol        
             for (String keyMap : retrieveMap.keySet()) {
                 // Do Stuff here             
-                TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
+                TradingObject myTradeObject = retrieveMap.get(keyMap);
                 String entryTimeStamp = myTradeObject.getEntryTimeStamp();                
                 if ( (!currentPos.exists) && 
                         (myTradeObject.getTradingObjectName().matches("ON_" + signalSymbolName)) && 
@@ -494,11 +494,11 @@ public class MonitorEODSignals extends Thread {
         jedis = jedisPool.getResource();
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
+            Map<String, TradingObject> retrieveMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
             // Go through all open position slots to check for existance of Current Symbol        
             for (String keyMap : retrieveMap.keySet()) {
                 // Do Stuff here             
-                TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
+                TradingObject myTradeObject = retrieveMap.get(keyMap);
                 if ( myTradeObject.getOrderState().equalsIgnoreCase("entryorderfilled") ) {
                     // position exists and suitable for square off
                     sendSquareOffSignal(manualInterventionSignalsQueueKeyName,Integer.parseInt(keyMap));                    
@@ -546,11 +546,11 @@ public class MonitorEODSignals extends Thread {
         jedis = jedisPool.getResource();
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
+            Map<String, TradingObject> retrieveMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
             // Go through all open position slots to check for existance of Current Symbol        
             for (String keyMap : retrieveMap.keySet()) {
                 // Do Stuff here             
-                TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
+                TradingObject myTradeObject = retrieveMap.get(keyMap);
                 if ( myTradeObject.getOrderState().equalsIgnoreCase("entryorderfilled") ) {
                     // position exists and suitable for square off
                     sendUpdateStoplossLimitSignal(manualInterventionSignalsQueueKeyName,Integer.parseInt(keyMap));                    
@@ -52,19 +52,11 @@ public class MonitorEntrySignals extends Thread {
     private String closedPositionsQueueKeyName = "INRSTR01CLOSEDPOSITIONS";
     private String entrySignalsQueueKeyName = "INRSTR01ENTRYSIGNALS";
     private String confOrderType = "MARKET";
-    private String duplicateComboAllowed = "yes";
-    private int maxNumDuplicateLegsAllowed = 1;
     //private String signalSymbolType = "FUT"; // STK or FUT or OPT
 
-    private int MAXLONGPOSITIONS = 2;
-    private int MAXSHORTPOSITIONS = 2;    
-    private double MAXCOMBOSPREAD = 300000.0;
-
     private int nextOpenSlotNumber = 6;
 
     private int MAXNUMENTRIESINADAY = 15;
-    private double NOFURTHERPOSITIONTAKEPROFITLIMIT = 10000.0;
-    private double NOFURTHERPOSITIONSTOPLOSSLIMIT = -10000.0;
 
     public String exchangeHolidayListKeyName;
     private int minimumMoratoriumForPosition = 37;
@@ -88,20 +80,13 @@ public class MonitorEntrySignals extends Thread {
         entrySignalsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ENTRYSIGNALSQUEUE", false);
         confOrderType = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ENTRYORDERTYPE", false);
 
-        duplicateComboAllowed = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ALLOWDUPLICATECOMBOPOSITIONS", false);
-        maxNumDuplicateLegsAllowed = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMDUPLICATELEGPOSITIONS", false));
-
         minimumMoratoriumForPosition = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MINIMUMMORATORIUMFORPOSITION", false));
 
         exchangeHolidayListKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "EXCHANGEHOLIDAYLISTKEYNAME", false);
 
-        MAXLONGPOSITIONS = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMLONGPOSITIONS", false));
-        MAXSHORTPOSITIONS = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMSHORTPOSITIONS", false));        
-        MAXCOMBOSPREAD = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXALLOWEDPAIRSPREAD", false));
-
         nextOpenSlotNumber = getMinimumOpenPositionSlotNumber(openPositionsQueueKeyName, 1);
         // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : Monitoring Entry Signals for Strategy " + strategyName + " confOrderType " + confOrderType + " nextSlotNum " + nextOpenSlotNumber + " MAXLONGPOSITIONS " + MAXLONGPOSITIONS + " MAXSHORTPOSITIONS " + MAXSHORTPOSITIONS + " MAXCOMBOSPREAD " + MAXCOMBOSPREAD + " queue name " + entrySignalsQueueKeyName);
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : Monitoring Entry Signals for Strategy " + strategyName + " confOrderType " + confOrderType + " nextSlotNum " + nextOpenSlotNumber + " queue name " + entrySignalsQueueKeyName);
 
     }
 
@@ -114,8 +99,7 @@ public class MonitorEntrySignals extends Thread {
         jedis = jedisPool.getResource();
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(queueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
+            for (String keyMap : jedis.hkeys(queueKeyName)) {
                 slotNumber = Math.max(slotNumber, Integer.parseInt(keyMap));
             }
         } catch (JedisException e) {
@@ -133,42 +117,34 @@ public class MonitorEntrySignals extends Thread {
         return (slotNumber);
     }
 
-    void blockOpenPositionSlot(String queueKeyName, String comboDetails, int slotNumber) {
+    // Blocks the first free slot numbered minimumSlotNumber or above for given combo. Returns the slot blocked, or -1
+    int blockOpenPositionSlot(String queueKeyName, String comboDetails, int minimumSlotNumber) {
 
         TradingObject myTradingObject = new TradingObject(comboDetails);
 
         myTradingObject.initiateAndValidate();
         myTradingObject.setOrderState("openpositionslotblocked");
 
-        Jedis jedis = jedisPool.getResource();
-        jedis.hset(openPositionsQueueKeyName, Integer.toString(slotNumber), myTradingObject.getCompleteTradingObjectString());
-        jedisPool.returnResource(jedis);
+        return (myUtils.blockFreeOpenPositionSlot(jedisPool, queueKeyName, minimumSlotNumber, myTradingObject, debugFlag));
     }
 
     boolean withinEntryOrderTimeRange(String entryTimeStamp) {
         boolean returnValue;
 
         Calendar timeNow = Calendar.getInstance(myExchangeObj.getExchangeTimeZone());
-        int firstEntryOrderTime = 940;
-        int lastEntryOrderTime = 1521;
-        String firstEntryOrderTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "FIRSTENTRYORDERTIME", debugFlag);
-        String lastEntryOrderTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "LASTENTRYORDERTIME", debugFlag);
-        if ((firstEntryOrderTimeConfigValue != null) && (firstEntryOrderTimeConfigValue.length() > 0)) {
-            firstEntryOrderTime = Integer.parseInt(firstEntryOrderTimeConfigValue);
-        }
-        if ((lastEntryOrderTimeConfigValue != null) && (lastEntryOrderTimeConfigValue.length() > 0)) {
-            lastEntryOrderTime = Integer.parseInt(lastEntryOrderTimeConfigValue);
-        }
+        StrategyConfig.MyStrategyConfigClass config = ibInteractionClient.strategyConfig.getConfig();
+        int firstEntryOrderTime = config.firstEntryOrderTime;
+        int lastEntryOrderTime = config.lastEntryOrderTime;
         // Provision for checking if time is within limits for entry order time
         if ((Integer.parseInt(String.format("%1$tH%1$tM", timeNow)) >= firstEntryOrderTime)
                 && (Integer.parseInt(String.format("%1$tH%1$tM", timeNow)) <= lastEntryOrderTime)) {
             returnValue = true;
             // Debug Message
-            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Within entry Order Time Limits Range. Time Now :" + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", timeNow) + " first " + firstEntryOrderTimeConfigValue + " last " + lastEntryOrderTimeConfigValue);
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Within entry Order Time Limits Range. Time Now :" + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", timeNow) + " first " + firstEntryOrderTime + " last " + lastEntryOrderTime);
         } else {
             returnValue = false;
             // Debug Message
-            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Outside entry Order Time Limits Range. Time Now :" + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", timeNow) + " first " + firstEntryOrderTimeConfigValue + " last " + lastEntryOrderTimeConfigValue);
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Outside entry Order Time Limits Range. Time Now :" + String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", timeNow) + " first " + firstEntryOrderTime + " last " + lastEntryOrderTime);
         }
 
         if (myUtils.checkIfStaleMessage(entryTimeStamp, String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", timeNow), 5)) {
@@ -180,168 +156,17 @@ public class MonitorEntrySignals extends Thread {
         return (returnValue);
     }
 
-    boolean withinStipulatedSpreadRange(String spreadValue) {
-        boolean returnValue = true;
-
-        double currentSpread = 0.0;
-        try {
-            currentSpread = Double.parseDouble(spreadValue);
-        } catch (NumberFormatException ex) {
-            if (debugFlag) {
-                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Exception caused while converting spread to double from string. Defaulting to 0.0 " + ex.getMessage());
-                currentSpread = 0.0;
-            }
-        }
-
-        if (Math.abs(currentSpread) > MAXCOMBOSPREAD) {
-            returnValue = false;
-        }
-
-        // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Spread Value :" + currentSpread + "Max Allowed spread :" + MAXCOMBOSPREAD + " returning : " + returnValue);
-
-        return (returnValue);
-    }
-
-    boolean withinStipulatedCurrentPnLForToday(Integer maxNumOpenPos, String openPosQueueKeyName, String closedPosQueueKeyName, double dayTakeProfitLimit, double dayStopLossLimit) {
-        boolean returnValue = true;
-
-        double roundTripBrokerage = 160.0;
-        double currentDayPnL = 0.0;
-        // Go through first maxNumOpenPos slots to check for open positions
-        int slotNumber = 1;
-        while (slotNumber <= maxNumOpenPos) {
-            if (myUtils.checkIfExistsHashMapField(jedisPool, openPosQueueKeyName, Integer.toString(slotNumber), debugFlag)) {
-                // Since position exists, get details
-                TradingObject myTradeObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, openPosQueueKeyName, Integer.toString(slotNumber), debugFlag));
-                if ((myTradeObject.getLastUpdatedTimeStamp().length() > 12)
-                        && !(myTradeObject.getOrderState().equalsIgnoreCase("openpositionslotblocked"))
-                        && !(myTradeObject.getOrderState().equalsIgnoreCase("entryorderinitiated"))) {
-                    roundTripBrokerage = Double.parseDouble(myTradeObject.getEntrySpread()) * (0.01 + 0.0019 + 0.0001) / 100;
-                    if (myTradeObject.getEntryTimeStamp().substring(0, 8).matches(myTradeObject.getLastUpdatedTimeStamp().substring(0, 8))) {
-                        roundTripBrokerage = roundTripBrokerage + Double.parseDouble(myTradeObject.getLastKnownSpread()) * (0.01 + 0.0019 + 0.0001) / 100;
-                    } else {
-                        roundTripBrokerage = roundTripBrokerage + Double.parseDouble(myTradeObject.getLastKnownSpread()) * (0.01 + 0.0019 + 0.0001 + 0.01) / 100;
-                    }
-                    if (myTradeObject.getSideAndSize() > 0) {
-                        currentDayPnL += Double.parseDouble(myTradeObject.getLastKnownSpread()) - Double.parseDouble(myTradeObject.getEntrySpread()) - 0.5 * roundTripBrokerage;
-                    } else if (myTradeObject.getSideAndSize() < 0) {
-                        currentDayPnL += Double.parseDouble(myTradeObject.getEntrySpread()) - Double.parseDouble(myTradeObject.getLastKnownSpread()) - 0.5 * roundTripBrokerage;
-                    }
-                }
-            }
-            slotNumber++;
-        }
-
-        // Go through closed position slots to check for todays closed positions
-        slotNumber = 1;
-        while (myUtils.checkIfExistsHashMapField(jedisPool, closedPosQueueKeyName, Integer.toString(slotNumber), debugFlag)) {
-            // Since position exists in closedQueue, get details
-            TradingObject myTradeObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, closedPosQueueKeyName, Integer.toString(slotNumber), debugFlag));
-            roundTripBrokerage = Double.parseDouble(myTradeObject.getEntrySpread()) * (0.01 + 0.0019 + 0.0001) / 100;
-            if (myTradeObject.getEntryTimeStamp().substring(0, 8).matches(myTradeObject.getExitTimeStamp().substring(0, 8))) {
-                roundTripBrokerage = roundTripBrokerage + Double.parseDouble(myTradeObject.getExitSpread()) * (0.01 + 0.0019 + 0.0001) / 100;
-            } else {
-                roundTripBrokerage = roundTripBrokerage + Double.parseDouble(myTradeObject.getExitSpread()) * (0.01 + 0.0019 + 0.0001) / 100;
-            }
-            if (myTradeObject.getSideAndSize() > 0) {
-                currentDayPnL += Double.parseDouble(myTradeObject.getExitSpread()) - Double.parseDouble(myTradeObject.getEntrySpread()) - roundTripBrokerage;
-            } else if (myTradeObject.getSideAndSize() < 0) {
-                currentDayPnL += Double.parseDouble(myTradeObject.getEntrySpread()) - Double.parseDouble(myTradeObject.getExitSpread()) - roundTripBrokerage;
-            }
-            slotNumber++;
-        }
-
-        if ((currentDayPnL > dayTakeProfitLimit) || (currentDayPnL < dayStopLossLimit)) {
-            returnValue = false;
-        }
-
-        // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : DaysPnL :" + currentDayPnL + " dayTakeProfitLimit : " + dayTakeProfitLimit + " dayStopLossLimit : " + dayStopLossLimit + " returning : " + returnValue);
-
-        return (returnValue);
-    }
-
-    boolean checkExistingOpenPositions(String openPositionsQueueKeyName, String signalReceived) {
-
-        boolean returnValue = true;
-        boolean alreadyExisting = false;
-        Jedis jedis;
-        int numOpenLongPositions = 0;
-        int numOpenShortPositions = 0;
-        int numOpenCurrentLegPositions = 0;
+    boolean withinRiskLimits(String signalReceived, int legSizeMultiple) {
 
         TradingObject tradingSignal = new TradingObject(signalReceived);
-                
-        // Go through all open position slots to check for existance of Current Signal        
-        jedis = jedisPool.getResource();
-        try {
-            // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
-                // Do Stuff here
-                TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
-                if (myTradeObject.getSideAndSize() < 0 ) {
-                    numOpenShortPositions++;  // update number of Open Short positions
-                }
-                if (myTradeObject.getSideAndSize() > 0 ) {
-                    numOpenLongPositions++; // update number of Open Long positions
-                }                
-                if ((myTradeObject.getTradingObjectName().equalsIgnoreCase(tradingSignal.getTradingObjectName())) && 
-                        (myTradeObject.getContractType().equalsIgnoreCase(tradingSignal.getContractType())) &&
-                        (!duplicateComboAllowed.equalsIgnoreCase("yes")) ) {
-                    if (myTradeObject.getContractType().equalsIgnoreCase("STK")) {
-                        if (myTradeObject.getContractUnderlyingName().equalsIgnoreCase(tradingSignal.getContractUnderlyingName())) {
-                            // new position already exists
-                            alreadyExisting = true;
-                            numOpenCurrentLegPositions++;
-                        }                        
-                    } else if (myTradeObject.getContractType().equalsIgnoreCase("FUT")) {
-                        if (myTradeObject.getContractUnderlyingName().equalsIgnoreCase(tradingSignal.getContractUnderlyingName())) {
-                            // new position already exists
-                            alreadyExisting = true;
-                            numOpenCurrentLegPositions++;                            
-                        }                        
-                    } else if (myTradeObject.getContractType().equalsIgnoreCase("OPT")) {
-                        if ((myTradeObject.getContractUnderlyingName().equalsIgnoreCase(tradingSignal.getContractUnderlyingName() )) &&
-                             (myTradeObject.getContractOptionRightType().equalsIgnoreCase(tradingSignal.getContractOptionRightType())) &&
-                             (myTradeObject.getContractOptionStrike() == tradingSignal.getContractOptionStrike()) ) {
-                            // new position already exists
-                            alreadyExisting = true;
-                            numOpenCurrentLegPositions++;                            
-                        }
-                    }
-                }
-            }
-        } catch (JedisException e) {
-            //if something wrong happen, return it back to the pool
-            if (null != jedis) {
-                jedisPool.returnBrokenResource(jedis);
-                jedis = null;
-            }
-        } finally {
-            //Return the Jedis instance to the pool once finished using it  
-            if (null != jedis) {
-                jedisPool.returnResource(jedis);
-            }
-        }
 
-        if ((alreadyExisting) ||
-                ((tradingSignal.getSideAndSize() > 0) && (numOpenLongPositions >= MAXLONGPOSITIONS)) || 
-                ((tradingSignal.getSideAndSize() < 0) && (numOpenShortPositions >= MAXSHORTPOSITIONS)) ||
-                ((tradingSignal.getSideAndSize() < 0) && (numOpenCurrentLegPositions >= maxNumDuplicateLegsAllowed))               
-            ) {
-            returnValue = false;
-        }
+        ibInteractionClient.riskEngine.refreshLimits(ibInteractionClient.strategyConfig.getConfig().getConfigMap());
+        RiskEngine.RiskDecision decision = ibInteractionClient.riskEngine.checkEntry(tradingSignal.getContractUnderlyingName(), RiskEngine.getLegKey(tradingSignal), tradingSignal.getSideAndSize(), RiskEngine.getSignalNotional(tradingSignal), legSizeMultiple);
 
         // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "numOpenLongPositions : " + numOpenLongPositions + " against Allowed LONG positions : " + MAXLONGPOSITIONS);
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "numOpenShortPositions : " + numOpenShortPositions + " against Allowed SHORT positions : " + MAXSHORTPOSITIONS);
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Already Existing Status : " + alreadyExisting);
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "numOpenCurrentLegPositions : " + numOpenCurrentLegPositions + " against Allowed simulneously same contract Open positions : " + maxNumDuplicateLegsAllowed);        
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Finally returning (true is allow taking positions. false is do not allow) : " + returnValue + " for " + tradingSignal.getContractStructure() + " for Long/Short " + tradingSignal.getSideAndSize());
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : Risk check " + decision + " for " + tradingSignal.getContractStructure() + " for Long/Short " + tradingSignal.getSideAndSize());
 
-        return (returnValue);
+        return (decision.isAllowed());
     }
 
     boolean checkLastTradeTimeStamp(String closedPositionsQueueKeyName, String entryTimeStamp, String newSignalComboName) {
@@ -355,16 +180,16 @@ public class MonitorEntrySignals extends Thread {
 
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(closedPositionsQueueKeyName);
+            Map<String, TradingObject> retrieveMap = myUtils.getAllPositionsFromRedis(jedis, closedPositionsQueueKeyName);
             for (String keyMap : retrieveMap.keySet()) {
                 // Since position exists in closedQueue, check if exisitng pairPosition and new pair Position is same
-                TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
+                TradingObject myTradeObject = retrieveMap.get(keyMap);
                 if (myTradeObject.getTradingObjectName().matches(newSignalComboName)) {
                     // new position has been trades in past. Apply moratorium period
                     lastTradeTimeStamp = myTradeObject.getExitTimeStamp();
                     // exit Time stamp of past trade occurs in the same day as new proposed entry
                     // make returnValue false if exit timestamp of existing position and now/new position is less than defined reentrydelay/moratorium i.e. one trading day equivalent
-                    int elapsedTradingMinutes = 10 * myUtils.calcElapsedBars(jedisPool, lastTradeTimeStamp, entryTimeStamp, myExchangeObj, exchangeHolidayListKeyName, false);
+                    int elapsedTradingMinutes = 10 * ibInteractionClient.exchangeCalendar.calcElapsedBars(lastTradeTimeStamp, entryTimeStamp);
                     if (elapsedTradingMinutes <= minimumMoratoriumForPosition) {
                         returnValue = false;
                     }
@@ -409,49 +234,6 @@ public class MonitorEntrySignals extends Thread {
         return (returnValue);
     }
 
-    boolean notBlackListed(String blacklistedSymbols, String signalSymbol) {
-        boolean notFound = true;
-
-        if ((blacklistedSymbols.length() > 1) && (signalSymbol.length() > 1)) {
-
-            String symbolName = "";
-            if (signalSymbol.split("_").length > 1) {
-                symbolName = signalSymbol.split("_")[1];
-            }
-            String symbolsList[] = blacklistedSymbols.split(",");
-            for (String symbol : symbolsList) {
-                if (symbolName.equalsIgnoreCase(symbol)) {
-                    notFound = false;
-                }
-            }
-        }
-        // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : blacklisted notfound status : " + notFound);
- 
-        return (notFound);
-    }
-
-    boolean checkIfLongOrShortEntryAllowed(String allowLongIndicator, String allowShortIndicator, String side) {
-        boolean returnValue = true;
-
-        if ((allowLongIndicator.equalsIgnoreCase("yes")) && (allowShortIndicator.equalsIgnoreCase("yes"))) {
-            returnValue = true;
-        } else {
-            if ((!(allowLongIndicator.equalsIgnoreCase("yes"))) && (Integer.parseInt(side) > 0)) {
-                returnValue = false;
-            }
-            if ((!(allowShortIndicator.equalsIgnoreCase("yes"))) && (Integer.parseInt(side) < 0)) {
-                returnValue = false;
-            }
-        }
-
-        // Debug Message
-        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : longShortAllowed returning : " + returnValue);
-             
-        return (returnValue);
-    }
-
-    
     boolean checkIfInDirectionOfMarketPrediction(String side, String contractStructure) {
         boolean returnValue = false;
         // Check for last two NIFTY50 Signal. 
@@ -503,21 +285,13 @@ public class MonitorEntrySignals extends Thread {
     @Override
     public void run() {
 
-        int firstEntryOrderTime = 940;
-        String firstEntryOrderTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "FIRSTENTRYORDERTIME", debugFlag);
-        if ((firstEntryOrderTimeConfigValue != null) && (firstEntryOrderTimeConfigValue.length() > 0)) {
-            firstEntryOrderTime = Integer.parseInt(firstEntryOrderTimeConfigValue);
-        }
+        int firstEntryOrderTime = ibInteractionClient.strategyConfig.getConfig().firstEntryOrderTime;
 
         myUtils.waitForStartTime(firstEntryOrderTime, myExchangeObj.getExchangeTimeZone(), "first entry order time", false);
 
         String entrySignalReceived = null;
 
-        int eodExitTime = 1530;
-        String eodExitTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "EODEXITTIME", debugFlag);
-        if ((eodExitTimeConfigValue != null) && (eodExitTimeConfigValue.length() > 0)) {
-            eodExitTime = Integer.parseInt(eodExitTimeConfigValue);
-        }
+        int eodExitTime = ibInteractionClient.strategyConfig.getConfig().eodExitTime;
 
         // Enter an infinite loop with blocking pop call to retireve messages from queue
         // while market is open. Now start monitoring the open positions queue
@@ -525,52 +299,38 @@ public class MonitorEntrySignals extends Thread {
             entrySignalReceived = myUtils.popKeyValueFromQueueRedis(jedisPool, entrySignalsQueueKeyName, 60, false);
             if (entrySignalReceived != null) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Info : Received Entry Signal as : " + entrySignalReceived);
-                // Read the Maximum Possible Positions
-                MAXLONGPOSITIONS = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMLONGPOSITIONS", false));
-                MAXSHORTPOSITIONS = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMSHORTPOSITIONS", false));                
-                // Read the Max Allowable apread for pair
-                MAXCOMBOSPREAD = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXALLOWEDPAIRSPREAD", false));
+                // Configuration as of this signal. Fields are already parsed, so nothing is read from Redis here
+                StrategyConfig.MyStrategyConfigClass config = ibInteractionClient.strategyConfig.getConfig();
                 // Read the Maximun Number of Permissible Entries in a day including open positions at start of the day
-                MAXNUMENTRIESINADAY = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMENTRIESINADAY", false));
-                // Read the Days takeProfitLimit and stopLossLimit for no further new positions
-                NOFURTHERPOSITIONTAKEPROFITLIMIT = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "NOFURTHERPOSITIONTAKEPROFITLIMIT", false));
-                NOFURTHERPOSITIONSTOPLOSSLIMIT = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "NOFURTHERPOSITIONSTOPLOSSLIMIT", false));
-                String blackListedSymbols = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "BLACKLISTEDSYMBOLS", false);
-                String allowLongIndicator = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ALLOWLONGENTRY", false);
-                String allowShortIndicator = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ALLOWSHORTENTRY", false);
-                int legSizeMultiple = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "LEGSIZEMULTIPLE", false));
-
-                duplicateComboAllowed = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ALLOWDUPLICATECOMBOPOSITIONS", false);
-                maxNumDuplicateLegsAllowed = Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MAXNUMDUPLICATELEGPOSITIONS", false));
-                
+                MAXNUMENTRIESINADAY = config.maxNumEntriesInADay;
+                int legSizeMultiple = config.legSizeMultiple;
+
                 String[] entrySignal = entrySignalReceived.split(",");
                 // check if current time is within stipulated entry order time range and not stale by more than 5 minutes.
-                // check if spread is not more than stipulated spread (say 200000 INR for NSE
-                // check if the existing pair does not exist and there is space for Taking up the position, then enter position
+                // check if position counts, duplicates, blacklist, notional, margin and days PnL are within risk limits
                 if ((nextOpenSlotNumber <= MAXNUMENTRIESINADAY)
                         && withinEntryOrderTimeRange(entrySignal[TradingObject.ENTRY_TIMESTAMP_INDEX])
-                        && withinStipulatedSpreadRange(entrySignal[TradingObject.ENTRY_SPREAD_INDEX])
-                        && checkExistingOpenPositions(openPositionsQueueKeyName, entrySignalReceived)
+                        && withinRiskLimits(entrySignalReceived, legSizeMultiple)
                         && checkLastTradeTimeStamp(closedPositionsQueueKeyName, entrySignal[TradingObject.ENTRY_TIMESTAMP_INDEX], entrySignal[TradingObject.NAME_INDEX])
-                        && notBlackListed(blackListedSymbols, entrySignal[TradingObject.NAME_INDEX])
-                        && checkIfInDirectionOfMarketPrediction(entrySignal[TradingObject.SIDE_SIZE_INDEX],entrySignal[TradingObject.STRUCTURE_INDEX])                        
-                        && checkIfLongOrShortEntryAllowed(allowLongIndicator, allowShortIndicator, entrySignal[TradingObject.SIDE_SIZE_INDEX])
-                        && withinStipulatedCurrentPnLForToday(MAXNUMENTRIESINADAY, openPositionsQueueKeyName, closedPositionsQueueKeyName, NOFURTHERPOSITIONTAKEPROFITLIMIT, NOFURTHERPOSITIONSTOPLOSSLIMIT)) {
-                    // Block position slot - doing it here outside entry thread to avoid race condition which is seen happeneing if done inside thread
-                    while ((myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, Integer.toString(nextOpenSlotNumber), false))) {
-                        nextOpenSlotNumber++;
+                        && checkIfInDirectionOfMarketPrediction(entrySignal[TradingObject.SIDE_SIZE_INDEX],entrySignal[TradingObject.STRUCTURE_INDEX])) {
+                    // Block first free position slot - found and written in one atomic step inside Redis, so concurrent
+                    // entry threads or processes of the strategy never get the same slot
+                    int blockedSlotNumber = blockOpenPositionSlot(openPositionsQueueKeyName, entrySignalReceived, nextOpenSlotNumber);
+                    if (blockedSlotNumber < 0) {
+                        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Could not block an open position slot. Skipping Entry Signal " + entrySignalReceived);
+                        continue;
                     }
-                    blockOpenPositionSlot(openPositionsQueueKeyName, entrySignalReceived, nextOpenSlotNumber);
+                    nextOpenSlotNumber = blockedSlotNumber;
                     // Read the order type
-                    confOrderType = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ENTRYORDERTYPE", false);
+                    confOrderType = config.entryOrderType;
                     // Read the stop loss amount to use
                     int initialStopLoss = 10000;
-                    if (myUtils.checkIfExistsHashMapField(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSTYPE", false)) {
-                        String initialStopLossType = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSTYPE", false);
+                    if (config.initialStopLossType != null) {
+                        String initialStopLossType = config.initialStopLossType;
                         if (initialStopLossType.equalsIgnoreCase("fixedamount")) {
-                            initialStopLoss = legSizeMultiple * Integer.parseInt(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSAMOUNT", false));
+                            initialStopLoss = (int) Math.round(legSizeMultiple * config.initialStopLossAmount);
                         } else if (initialStopLossType.equalsIgnoreCase("sigmafactor")) {
-                            double stopLossFactor = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSSIGMAFACTOR", false));
+                            double stopLossFactor = config.initialStopLossSigmaFactor;
                             double oneSigmaAmount = Double.parseDouble(entrySignal[TradingObject.ENTRY_STDDEV_INDEX]);
                             if (oneSigmaAmount <= 0) {
                                 oneSigmaAmount = 3000;
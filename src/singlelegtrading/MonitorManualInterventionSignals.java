@@ -52,7 +52,10 @@ public class MonitorManualInterventionSignals extends Thread {
 
     public ConcurrentHashMap<String, MyManualInterventionClass> myMIDetails;
 
-    MonitorManualInterventionSignals(String name, JedisPool redisConnectionPool, String redisConfigKey, MyUtils utils, MyExchangeClass exchangeObj, ConcurrentHashMap<String, MyManualInterventionClass> miDetails, boolean debugIndicator) {
+    private IBInteraction ibInteractionClient;
+    private ConcurrentHashMap<Integer, SingleLegExit> myExitMonitors;
+
+    MonitorManualInterventionSignals(String name, JedisPool redisConnectionPool, String redisConfigKey, MyUtils utils, MyExchangeClass exchangeObj, IBInteraction ibIntClient, ConcurrentHashMap<Integer, SingleLegExit> exitMonitors, ConcurrentHashMap<String, MyManualInterventionClass> miDetails, boolean debugIndicator) {
 
         threadName = name;
         debugFlag = debugIndicator;
@@ -70,6 +73,8 @@ public class MonitorManualInterventionSignals extends Thread {
         manualInterventionSignalsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "MANUALINTERVENTIONQUEUE", false);
 
         myMIDetails = miDetails;
+        ibInteractionClient = ibIntClient;
+        myExitMonitors = exitMonitors;
 
         // Debug Message
         System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + " Started Monitoring for Manual Signal for Strategy Name " + strategyName + " queue Name " + manualInterventionSignalsQueueKeyName);
@@ -161,124 +166,25 @@ public class MonitorManualInterventionSignals extends Thread {
 
     }
 
-    void setTradeLevelSquareOffAllOpenLongPositions(String actionReason) {
+    // Square off orders of all matching positions are placed together by a PositionFlattener thread
+    // instead of each exit thread noticing the square off flag and placing its own order
+    void flattenOpenPositions(int positionsSide, String actionReason) {
 
-        String openPositionsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "OPENPOSITIONSQUEUE", false);
-        Jedis jedis = jedisPool.getResource();
+        PositionFlattener positionFlattener = new PositionFlattener("FlatteningOpenPositionsThread", jedisPool, redisConfigurationKey, myUtils, myExchangeObj, ibInteractionClient, myExitMonitors, myMIDetails, positionsSide, actionReason, debugFlag);
+        positionFlattener.start();
 
-        try {
-            // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
-                int slotNum = Integer.parseInt(keyMap);
-                if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, keyMap, false)) {
-                    TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
-                    if ( (myTradeObject.getTradingContractType().equalsIgnoreCase("FUT") ||
-                            myTradeObject.getTradingContractType().equalsIgnoreCase("STK")) &&
-                            (myTradeObject.getSideAndSize() > 0 ) ) {
-                        if (!(myMIDetails.containsKey(keyMap))) {
-                            myMIDetails.put(keyMap, new MyManualInterventionClass(slotNum, "", 0));
-                        }
-                        setTradeLevelSquareOff(slotNum, actionReason);                        
-                    } else if ( myTradeObject.getTradingContractType().equalsIgnoreCase("OPT") &&
-                            (myTradeObject.getTradingContractOptionRightType().equalsIgnoreCase("CALL") ||
-                            myTradeObject.getTradingContractOptionRightType().equalsIgnoreCase("C")) ) {
-                        if (!(myMIDetails.containsKey(keyMap))) {
-                            myMIDetails.put(keyMap, new MyManualInterventionClass(slotNum, "", 0));
-                        }
-                        setTradeLevelSquareOff(slotNum, actionReason);                        
-                    }
-                }
-            }
-        } catch (JedisException e) {
-            //if something wrong happen, return it back to the pool
-            if (null != jedis) {
-                jedisPool.returnBrokenResource(jedis);
-                jedis = null;
-            }
-        } finally {
-            //Return the Jedis instance to the pool once finished using it  
-            if (null != jedis) {
-                jedisPool.returnResource(jedis);
-            }
-        }
-        
+    }
+
+    void setTradeLevelSquareOffAllOpenLongPositions(String actionReason) {
+        flattenOpenPositions(PositionFlattener.LONGPOSITIONS, actionReason);
     }   
     
     void setTradeLevelSquareOffAllOpenShortPositions(String actionReason) {
-        
-        String openPositionsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "OPENPOSITIONSQUEUE", false);
-        Jedis jedis = jedisPool.getResource();
-
-        try {
-            // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
-                int slotNum = Integer.parseInt(keyMap);
-                if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, keyMap, false)) {
-                    TradingObject myTradeObject = new TradingObject(retrieveMap.get(keyMap));
-                    if ( (myTradeObject.getTradingContractType().equalsIgnoreCase("FUT") ||
-                            myTradeObject.getTradingContractType().equalsIgnoreCase("STK")) &&
-                            (myTradeObject.getSideAndSize() < 0 ) ) {
-                        if (!(myMIDetails.containsKey(keyMap))) {
-                            myMIDetails.put(keyMap, new MyManualInterventionClass(slotNum, "", 0));
-                        }
-                        setTradeLevelSquareOff(slotNum, actionReason);                        
-                    } else if ( myTradeObject.getTradingContractType().equalsIgnoreCase("OPT") &&
-                            (myTradeObject.getTradingContractOptionRightType().equalsIgnoreCase("PUT") ||
-                            myTradeObject.getTradingContractOptionRightType().equalsIgnoreCase("P")) ) {
-                        if (!(myMIDetails.containsKey(keyMap))) {
-                            myMIDetails.put(keyMap, new MyManualInterventionClass(slotNum, "", 0));
-                        }
-                        setTradeLevelSquareOff(slotNum, actionReason);                        
-                    }
-                }
-            }
-        } catch (JedisException e) {
-            //if something wrong happen, return it back to the pool
-            if (null != jedis) {
-                jedisPool.returnBrokenResource(jedis);
-                jedis = null;
-            }
-        } finally {
-            //Return the Jedis instance to the pool once finished using it  
-            if (null != jedis) {
-                jedisPool.returnResource(jedis);
-            }
-        }
-        
+        flattenOpenPositions(PositionFlattener.SHORTPOSITIONS, actionReason);
     }
     
     void setTradeLevelSquareOffAllOpenPositions(String actionReason) {
-
-        String openPositionsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "OPENPOSITIONSQUEUE", false);
-        Jedis jedis = jedisPool.getResource();
-
-        try {
-            // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
-                int slotNum = Integer.parseInt(keyMap);
-                if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, keyMap, false)) {
-                    if (!(myMIDetails.containsKey(keyMap))) {
-                        myMIDetails.put(keyMap, new MyManualInterventionClass(slotNum, "", 0));
-                    }
-                    setTradeLevelSquareOff(slotNum, actionReason);
-                }
-            }
-        } catch (JedisException e) {
-            //if something wrong happen, return it back to the pool
-            if (null != jedis) {
-                jedisPool.returnBrokenResource(jedis);
-                jedis = null;
-            }
-        } finally {
-            //Return the Jedis instance to the pool once finished using it  
-            if (null != jedis) {
-                jedisPool.returnResource(jedis);
-            }
-        }
-
+        flattenOpenPositions(PositionFlattener.ALLPOSITIONS, actionReason);
     }
 
     void setTradeLevelStopMonitoringAllOpenPositions() {
@@ -288,8 +194,7 @@ public class MonitorManualInterventionSignals extends Thread {
 
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
+            for (String keyMap : jedis.hkeys(openPositionsQueueKeyName)) {
                 int slotNum = Integer.parseInt(keyMap);
                 if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, keyMap, false)) {
                     if (!(myMIDetails.containsKey(keyMap))) {
@@ -317,6 +222,7 @@ public class MonitorManualInterventionSignals extends Thread {
         if (myUtils.checkIfExistsHashMapField(jedisPool, redisConfigurationKey, "MAXNUMLONGPOSITIONS", false)) {
             Jedis jedis = jedisPool.getResource();
             jedis.hset(redisConfigurationKey, "MAXNUMLONGPOSITIONS", targetValue);
+            StrategyConfig.publishConfigChange(jedis, redisConfigurationKey);
             jedisPool.returnResource(jedis);
         }
     }
@@ -325,6 +231,7 @@ public class MonitorManualInterventionSignals extends Thread {
         if (myUtils.checkIfExistsHashMapField(jedisPool, redisConfigurationKey, "MAXNUMSHORTPOSITIONS", false)) {
             Jedis jedis = jedisPool.getResource();
             jedis.hset(redisConfigurationKey, "MAXNUMSHORTPOSITIONS", targetValue);
+            StrategyConfig.publishConfigChange(jedis, redisConfigurationKey);
             jedisPool.returnResource(jedis);
         }
     }    
@@ -47,8 +47,10 @@ public class MonitorOpenPositions4Exit extends Thread {
     private String openPositionsQueueKeyName = "INRSTR01OPENPOSITIONS";
 
     public ConcurrentHashMap<String, MyManualInterventionClass> myMIDetails;
+    // exit monitor of each slot, shared with PositionFlattener
+    private ConcurrentHashMap<Integer, SingleLegExit> exitObjectsMap;
 
-    MonitorOpenPositions4Exit(String name, JedisPool redisConnectionPool, String redisConfigKey, MyUtils utils, MyExchangeClass exchangeObj, IBInteraction ibIntClient, ConcurrentHashMap<String, MyManualInterventionClass> miDetails, boolean debugIndicator) {
+    MonitorOpenPositions4Exit(String name, JedisPool redisConnectionPool, String redisConfigKey, MyUtils utils, MyExchangeClass exchangeObj, IBInteraction ibIntClient, ConcurrentHashMap<Integer, SingleLegExit> exitMonitors, ConcurrentHashMap<String, MyManualInterventionClass> miDetails, boolean debugIndicator) {
 
         threadName = name;
         debugFlag = debugIndicator;
@@ -59,6 +61,7 @@ public class MonitorOpenPositions4Exit extends Thread {
         myExchangeObj = exchangeObj;
         myUtils = utils;
         myMIDetails = miDetails;
+        exitObjectsMap = exitMonitors;
         TimeZone.setDefault(myExchangeObj.getExchangeTimeZone());
     }
 
@@ -71,7 +74,6 @@ public class MonitorOpenPositions4Exit extends Thread {
 
         // Market is open. Now start monitoring the open positions queue
         HashMap<Integer, Thread> exitThreadsMap = new HashMap<Integer, Thread>();
-        HashMap<Integer, SingleLegExit> exitObjectsMap = new HashMap<Integer, SingleLegExit>();
 
         int eodExitTime = 1530;
         String eodExitTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "EODEXITTIME", false);
@@ -82,19 +84,19 @@ public class MonitorOpenPositions4Exit extends Thread {
         while (myUtils.marketIsOpen(eodExitTime, myExchangeObj.getExchangeTimeZone(), false)) {
 
             int lastExitOrderTime = myExchangeObj.getExchangeCloseTimeHHMM();
-            String lastExitOrderTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "LASTEXITORDERTIME", false);
-            if ((lastExitOrderTimeConfigValue != null) && (lastExitOrderTimeConfigValue.length() > 0)) {
-                lastExitOrderTime = Integer.parseInt(lastExitOrderTimeConfigValue);
+            StrategyConfig.MyStrategyConfigClass config = ibInteractionClient.strategyConfig.getConfig();
+            if (config.hasField("LASTEXITORDERTIME")) {
+                lastExitOrderTime = config.lastExitOrderTime;
             }
             if (myUtils.marketIsOpen(lastExitOrderTime, myExchangeObj.getExchangeTimeZone(), false)) {
                 Jedis jedis = jedisPool.getResource();
-                Map<String, String> openPositionsMap = jedis.hgetAll(openPositionsQueueKeyName);
+                Map<String, TradingObject> openPositionsMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
                 jedisPool.returnResource(jedis);
 
                 for (String keyMap : openPositionsMap.keySet()) {
                     int slotNumber = Integer.parseInt(keyMap);
 
-                    TradingObject myTradeObject = new TradingObject(openPositionsMap.get(keyMap));
+                    TradingObject myTradeObject = openPositionsMap.get(keyMap);
                     if (myTradeObject.getOrderState().equalsIgnoreCase("entryorderfilled")) {
                         // Check if corresponding thread is running. if not running then start a thread to monitor the position
                         String exitMonitoringThreadName = "monitoringExit4Position_" + Integer.toString(slotNumber);
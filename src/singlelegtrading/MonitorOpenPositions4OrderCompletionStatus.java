@@ -81,13 +81,13 @@ public class MonitorOpenPositions4OrderCompletionStatus extends Thread {
         while (myUtils.marketIsOpen(eodExitTime, myExchangeObj.getExchangeTimeZone(), false)) {
 
             Jedis jedis = jedisPool.getResource();
-            Map<String, String> openPositionsMap = jedis.hgetAll(openPositionsQueueKeyName);
+            Map<String, TradingObject> openPositionsMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
             jedisPool.returnResource(jedis);
 
             for (String keyMap : openPositionsMap.keySet()) {
                 int slotNumber = Integer.parseInt(keyMap);
 
-                TradingObject myTradeObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag));
+                TradingObject myTradeObject = openPositionsMap.get(keyMap);
 
                 if (myTradeObject.getOrderState().equalsIgnoreCase("entryorderinitiated")) {
                     // Inititate the corrective steps if therre is gap of more than 15 minutes between order time and current time
@@ -129,6 +129,7 @@ public class MonitorOpenPositions4OrderCompletionStatus extends Thread {
                                     Calendar cal = Calendar.getInstance(myExchangeObj.getExchangeTimeZone());
                                     cal.setTimeInMillis(ibInteractionClient.myOrderStatusDetails.get(exitOrderID).getUpdateTime());
                                     String exitTimeStamp = String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", cal);
+                                    ibInteractionClient.riskEngine.onExitFill(slotNumber, exitOrderID, exitSpread);
                                     // update the open position as well as closed position queue in Redis to update the details appropriately                            
                                     myUtils.updateAndMoveClosedPositions(jedisPool, openPositionsQueueKeyName, slotNumber, closedPositionsQueueKeyName, exitSpread, exitTimeStamp, exitOrderID, "exitorderfilled", false);
                                 }                                
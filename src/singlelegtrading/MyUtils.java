@@ -29,6 +29,7 @@ import java.text.*;
 import java.util.*;
 import java.util.logging.*;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
 
 /**
@@ -175,27 +176,16 @@ class MyExchangeClass {
 
 }
 
-// Define class to store last updated prices, and time of it
+// Define class to store contract and subscription status of a streaming market data request.
+// Prices of the request are kept in IBInteraction.myTickStore
 class MyTickObjClass {
 
-    private int requestId, symbolLastVolume;
-    private double symbolLastPrice, symbolClosePrice, symbolBidPrice, symbolAskPrice;
-    private long lastVolumeUpdateTime, lastPriceUpdateTime, closePriceUpdateTime, bidPriceUpdateTime, askPriceUpdateTime;
+    private int requestId;
     private boolean subscriptionStatus;
     private Contract contractDet = new Contract();
 
     public MyTickObjClass(int requestId) {
         this.requestId = requestId;
-        this.symbolLastVolume = 0;
-        this.symbolLastPrice = 0.0;
-        this.symbolClosePrice = 0.0;
-        this.symbolBidPrice = 0.0;
-        this.symbolAskPrice = 0.0;
-        this.lastVolumeUpdateTime = -1;
-        this.lastPriceUpdateTime = -1;
-        this.closePriceUpdateTime = -1;
-        this.bidPriceUpdateTime = -1;
-        this.askPriceUpdateTime = -1;
         this.subscriptionStatus = false;
     }
 
@@ -203,46 +193,6 @@ class MyTickObjClass {
         return this.requestId;
     }
 
-    public int getSymbolLastVolume() {
-        return this.symbolLastVolume;
-    }
-
-    public double getSymbolLastPrice() {
-        return this.symbolLastPrice;
-    }
-
-    public double getSymbolClosePrice() {
-        return this.symbolClosePrice;
-    }
-
-    public double getSymbolBidPrice() {
-        return this.symbolBidPrice;
-    }
-
-    public double getSymbolAskPrice() {
-        return this.symbolAskPrice;
-    }
-
-    public long getLastVolumeUpdateTime() {
-        return this.lastVolumeUpdateTime;
-    }
-
-    public long getLastPriceUpdateTime() {
-        return this.lastPriceUpdateTime;
-    }
-
-    public long getClosePriceUpdateTime() {
-        return this.closePriceUpdateTime;
-    }
-
-    public long getBidPriceUpdateTime() {
-        return this.bidPriceUpdateTime;
-    }
-
-    public long getAskPriceUpdateTime() {
-        return this.askPriceUpdateTime;
-    }
-
     public boolean getSubscriptionStatus() {
         return this.subscriptionStatus;
     }
@@ -259,46 +209,6 @@ class MyTickObjClass {
         this.requestId = requestId;
     }
 
-    public void setSymbolLastVolume(int volume) {
-        this.symbolLastVolume = volume;
-    }
-
-    public void setSymbolLastPrice(double price) {
-        this.symbolLastPrice = price;
-    }
-
-    public void setSymbolClosePrice(double price) {
-        this.symbolClosePrice = price;
-    }
-
-    public void setSymbolBidPrice(double price) {
-        this.symbolBidPrice = price;
-    }
-
-    public void setSymbolAskPrice(double price) {
-        this.symbolAskPrice = price;
-    }
-
-    public void setLastVolumeUpdateTime(long time) {
-        this.lastVolumeUpdateTime = time;
-    }
-
-    public void setLastPriceUpdateTime(long time) {
-        this.lastPriceUpdateTime = time;
-    }
-
-    public void setClosePriceUpdateTime(long time) {
-        this.closePriceUpdateTime = time;
-    }
-
-    public void setBidPriceUpdateTime(long time) {
-        this.bidPriceUpdateTime = time;
-    }
-
-    public void setAskPriceUpdateTime(long time) {
-        this.askPriceUpdateTime = time;
-    }
-
     public void setSubscriptionStatus(boolean subscriptionStatus) {
         this.subscriptionStatus = subscriptionStatus;
     }
@@ -441,6 +351,8 @@ class MyOrderStatusObjClass {
     private String uniqueExecutionId, orderReference;
     private Contract contractDet = new Contract();
     private String ibOrderStatus;
+    // commission of each execution of the order, by execId; commissionAmount is their total
+    private Map<String, Double> executionCommissions;
     
     public MyOrderStatusObjClass(int orderId) {
         this.orderId = orderId;
@@ -522,6 +434,16 @@ class MyOrderStatusObjClass {
     public void setCommissionAmount(double commissionAmt) {
         this.commissionAmount = commissionAmt;
     }
+
+    // Records commission of one execution, replacing any earlier report for it, and returns the order's total
+    public double addExecutionCommission(String executionId, double commissionAmt) {
+        if (this.executionCommissions == null) {
+            this.executionCommissions = new HashMap<String, Double>(4);
+        }
+        Double previousAmt = this.executionCommissions.put(executionId, commissionAmt);
+        this.commissionAmount += commissionAmt - ((previousAmt == null) ? 0.0 : previousAmt);
+        return this.commissionAmount;
+    }
     
     public void setRemainingQuantity(int quantity) {
         this.remainingQuantity = quantity;
@@ -599,6 +521,19 @@ public class MyUtils {
     public Object lockOpenPosSlotChange = new Object();
     public Object lockClosedPosSlotChange = new Object();    
 
+    // Finds the first slot from ARGV[1] onwards not present in open positions hash KEYS[1] and writes ARGV[2] to it.
+    // Runs atomically inside Redis, so concurrent entry threads or processes never get the same slot.
+    private static final String BLOCKFREESLOTSCRIPT =
+            "local slot = tonumber(ARGV[1]) "
+            + "while redis.call('HEXISTS', KEYS[1], tostring(slot)) == 1 do slot = slot + 1 end "
+            + "redis.call('HSET', KEYS[1], tostring(slot), ARGV[2]) "
+            + "return slot";
+    // SHA1 of BLOCKFREESLOTSCRIPT once loaded into Redis
+    private volatile String blockFreeSlotScriptSha = null;
+
+    // Format new and rewritten position records are written in. Records of either format are read
+    private volatile int positionRecordFormat = TradingObjectCodec.FORMATCSV;
+
     public void waitForNSeconds(int numSeconds) {
 
         try {
@@ -758,6 +693,76 @@ public class MyUtils {
         return (retValue);
     } //End of method  
 
+    public void setPositionRecordFormat(int recordFormat) {
+        positionRecordFormat = recordFormat;
+    }
+
+    public int getPositionRecordFormat() {
+        return (positionRecordFormat);
+    }
+
+    // Position records are read and written with the byte[] commands of Jedis. The String commands would
+    // mangle binary records
+    static byte[] getRedisBytes(String text) {
+        return (text.getBytes(TradingObjectCodec.UTF8));
+    }
+
+    byte[] encodePositionRecord(TradingObject position) {
+        return (TradingObjectCodec.encode(position, positionRecordFormat));
+    }
+
+    // Record as it is if already in the configured format, else rewritten in it
+    byte[] migratePositionRecord(byte[] record) {
+        if (TradingObjectCodec.isBinary(record) == (positionRecordFormat == TradingObjectCodec.FORMATBINARY)) {
+            return (record);
+        }
+        return (encodePositionRecord(TradingObjectCodec.decode(record)));
+    }
+
+    // Position at slotNumber of given queue. null if slot is empty or Redis could not be reached
+    TradingObject getPositionFromRedis(JedisPool jedisPool, String queueKeyName, int slotNumber, boolean debugFlag) {
+
+        byte[] record = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            record = jedis.hget(getRedisBytes(queueKeyName), getRedisBytes(Integer.toString(slotNumber)));
+        } catch (JedisException e) {
+            System.out.println("Exception Caught while reading slot " + slotNumber + " of " + queueKeyName + ". Message : " + e.getMessage());
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        if (debugFlag && (record == null)) {
+            System.out.println("No position in slot " + slotNumber + " of " + queueKeyName);
+        }
+
+        return (TradingObjectCodec.decode(record));
+    }
+
+    // All positions of given queue by slot or index number
+    Map<String, TradingObject> getAllPositionsFromRedis(Jedis jedis, String queueKeyName) {
+
+        Map<byte[], byte[]> records = jedis.hgetAll(getRedisBytes(queueKeyName));
+        Map<String, TradingObject> positions = new HashMap<String, TradingObject>();
+        for (Map.Entry<byte[], byte[]> record : records.entrySet()) {
+            positions.put(new String(record.getKey(), TradingObjectCodec.UTF8), TradingObjectCodec.decode(record.getValue()));
+        }
+
+        return (positions);
+    }
+
+    void putPositionInRedis(Jedis jedis, String queueKeyName, int slotNumber, TradingObject position) {
+        jedis.hset(getRedisBytes(queueKeyName), getRedisBytes(Integer.toString(slotNumber)), encodePositionRecord(position));
+    }
+
+    // Also rewrites open positions in the configured position record format
     public void defragmentOpenPositionsQueue(JedisPool jedisPool, String redisConfigurationKey, boolean debugFlag) {
 
         Jedis jedis;
@@ -768,16 +773,17 @@ public class MyUtils {
             System.out.println(" Maximum Allowed Positions " + maxNumPositions);
         }
 
-        Map<String, String> updatedMap = new HashMap<String, String>();
+        Map<byte[], byte[]> updatedMap = new HashMap<byte[], byte[]>();
         int targetSlotNum = 1;
         jedis = jedisPool.getResource();
         try {
             // retrieve open position map from redis  
-            Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-            for (String keyMap : retrieveMap.keySet()) {
-                updatedMap.put(Integer.toString(targetSlotNum), retrieveMap.get(keyMap));
+            Map<byte[], byte[]> retrieveMap = jedis.hgetAll(getRedisBytes(openPositionsQueueKeyName));
+            for (Map.Entry<byte[], byte[]> record : retrieveMap.entrySet()) {
+                updatedMap.put(getRedisBytes(Integer.toString(targetSlotNum)), migratePositionRecord(record.getValue()));
                 if (debugFlag) {
-                    System.out.println(" Got Open Positions for Slot Number : " + keyMap + " position details " + retrieveMap.get(keyMap));
+                    String keyMap = new String(record.getKey(), TradingObjectCodec.UTF8);
+                    System.out.println(" Got Open Positions for Slot Number : " + keyMap + " position details " + TradingObjectCodec.decode(record.getValue()).getCompleteTradingObjectString());
                     System.out.println(" Targeting move from Slot Number : " + keyMap + " to " + targetSlotNum);
                 }
                 targetSlotNum++;
@@ -800,12 +806,11 @@ public class MyUtils {
             try {
                 //empty the Redis Map 
                 // retrieve open position map from redis  
-                Map<String, String> retrieveMap = jedis.hgetAll(openPositionsQueueKeyName);
-                for (String keyMap : retrieveMap.keySet()) {
+                for (String keyMap : jedis.hkeys(openPositionsQueueKeyName)) {
                     jedis.hdel(openPositionsQueueKeyName, keyMap);
                 }
                 //save updated map to redis                
-                jedis.hmset(openPositionsQueueKeyName, updatedMap);
+                jedis.hmset(getRedisBytes(openPositionsQueueKeyName), updatedMap);
             } catch (JedisException e) {
                 //if something wrong happen, return it back to the pool
                 if (null != jedis) {
@@ -823,6 +828,7 @@ public class MyUtils {
 
     } // End of method
 
+    // Archived positions are written in the configured position record format
     public void moveCurrentClosedPositions2ArchiveQueue(JedisPool jedisPool, String redisConfigurationKey, boolean debugFlag) {
 
         String closedPositionsQueueKeyName = getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "CLOSEDPOSITIONSQUEUE", debugFlag);
@@ -837,12 +843,12 @@ public class MyUtils {
         int indexNumber = 1;
         while (checkIfExistsHashMapField(jedisPool, closedPositionsQueueKeyName, Integer.toString(indexNumber), debugFlag)) {
             // Move from Closed Positions Queue to Archived Positions Queue
-            // read the trade details from closed positions queue
-            String tradeDetails = getHashMapValueFromRedis(jedisPool, closedPositionsQueueKeyName, Integer.toString(indexNumber), debugFlag);
             // Update the Archived Queue at archive Index
             synchronized(lockClosedPosSlotChange) {
                 Jedis jedis = jedisPool.getResource();
-                jedis.hset(archivePositionsQueueKeyName, Integer.toString(archivedQueueIndex), tradeDetails);
+                // read the trade details from closed positions queue
+                byte[] tradeDetails = jedis.hget(getRedisBytes(closedPositionsQueueKeyName), getRedisBytes(Integer.toString(indexNumber)));
+                jedis.hset(getRedisBytes(archivePositionsQueueKeyName), getRedisBytes(Integer.toString(archivedQueueIndex)), migratePositionRecord(tradeDetails));
                 // Delete from Closed Positions Queue
                 jedis.hdel(closedPositionsQueueKeyName, Integer.toString(indexNumber));
                 jedisPool.returnResource(jedis);
@@ -855,7 +861,8 @@ public class MyUtils {
 
     }
 
-    public int getNextOrderID(JedisPool jedisPool, String keyName, boolean debugFlag) {
+    // Reserves blockSize order IDs with one INCRBY and returns the last of them, or -1 on failure
+    public int reserveOrderIDBlock(JedisPool jedisPool, String keyName, int blockSize, boolean debugFlag) {
 
         int retOrderID = -1;
         int noOfAttempts = 1;
@@ -867,7 +874,7 @@ public class MyUtils {
             noOfAttempts++;
             exceptionCaught = false;
             try {
-                incrementedVal = jedis.incr(keyName);
+                incrementedVal = jedis.incrBy(keyName, blockSize);
             } catch (Exception ex) {
                 // print exception caught
                 exceptionCaught = true;
@@ -876,19 +883,23 @@ public class MyUtils {
         }
         if (exceptionCaught) {
             if (debugFlag) {
-                System.out.println("Caught Exception while incrementing OrderID " + keyName + " on attempt number " + noOfAttempts);
+                System.out.println("Caught Exception while reserving OrderID block of " + keyName + " on attempt number " + noOfAttempts);
             }
             // wait for few milliseconds before retrying or exiting
             waitForNMiliSeconds(100);
         } else {
             retOrderID = (int) incrementedVal;
+            if (debugFlag) {
+                System.out.println("Reserved order IDs " + (retOrderID - blockSize + 1) + " to " + retOrderID + " from Key : " + keyName);
+            }
         }
 
         jedisPool.returnResource(jedis);
         return (retOrderID);
     }
 
-    public boolean setNextOrderID(JedisPool jedisPool, String keyName, int orderIdValue, boolean debugFlag) {
+    // Increments the order ID key up to orderIdValue if it is lower, never decreasing it
+    public boolean raiseOrderIDTo(JedisPool jedisPool, String keyName, int orderIdValue, boolean debugFlag) {
 
         boolean successStatus = false;
         int noOfAttempts = 1;
@@ -899,9 +910,14 @@ public class MyUtils {
             noOfAttempts++;
             exceptionCaught = false;
             try {
-                jedis.set(keyName, Integer.toString(orderIdValue));
+                String currentValue = jedis.get(keyName);
+                long currentOrderID = (currentValue == null) ? 0 : Long.parseLong(currentValue);
+                if (currentOrderID < orderIdValue) {
+                    // INCRBY rather than SET so that a block reserved meanwhile is not handed out again
+                    jedis.incrBy(keyName, orderIdValue - currentOrderID);
+                }
                 if (debugFlag) {
-                    System.out.println("Setting order ID filed for Key : " + keyName + " orderId : " + orderIdValue);
+                    System.out.println("Raising order ID field for Key : " + keyName + " from " + currentOrderID + " to at least " + orderIdValue);
                 }
             } catch (Exception ex) {
                 // print exception caught
@@ -911,7 +927,7 @@ public class MyUtils {
         }
         if (exceptionCaught) {
             if (debugFlag) {
-                System.out.println("Caught Exception while Setting OrderID " + keyName + " on attempt number " + noOfAttempts);
+                System.out.println("Caught Exception while Raising OrderID " + keyName + " on attempt number " + noOfAttempts);
             }
             // wait for few milliseconds before retrying or exiting
             waitForNMiliSeconds(100);
@@ -1013,74 +1029,6 @@ public class MyUtils {
         return (returnValue);
     }
 
-    int calcElapsedBars(JedisPool jedisPool, String startTime, String currentTime, MyExchangeClass exchangeObj, String exchangeHolidayListKeyName, boolean debugFlag) {
-
-        int elapsedBars = 0;
-
-        TimeZone.setDefault(exchangeObj.getExchangeTimeZone());
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
-        Calendar startTS = Calendar.getInstance(exchangeObj.getExchangeTimeZone());
-        try {
-            startTS.setTime(sdf.parse(startTime));
-        } catch (ParseException ex) {
-            elapsedBars = -1;
-            Logger.getLogger(MyUtils.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        Calendar currentTS = Calendar.getInstance(exchangeObj.getExchangeTimeZone());
-        try {
-            currentTS.setTime(sdf.parse(currentTime));
-        } catch (ParseException ex) {
-            elapsedBars = -1;
-            Logger.getLogger(MyUtils.class.getName()).log(Level.SEVERE, null, ex);
-        }
-
-        if (elapsedBars == 0) {
-            if (startTS.after(currentTS)) {
-                elapsedBars = -1;
-            } else if (startTS.equals(currentTS)) {
-                elapsedBars = 0;
-            } else {
-                int elapsedMinutes = 0;
-                while (startTS.before(currentTS)) {
-                    elapsedMinutes++;
-                    startTS = incrementTimeStampByOneTradingMinute(startTS, getKeyValueFromRedis(jedisPool, exchangeHolidayListKeyName, false), exchangeObj);
-                }
-                elapsedBars = elapsedMinutes / 10;
-                if (debugFlag) {
-                    System.out.println("Elapsed Minutes :" + elapsedMinutes + " Elapsed Bars :" + elapsedBars);
-                }
-            }
-
-        }
-
-        return (elapsedBars);
-    }
-
-    Calendar incrementTimeStampByOneTradingMinute(Calendar timeStamp, String holidayList, MyExchangeClass exchangeObj) {
-
-        Calendar retTimeStamp = timeStamp;
-
-        // Increment time stamp by one minute
-        retTimeStamp.add(Calendar.MINUTE, 1);
-
-        int exchangeOpeningHour = exchangeObj.getExchangeStartTimeHHMM() / 100;
-        int exchangeOpeningMinute = exchangeObj.getExchangeStartTimeHHMM() % 100;
-        int exchangeClosingTimeHHMM = exchangeObj.getExchangeCloseTimeHHMM();
-
-        // Bring the minute to trading range
-        if (Integer.parseInt(String.format("%1$tH%1$tM", retTimeStamp)) >= exchangeClosingTimeHHMM) {
-            retTimeStamp.add(Calendar.DATE, 1);
-            retTimeStamp.set(Calendar.HOUR_OF_DAY, exchangeOpeningHour);
-            retTimeStamp.set(Calendar.MINUTE, exchangeOpeningMinute);
-        }
-
-        while (fallsOnExchangeHoliday("", holidayList, retTimeStamp, false)) {
-            retTimeStamp.add(Calendar.DATE, 1);
-        }
-
-        return (retTimeStamp);
-    }
-
     void unblockOpenPositionSlot(JedisPool jedisPool, String queueKeyName, int slotNumber) {
 
         synchronized (this.lockOpenPosSlotChange) {
@@ -1092,6 +1040,51 @@ public class MyUtils {
 
     }
 
+    // Writes slotDetails to the first free open position slot numbered minimumSlotNumber or above in a single
+    // round trip to Redis. Returns the slot number written, or -1 if Redis could not be reached.
+    int blockFreeOpenPositionSlot(JedisPool jedisPool, String queueKeyName, int minimumSlotNumber, TradingObject slotDetails, boolean debugFlag) {
+
+        int slotNumber = -1;
+        List<byte[]> keys = Collections.singletonList(getRedisBytes(queueKeyName));
+        List<byte[]> args = Arrays.asList(getRedisBytes(Integer.toString(minimumSlotNumber)), encodePositionRecord(slotDetails));
+        Jedis jedis = jedisPool.getResource();
+        try {
+            Object result;
+            String scriptSha = blockFreeSlotScriptSha;
+            if (scriptSha == null) {
+                scriptSha = jedis.scriptLoad(BLOCKFREESLOTSCRIPT);
+                blockFreeSlotScriptSha = scriptSha;
+            }
+            try {
+                result = jedis.evalsha(getRedisBytes(scriptSha), keys, args);
+            } catch (JedisDataException ex) {
+                // script cache of Redis flushed or Redis restarted; EVAL loads it again
+                if ((ex.getMessage() == null) || (!(ex.getMessage().startsWith("NOSCRIPT")))) {
+                    throw ex;
+                }
+                result = jedis.eval(getRedisBytes(BLOCKFREESLOTSCRIPT), keys, args);
+            }
+            slotNumber = ((Long) result).intValue();
+        } catch (JedisException e) {
+            System.out.println("Exception Caught while blocking open position slot in " + queueKeyName + ". Message : " + e.getMessage());
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        if (debugFlag) {
+            System.out.println("Blocked open position slot " + slotNumber + " of " + queueKeyName + " searching from slot " + minimumSlotNumber);
+        }
+
+        return (slotNumber);
+    }
+
     boolean checkIfStaleMessage(String entryTimeStamp, String currentTimeStamp, int differenceInMinutes) {
         boolean returnValue = false;
 
@@ -1121,9 +1114,8 @@ public class MyUtils {
     void updateAndMoveClosedPositions(JedisPool jedisPool, String openPositionsQueueKeyName, int openPosSlotNumber, String closedPositionsQueueKeyName, double exitSpread, String exitTimeStamp, int exitOrderId, String orderState, boolean debugFlag) {
 
         Jedis jedis;
-        String myLegDetails = getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(openPosSlotNumber), debugFlag);
         // update Redis queues with squared off order details
-        TradingObject myTradeObject = new TradingObject(myLegDetails);
+        TradingObject myTradeObject = getPositionFromRedis(jedisPool, openPositionsQueueKeyName, openPosSlotNumber, debugFlag);
         if (exitOrderId > 0) {
             myTradeObject.setExitSpread(exitSpread);
         }
@@ -1149,7 +1141,7 @@ public class MyUtils {
             }
             // Update the closed position with exit Details Signal
             jedis = jedisPool.getResource();
-            jedis.hset(closedPositionsQueueKeyName, Integer.toString(indexNumber), myTradeObject.getCompleteTradingObjectString());
+            putPositionInRedis(jedis, closedPositionsQueueKeyName, indexNumber, myTradeObject);
             jedisPool.returnResource(jedis);            
         }
         synchronized (lockOpenPosSlotChange) {
@@ -1162,7 +1154,7 @@ public class MyUtils {
     
     void updateExitPositionStatusInQueues(JedisPool jedisPool, String openPositionsQueueKeyName, int openPosSlotNumber, String closedPositionsQueueKeyName, double exitSpread, String exitTimeStamp, int exitOrderId, String orderState, String bidAskDetails, boolean debugFlag) {
 
-        String myLegDetails = getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(openPosSlotNumber), debugFlag);
+        TradingObject myLegDetails = getPositionFromRedis(jedisPool, openPositionsQueueKeyName, openPosSlotNumber, debugFlag);
         if (orderState.equalsIgnoreCase("exitorderfilled")) {
             // update Redis queues with squared off order
             updateClosedPositionsQueueWithCompletelyFilledOrderStatus(jedisPool, closedPositionsQueueKeyName, myLegDetails, exitSpread, exitTimeStamp, exitOrderId, bidAskDetails, debugFlag);
@@ -1178,9 +1170,7 @@ public class MyUtils {
         }
     }
 
-    void updateOpenPositionsQueueWithIncompletelyFilledOrderStatus(JedisPool jedisPool, String queueKeyName, int slotNumber, String updateDetails, double exitSpread, String exitTimeStamp, int exitOrderId, String bidAskDetails, boolean debugFlag) {
-
-        TradingObject myTradeObject = new TradingObject(updateDetails);
+    void updateOpenPositionsQueueWithIncompletelyFilledOrderStatus(JedisPool jedisPool, String queueKeyName, int slotNumber, TradingObject myTradeObject, double exitSpread, String exitTimeStamp, int exitOrderId, String bidAskDetails, boolean debugFlag) {
 
         myTradeObject.setExitSpread(exitSpread);
         myTradeObject.setExitTimeStamp(exitTimeStamp);
@@ -1194,15 +1184,14 @@ public class MyUtils {
         synchronized (lockOpenPosSlotChange) {
             // Update the closed position with exit Details Signal
             Jedis jedis = jedisPool.getResource();
-            jedis.hset(queueKeyName, Integer.toString(slotNumber), myTradeObject.getCompleteTradingObjectString());
+            putPositionInRedis(jedis, queueKeyName, slotNumber, myTradeObject);
             jedisPool.returnResource(jedis);            
         }
 
     }
 
-    void updateClosedPositionsQueueWithCompletelyFilledOrderStatus(JedisPool jedisPool, String queueKeyName, String updateDetails, double exitSpread, String exitTimeStamp, int exitOrderId, String bidAskDetails, boolean debugFlag) {
+    void updateClosedPositionsQueueWithCompletelyFilledOrderStatus(JedisPool jedisPool, String queueKeyName, TradingObject myTradeObject, double exitSpread, String exitTimeStamp, int exitOrderId, String bidAskDetails, boolean debugFlag) {
 
-        TradingObject myTradeObject = new TradingObject(updateDetails);
         myTradeObject.setExitSpread(exitSpread);
         myTradeObject.setExitTimeStamp(exitTimeStamp);
         myTradeObject.setExitOrderIDs(exitOrderId);
@@ -1224,74 +1213,11 @@ public class MyUtils {
             }
             // Update the closed position with exit Details Signal
             Jedis jedis = jedisPool.getResource();
-            jedis.hset(queueKeyName, Integer.toString(indexNumber), myTradeObject.getCompleteTradingObjectString());
+            putPositionInRedis(jedis, queueKeyName, indexNumber, myTradeObject);
             jedisPool.returnResource(jedis);            
         }
     }
     
-    public void getOrderDetails2LocalDB(JedisPool jedisPool, String redisConfigurationKey, IBInteraction ibInteractionClient, boolean debugFlag) {
-
-        int requestId = ibInteractionClient.getNextRequestId();
-        ibInteractionClient.requestExecutionDetailsHistorical(requestId, 30);
-        // wait till details are received OR for timeuut to happen
-        int timeOut = 0;
-        while ((timeOut < 301)
-                && (!(ibInteractionClient.requestsCompletionStatus.get(requestId)) ) ) {
-            waitForNSeconds(5);
-            timeOut = timeOut + 5;
-        }
-
-        Jedis jedis = jedisPool.getResource();
-        try {
-            
-            String strategyName = getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "STRATEGYNAME", false);
-            // retrieve map from redis
-            jedis.select(1); // move to database 1
-            Map<String, String> orderId2UniqueExecutionMapping = jedis.hgetAll(strategyName + "ORDERID2UNIQUEEXECUTIONIDMAPPING");
-            Map<String, String> orderExecutionRecords = jedis.hgetAll(strategyName + "IBORDEREXECUTIONRECORDS"); 
-
-            for (int orderId : ibInteractionClient.myOrderStatusDetails.keySet()) {            
-                orderId2UniqueExecutionMapping.put(Integer.toString(orderId), ibInteractionClient.myOrderStatusDetails.get(orderId).getUniqueExecutionId());
-
-                // Form the string to record Execution details in Local DB - Redis in this case
-                String orderExecutionDetails = 
-                        Integer.toString(orderId) + "," +
-                        Double.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getFilledPrice()) + "," +
-                        Integer.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getFilledQuantity()) + "," +
-                        Double.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getAveragePrice()) + "," +
-                        Integer.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getRemainingQuantity()) + "," +
-                        Double.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getCommissionAmount()) + "," +
-                        convertTime(ibInteractionClient.myOrderStatusDetails.get(orderId).getUpdateTime()) + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getOrderReference() + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_symbol + "," +                        
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_secType + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_expiry + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_right + "," +
-                        Double.toString(ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_strike) + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_secId + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_secIdType + "," +                        
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_exchange + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_currency + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_primaryExch + "," +
-                        ibInteractionClient.myOrderStatusDetails.get(orderId).getContractDet().m_localSymbol;                        
-                orderExecutionRecords.put(ibInteractionClient.myOrderStatusDetails.get(orderId).getUniqueExecutionId(), orderExecutionDetails);
-            }
-            jedis.hmset(strategyName + "ORDERID2UNIQUEEXECUTIONIDMAPPING", orderId2UniqueExecutionMapping);
-            jedis.hmset(strategyName + "IBORDEREXECUTIONRECORDS", orderExecutionRecords);
-        } catch (JedisException e) {
-            //if something wrong happen, return it back to the pool
-            if (null != jedis) {
-                jedisPool.returnBrokenResource(jedis);
-                jedis = null;
-            }
-        } finally {
-            //Return the Jedis instance to the pool once finished using it  
-            if (null != jedis) {
-                jedisPool.returnResource(jedis);
-            }
-        }               
-    }
-
     public String convertTime(long time){
         Date date = new Date(time);
         Format format = new SimpleDateFormat("yyyyMMddHHmmss");
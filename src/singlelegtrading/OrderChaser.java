@@ -0,0 +1,298 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import com.ib.client.Contract;
+import com.ib.client.Order;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Works relative (REL) orders till they fill instead of leaving them pegged
+ * behind a market that has moved away. While the entry or exit thread waits
+ * for its order, the order is re-priced every chase interval by sending it
+ * again under the same order Id with a larger offset, i.e. pegged more
+ * aggressively into the spread, but not beyond the opposite side of the
+ * current bid / ask and not beyond the optional price cap from the price at
+ * placement. After the configured number of steps the order is converted
+ * to a market order. Chasing is off till an interval and a number of steps
+ * are set.
+ *
+ * Bid / ask is read from the streaming subscription of the contract when
+ * there is one, else from snapshots requested into the waiting slot. Time to
+ * fill and slippage against the mid price at placement are reported for
+ * every chased order and summed up across orders.
+ *
+ * @author Manish Kumar Singh
+ */
+public class OrderChaser {
+
+    public static final int DEFAULTCHASEINTERVALSECONDS = 0;
+    public static final int DEFAULTMAXCHASESTEPS = 0;
+
+    private IBInteraction ibInteractionClient;
+    private TimeZone exchangeTimeZone;
+
+    // zero interval or steps disables chasing; zero step amount steps by the initial offset; zero cap is no cap
+    private volatile int chaseIntervalSeconds = DEFAULTCHASEINTERVALSECONDS;
+    private volatile int maxChaseSteps = DEFAULTMAXCHASESTEPS;
+    private volatile double chaseStepAmount = 0.0;
+    private volatile double maxChaseAmount = 0.0;
+
+    // Define class to hold a relative order being worked
+    private static class MyChasedOrderClass {
+
+        int orderId;
+        Contract contract;
+        Order order;
+        double initialOffset;
+        double arrivalPrice;
+        long placedTime;
+        int steps;
+        boolean escalated;
+    }
+
+    private ConcurrentHashMap<Integer, MyChasedOrderClass> chasedOrders = new ConcurrentHashMap<Integer, MyChasedOrderClass>();
+
+    // following are guarded by this
+    private long numOrders = 0;
+    private long numFilled = 0;
+    private long numEscalated = 0;
+    private long totalSteps = 0;
+    private long totalFillMillis = 0;
+    private long maxFillMillis = 0;
+    private double totalSlippageAmount = 0.0;
+
+    OrderChaser(IBInteraction ibInterClient, TimeZone exTZ) {
+
+        ibInteractionClient = ibInterClient;
+        exchangeTimeZone = exTZ;
+
+    }
+
+    void setChaseLimits(int intervalSeconds, int maxSteps, double stepAmount, double maxAmount) {
+
+        chaseIntervalSeconds = Math.max(0, intervalSeconds);
+        maxChaseSteps = Math.max(0, maxSteps);
+        chaseStepAmount = Math.max(0.0, stepAmount);
+        maxChaseAmount = Math.max(0.0, maxAmount);
+
+    } // End of setChaseLimits()
+
+    // Called by IBInteraction as a relative order is placed
+    void register(int orderId, Contract contract, Order order) {
+
+        MyChasedOrderClass chasedOrder = new MyChasedOrderClass();
+        chasedOrder.orderId = orderId;
+        chasedOrder.contract = contract;
+        chasedOrder.order = order;
+        chasedOrder.initialOffset = order.m_auxPrice;
+        chasedOrder.placedTime = System.currentTimeMillis();
+        double[] bidAsk = new double[2];
+        if (readBidAsk(contract, -1, bidAsk)) {
+            chasedOrder.arrivalPrice = (bidAsk[0] + bidAsk[1]) / 2;
+        }
+        chasedOrders.put(orderId, chasedOrder);
+
+    } // End of register()
+
+    // Waits up to maxWaitSeconds for given order to complete, chasing it if it is a registered relative order.
+    // bidAskSlot is the slot whose snapshot bid / ask is used when the contract has no streaming subscription.
+    MyOrderStatusObjClass awaitOrderCompletion(int orderId, int bidAskSlot, int maxWaitSeconds, boolean debugFlag) {
+
+        MyChasedOrderClass chasedOrder = chasedOrders.remove(orderId);
+        if ((chasedOrder == null) || (chaseIntervalSeconds <= 0) || (maxChaseSteps <= 0)) {
+            return (ibInteractionClient.awaitOrderCompletion(orderId, maxWaitSeconds, debugFlag));
+        }
+
+        CompletableFuture<MyOrderStatusObjClass> completion = ibInteractionClient.getOrderCompletion(orderId);
+        MyOrderStatusObjClass orderStatus = null;
+        long deadline = System.currentTimeMillis() + maxWaitSeconds * 1000L;
+        double[] bidAsk = new double[2];
+        refreshBidAsk(chasedOrder, bidAskSlot);
+        while ((orderStatus == null) && (!(chasedOrder.escalated)) && (System.currentTimeMillis() < deadline)) {
+            try {
+                orderStatus = completion.get(Math.min(chaseIntervalSeconds * 1000L, Math.max(1, deadline - System.currentTimeMillis())), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                boolean haveBidAsk = readBidAsk(chasedOrder.contract, bidAskSlot, bidAsk);
+                if ((chasedOrder.arrivalPrice <= 0) && haveBidAsk) {
+                    chasedOrder.arrivalPrice = (bidAsk[0] + bidAsk[1]) / 2;
+                }
+                if (chasedOrder.steps < maxChaseSteps) {
+                    reprice(chasedOrder, haveBidAsk ? bidAsk : null, debugFlag);
+                    refreshBidAsk(chasedOrder, bidAskSlot);
+                } else {
+                    escalate(chasedOrder, debugFlag);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                break;
+            }
+        }
+        if ((orderStatus == null) && chasedOrder.escalated) {
+            // market order now; wait for it like any other order
+            int remainingSeconds = (int) Math.max(1, (deadline - System.currentTimeMillis()) / 1000);
+            orderStatus = ibInteractionClient.awaitOrderCompletion(orderId, remainingSeconds, debugFlag);
+        }
+
+        recordCompletion(chasedOrder, orderStatus);
+        return (orderStatus);
+
+    } // End of awaitOrderCompletion()
+
+    private void reprice(MyChasedOrderClass chasedOrder, double[] bidAsk, boolean debugFlag) {
+
+        chasedOrder.steps++;
+        double stepAmount = (chaseStepAmount > 0) ? chaseStepAmount : chasedOrder.initialOffset;
+        Order newOrder = copyOrder(chasedOrder.order);
+        newOrder.m_auxPrice = chasedOrder.initialOffset + chasedOrder.steps * stepAmount;
+        if ((bidAsk != null) && (bidAsk[1] > bidAsk[0])) {
+            // an offset of the full spread already pegs to the opposite side
+            newOrder.m_auxPrice = Math.min(newOrder.m_auxPrice, bidAsk[1] - bidAsk[0]);
+        }
+        if ((maxChaseAmount > 0) && (chasedOrder.arrivalPrice > 0)) {
+            newOrder.m_lmtPrice = chasedOrder.arrivalPrice + getSide(newOrder) * maxChaseAmount;
+        }
+        chasedOrder.order = newOrder;
+        ibInteractionClient.modifyOrder(chasedOrder.orderId, chasedOrder.contract, newOrder);
+
+        if (debugFlag) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Chasing Order id " + chasedOrder.orderId + " step " + chasedOrder.steps + " of " + maxChaseSteps + " offset " + newOrder.m_auxPrice + " limit " + newOrder.m_lmtPrice + ((bidAsk != null) ? " bid " + bidAsk[0] + " ask " + bidAsk[1] : ""));
+        }
+
+    } // End of reprice()
+
+    private void escalate(MyChasedOrderClass chasedOrder, boolean debugFlag) {
+
+        chasedOrder.escalated = true;
+        Order newOrder = copyOrder(chasedOrder.order);
+        newOrder.m_orderType = "MKT";
+        newOrder.m_lmtPrice = 0;
+        newOrder.m_auxPrice = 0;
+        chasedOrder.order = newOrder;
+        ibInteractionClient.modifyOrder(chasedOrder.orderId, chasedOrder.contract, newOrder);
+
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Converted Order id " + chasedOrder.orderId + " for " + chasedOrder.contract.m_symbol + " to market after " + chasedOrder.steps + " chase steps");
+
+    } // End of escalate()
+
+    private Order copyOrder(Order order) {
+
+        Order newOrder = new Order();
+        newOrder.m_action = order.m_action;
+        newOrder.m_totalQuantity = order.m_totalQuantity;
+        newOrder.m_orderType = order.m_orderType;
+        newOrder.m_lmtPrice = order.m_lmtPrice;
+        newOrder.m_auxPrice = order.m_auxPrice;
+        newOrder.m_tif = order.m_tif;
+        newOrder.m_orderRef = order.m_orderRef;
+        newOrder.m_transmit = order.m_transmit;
+        return (newOrder);
+
+    } // End of copyOrder()
+
+    private int getSide(Order order) {
+        return (order.m_action.equalsIgnoreCase("BUY") ? 1 : -1);
+    }
+
+    // Reads bid and ask of contract into bidAsk from its streaming subscription, else from the snapshot of bidAskSlot
+    private boolean readBidAsk(Contract contract, int bidAskSlot, double[] bidAsk) {
+
+        Integer requestId = ibInteractionClient.mySubscriptionIndex.get(IBInteraction.getContractKey(contract));
+        if (requestId != null) {
+            TickStore.TickSnapshot tickSnapshot = new TickStore.TickSnapshot();
+            if (ibInteractionClient.myTickStore.readSnapshot(requestId, tickSnapshot)
+                    && (tickSnapshot.bidPrice > 0) && (tickSnapshot.askPrice > 0)) {
+                bidAsk[0] = tickSnapshot.bidPrice;
+                bidAsk[1] = tickSnapshot.askPrice;
+                return (true);
+            }
+        }
+        MyBidAskPriceObjClass bidAskDetails = (bidAskSlot > 0) ? ibInteractionClient.myBidAskPriceDetails.get(bidAskSlot) : null;
+        if ((bidAskDetails != null) && (bidAskDetails.getSymbolBidPrice() > 0) && (bidAskDetails.getSymbolAskPrice() > 0)) {
+            bidAsk[0] = bidAskDetails.getSymbolBidPrice();
+            bidAsk[1] = bidAskDetails.getSymbolAskPrice();
+            return (true);
+        }
+        return (false);
+
+    } // End of readBidAsk()
+
+    // Without a streaming subscription, asks for a snapshot to be read at the next step
+    private void refreshBidAsk(MyChasedOrderClass chasedOrder, int bidAskSlot) {
+
+        if ((bidAskSlot > 0) && (!(ibInteractionClient.mySubscriptionIndex.containsKey(IBInteraction.getContractKey(chasedOrder.contract))))) {
+            ibInteractionClient.refreshBidAskPrice(bidAskSlot + IBInteraction.IBTICKARRAYINDEXOFFSET, chasedOrder.contract);
+        }
+    }
+
+    private synchronized void recordCompletion(MyChasedOrderClass chasedOrder, MyOrderStatusObjClass orderStatus) {
+
+        numOrders++;
+        totalSteps += chasedOrder.steps;
+        if (chasedOrder.escalated) {
+            numEscalated++;
+        }
+        String orderOutcome = "not filled";
+        if ((orderStatus != null) && (orderStatus.getFilledQuantity() > 0) && (orderStatus.getRemainingQuantity() == 0)) {
+            numFilled++;
+            long fillMillis = System.currentTimeMillis() - chasedOrder.placedTime;
+            totalFillMillis += fillMillis;
+            maxFillMillis = Math.max(maxFillMillis, fillMillis);
+            orderOutcome = "filled in " + fillMillis + " ms";
+            if (chasedOrder.arrivalPrice > 0) {
+                // positive is worse than the mid price at placement
+                double slippage = getSide(chasedOrder.order) * (orderStatus.getFilledPrice() - chasedOrder.arrivalPrice);
+                totalSlippageAmount += slippage * orderStatus.getFilledQuantity();
+                orderOutcome = orderOutcome + " at " + orderStatus.getFilledPrice() + " slippage " + String.format("%.2f", slippage) + " per unit against " + String.format("%.2f", chasedOrder.arrivalPrice);
+            }
+        }
+
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Chased Order id " + chasedOrder.orderId + " " + orderOutcome + " after " + chasedOrder.steps + " steps" + (chasedOrder.escalated ? " and conversion to market" : "") + ". " + getStatsSummary());
+
+    } // End of recordCompletion()
+
+    synchronized String getStatsSummary() {
+
+        return ("chasedOrders " + numOrders
+                + " filled " + numFilled
+                + " convertedToMarket " + numEscalated
+                + " avgSteps " + String.format("%.1f", (numOrders > 0) ? (double) totalSteps / numOrders : 0.0)
+                + " avgFillMillis " + ((numFilled > 0) ? totalFillMillis / numFilled : 0)
+                + " maxFillMillis " + maxFillMillis
+                + " totalSlippage " + String.format("%.2f", totalSlippageAmount));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Hands out IB order Ids from blocks reserved in Redis with a single INCRBY
+ * of the order Id key, so placing an order costs an atomic increment
+ * instead of a Redis round trip. The Redis key always holds the last Id of
+ * the latest reserved block, hence an Id is never handed out twice, even
+ * across restarts; unused Ids of a block are simply skipped.
+ *
+ * @author Manish Kumar Singh
+ */
+public class OrderIdAllocator {
+
+    public static final int DEFAULTBLOCKSIZE = 10;
+
+    private JedisPool jedisPool;
+    private String orderIdKeyName;
+    private MyUtils myUtils;
+    private int blockSize = DEFAULTBLOCKSIZE;
+
+    // Define class to hold a block of reserved Ids; a new block replaces the current one when it runs out
+    private static class OrderIdBlock {
+
+        final AtomicInteger nextOrderId;
+        final int lastOrderId;
+
+        OrderIdBlock(int firstId, int lastId) {
+            nextOrderId = new AtomicInteger(firstId);
+            lastOrderId = lastId;
+        }
+    }
+
+    private static final OrderIdBlock EXHAUSTEDBLOCK = new OrderIdBlock(0, -1);
+
+    private volatile OrderIdBlock currentBlock = EXHAUSTEDBLOCK;
+
+    OrderIdAllocator(JedisPool redisConnectionPool, String keyName, MyUtils utils, int idsPerBlock) {
+
+        jedisPool = redisConnectionPool;
+        orderIdKeyName = keyName;
+        myUtils = utils;
+        if (idsPerBlock > 0) {
+            blockSize = idsPerBlock;
+        }
+
+    }
+
+    // Returns next order Id, or -1 if a new block could not be reserved in Redis
+    int nextOrderId(boolean debugFlag) {
+
+        while (true) {
+            OrderIdBlock block = currentBlock;
+            int orderId = block.nextOrderId.getAndIncrement();
+            if (orderId <= block.lastOrderId) {
+                return (orderId);
+            }
+            synchronized (this) {
+                // another thread may have reserved a block already
+                if (currentBlock == block) {
+                    int lastOrderId = myUtils.reserveOrderIDBlock(jedisPool, orderIdKeyName, blockSize, debugFlag);
+                    if (lastOrderId < 0) {
+                        return (-1);
+                    }
+                    currentBlock = new OrderIdBlock(lastOrderId - blockSize + 1, lastOrderId);
+                }
+            }
+        }
+
+    } // End of nextOrderId()
+
+    // Aligns with nextValidId received from IB on (re)connection : moves the Redis key up to it if behind and
+    // drops the current block, so that the next Id is at least nextValidId. Never moves the key backwards.
+    synchronized boolean reconcile(int nextValidId, boolean debugFlag) {
+
+        currentBlock = EXHAUSTEDBLOCK;
+        return (myUtils.raiseOrderIDTo(jedisPool, orderIdKeyName, nextValidId - 1, debugFlag));
+
+    } // End of reconcile()
+
+}
@@ -0,0 +1,340 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Status of IB orders by order Id. Orders still working are kept in an open
+ * addressing map keyed by the primitive order Id; once an order reaches a
+ * final status it moves to an archive bounded by number of orders and by
+ * age. Orders evicted from the archive are optionally appended to a spill
+ * file, one comma separated line each, so they can still be reconciled
+ * after the session. Lookups see live and archived orders alike.
+ *
+ * @author Manish Kumar Singh
+ */
+public class OrderStatusStore {
+
+    public static final int DEFAULTMAXARCHIVEDORDERS = 5000;
+    public static final long DEFAULTMAXARCHIVEAGEMILLIS = 24L * 60 * 60 * 1000;
+
+    private final IntObjectMap<MyOrderStatusObjClass> liveOrders = new IntObjectMap<MyOrderStatusObjClass>(64);
+    // in order of archiving, oldest first
+    private final LinkedHashMap<Integer, ArchivedOrder> archivedOrders = new LinkedHashMap<Integer, ArchivedOrder>();
+    private int maxArchivedOrders = DEFAULTMAXARCHIVEDORDERS;
+    private long maxArchiveAgeMillis = DEFAULTMAXARCHIVEAGEMILLIS;
+    private BufferedWriter spillWriter;
+    private long evictedOrders = 0;
+
+    // Define class to hold an archived order and when it was archived
+    private static class ArchivedOrder {
+
+        final MyOrderStatusObjClass orderStatus;
+        final long archiveTime;
+
+        ArchivedOrder(MyOrderStatusObjClass status, long time) {
+            orderStatus = status;
+            archiveTime = time;
+        }
+    }
+
+    static boolean isFinalStatus(String ibOrderStatus) {
+        return ((ibOrderStatus != null)
+                && (ibOrderStatus.equalsIgnoreCase("Filled")
+                || ibOrderStatus.equalsIgnoreCase("Cancelled")
+                || ibOrderStatus.equalsIgnoreCase("ApiCancelled")
+                || ibOrderStatus.equalsIgnoreCase("Inactive")));
+    }
+
+    synchronized void setArchiveLimits(int maxOrders, long maxAgeMillis) {
+        maxArchivedOrders = maxOrders;
+        maxArchiveAgeMillis = maxAgeMillis;
+        evictArchived(System.currentTimeMillis());
+    }
+
+    // Orders evicted from the archive are appended to spillFile from now on
+    synchronized void setSpillFile(File spillFile) throws IOException {
+        close();
+        spillWriter = new BufferedWriter(new FileWriter(spillFile, true), 64 * 1024);
+    }
+
+    public synchronized boolean containsKey(int orderId) {
+        return ((liveOrders.get(orderId) != null) || (archivedOrders.containsKey(orderId)));
+    }
+
+    public synchronized MyOrderStatusObjClass get(int orderId) {
+
+        MyOrderStatusObjClass orderStatus = liveOrders.get(orderId);
+        if (orderStatus == null) {
+            ArchivedOrder archived = archivedOrders.get(orderId);
+            if (archived != null) {
+                orderStatus = archived.orderStatus;
+            }
+        }
+        return (orderStatus);
+
+    } // End of get()
+
+    public synchronized void put(int orderId, MyOrderStatusObjClass orderStatus) {
+        archivedOrders.remove(orderId);
+        liveOrders.put(orderId, orderStatus);
+    }
+
+    // Explicit lookups for reconciliation
+    public synchronized boolean isLive(int orderId) {
+        return (liveOrders.get(orderId) != null);
+    }
+
+    public synchronized boolean isArchived(int orderId) {
+        return (archivedOrders.containsKey(orderId));
+    }
+
+    public synchronized Set<Integer> liveOrderIds() {
+        Set<Integer> orderIds = new HashSet<Integer>();
+        liveOrders.addKeysTo(orderIds);
+        return (orderIds);
+    }
+
+    public synchronized Set<Integer> archivedOrderIds() {
+        return (new HashSet<Integer>(archivedOrders.keySet()));
+    }
+
+    // Snapshot of live and archived order Ids
+    public synchronized Set<Integer> keySet() {
+        Set<Integer> orderIds = new HashSet<Integer>(archivedOrders.keySet());
+        liveOrders.addKeysTo(orderIds);
+        return (orderIds);
+    }
+
+    public synchronized int liveCount() {
+        return (liveOrders.size());
+    }
+
+    public synchronized int archivedCount() {
+        return (archivedOrders.size());
+    }
+
+    public synchronized long evictedCount() {
+        return (evictedOrders);
+    }
+
+    // Moves given order to the archive if it is live; eviction of old archived orders happens here too
+    public synchronized void archive(int orderId) {
+
+        MyOrderStatusObjClass orderStatus = liveOrders.remove(orderId);
+        long timeNow = System.currentTimeMillis();
+        if (orderStatus != null) {
+            archivedOrders.put(orderId, new ArchivedOrder(orderStatus, timeNow));
+        }
+        evictArchived(timeNow);
+
+    } // End of archive()
+
+    // Archives given order if IB has reported a final status for it
+    public synchronized void archiveIfFinal(int orderId) {
+
+        MyOrderStatusObjClass orderStatus = liveOrders.get(orderId);
+        if ((orderStatus != null) && (isFinalStatus(orderStatus.getIBOrderStatus()))) {
+            archive(orderId);
+        }
+
+    } // End of archiveIfFinal()
+
+    private void evictArchived(long timeNow) {
+
+        Iterator<Map.Entry<Integer, ArchivedOrder>> iterator = archivedOrders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, ArchivedOrder> oldestEntry = iterator.next();
+            ArchivedOrder oldest = oldestEntry.getValue();
+            if ((archivedOrders.size() <= maxArchivedOrders) && (timeNow - oldest.archiveTime <= maxArchiveAgeMillis)) {
+                break;
+            }
+            spill(oldestEntry.getKey(), oldest.orderStatus);
+            iterator.remove();
+            evictedOrders++;
+        }
+
+    } // End of evictArchived()
+
+    // orderId is the IB order Id the status was archived under; the Id held in orderStatus may be an execution request Id
+    private void spill(int orderId, MyOrderStatusObjClass orderStatus) {
+
+        if (spillWriter == null) {
+            return;
+        }
+        try {
+            // buffered, so the callback thread only pays for a disk write once every few hundred orders
+            spillWriter.write(orderId + "," + orderStatus.getIBOrderStatus() + ","
+                    + orderStatus.getFilledPrice() + "," + orderStatus.getFilledQuantity() + ","
+                    + orderStatus.getAveragePrice() + "," + orderStatus.getRemainingQuantity() + ","
+                    + orderStatus.getCommissionAmount() + "," + orderStatus.getUpdateTime() + ","
+                    + orderStatus.getUniqueExecutionId() + "," + orderStatus.getOrderReference() + ","
+                    + orderStatus.getContractDet().m_symbol + "," + orderStatus.getContractDet().m_secType + ","
+                    + orderStatus.getContractDet().m_expiry + "," + orderStatus.getContractDet().m_right + ","
+                    + orderStatus.getContractDet().m_strike);
+            spillWriter.newLine();
+        } catch (IOException ex) {
+            Logger.getLogger(OrderStatusStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+    } // End of spill()
+
+    synchronized void close() {
+
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException ex) {
+                Logger.getLogger(OrderStatusStore.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            spillWriter = null;
+        }
+
+    } // End of close()
+
+    // Define class for an open addressing hash map with int keys and linear probing; not thread safe
+    private static class IntObjectMap<V> {
+
+        private int[] keys;
+        private Object[] values;
+        private int mask;
+        private int size;
+
+        IntObjectMap(int initialCapacity) {
+            int capacity = 16;
+            while (capacity < initialCapacity * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        int size() {
+            return (size);
+        }
+
+        private int slot(int key) {
+            // spread consecutive order Ids over the table
+            int hash = key * 0x9E3779B9;
+            return ((hash ^ (hash >>> 16)) & mask);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int key) {
+            for (int index = slot(key); values[index] != null; index = (index + 1) & mask) {
+                if (keys[index] == key) {
+                    return ((V) values[index]);
+                }
+            }
+            return (null);
+        }
+
+        void put(int key, V value) {
+            int index = slot(key);
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    values[index] = value;
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            if (++size * 2 > values.length) {
+                resize(values.length * 2);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(int key) {
+            int index = slot(key);
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    V value = (V) values[index];
+                    deleteSlot(index);
+                    size--;
+                    return (value);
+                }
+                index = (index + 1) & mask;
+            }
+            return (null);
+        }
+
+        void addKeysTo(Set<Integer> keySet) {
+            for (int index = 0; index < values.length; index++) {
+                if (values[index] != null) {
+                    keySet.add(keys[index]);
+                }
+            }
+        }
+
+        // Empties given slot, moving back later entries of the probe sequence so lookups never stop early
+        private void deleteSlot(int emptied) {
+            int index = emptied;
+            while (true) {
+                index = (index + 1) & mask;
+                if (values[index] == null) {
+                    break;
+                }
+                int home = slot(keys[index]);
+                // move entry unless its home slot lies cyclically in (emptied, index]
+                if (((index - home) & mask) >= ((index - emptied) & mask)) {
+                    keys[emptied] = keys[index];
+                    values[emptied] = values[index];
+                    emptied = index;
+                }
+            }
+            values[emptied] = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            size = 0;
+            for (int index = 0; index < oldValues.length; index++) {
+                if (oldValues[index] != null) {
+                    put(oldKeys[index], (V) oldValues[index]);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,407 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.ExecutionFilter;
+import com.ib.client.Order;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces requests sent to TWS so that bursts from many threads stay within the
+ * TWS message rate. Requests are queued by priority and sent by one thread
+ * as tokens of a token bucket allow : orders and order cancels first, then
+ * market data requests and cancels, then informational requests (open
+ * orders, executions). An informational request identical to one still
+ * queued is not queued again; callers of a merged execution request are
+ * told through takeMergedRequestIds() when the one sent completes.
+ *
+ * Requests of one priority are sent in the sequence queued, so order Ids
+ * still reach TWS in increasing sequence. Everything sent in one pass goes
+ * out as a single write.
+ *
+ * @author Manish Kumar Singh
+ */
+public class OutboundScheduler extends Thread {
+
+    public static final int PRIORITYORDERS = 0;
+    public static final int PRIORITYMKTDATA = 1;
+    public static final int PRIORITYINFO = 2;
+    private static final int NUMPRIORITIES = 3;
+    private static final String[] PRIORITYNAMES = {"orders", "mktData", "info"};
+
+    private static final int MSGPLACEORDER = 1;
+    private static final int MSGCANCELORDER = 2;
+    private static final int MSGREQMKTDATA = 3;
+    private static final int MSGCANCELMKTDATA = 4;
+    private static final int MSGREQOPENORDERS = 5;
+    private static final int MSGREQEXECUTIONS = 6;
+
+    // TWS allows 50 messages a second; a full bucket plus one second of refill stays within it
+    public static final double DEFAULTMESSAGESPERSECOND = 40.0;
+    public static final int DEFAULTBURSTSIZE = 10;
+    private static final long IDLEPARKNANOS = 1000000000L;
+    private static final long METRICSLOGINTERVALMILLIS = 60000L;
+
+    private Thread t;
+    private String threadName;
+    private EClientSocket ibClient;
+    private TimeZone exchangeTimeZone;
+
+    // Define class to hold one queued request
+    private static class MyOutboundMessageClass {
+
+        int messageType;
+        int priority;
+        int id;
+        boolean snapshot;
+        Contract contract;
+        Order order;
+        ExecutionFilter filter;
+        String dedupKey;
+        long enqueueTime;
+        List<Integer> mergedRequestIds;
+    }
+
+    // following are guarded by lockQueues
+    private final Object lockQueues = new Object();
+    private final List<ArrayDeque<MyOutboundMessageClass>> queues = new ArrayList<ArrayDeque<MyOutboundMessageClass>>(NUMPRIORITIES);
+    private final Map<String, MyOutboundMessageClass> queuedInfoRequests = new HashMap<String, MyOutboundMessageClass>();
+    private final long[] sentCount = new long[NUMPRIORITIES];
+    private final long[] mergedCount = new long[NUMPRIORITIES];
+    private final long[] totalWaitNanos = new long[NUMPRIORITIES];
+    private final long[] maxWaitNanos = new long[NUMPRIORITIES];
+    private final int[] maxQueueDepth = new int[NUMPRIORITIES];
+    private long inFlight = 0;
+
+    // request Ids answered by the execution request sent under the key's request Id
+    private final ConcurrentHashMap<Integer, List<Integer>> mergedRequests = new ConcurrentHashMap<Integer, List<Integer>>();
+
+    // token bucket; only used by the sending thread
+    private volatile double messagesPerSecond = DEFAULTMESSAGESPERSECOND;
+    private volatile int burstSize = DEFAULTBURSTSIZE;
+    private double tokens = DEFAULTBURSTSIZE;
+    private long lastRefillTime = System.nanoTime();
+    private final List<MyOutboundMessageClass> sendBuffer = new ArrayList<MyOutboundMessageClass>();
+
+    OutboundScheduler(String name, EClientSocket clientSocket, TimeZone exTZ) {
+
+        threadName = name;
+        ibClient = clientSocket;
+        exchangeTimeZone = exTZ;
+        for (int priority = 0; priority < NUMPRIORITIES; priority++) {
+            queues.add(new ArrayDeque<MyOutboundMessageClass>());
+        }
+
+    }
+
+    void setRateLimit(double maxMessagesPerSecond, int maxBurstSize) {
+        messagesPerSecond = Math.max(1.0, maxMessagesPerSecond);
+        burstSize = Math.max(1, maxBurstSize);
+    }
+
+    void placeOrder(int orderId, Contract contract, Order order) {
+
+        MyOutboundMessageClass message = newMessage(MSGPLACEORDER, PRIORITYORDERS, orderId);
+        message.contract = contract;
+        message.order = order;
+        enqueue(message);
+
+    } // End of placeOrder()
+
+    void cancelOrder(int orderId) {
+        enqueue(newMessage(MSGCANCELORDER, PRIORITYORDERS, orderId));
+    }
+
+    void reqMktData(int requestId, Contract contract, boolean snapshot) {
+
+        MyOutboundMessageClass message = newMessage(MSGREQMKTDATA, PRIORITYMKTDATA, requestId);
+        message.contract = contract;
+        message.snapshot = snapshot;
+        enqueue(message);
+
+    } // End of reqMktData()
+
+    void cancelMktData(int requestId) {
+        enqueue(newMessage(MSGCANCELMKTDATA, PRIORITYMKTDATA, requestId));
+    }
+
+    void reqOpenOrders() {
+
+        MyOutboundMessageClass message = newMessage(MSGREQOPENORDERS, PRIORITYINFO, 0);
+        message.dedupKey = "OPENORDERS";
+        enqueue(message);
+
+    } // End of reqOpenOrders()
+
+    void reqExecutions(int requestId, ExecutionFilter filter) {
+
+        MyOutboundMessageClass message = newMessage(MSGREQEXECUTIONS, PRIORITYINFO, requestId);
+        message.filter = filter;
+        message.dedupKey = "EXECUTIONS|" + filter.m_clientId + "|" + filter.m_acctCode + "|" + filter.m_time + "|" + filter.m_symbol
+                + "|" + filter.m_secType + "|" + filter.m_exchange + "|" + filter.m_side;
+        enqueue(message);
+
+    } // End of reqExecutions()
+
+    // Request Ids whose execution request was merged into the one sent as requestId; empty if none
+    List<Integer> takeMergedRequestIds(int requestId) {
+
+        List<Integer> requestIds = mergedRequests.remove(requestId);
+        if (requestIds == null) {
+            return (new ArrayList<Integer>(0));
+        }
+        return (requestIds);
+    } // End of takeMergedRequestIds()
+
+    private MyOutboundMessageClass newMessage(int messageType, int priority, int id) {
+
+        MyOutboundMessageClass message = new MyOutboundMessageClass();
+        message.messageType = messageType;
+        message.priority = priority;
+        message.id = id;
+        return (message);
+    }
+
+    private void enqueue(MyOutboundMessageClass message) {
+
+        synchronized (lockQueues) {
+            if (message.dedupKey != null) {
+                MyOutboundMessageClass queuedMessage = queuedInfoRequests.get(message.dedupKey);
+                if (queuedMessage != null) {
+                    // same request still waiting to go out; answer both with it
+                    if (message.messageType == MSGREQEXECUTIONS) {
+                        if (queuedMessage.mergedRequestIds == null) {
+                            queuedMessage.mergedRequestIds = new ArrayList<Integer>(2);
+                        }
+                        queuedMessage.mergedRequestIds.add(message.id);
+                    }
+                    mergedCount[message.priority]++;
+                    return;
+                }
+                queuedInfoRequests.put(message.dedupKey, message);
+            }
+            message.enqueueTime = System.nanoTime();
+            ArrayDeque<MyOutboundMessageClass> queue = queues.get(message.priority);
+            queue.addLast(message);
+            maxQueueDepth[message.priority] = Math.max(maxQueueDepth[message.priority], queue.size());
+        }
+        Thread sendingThread = t;
+        if (sendingThread != null) {
+            LockSupport.unpark(sendingThread);
+        }
+
+    } // End of enqueue()
+
+    // Moves up to maxMessages queued requests, highest priority first, to sendBuffer
+    private int takeMessages(int maxMessages) {
+
+        sendBuffer.clear();
+        long timeNow = System.nanoTime();
+        synchronized (lockQueues) {
+            for (int priority = 0; (priority < NUMPRIORITIES) && (sendBuffer.size() < maxMessages); priority++) {
+                ArrayDeque<MyOutboundMessageClass> queue = queues.get(priority);
+                while ((sendBuffer.size() < maxMessages) && (!queue.isEmpty())) {
+                    MyOutboundMessageClass message = queue.pollFirst();
+                    if (message.dedupKey != null) {
+                        queuedInfoRequests.remove(message.dedupKey);
+                    }
+                    long waitNanos = timeNow - message.enqueueTime;
+                    sentCount[priority]++;
+                    totalWaitNanos[priority] += waitNanos;
+                    maxWaitNanos[priority] = Math.max(maxWaitNanos[priority], waitNanos);
+                    sendBuffer.add(message);
+                }
+            }
+            inFlight = sendBuffer.size();
+        }
+        return (sendBuffer.size());
+
+    } // End of takeMessages()
+
+    private void send(MyOutboundMessageClass message) {
+
+        switch (message.messageType) {
+            case MSGPLACEORDER:
+                ibClient.placeOrder(message.id, message.contract, message.order);
+                break;
+            case MSGCANCELORDER:
+                ibClient.cancelOrder(message.id);
+                break;
+            case MSGREQMKTDATA:
+                ibClient.reqMktData(message.id, message.contract, "", message.snapshot);
+                break;
+            case MSGCANCELMKTDATA:
+                ibClient.cancelMktData(message.id);
+                break;
+            case MSGREQOPENORDERS:
+                ibClient.reqOpenOrders();
+                break;
+            case MSGREQEXECUTIONS:
+                if (message.mergedRequestIds != null) {
+                    mergedRequests.put(message.id, message.mergedRequestIds);
+                }
+                ibClient.reqExecutions(message.id, message.filter);
+                break;
+            default:
+                break;
+        }
+
+    } // End of send()
+
+    private void refillTokens() {
+
+        long timeNow = System.nanoTime();
+        tokens = Math.min(burstSize, tokens + (timeNow - lastRefillTime) * messagesPerSecond / 1e9);
+        lastRefillTime = timeNow;
+    }
+
+    // Waits up to timeoutMillis for everything queued so far to be sent
+    void flush(long timeoutMillis) {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while ((getQueueDepth() > 0) && (System.currentTimeMillis() < deadline)) {
+            LockSupport.parkNanos(1000000L);
+        }
+
+    } // End of flush()
+
+    int getQueueDepth() {
+
+        synchronized (lockQueues) {
+            int depth = (int) inFlight;
+            for (int priority = 0; priority < NUMPRIORITIES; priority++) {
+                depth += queues.get(priority).size();
+            }
+            return (depth);
+        }
+    } // End of getQueueDepth()
+
+    // Per priority : current and highest queue depth, requests sent and merged, average and highest wait in micro seconds.
+    // Highest values are reset by each call.
+    String getMetricsSummary() {
+
+        StringBuilder summary = new StringBuilder(256);
+        synchronized (lockQueues) {
+            for (int priority = 0; priority < NUMPRIORITIES; priority++) {
+                if (priority > 0) {
+                    summary.append(" | ");
+                }
+                summary.append(PRIORITYNAMES[priority])
+                        .append(" depth ").append(queues.get(priority).size())
+                        .append(" maxDepth ").append(maxQueueDepth[priority])
+                        .append(" sent ").append(sentCount[priority])
+                        .append(" merged ").append(mergedCount[priority])
+                        .append(" avgWaitMicros ").append((sentCount[priority] > 0) ? totalWaitNanos[priority] / sentCount[priority] / 1000 : 0)
+                        .append(" maxWaitMicros ").append(maxWaitNanos[priority] / 1000);
+                maxQueueDepth[priority] = queues.get(priority).size();
+                maxWaitNanos[priority] = 0;
+            }
+        }
+        return (summary.toString());
+
+    } // End of getMetricsSummary()
+
+    private long getTotalSent() {
+
+        synchronized (lockQueues) {
+            long totalSent = 0;
+            for (int priority = 0; priority < NUMPRIORITIES; priority++) {
+                totalSent += sentCount[priority];
+            }
+            return (totalSent);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        long lastMetricsLogTime = System.currentTimeMillis();
+        long lastLoggedSent = 0;
+        while (true) {
+            refillTokens();
+            if (tokens < 1) {
+                // wait for next token
+                LockSupport.parkNanos((long) ((1 - tokens) * 1e9 / messagesPerSecond));
+                continue;
+            }
+            if (takeMessages((int) tokens) > 0) {
+                tokens -= sendBuffer.size();
+                // one write for all of them
+                ibClient.beginBatch();
+                try {
+                    for (MyOutboundMessageClass message : sendBuffer) {
+                        // a failed request must not stop the ones after it, nor this thread
+                        try {
+                            send(message);
+                        } catch (RuntimeException ex) {
+                            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Error : Could not send " + PRIORITYNAMES[message.priority] + " request of type " + message.messageType + " for Id " + message.id + " : " + ex);
+                        }
+                    }
+                } finally {
+                    try {
+                        ibClient.endBatch();
+                    } catch (RuntimeException ex) {
+                        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Error : Could not write " + sendBuffer.size() + " outbound requests : " + ex);
+                    }
+                    synchronized (lockQueues) {
+                        inFlight = 0;
+                    }
+                }
+            } else {
+                LockSupport.parkNanos(IDLEPARKNANOS);
+            }
+
+            if (System.currentTimeMillis() - lastMetricsLogTime >= METRICSLOGINTERVALMILLIS) {
+                long totalSent = getTotalSent();
+                if (totalSent > lastLoggedSent) {
+                    System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Outbound requests " + getMetricsSummary());
+                    lastLoggedSent = totalSent;
+                }
+                lastMetricsLogTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+}
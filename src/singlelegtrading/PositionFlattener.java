@@ -0,0 +1,239 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import com.ib.client.Contract;
+import com.ib.client.Order;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Squares off all open positions of one side in a single pass, for the
+ * strategy level manual interventions 101, 102 and 103. Open positions are
+ * read once, each leg is claimed from its SingleLegExit so that it does not
+ * place an exit order of its own, and all closing market orders are built up
+ * front and placed as one paced burst through IBInteraction. Each order is
+ * then handed over to the exit thread of its leg, which is woken up at once to
+ * wait for the fill and update the queues, while this thread tracks the
+ * completion of all of them together. Positions without a running exit
+ * thread get the square off flag in myMIDetails as before.
+ *
+ * @author Manish Kumar Singh
+ */
+public class PositionFlattener extends Thread {
+
+    public static final int ALLPOSITIONS = 0;
+    public static final int LONGPOSITIONS = 1;
+    public static final int SHORTPOSITIONS = -1;
+
+    private static final int MAXWAITSECONDS = 750;
+
+    private Thread t;
+    private String threadName;
+    private boolean debugFlag;
+
+    private JedisPool jedisPool;
+    private String redisConfigurationKey;
+    private IBInteraction ibInteractionClient;
+    private TimeZone exchangeTimeZone;
+    private MyUtils myUtils;
+
+    private int positionsSide;
+    private String actionReason;
+
+    private ConcurrentHashMap<Integer, SingleLegExit> myExitMonitors;
+    private ConcurrentHashMap<String, MyManualInterventionClass> myMIDetails;
+
+    PositionFlattener(String name, JedisPool redisConnectionPool, String redisConfigKey, MyUtils utils, MyExchangeClass exchangeObj, IBInteraction ibIntClient, ConcurrentHashMap<Integer, SingleLegExit> exitMonitors, ConcurrentHashMap<String, MyManualInterventionClass> miDetails, int side, String reason, boolean debugIndicator) {
+
+        threadName = name;
+        debugFlag = debugIndicator;
+        jedisPool = redisConnectionPool;
+        redisConfigurationKey = redisConfigKey;
+        myUtils = utils;
+        exchangeTimeZone = exchangeObj.getExchangeTimeZone();
+        ibInteractionClient = ibIntClient;
+        myExitMonitors = exitMonitors;
+        myMIDetails = miDetails;
+        positionsSide = side;
+        actionReason = reason;
+
+    }
+
+    // Long positions are bought FUT / STK and CALL options; short positions are shorted FUT / STK and PUT options
+    static boolean matchesSide(TradingObject myTradeObject, int side) {
+
+        if (side == ALLPOSITIONS) {
+            return (true);
+        }
+        String contractType = myTradeObject.getTradingContractType();
+        if (contractType.equalsIgnoreCase("FUT") || contractType.equalsIgnoreCase("STK")) {
+            return ((side == LONGPOSITIONS) ? (myTradeObject.getSideAndSize() > 0) : (myTradeObject.getSideAndSize() < 0));
+        } else if (contractType.equalsIgnoreCase("OPT")) {
+            String rightType = myTradeObject.getTradingContractOptionRightType();
+            if (side == LONGPOSITIONS) {
+                return (rightType.equalsIgnoreCase("CALL") || rightType.equalsIgnoreCase("C"));
+            } else {
+                return (rightType.equalsIgnoreCase("PUT") || rightType.equalsIgnoreCase("P"));
+            }
+        }
+        return (false);
+
+    } // End of matchesSide()
+
+    // Square off flag is picked up by the exit thread of the slot whenever it runs
+    void setSquareOffFlag(int slotNumber) {
+
+        String key = Integer.toString(slotNumber);
+        myMIDetails.putIfAbsent(key, new MyManualInterventionClass(slotNumber, "", 0));
+        myMIDetails.get(key).setSlotNumber(slotNumber);
+        myMIDetails.get(key).setActionIndicator(MyManualInterventionClass.SQUAREOFF);
+        myMIDetails.get(key).setActionReason(actionReason);
+
+    } // End of setSquareOffFlag()
+
+    @Override
+    public void run() {
+
+        long startTime = System.currentTimeMillis();
+
+        // Snapshot of open positions
+        String openPositionsQueueKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "OPENPOSITIONSQUEUE", false);
+        Map<String, TradingObject> openPositionsMap = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            openPositionsMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        if (openPositionsMap == null) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Could not read open positions from " + openPositionsQueueKeyName + ". Nothing squared off.");
+            return;
+        }
+
+        // Claim each leg and build its closing order
+        List<SingleLegExit> claimedLegs = new ArrayList<SingleLegExit>();
+        List<Integer> claimedSlots = new ArrayList<Integer>();
+        List<Contract> contracts = new ArrayList<Contract>();
+        List<Order> orders = new ArrayList<Order>();
+        for (String keyMap : openPositionsMap.keySet()) {
+            int slotNumber = Integer.parseInt(keyMap);
+            if (!(matchesSide(openPositionsMap.get(keyMap), positionsSide))) {
+                continue;
+            }
+            SingleLegExit exitMonitor = myExitMonitors.get(slotNumber);
+            if ((exitMonitor != null) && exitMonitor.claimSquareOff()) {
+                Order squareOffOrder = exitMonitor.getSquareOffMarketOrder();
+                RiskEngine.RiskDecision riskDecision = ibInteractionClient.riskEngine.reserveExit(slotNumber, squareOffOrder.m_action.equalsIgnoreCase("BUY") ? 1 : -1);
+                if (!riskDecision.isAllowed()) {
+                    exitMonitor.releaseSquareOff();
+                    System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Not squaring off slot " + slotNumber + ". Risk check " + riskDecision);
+                    continue;
+                }
+                claimedLegs.add(exitMonitor);
+                claimedSlots.add(slotNumber);
+                contracts.add(exitMonitor.getSquareOffContract());
+                orders.add(squareOffOrder);
+            } else if ((exitMonitor == null) || (!(exitMonitor.isSquareOffClaimed()))) {
+                // not monitored right now
+                setSquareOffFlag(slotNumber);
+            }
+        }
+        if (claimedLegs.isEmpty()) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "No monitored open position to square off for " + actionReason);
+            return;
+        }
+
+        // Place all of them in one burst
+        int[] orderIds = ibInteractionClient.placeOrderBurst(contracts.toArray(new Contract[contracts.size()]), orders.toArray(new Order[orders.size()]), debugFlag);
+        List<CompletableFuture<MyOrderStatusObjClass>> completions = new ArrayList<CompletableFuture<MyOrderStatusObjClass>>();
+        for (int index = 0; index < orderIds.length; index++) {
+            if (orderIds[index] > 0) {
+                completions.add(ibInteractionClient.getOrderCompletion(orderIds[index]));
+                claimedLegs.get(index).handOverSquareOffOrder(orderIds[index]);
+            } else {
+                // leave it to the exit thread
+                ibInteractionClient.riskEngine.onExitCancelled(claimedSlots.get(index));
+                claimedLegs.get(index).releaseSquareOff();
+                setSquareOffFlag(claimedSlots.get(index));
+            }
+        }
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Placed " + completions.size() + " of " + orderIds.length + " Square Off Orders for " + actionReason + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        // Track completion of all of them together
+        try {
+            CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[completions.size()])).get(MAXWAITSECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            // reported below
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // completions are never completed exceptionally
+        }
+        int numCompleted = 0;
+        int numFilled = 0;
+        for (CompletableFuture<MyOrderStatusObjClass> completion : completions) {
+            if (completion.isDone()) {
+                numCompleted++;
+                MyOrderStatusObjClass orderStatus = completion.getNow(null);
+                if ((orderStatus != null) && (orderStatus.getRemainingQuantity() == 0)) {
+                    numFilled++;
+                }
+            }
+        }
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Square Off for " + actionReason + " : " + numCompleted + " of " + completions.size() + " orders completed, " + numFilled + " filled, in " + (System.currentTimeMillis() - startTime) + " ms");
+
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.start();
+        }
+    }
+
+}
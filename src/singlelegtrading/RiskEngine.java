@@ -0,0 +1,549 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Pre-trade risk checks against exposure held in memory. Open positions are
+ * loaded once from the open and closed positions queues; afterwards exposure
+ * is updated incrementally from entry fills, exit fills, marks taken from
+ * ticks by the exit threads and commission reports, so that a check is a few
+ * map lookups instead of a pass over Redis.
+ *
+ * Entries are checked against long / short counts, duplicate legs,
+ * blacklist, order notional, gross / net / per underlying notional, margin
+ * and day PnL. Exits are only checked for being opposite to the position and
+ * for another exit already working on it; exposure limits never hold back an
+ * exit. Every decision carries the value and limit of each check made.
+ *
+ * Limits are built from snapshots of the strategy configuration hash taken by
+ * StrategyConfig. A missing notional or margin limit, or one of zero, means
+ * no limit.
+ *
+ * @author Manish Kumar Singh
+ */
+public class RiskEngine {
+
+    // estimate of brokerage and taxes, as percent of traded value, till IB reports the commission of an order
+    private static final double ESTIMATEDCOSTPERCENT = 0.01 + 0.0019 + 0.0001;
+
+    private JedisPool jedisPool;
+    private MyUtils myUtils;
+    private TimeZone exchangeTimeZone;
+
+    // Define class to hold limits read from configuration; replaced as a whole on refresh
+    private static class MyRiskLimitsClass {
+
+        int maxLongPositions = Integer.MAX_VALUE;
+        int maxShortPositions = Integer.MAX_VALUE;
+        boolean allowLongEntry = true;
+        boolean allowShortEntry = true;
+        boolean allowDuplicateLegs = true;
+        int maxDuplicateLegs = Integer.MAX_VALUE;
+        Set<String> blacklistedSymbols = new HashSet<String>();
+        double maxSignalSpread = 0.0;
+        double maxGrossNotional = 0.0;
+        double maxNetNotional = 0.0;
+        double maxUnderlyingNotional = 0.0;
+        double maxMargin = 0.0;
+        double marginPercent = 100.0;
+        double dayTakeProfitLimit = Double.MAX_VALUE;
+        double dayStopLossLimit = -Double.MAX_VALUE;
+    }
+
+    // Define class to hold exposure of one open position slot
+    private static class MyExposureClass {
+
+        int slotNumber, side;
+        String underlying, legKey;
+        double entryNotional, markNotional, margin;
+        boolean entryFilled, exitPending;
+    }
+
+    // Define class to return outcome of a check with the value and limit of each check made
+    static class RiskDecision {
+
+        private final boolean allowed;
+        private final String breakdown;
+
+        RiskDecision(boolean allowed, String breakdown) {
+            this.allowed = allowed;
+            this.breakdown = breakdown;
+        }
+
+        boolean isAllowed() {
+            return (allowed);
+        }
+
+        String getBreakdown() {
+            return (breakdown);
+        }
+
+        @Override
+        public String toString() {
+            return ((allowed ? "ALLOWED " : "REJECTED ") + breakdown);
+        }
+    }
+
+    private volatile MyRiskLimitsClass limits = new MyRiskLimitsClass();
+    // configuration map the limits were last built from
+    private Map<String, String> appliedConfigMap;
+
+    // following are guarded by this
+    private Map<Integer, MyExposureClass> exposures = new HashMap<Integer, MyExposureClass>();
+    private Map<String, Double> underlyingGrossNotional = new HashMap<String, Double>();
+    private Map<String, Integer> legCounts = new HashMap<String, Integer>();
+    // commission counted so far of each order, estimated till reported by IB
+    private Map<Integer, Double> orderCosts = new HashMap<Integer, Double>();
+    private int numLongPositions = 0;
+    private int numShortPositions = 0;
+    private double grossNotional = 0.0;
+    private double netNotional = 0.0;
+    private double marginUsed = 0.0;
+    private double realizedPnL = 0.0;
+    private double unrealizedPnL = 0.0;
+    private double tradingCost = 0.0;
+
+    RiskEngine(JedisPool redisConnectionPool, MyUtils utils, TimeZone exTZ) {
+
+        jedisPool = redisConnectionPool;
+        myUtils = utils;
+        exchangeTimeZone = exTZ;
+
+    }
+
+    // Key of a leg for duplicate checks : contract type, underlying, for options right and strike, and name of the
+    // trading object. Expiry is ignored.
+    static String getLegKey(String contractType, String underlying, String rightType, double strikePrice, String tradingObjectName) {
+
+        StringBuilder key = new StringBuilder(48);
+        key.append(contractType.toUpperCase()).append('|').append(underlying.toUpperCase());
+        if (contractType.equalsIgnoreCase("OPT")) {
+            key.append('|').append(rightType.toUpperCase().charAt(0)).append('|').append(strikePrice);
+        }
+        key.append('|').append(tradingObjectName.toUpperCase());
+        return (key.toString());
+    } // End of getLegKey()
+
+    // Spread of an entry signal as sent by the signal generator, i.e. for one unit of LEGSIZEMULTIPLE
+    static double getSignalNotional(TradingObject tradingSignal) {
+        return (Math.abs(tradingSignal.getEntrySpreadValue()));
+    } // End of getSignalNotional()
+
+    static String getLegKey(TradingObject myTradeObject) {
+
+        String contractType = myTradeObject.getContractType();
+        if (contractType.equalsIgnoreCase("OPT")) {
+            return (getLegKey(contractType, myTradeObject.getContractUnderlyingName(), myTradeObject.getContractOptionRightType(), myTradeObject.getContractOptionStrike(), myTradeObject.getTradingObjectName()));
+        }
+        return (getLegKey(contractType, myTradeObject.getContractUnderlyingName(), null, 0.0, myTradeObject.getTradingObjectName()));
+    } // End of getLegKey()
+
+    // Rebuilds the limits from a snapshot of the configuration hash. Does nothing if the same snapshot was applied last time
+    synchronized void refreshLimits(Map<String, String> configMap) {
+
+        if (configMap == appliedConfigMap) {
+            return;
+        }
+        MyRiskLimitsClass newLimits = new MyRiskLimitsClass();
+        newLimits.maxLongPositions = (int) getConfigValue(configMap, "MAXNUMLONGPOSITIONS", newLimits.maxLongPositions);
+        newLimits.maxShortPositions = (int) getConfigValue(configMap, "MAXNUMSHORTPOSITIONS", newLimits.maxShortPositions);
+        newLimits.allowLongEntry = "yes".equalsIgnoreCase(configMap.get("ALLOWLONGENTRY"));
+        newLimits.allowShortEntry = "yes".equalsIgnoreCase(configMap.get("ALLOWSHORTENTRY"));
+        newLimits.allowDuplicateLegs = "yes".equalsIgnoreCase(configMap.get("ALLOWDUPLICATECOMBOPOSITIONS"));
+        newLimits.maxDuplicateLegs = (int) getConfigValue(configMap, "MAXNUMDUPLICATELEGPOSITIONS", newLimits.maxDuplicateLegs);
+        String blacklistedSymbols = configMap.get("BLACKLISTEDSYMBOLS");
+        if (blacklistedSymbols != null) {
+            for (String symbol : blacklistedSymbols.split(",")) {
+                if (symbol.trim().length() > 0) {
+                    newLimits.blacklistedSymbols.add(symbol.trim().toUpperCase());
+                }
+            }
+        }
+        newLimits.maxSignalSpread = getConfigValue(configMap, "MAXALLOWEDPAIRSPREAD", newLimits.maxSignalSpread);
+        newLimits.maxGrossNotional = getConfigValue(configMap, "MAXGROSSNOTIONAL", newLimits.maxGrossNotional);
+        newLimits.maxNetNotional = getConfigValue(configMap, "MAXNETNOTIONAL", newLimits.maxNetNotional);
+        newLimits.maxUnderlyingNotional = getConfigValue(configMap, "MAXUNDERLYINGNOTIONAL", newLimits.maxUnderlyingNotional);
+        newLimits.maxMargin = getConfigValue(configMap, "MAXMARGIN", newLimits.maxMargin);
+        newLimits.marginPercent = getConfigValue(configMap, "MARGINPERCENT", newLimits.marginPercent);
+        newLimits.dayTakeProfitLimit = getConfigValue(configMap, "NOFURTHERPOSITIONTAKEPROFITLIMIT", newLimits.dayTakeProfitLimit);
+        newLimits.dayStopLossLimit = getConfigValue(configMap, "NOFURTHERPOSITIONSTOPLOSSLIMIT", newLimits.dayStopLossLimit);
+        limits = newLimits;
+        appliedConfigMap = configMap;
+
+    } // End of refreshLimits()
+
+    private double getConfigValue(Map<String, String> configMap, String fieldName, double defaultValue) {
+
+        String configValue = configMap.get(fieldName);
+        if ((configValue == null) || (configValue.length() == 0)) {
+            return (defaultValue);
+        }
+        try {
+            return (Double.parseDouble(configValue));
+        } catch (NumberFormatException ex) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Ignoring invalid value " + configValue + " of " + fieldName + " for risk limits");
+            return (defaultValue);
+        }
+    } // End of getConfigValue()
+
+    // Loads exposure of open positions and PnL of closed positions of today. Called once at start up
+    synchronized void loadPositions(String openPositionsQueueKeyName, String closedPositionsQueueKeyName) {
+
+        Map<String, TradingObject> openPositionsMap = null;
+        Map<String, TradingObject> closedPositionsMap = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            openPositionsMap = myUtils.getAllPositionsFromRedis(jedis, openPositionsQueueKeyName);
+            closedPositionsMap = myUtils.getAllPositionsFromRedis(jedis, closedPositionsQueueKeyName);
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+
+        if (openPositionsMap != null) {
+            for (String keyMap : openPositionsMap.keySet()) {
+                TradingObject myTradeObject = openPositionsMap.get(keyMap);
+                if (myTradeObject.getOrderState().equalsIgnoreCase("openpositionslotblocked")) {
+                    // no order placed yet
+                    continue;
+                }
+                int side = Integer.signum(myTradeObject.getSideAndSize());
+                double entryNotional = Math.abs(myTradeObject.getEntrySpreadValue());
+                MyExposureClass exposure = addExposure(Integer.parseInt(keyMap), myTradeObject.getContractUnderlyingName(), getLegKey(myTradeObject), side, entryNotional);
+                exposure.entryFilled = myTradeObject.getOrderState().equalsIgnoreCase("entryorderfilled");
+                addEstimatedCost(parseOrderId(myTradeObject.getEntryOrderIDs()), entryNotional);
+                double lastKnownNotional = Math.abs(myTradeObject.getLastKnownSpreadValue());
+                if (lastKnownNotional > 0) {
+                    updateMark(exposure, lastKnownNotional);
+                }
+            }
+        }
+        if (closedPositionsMap != null) {
+            for (String keyMap : closedPositionsMap.keySet()) {
+                TradingObject myTradeObject = closedPositionsMap.get(keyMap);
+                int side = Integer.signum(myTradeObject.getSideAndSize());
+                double entryNotional = Math.abs(myTradeObject.getEntrySpreadValue());
+                double exitNotional = Math.abs(myTradeObject.getExitSpreadValue());
+                realizedPnL += side * (exitNotional - entryNotional);
+                addEstimatedCost(parseOrderId(myTradeObject.getEntryOrderIDs()), entryNotional);
+                addEstimatedCost(parseOrderId(myTradeObject.getExitOrderIDs()), exitNotional);
+            }
+        }
+
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Risk engine loaded " + exposures.size() + " open positions. " + getExposureSummary());
+
+    } // End of loadPositions()
+
+    private int parseOrderId(String orderIds) {
+        try {
+            return (Integer.parseInt(orderIds));
+        } catch (NumberFormatException | NullPointerException ex) {
+            return (-1);
+        }
+    }
+
+    // Checks an entry without reserving anything; used to screen signals before a slot is blocked.
+    // signalNotional is from getSignalNotional(); the order is sizeMultiple times the signal.
+    synchronized RiskDecision checkEntry(String underlying, String legKey, int side, double signalNotional, int sizeMultiple) {
+        return (evaluateEntry(underlying, legKey, Integer.signum(side), Math.abs(signalNotional), Math.abs(signalNotional) * Math.max(1, sizeMultiple)));
+    }
+
+    // Same checks as checkEntry() and, if allowed, holds exposure of the order against slotNumber till it is filled
+    // or cancelled. Called right before the entry order is placed.
+    synchronized RiskDecision reserveEntry(int slotNumber, String underlying, String legKey, int side, double signalNotional, int sizeMultiple) {
+
+        if (exposures.containsKey(slotNumber)) {
+            return (new RiskDecision(false, "SLOT " + slotNumber + " already holds a position FAIL"));
+        }
+        double orderNotional = Math.abs(signalNotional) * Math.max(1, sizeMultiple);
+        RiskDecision decision = evaluateEntry(underlying, legKey, Integer.signum(side), Math.abs(signalNotional), orderNotional);
+        if (decision.isAllowed()) {
+            addExposure(slotNumber, underlying, legKey, Integer.signum(side), orderNotional);
+        }
+        return (decision);
+
+    } // End of reserveEntry()
+
+    // MAXALLOWEDPAIRSPREAD applies to the spread of the signal; exposure limits to the value of the order
+    private RiskDecision evaluateEntry(String underlying, String legKey, int side, double signalNotional, double orderNotional) {
+
+        MyRiskLimitsClass currentLimits = limits;
+        StringBuilder breakdown = new StringBuilder(512);
+        boolean allowed = true;
+
+        if (side > 0) {
+            allowed &= appendCheck(breakdown, "LONGENTRY", currentLimits.allowLongEntry ? "allowed" : "disallowed", currentLimits.allowLongEntry);
+            allowed &= appendCheck(breakdown, "LONGPOSITIONS", numLongPositions + "/" + currentLimits.maxLongPositions, numLongPositions < currentLimits.maxLongPositions);
+        } else if (side < 0) {
+            allowed &= appendCheck(breakdown, "SHORTENTRY", currentLimits.allowShortEntry ? "allowed" : "disallowed", currentLimits.allowShortEntry);
+            allowed &= appendCheck(breakdown, "SHORTPOSITIONS", numShortPositions + "/" + currentLimits.maxShortPositions, numShortPositions < currentLimits.maxShortPositions);
+        } else {
+            allowed &= appendCheck(breakdown, "SIDE", "none", false);
+        }
+
+        // open positions of the same leg are only counted when duplicates are disallowed
+        Integer legCount = legCounts.get(legKey);
+        int openLegCount = ((legCount == null) || currentLimits.allowDuplicateLegs) ? 0 : legCount;
+        allowed &= appendCheck(breakdown, "DUPLICATELEG", openLegCount + " open" + (currentLimits.allowDuplicateLegs ? " allowed" : " disallowed"), openLegCount == 0);
+        if (side < 0) {
+            allowed &= appendCheck(breakdown, "DUPLICATELEGPOSITIONS", openLegCount + "/" + currentLimits.maxDuplicateLegs, openLegCount < currentLimits.maxDuplicateLegs);
+        }
+
+        boolean blacklisted = currentLimits.blacklistedSymbols.contains(underlying.toUpperCase());
+        allowed &= appendCheck(breakdown, "BLACKLIST", underlying + (blacklisted ? " listed" : " not listed"), !blacklisted);
+
+        allowed &= appendLimitCheck(breakdown, "SIGNALSPREAD", signalNotional, currentLimits.maxSignalSpread);
+        allowed &= appendLimitCheck(breakdown, "GROSSNOTIONAL", grossNotional + orderNotional, currentLimits.maxGrossNotional);
+        allowed &= appendLimitCheck(breakdown, "NETNOTIONAL", Math.abs(netNotional + side * orderNotional), currentLimits.maxNetNotional);
+        Double underlyingNotional = underlyingGrossNotional.get(underlying.toUpperCase());
+        allowed &= appendLimitCheck(breakdown, "UNDERLYINGNOTIONAL", ((underlyingNotional == null) ? 0.0 : underlyingNotional) + orderNotional, currentLimits.maxUnderlyingNotional);
+        allowed &= appendLimitCheck(breakdown, "MARGIN", marginUsed + getMargin(legKey, side, orderNotional, currentLimits), currentLimits.maxMargin);
+
+        double dayPnL = realizedPnL + unrealizedPnL - tradingCost;
+        allowed &= appendCheck(breakdown, "DAYPNL", String.format("%.0f", dayPnL) + " within " + String.format("%.0f", currentLimits.dayStopLossLimit) + ".." + String.format("%.0f", currentLimits.dayTakeProfitLimit),
+                (dayPnL <= currentLimits.dayTakeProfitLimit) && (dayPnL >= currentLimits.dayStopLossLimit));
+
+        return (new RiskDecision(allowed, breakdown.toString()));
+
+    } // End of evaluateEntry()
+
+    private boolean appendCheck(StringBuilder breakdown, String checkName, String detail, boolean passed) {
+
+        if (breakdown.length() > 0) {
+            breakdown.append("; ");
+        }
+        breakdown.append(checkName).append(' ').append(detail).append(passed ? " ok" : " FAIL");
+        return (passed);
+    }
+
+    private boolean appendLimitCheck(StringBuilder breakdown, String checkName, double value, double limit) {
+
+        if (limit <= 0) {
+            return (appendCheck(breakdown, checkName, String.format("%.0f", value) + "/nolimit", true));
+        }
+        return (appendCheck(breakdown, checkName, String.format("%.0f", value) + "/" + String.format("%.0f", limit), value <= limit));
+    }
+
+    // Bought options and stocks block their full value; futures and short positions block MARGINPERCENT of it
+    private double getMargin(String legKey, int side, double notional, MyRiskLimitsClass currentLimits) {
+
+        if ((side > 0) && (legKey.startsWith("OPT|") || legKey.startsWith("STK|"))) {
+            return (notional);
+        }
+        return (notional * currentLimits.marginPercent / 100);
+    }
+
+    private MyExposureClass addExposure(int slotNumber, String underlying, String legKey, int side, double entryNotional) {
+
+        MyExposureClass exposure = new MyExposureClass();
+        exposure.slotNumber = slotNumber;
+        exposure.side = side;
+        exposure.underlying = underlying.toUpperCase();
+        exposure.legKey = legKey;
+        exposure.entryNotional = entryNotional;
+        exposure.markNotional = entryNotional;
+        exposure.margin = getMargin(legKey, side, entryNotional, limits);
+        exposures.put(slotNumber, exposure);
+
+        if (side > 0) {
+            numLongPositions++;
+        } else if (side < 0) {
+            numShortPositions++;
+        }
+        Integer legCount = legCounts.get(legKey);
+        legCounts.put(legKey, (legCount == null) ? 1 : legCount + 1);
+        addNotional(exposure, entryNotional);
+        marginUsed += exposure.margin;
+
+        return (exposure);
+    } // End of addExposure()
+
+    private void removeExposure(MyExposureClass exposure) {
+
+        exposures.remove(exposure.slotNumber);
+        if (exposure.side > 0) {
+            numLongPositions--;
+        } else if (exposure.side < 0) {
+            numShortPositions--;
+        }
+        Integer legCount = legCounts.get(exposure.legKey);
+        if ((legCount == null) || (legCount <= 1)) {
+            legCounts.remove(exposure.legKey);
+        } else {
+            legCounts.put(exposure.legKey, legCount - 1);
+        }
+        addNotional(exposure, -exposure.markNotional);
+        marginUsed -= exposure.margin;
+        unrealizedPnL -= exposure.side * (exposure.markNotional - exposure.entryNotional);
+
+    } // End of removeExposure()
+
+    private void addNotional(MyExposureClass exposure, double notionalChange) {
+
+        grossNotional += notionalChange;
+        netNotional += exposure.side * notionalChange;
+        Double underlyingNotional = underlyingGrossNotional.get(exposure.underlying);
+        double newUnderlyingNotional = ((underlyingNotional == null) ? 0.0 : underlyingNotional) + notionalChange;
+        if (newUnderlyingNotional > 0.5) {
+            underlyingGrossNotional.put(exposure.underlying, newUnderlyingNotional);
+        } else {
+            underlyingGrossNotional.remove(exposure.underlying);
+        }
+    }
+
+    private void updateMark(MyExposureClass exposure, double markNotional) {
+
+        double markChange = markNotional - exposure.markNotional;
+        exposure.markNotional = markNotional;
+        addNotional(exposure, markChange);
+        unrealizedPnL += exposure.side * markChange;
+    }
+
+    private void addEstimatedCost(int orderId, double tradedNotional) {
+
+        double estimatedCost = tradedNotional * ESTIMATEDCOSTPERCENT / 100;
+        if (orderId <= 0) {
+            tradingCost += estimatedCost;
+        } else if (!(orderCosts.containsKey(orderId))) {
+            orderCosts.put(orderId, estimatedCost);
+            tradingCost += estimatedCost;
+        }
+    }
+
+    synchronized void onEntryFill(int slotNumber, int orderId, double filledNotional) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if (exposure == null) {
+            return;
+        }
+        // entry was reserved at estimated notional; position is marked at its fill
+        double entryChange = filledNotional - exposure.entryNotional;
+        exposure.entryNotional = filledNotional;
+        unrealizedPnL -= exposure.side * entryChange;
+        updateMark(exposure, filledNotional);
+        marginUsed -= exposure.margin;
+        exposure.margin = getMargin(exposure.legKey, exposure.side, filledNotional, limits);
+        marginUsed += exposure.margin;
+        exposure.entryFilled = true;
+        addEstimatedCost(orderId, filledNotional);
+
+    } // End of onEntryFill()
+
+    // Entry order was not placed; releases what reserveEntry held
+    synchronized void onEntryCancelled(int slotNumber) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if ((exposure != null) && (!(exposure.entryFilled))) {
+            removeExposure(exposure);
+        }
+    }
+
+    // Checks an exit order of given side for slotNumber and, if allowed, marks an exit as working on it
+    synchronized RiskDecision reserveExit(int slotNumber, int side) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if (exposure == null) {
+            // not known here, e.g. entered by hand; exits are never held back for that
+            return (new RiskDecision(true, "SLOT " + slotNumber + " untracked ok"));
+        }
+        StringBuilder breakdown = new StringBuilder(128);
+        boolean allowed = appendCheck(breakdown, "EXITSIDE", Integer.signum(side) + " against position " + exposure.side, Integer.signum(side) == -exposure.side);
+        allowed &= appendCheck(breakdown, "WORKINGEXIT", exposure.exitPending ? "present" : "none", !(exposure.exitPending));
+        if (allowed) {
+            exposure.exitPending = true;
+        }
+        return (new RiskDecision(allowed, breakdown.toString()));
+
+    } // End of reserveExit()
+
+    synchronized void onExitFill(int slotNumber, int orderId, double filledNotional) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if (exposure == null) {
+            return;
+        }
+        removeExposure(exposure);
+        realizedPnL += exposure.side * (filledNotional - exposure.entryNotional);
+        addEstimatedCost(orderId, filledNotional);
+
+    } // End of onExitFill()
+
+    // Exit order was not placed or did not fill completely; another exit may be tried
+    synchronized void onExitCancelled(int slotNumber) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if (exposure != null) {
+            exposure.exitPending = false;
+        }
+    }
+
+    // Called by exit threads as ticks arrive with the current value of the position
+    synchronized void onMark(int slotNumber, double markNotional) {
+
+        MyExposureClass exposure = exposures.get(slotNumber);
+        if ((exposure != null) && exposure.entryFilled && (markNotional > 0)) {
+            updateMark(exposure, markNotional);
+        }
+    }
+
+    // Called as commission reports arrive with the total commission of the order so far; replaces its estimate
+    synchronized void onCommission(int orderId, double orderCommission) {
+
+        Double previousCost = orderCosts.put(orderId, orderCommission);
+        tradingCost += orderCommission - ((previousCost == null) ? 0.0 : previousCost);
+    }
+
+    synchronized String getExposureSummary() {
+
+        return ("longPositions " + numLongPositions
+                + " shortPositions " + numShortPositions
+                + " grossNotional " + String.format("%.0f", grossNotional)
+                + " netNotional " + String.format("%.0f", netNotional)
+                + " margin " + String.format("%.0f", marginUsed)
+                + " dayPnL " + String.format("%.0f", realizedPnL + unrealizedPnL - tradingCost)
+                + " (realized " + String.format("%.0f", realizedPnL)
+                + " unrealized " + String.format("%.0f", unrealizedPnL)
+                + " cost " + String.format("%.0f", tradingCost) + ")");
+    }
+
+}
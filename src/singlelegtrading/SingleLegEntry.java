@@ -117,45 +117,10 @@ public class SingleLegEntry extends Thread {
 
     boolean entryOrderCompletelyFilled(int orderId, int maxWaitTime) {
 
-        boolean returnValue = false;
-        //ibInteractionClient.ibClient.reqOpenOrders();
-        int timeOut = 10;
-        myUtils.waitForNSeconds(timeOut);
-        while ( (!(ibInteractionClient.myOrderStatusDetails.containsKey(orderId)))
-                && (timeOut < maxWaitTime)) {               
-            if (debugFlag) {
-                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Waiting for Order to be filled for Order ids " + orderId + " for " + timeOut + " seconds. Status not updated on IB yet.");  
-            }
-            timeOut += 5;
-            // Check if following needs to be commented
-            ibInteractionClient.ibClient.reqOpenOrders();
-            myUtils.waitForNSeconds(5);            
-        } 
-        if (ibInteractionClient.myOrderStatusDetails.containsKey(orderId)) {
-            while ((ibInteractionClient.myOrderStatusDetails.get(orderId).getRemainingQuantity() != 0)
-                    && (timeOut < maxWaitTime)) {
-                if (debugFlag) {
-                    if (ibInteractionClient.myOrderStatusDetails.containsKey(orderId)) {
-                        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Waiting for Order to be filled for Order ids " + ibInteractionClient.myOrderStatusDetails.get(orderId).getOrderId() + " for " + timeOut + " seconds");                    
-                    } else {
-                        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Waiting for Order to be filled for Order ids " + orderId + " for " + timeOut + " seconds. Status not updated on IB yet.");                                        
-                    }
-                }
-                timeOut += 10;
-                // Check if following needs to be commented
-                ibInteractionClient.ibClient.reqOpenOrders();
-                myUtils.waitForNSeconds(10);
-            }
-            if ((ibInteractionClient.myOrderStatusDetails.get(orderId).getRemainingQuantity() == 0)) {
-                returnValue =  true;
-            } else {
-                returnValue = false;
-            }            
-        } else {
-            returnValue = false;            
-        }       
+        // completes as soon as IB reports the order filled, cancelled or inactive; relative orders are re-priced meanwhile
+        MyOrderStatusObjClass orderStatus = ibInteractionClient.orderChaser.awaitOrderCompletion(orderId, slotNumber, maxWaitTime, debugFlag);
 
-        return (returnValue);
+        return ((orderStatus != null) && (orderStatus.getRemainingQuantity() == 0));
     }
 
     void updateOpenPositionsQueue(String queueKeyName, String updateDetails, String orderStatus, double comboSpread, int entryOrderId, int slotNumber, String bidAskPriceDetails) {
@@ -185,21 +150,21 @@ public class SingleLegEntry extends Thread {
 
         if (myTradeObject.getSideAndSize() > 0) {
             myTradeObject.setLowerBreach(
-                    Math.round(Float.parseFloat(myTradeObject.getEntrySpread()))
+                    Math.round((float) myTradeObject.getEntrySpreadValue())
                     - (Math.abs(myTradeObject.getSideAndSize()) * INITIALSTOPLOSSAMOUNT)
             );
             myTradeObject.setUpperBreach(
-                    (int) Math.round(Float.parseFloat(myTradeObject.getEntrySpread()))
-                    + Math.round(Math.abs(myTradeObject.getSideAndSize() * 2 * Float.parseFloat(myTradeObject.getEntryStdDev())))
+                    (int) Math.round((float) myTradeObject.getEntrySpreadValue())
+                    + Math.round(Math.abs(myTradeObject.getSideAndSize() * 2 * (float) myTradeObject.getEntryStdDevValue()))
             );
         } else if (myTradeObject.getSideAndSize() < 0) {
             myTradeObject.setLowerBreach(
-                    Math.round(Float.parseFloat(myTradeObject.getEntrySpread()))
+                    Math.round((float) myTradeObject.getEntrySpreadValue())
                     + (Math.abs(myTradeObject.getSideAndSize()) * INITIALSTOPLOSSAMOUNT)
             );
             myTradeObject.setUpperBreach(
-                    (int) Math.round(Float.parseFloat(myTradeObject.getEntrySpread()))
-                    - Math.round(Math.abs(myTradeObject.getSideAndSize() * 2 * Float.parseFloat(myTradeObject.getEntryStdDev())))
+                    (int) Math.round((float) myTradeObject.getEntrySpreadValue())
+                    - Math.round(Math.abs(myTradeObject.getSideAndSize() * 2 * (float) myTradeObject.getEntryStdDevValue()))
             );
         }
 
@@ -215,7 +180,7 @@ public class SingleLegEntry extends Thread {
 
         // Update the open positions key with entry Signal
         Jedis jedis = jedisPool.getResource();
-        jedis.hset(queueKeyName, Integer.toString(slotNumber), myTradeObject.getCompleteTradingObjectString());
+        myUtils.putPositionInRedis(jedis, queueKeyName, slotNumber, myTradeObject);
         jedisPool.returnResource(jedis);
 
     }
@@ -273,6 +238,15 @@ public class SingleLegEntry extends Thread {
 
         double legSpread = 0.0;
 
+        // Hold exposure of this entry against risk limits before anything is sent to IB
+        TradingObject myTradeObject = new TradingObject(legDetails);
+        RiskEngine.RiskDecision riskDecision = ibInteractionClient.riskEngine.reserveEntry(slotNumber, legName, RiskEngine.getLegKey(myTradeObject), myTradeObject.getSideAndSize(), RiskEngine.getSignalNotional(myTradeObject), legSizeMultiple);
+        if (!riskDecision.isAllowed()) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Not Entering Position as " + legName + " in slot " + slotNumber + ". Risk check " + riskDecision);
+            myUtils.unblockOpenPositionSlot(jedisPool, openPositionsQueueKeyName, slotNumber);
+            return;
+        }
+
         // Place Order and get the order ID
         if (contractTypeToUse.equalsIgnoreCase("STK")) {
             // for STK type
@@ -296,7 +270,9 @@ public class SingleLegEntry extends Thread {
         // update the Open position queue with order inititated status message
         updateOpenPositionsQueue(openPositionsQueueKeyName, legDetails, "entryorderinitiated", legSpread, legOrderId, slotNumber, bidAskDetails);
 
-        if (legOrderId > 0) {
+        if (legOrderId <= 0) {
+            ibInteractionClient.riskEngine.onEntryCancelled(slotNumber);
+        } else {
             // Wait for orders to be completely filled            
             if (entryOrderCompletelyFilled(legOrderId, 750)) {
                 bidAskDetails = legName + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
@@ -310,6 +286,7 @@ public class SingleLegEntry extends Thread {
                 //}
                 // update Redis queue with entered order
                 updateOpenPositionsQueue(openPositionsQueueKeyName, legDetails, "entryorderfilled", legSpread, legOrderId, slotNumber, bidAskDetails);
+                ibInteractionClient.riskEngine.onEntryFill(slotNumber, legOrderId, legSpread);
             } else {
                 int requestId = ibInteractionClient.getNextRequestId();                
                 ibInteractionClient.requestExecutionDetailsHistorical(requestId, 1);
@@ -331,6 +308,9 @@ public class SingleLegEntry extends Thread {
                 //}
                 // update Redis queue with entered order
                 updateOpenPositionsQueue(openPositionsQueueKeyName, legDetails, "entryorderinitiated", legSpread, legOrderId, slotNumber, bidAskDetails);
+                if (legSpread > 0) {
+                    ibInteractionClient.riskEngine.onEntryFill(slotNumber, legOrderId, legSpread);
+                }
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Please Check Order Status manually as entry Order initiated but did not receive Confirmation for Orders filling for Order id " + legOrderId);
             }
         }
@@ -29,15 +29,17 @@ import java.io.IOException;
 import redis.clients.jedis.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import com.ib.client.Contract;
+import com.ib.client.Order;
 
 /**
  * @author Manish Kumar Singh
  */
-public class SingleLegExit implements Runnable {
+public class SingleLegExit implements Runnable, TickListener {
 
     private String threadName;
     private volatile boolean quit = false;
-    private String legDetails;
     private boolean debugFlag;
     private JedisPool jedisPool;
     private String redisConfigurationKey;
@@ -50,12 +52,25 @@ public class SingleLegExit implements Runnable {
     private String openPositionsQueueKeyName;
     private String closedPositionsQueueKeyName;
     private int slotNumber;
-    private int positionQty = 0;
+    private volatile int positionQty = 0;
     private int mktSubscriptionReqId;
 
     private String entryOrderStatus;
 
     private boolean mktDataSubscribed = false;
+    private TickStore.TickSnapshot tickSnapshot = new TickStore.TickSnapshot();
+
+    // breach is evaluated as soon as a tick arrives; everything else runs every HOUSEKEEPINGINTERVALMILLIS
+    private static final long HOUSEKEEPINGINTERVALMILLIS = 1000;
+    private volatile Thread monitoringThread;
+    private volatile boolean tickPending = false;
+    private int tickListenerReqId = -1;
+    private int lastExitOrderTime = 1528;
+    // set once this leg is being squared off, either by this thread or by PositionFlattener
+    private boolean squareOffClaimed = false;
+    // square off order placed by PositionFlattener, to be taken over by monitoring thread
+    private volatile int flattenOrderId = -1;
+    private static final long FLATTENHANDOVERWAITMILLIS = 10000;
     
     private double takeProfitGapPercentOnTakeProfitBreach = 0.50;
     private double stopLossGapPercentOnTakeProfitBreach = 0.25;
@@ -70,13 +85,12 @@ public class SingleLegExit implements Runnable {
         String legEntryTimeStamp;
         double legEntrySpread;
 
-        MyLegObjClass(int legIdentification, String newLegDetails) {
+        MyLegObjClass(int legIdentification, TradingObject myLocalTradeObject) {
             legId = legIdentification;
 
-            TradingObject myLocalTradeObject = new TradingObject(newLegDetails);
             legEntryTimeStamp = myLocalTradeObject.getEntryTimeStamp();
             qty = myLocalTradeObject.getSideAndSize();
-            legEntrySpread = Double.parseDouble(myLocalTradeObject.getEntrySpread());
+            legEntrySpread = myLocalTradeObject.getEntrySpreadValue();
 
             symbol = myLocalTradeObject.getContractUnderlyingName();
             lotSize = Math.abs(myLocalTradeObject.getContractLotSize() * qty);
@@ -178,14 +192,13 @@ public class SingleLegExit implements Runnable {
         
         if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), false)) {
             // Since position exists, get position details
-            legDetails = myUtils.getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag);
+            TradingObject myTradeObject = myUtils.getPositionFromRedis(jedisPool, openPositionsQueueKeyName, slotNumber, debugFlag);
 
-            legObj = new MyLegObjClass(slotNumber, legDetails);
-            TradingObject myTradeObject = new TradingObject(legDetails);
+            legObj = new MyLegObjClass(slotNumber, myTradeObject);
 
             entryOrderStatus = myTradeObject.getOrderState();
 
-            rangeLimitObj = new MyRangeActionObjClass(slotNumber, Long.parseLong(myTradeObject.getLastUpdatedTimeStamp()));
+            rangeLimitObj = new MyRangeActionObjClass(slotNumber, myTradeObject.getLastUpdatedTimeStampValue());
 
             if (myUtils.checkIfExistsHashMapField(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSTYPE", false)) {
                 String initialStopLossType = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSTYPE", false);
@@ -193,7 +206,7 @@ public class SingleLegExit implements Runnable {
                     initialStopLoss = Math.abs(legObj.qty) * Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSAMOUNT", false));
                 } else if (initialStopLossType.equalsIgnoreCase("sigmafactor")) {
                     double stopLossFactor = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALSTOPLOSSSIGMAFACTOR", false));
-                    initialStopLoss = Math.abs(legObj.qty) * Math.abs(stopLossFactor * Double.parseDouble(myTradeObject.getEntryStdDev()));
+                    initialStopLoss = Math.abs(legObj.qty) * Math.abs(stopLossFactor * myTradeObject.getEntryStdDevValue());
                 }
             }
 
@@ -203,7 +216,7 @@ public class SingleLegExit implements Runnable {
                     initialTakeProfit = Math.abs(legObj.qty) * Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALTAKEPROFITAMOUNT", false));
                 } else if (initialTakeProfitType.equalsIgnoreCase("sigmafactor")) {
                     double takeProfitFactor = Double.parseDouble(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "INITIALTAKEPROFITSIGMAFACTOR", false));
-                    initialTakeProfit = Math.abs(legObj.qty) * Math.abs(takeProfitFactor * Double.parseDouble(myTradeObject.getEntryStdDev()));
+                    initialTakeProfit = Math.abs(legObj.qty) * Math.abs(takeProfitFactor * myTradeObject.getEntryStdDevValue());
                 }
             }
 
@@ -211,17 +224,17 @@ public class SingleLegExit implements Runnable {
                 // This is first time monitoring has started as last update time is -1 or less than zero
                 if (legObj.qty > 0) {
                     // Pair is bought. Lower Breach is lower than current level while upper breach is higher than current level
-                    rangeLimitObj.stopLossLimit = (Double.parseDouble(myTradeObject.getEntrySpread()) - initialStopLoss);
-                    rangeLimitObj.takeProfitLimit = (Double.parseDouble(myTradeObject.getEntrySpread()) + initialTakeProfit);
+                    rangeLimitObj.stopLossLimit = (myTradeObject.getEntrySpreadValue() - initialStopLoss);
+                    rangeLimitObj.takeProfitLimit = (myTradeObject.getEntrySpreadValue() + initialTakeProfit);
                 } else if (legObj.qty < 0) {
                     // Pair is Shorted. Lower Breach is higher than current level while upper breach is lower than current level
-                    rangeLimitObj.stopLossLimit = (Double.parseDouble(myTradeObject.getEntrySpread()) + initialStopLoss);
-                    rangeLimitObj.takeProfitLimit = (Double.parseDouble(myTradeObject.getEntrySpread()) - initialTakeProfit);
+                    rangeLimitObj.stopLossLimit = (myTradeObject.getEntrySpreadValue() + initialStopLoss);
+                    rangeLimitObj.takeProfitLimit = (myTradeObject.getEntrySpreadValue() - initialTakeProfit);
                 }
             } else {
                 // restarting the monitoring as last updated time is positive/greater than zero
-                rangeLimitObj.stopLossLimit = Double.parseDouble(myTradeObject.getLowerBreach());
-                rangeLimitObj.takeProfitLimit = Double.parseDouble(myTradeObject.getUpperBreach());
+                rangeLimitObj.stopLossLimit = myTradeObject.getLowerBreachValue();
+                rangeLimitObj.takeProfitLimit = myTradeObject.getUpperBreachValue();
             }
 
         }
@@ -234,6 +247,44 @@ public class SingleLegExit implements Runnable {
         quit = true;
     }
 
+    // Called on the EReader thread; only wakes up the monitoring thread
+    @Override
+    public void onTick(int requestId, int field, double price) {
+        tickPending = true;
+        Thread waitingThread = monitoringThread;
+        if (waitingThread != null) {
+            LockSupport.unpark(waitingThread);
+        }
+    }
+
+    // Waits till a tick arrives or timeout elapses. Returns true if a tick arrived.
+    private boolean waitForTick(long timeoutMillis) {
+        if (!tickPending) {
+            LockSupport.parkNanos(this, timeoutMillis * 1000000L);
+        }
+        boolean tickArrived = tickPending;
+        tickPending = false;
+        return (tickArrived);
+    }
+
+    private void evaluateBreachOnTick() {
+        updateTickObj();
+        calculateBreach(legObj, rangeLimitObj);
+        actOnBreach(legObj, rangeLimitObj);
+        if (positionQty == 0) {
+            updatePositionStatusInQueues(String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(exchangeTimeZone)));
+            terminate();
+        }
+    }
+
+    private void listenToTicks(int requestId) {
+        if (requestId != tickListenerReqId) {
+            ibInteractionClient.removeTickListener(tickListenerReqId, this);
+            ibInteractionClient.addTickListener(requestId, this);
+            tickListenerReqId = requestId;
+        }
+    }
+
     @Override
     public void run() {
 
@@ -247,14 +298,27 @@ public class SingleLegExit implements Runnable {
         }
 
         TimeZone.setDefault(exchangeTimeZone);
+        monitoringThread = Thread.currentThread();
+        long nextHousekeepingTime = System.currentTimeMillis() + HOUSEKEEPINGINTERVALMILLIS;
         while (!quit) {
-            myUtils.waitForNMiliSeconds(1000); // Check every 1 sec. Can be made more frequent but not sure if adds any value.                       
-            Calendar timeNow = Calendar.getInstance(exchangeTimeZone);
-            int lastExitOrderTime = 1528;
-            String lastExitOrderTimeConfigValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "LASTEXITORDERTIME", false);
-            if ((lastExitOrderTimeConfigValue != null) && (lastExitOrderTimeConfigValue.length() > 0)) {
-                lastExitOrderTime = Integer.parseInt(lastExitOrderTimeConfigValue);
+            int handedOverOrderId = flattenOrderId;
+            if (handedOverOrderId > 0) {
+                completeHandedOverSquareOff(legObj, handedOverOrderId);
+                updatePositionStatusInQueues(String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(exchangeTimeZone)));
+                terminate();
+                continue;
+            }
+            // Ticks wake this thread up so stop loss / take profit are checked right away instead of on the next second
+            long millisToHousekeeping = nextHousekeepingTime - System.currentTimeMillis();
+            if (millisToHousekeeping > 0) {
+                if (waitForTick(millisToHousekeeping) && mktDataSubscribed) {
+                    evaluateBreachOnTick();
+                }
+                continue;
             }
+            nextHousekeepingTime = System.currentTimeMillis() + HOUSEKEEPINGINTERVALMILLIS;
+            Calendar timeNow = Calendar.getInstance(exchangeTimeZone);
+            lastExitOrderTime = ibInteractionClient.strategyConfig.getConfig().lastExitOrderTime;
             // Provision for exiting if time has reached outside market hours for exchange - say NSE or NYSE
             if (Integer.parseInt(String.format("%1$tH%1$tM", timeNow)) >= lastExitOrderTime) {
                 if (debugFlag) {
@@ -324,46 +388,24 @@ public class SingleLegExit implements Runnable {
                         System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "IB connection not available to monitor. Exiting the thread for Leg : " + legObj.symbol + "_" + legObj.contractType);
                     }
                 } else {
-                    if (legObj.contractType.equalsIgnoreCase("STK")) {
-                        if ( (!mktDataSubscribed) || 
-                               (!(ibInteractionClient.checkStkMktDataSubscription(legObj.symbol))) 
-                           ) {
-                            ibInteractionClient.cancelMktDataSubscription(slotNumber); // In case subscription is still available.. 
-                            mktSubscriptionReqId = ibInteractionClient.requestStkMktDataSubscription(slotNumber, legObj.symbol);
-                            mktDataSubscribed = true;
-                       }                        
-                    } else if (legObj.contractType.equalsIgnoreCase("FUT")) {
-                        if ( (!mktDataSubscribed) || 
-                               (!(ibInteractionClient.checkFutMktDataSubscription(legObj.symbol, legObj.futExpiry))) 
-                           ) {
-                            ibInteractionClient.cancelMktDataSubscription(slotNumber); // In case subscription is still available.. 
-                            mktSubscriptionReqId = ibInteractionClient.requestFutMktDataSubscription(slotNumber, legObj.symbol, legObj.futExpiry);
-                            mktDataSubscribed = true;
-                       }                       
-                    } else if (legObj.contractType.equalsIgnoreCase("OPT")) {
-                        if ( (!mktDataSubscribed) || 
-                               (!(ibInteractionClient.checkOptMktDataSubscription(legObj.symbol, legObj.futExpiry, legObj.rightType, legObj.strikePrice))) 
-                           ) {
-                            ibInteractionClient.cancelMktDataSubscription(slotNumber); // In case subscription is still available.. 
-                            mktSubscriptionReqId = ibInteractionClient.requestOptMktDataSubscription(slotNumber, legObj.symbol, legObj.futExpiry, legObj.rightType, legObj.strikePrice);
-                            mktDataSubscribed = true;
-                       }                       
+                    // subscription is shared with other slots on the same contract; the subscription
+                    // manager resubscribes it when the feed goes quiet, so a slot only joins it once
+                    if (!mktDataSubscribed) {
+                        mktSubscriptionReqId = ibInteractionClient.mktDataSubscriptions.acquire(slotNumber, legObj.contractType, legObj.symbol, legObj.futExpiry, legObj.rightType, legObj.strikePrice);
+                        listenToTicks(mktSubscriptionReqId);
+                        mktDataSubscribed = true;
                     }
-                    
+
                     if (mktDataSubscribed) {
                         updateTickObj();
                         int timeOut = 0;
                         while ((tickObj.firstSymbolLastPrice <= 0)
                                 && (timeOut < 35)) {
-                            // Wait for 30 seconds before resubscribing
+                            // Wait for first price to arrive
                             myUtils.waitForNSeconds(5);
                             timeOut += 5;
                             updateTickObj();
                         }
-                        if (tickObj.firstSymbolLastPrice == 0) {
-                            // resubscribe
-                            mktDataSubscribed = false;
-                        }
                     }
                     // Update prices
                     updateTickObj();
@@ -413,9 +455,23 @@ public class SingleLegExit implements Runnable {
             }
         }
 
+        // Leg may have been claimed by PositionFlattener just before monitoring stopped; take over its order
+        if ((positionQty != 0) && isSquareOffClaimed()) {
+            long handOverDeadline = System.currentTimeMillis() + FLATTENHANDOVERWAITMILLIS;
+            while ((flattenOrderId <= 0) && isSquareOffClaimed() && (System.currentTimeMillis() < handOverDeadline)) {
+                LockSupport.parkNanos(this, 100 * 1000000L);
+            }
+            if (flattenOrderId > 0) {
+                completeHandedOverSquareOff(legObj, flattenOrderId);
+                updatePositionStatusInQueues(String.format("%1$tY%1$tm%1$td%1$tH%1$tM%1$tS", Calendar.getInstance(exchangeTimeZone)));
+            }
+        }
+
         // Exited Position or Markets are closing. Now Exiting.
-        // Cancel Market Data Request     
-        ibInteractionClient.cancelMktDataSubscription(slotNumber); // In case subscription is still available..
+        // Leave the market data subscription; it is cancelled once no other slot uses it
+        ibInteractionClient.removeTickListener(tickListenerReqId, this);
+        monitoringThread = null;
+        ibInteractionClient.mktDataSubscriptions.release(slotNumber);
 
         if (debugFlag) {
             System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Stopped Monitoring of Leg id " + slotNumber + " " + legObj.symbol + "_" + legObj.contractType + ". Exiting thread Now. Thread name : " + threadName);
@@ -523,13 +579,14 @@ public class SingleLegExit implements Runnable {
 
     void updateTickObj() {
 
-        if (ibInteractionClient.myTickDetails.containsKey(mktSubscriptionReqId)) {
-            tickObj.firstSymbolBidPrice = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getSymbolBidPrice();
-            tickObj.firstSymbolAskPrice = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getSymbolAskPrice();
-            tickObj.firstSymbolLastPrice = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getSymbolLastPrice();
-            tickObj.firstSymbolClosePrice = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getSymbolClosePrice();
-            tickObj.lastPriceUpdateTime = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getLastPriceUpdateTime();
-            tickObj.closePriceUpdateTime = ibInteractionClient.myTickDetails.get(mktSubscriptionReqId).getClosePriceUpdateTime();
+        // one consistent copy of bid, ask, last and close
+        if (ibInteractionClient.myTickStore.readSnapshot(mktSubscriptionReqId, tickSnapshot)) {
+            tickObj.firstSymbolBidPrice = tickSnapshot.bidPrice;
+            tickObj.firstSymbolAskPrice = tickSnapshot.askPrice;
+            tickObj.firstSymbolLastPrice = tickSnapshot.lastPrice;
+            tickObj.firstSymbolClosePrice = tickSnapshot.closePrice;
+            tickObj.lastPriceUpdateTime = tickSnapshot.lastPriceUpdateTime;
+            tickObj.closePriceUpdateTime = tickSnapshot.closePriceUpdateTime;
 
             if (tickObj.firstSymbolLastPrice > 0) {
                 tickObj.comboLastPrice = tickObj.firstSymbolLastPrice * legObj.lotSize;
@@ -546,6 +603,7 @@ public class SingleLegExit implements Runnable {
             if (tickObj.firstSymbolClosePrice > 0) {
                 tickObj.comboClosePrice = tickObj.firstSymbolClosePrice * legObj.lotSize;
             }            
+            ibInteractionClient.riskEngine.onMark(slotNumber, tickObj.comboLastPrice);
         } else {
             // resubscribe OR get new marketSubscriptionRequestId in case of existing subscription
             mktDataSubscribed = false;
@@ -668,30 +726,10 @@ public class SingleLegExit implements Runnable {
 
     boolean exitOrderCompletelyFilled(int orderId, int maxWaitTime) {
 
-        ibInteractionClient.ibClient.reqOpenOrders();
-        int timeOut = 0;
-        boolean orderFilledStatus = false;
-        while ( !(orderFilledStatus) &&
-                (timeOut < maxWaitTime)) {
-            if (ibInteractionClient.myOrderStatusDetails.containsKey(orderId) &&
-                    (ibInteractionClient.myOrderStatusDetails.get(orderId).getRemainingQuantity() == 0) ) {
-                orderFilledStatus = true;
-            }
-            if (debugFlag) {
-                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Waiting for Order to be filled for Order id " + orderId + " for " + timeOut + " seconds");
-            }
-            timeOut += 10;
-            myUtils.waitForNSeconds(5);
-            // Check if following needs to be commented
-            ibInteractionClient.ibClient.reqOpenOrders();
-            myUtils.waitForNSeconds(5);
-        }
-        if (ibInteractionClient.myOrderStatusDetails.containsKey(orderId) &&
-                (ibInteractionClient.myOrderStatusDetails.get(orderId).getRemainingQuantity() == 0) ) {
-            orderFilledStatus = true;
-        }        
-        
-        return(orderFilledStatus);
+        // completes as soon as IB reports the order filled, cancelled or inactive; relative orders are re-priced meanwhile
+        MyOrderStatusObjClass orderStatus = ibInteractionClient.orderChaser.awaitOrderCompletion(orderId, slotNumber, maxWaitTime, debugFlag);
+
+        return ((orderStatus != null) && (orderStatus.getRemainingQuantity() == 0));
     }
 
     int placeConfiguredOrderStk(String symbolName, int quantity, String mktAction) {
@@ -791,51 +829,111 @@ public class SingleLegExit implements Runnable {
 
     void squareOffLegPosition(MyLegObjClass legDef) {
 
-        if (positionQty != 0) {
+        // claim fails if PositionFlattener has already placed the square off order of this leg
+        if ((positionQty != 0) && claimSquareOff()) {
+            RiskEngine.RiskDecision riskDecision = ibInteractionClient.riskEngine.reserveExit(slotNumber, (legDef.qty > 0) ? -1 : 1);
+            if (!riskDecision.isAllowed()) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Not Squaring Off legId :" + legDef.legId + " : Symbol :" + legDef.symbol + ". Risk check " + riskDecision);
+                releaseSquareOff();
+                return;
+            }
             if (debugFlag) {
                 System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Squaring Off legId :" + legDef.legId + " : Symbol :" + legDef.symbol);
             }
 
             setOpenPositionSlotOrderStatus("exitorderinitiated");
             // Place market Order with IB for squaring Off
+            requestBidAskSnapshot(legDef);
             if (legDef.qty > 0) {
                 // Leg was bought at the the time of taking position. It would be sold for squaring off
                 // Place Order and get the order ID
-                if (legDef.contractType.equalsIgnoreCase("STK")) {
-                    // for STK type
-                    ibInteractionClient.getBidAskPriceForStk(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol);
-                } else if (legDef.contractType.equalsIgnoreCase("FUT")) {
-                    // for FUT type
-                    ibInteractionClient.getBidAskPriceForFut(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry);
-                } else if (legDef.contractType.equalsIgnoreCase("OPT")) {
-                    // for OPT type
-                    ibInteractionClient.getBidAskPriceForOpt(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry, legDef.rightType, legDef.strikePrice);
-                }
                 legOrderId = placeConfiguredOrder(legDef.symbol, Math.abs(legDef.lotSize), legDef.contractType, legDef.futExpiry, legDef.rightType, legDef.strikePrice, "SELL");              
                 bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
             } else if (legDef.qty < 0) {
                 // Leg was shorted at the the time of taking position. leg would be bought for squaring off
-                if (legDef.contractType.equalsIgnoreCase("STK")) {
-                    // for STK type
-                    ibInteractionClient.getBidAskPriceForStk(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol);
-                } else if (legDef.contractType.equalsIgnoreCase("FUT")) {
-                    // for FUT type
-                    ibInteractionClient.getBidAskPriceForFut(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry);
-                } else if (legDef.contractType.equalsIgnoreCase("OPT")) {
-                    // for OPT type
-                    ibInteractionClient.getBidAskPriceForOpt(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry, legDef.rightType, legDef.strikePrice);
-                }
                 legOrderId = placeConfiguredOrder(legDef.symbol, Math.abs(legDef.lotSize), legDef.contractType, legDef.futExpiry, legDef.rightType, legDef.strikePrice, "BUY");              
                 bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
             }
+            if (legOrderId <= 0) {
+                ibInteractionClient.riskEngine.onExitCancelled(slotNumber);
+            }
 
-            if (legOrderId > 0) {
-                setOpenPositionSlotOrderStatus("exitordersenttoexchange");
-                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Square Off Order for " + legDef.symbol + " initiated with orderid as " + legOrderId);
+            recordSquareOffFill(legDef);
+            //ibInteractionClient.stopGettingBidAskPriceForFut(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET);            
+            // Make the position quantity as zero to indicate that square off Order has been placed. This would be used to exit the thread
+            positionQty = 0;
+        }
 
-                // Wait for orders to be completely filled            
-                if (exitOrderCompletelyFilled(legOrderId, 750)) {
-                    setOpenPositionSlotOrderStatus("exitorderfilled");
+    } // End of squareOffLegPosition
+
+    // Square off order placed by PositionFlattener on behalf of this leg; waits for it to fill and records the exit
+    void completeHandedOverSquareOff(MyLegObjClass legDef, int orderId) {
+
+        legOrderId = orderId;
+        flattenOrderId = -1;
+        if (debugFlag) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Taking over Square Off Order " + orderId + " placed by flatten all for legId :" + legDef.legId + " : Symbol :" + legDef.symbol);
+        }
+        // bid ask is only for the record, so it is requested after the order is out
+        requestBidAskSnapshot(legDef);
+        bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
+
+        recordSquareOffFill(legDef);
+        positionQty = 0;
+
+    } // End of completeHandedOverSquareOff
+
+    void requestBidAskSnapshot(MyLegObjClass legDef) {
+
+        if (legDef.contractType.equalsIgnoreCase("STK")) {
+            // for STK type
+            ibInteractionClient.getBidAskPriceForStk(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol);
+        } else if (legDef.contractType.equalsIgnoreCase("FUT")) {
+            // for FUT type
+            ibInteractionClient.getBidAskPriceForFut(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry);
+        } else if (legDef.contractType.equalsIgnoreCase("OPT")) {
+            // for OPT type
+            ibInteractionClient.getBidAskPriceForOpt(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET, legDef.symbol, legDef.futExpiry, legDef.rightType, legDef.strikePrice);
+        }
+
+    } // End of requestBidAskSnapshot
+
+    // Waits for square off order legOrderId to be filled and records filled price and bid ask details of the exit
+    void recordSquareOffFill(MyLegObjClass legDef) {
+
+        if (legOrderId > 0) {
+            setOpenPositionSlotOrderStatus("exitordersenttoexchange");
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Square Off Order for " + legDef.symbol + " initiated with orderid as " + legOrderId);
+
+            // Wait for orders to be completely filled            
+            if (exitOrderCompletelyFilled(legOrderId, 750)) {
+                setOpenPositionSlotOrderStatus("exitorderfilled");
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Exit Order filled for Order id " + legOrderId + " at avg filled price " + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice());
+                if (legDef.qty > 0) {
+                    // Leg was bought at the the time of taking position. Leg would be sold for squaring off
+                    legFilledPrice = ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice() * legObj.lotSize;
+                    bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
+                    bidAskDetails = bidAskDetails + "__" + legOrderId + "_" + legDef.symbol + "_" + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice();
+                } else if (legDef.qty < 0) {
+                    // Leg was shorted at the the time of taking position. leg would be bought for squaring off
+                    legFilledPrice = ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice() * legObj.lotSize;
+                    bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
+                    bidAskDetails = bidAskDetails + "__" + legOrderId + "_" + legDef.symbol + "_" + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice();
+                }
+                ibInteractionClient.riskEngine.onExitFill(slotNumber, legOrderId, legFilledPrice);
+            } else {
+                int requestId = ibInteractionClient.getNextRequestId();                    
+                ibInteractionClient.requestExecutionDetailsHistorical(requestId, 1);
+                // wait till details are received OR for timeput to happen
+                int timeOut = 0;
+                while ((timeOut < 121)
+                        && (!(ibInteractionClient.requestsCompletionStatus.get(requestId)) ) ) {
+                    myUtils.waitForNSeconds(5);
+                    timeOut = timeOut + 5;
+                }
+                if (ibInteractionClient.myOrderStatusDetails.containsKey(legOrderId) &&
+                        (ibInteractionClient.myOrderStatusDetails.get(legOrderId).getRemainingQuantity() == 0) &&
+                        (ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledQuantity() > 0)) {
                     System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Exit Order filled for Order id " + legOrderId + " at avg filled price " + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice());
                     if (legDef.qty > 0) {
                         // Leg was bought at the the time of taking position. Leg would be sold for squaring off
@@ -848,51 +946,64 @@ public class SingleLegExit implements Runnable {
                         bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
                         bidAskDetails = bidAskDetails + "__" + legOrderId + "_" + legDef.symbol + "_" + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice();
                     }
+                    ibInteractionClient.riskEngine.onExitFill(slotNumber, legOrderId, legFilledPrice);
                 } else {
-                    int requestId = ibInteractionClient.getNextRequestId();                    
-                    ibInteractionClient.requestExecutionDetailsHistorical(requestId, 1);
-                    // wait till details are received OR for timeput to happen
-                    int timeOut = 0;
-                    while ((timeOut < 121)
-                            && (!(ibInteractionClient.requestsCompletionStatus.get(requestId)) ) ) {
-                        myUtils.waitForNSeconds(5);
-                        timeOut = timeOut + 5;
-                    }
-                    if (ibInteractionClient.myOrderStatusDetails.containsKey(legOrderId) &&
-                            (ibInteractionClient.myOrderStatusDetails.get(legOrderId).getRemainingQuantity() == 0) &&
-                            (ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledQuantity() > 0)) {
-                        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Exit Order filled for Order id " + legOrderId + " at avg filled price " + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice());
-                        if (legDef.qty > 0) {
-                            // Leg was bought at the the time of taking position. Leg would be sold for squaring off
-                            legFilledPrice = ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice() * legObj.lotSize;
-                            bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
-                            bidAskDetails = bidAskDetails + "__" + legOrderId + "_" + legDef.symbol + "_" + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice();
-                        } else if (legDef.qty < 0) {
-                            // Leg was shorted at the the time of taking position. leg would be bought for squaring off
-                            legFilledPrice = ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice() * legObj.lotSize;
-                            bidAskDetails = legDef.symbol + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolBidPrice() + "_" + ibInteractionClient.myBidAskPriceDetails.get(slotNumber).getSymbolAskPrice();
-                            bidAskDetails = bidAskDetails + "__" + legOrderId + "_" + legDef.symbol + "_" + ibInteractionClient.myOrderStatusDetails.get(legOrderId).getFilledPrice();
-                        }
-                    }
-                    System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Please update manually as exit Order initiated but did not receive Confirmation for Orders filling for Order id " + legOrderId);
+                    // exit order was cancelled, rejected or only partly filled; let a later exit be tried
+                    ibInteractionClient.riskEngine.onExitCancelled(slotNumber);
                 }
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Please update manually as exit Order initiated but did not receive Confirmation for Orders filling for Order id " + legOrderId);
             }
-            //ibInteractionClient.stopGettingBidAskPriceForFut(slotNumber + IBInteraction.IBTICKARRAYINDEXOFFSET);            
-            // Make the position quantity as zero to indicate that square off Order has been placed. This would be used to exit the thread
-            positionQty = 0;
         }
 
-    } // End of squareOffLegPosition
+    } // End of recordSquareOffFill
+
+    // Called by PositionFlattener before it places the square off order of this leg. Returns false if leg is
+    // already being squared off or is no longer monitored; squareOffLegPosition does nothing once claimed.
+    synchronized boolean claimSquareOff() {
+        if (squareOffClaimed || quit || (positionQty == 0)) {
+            return (false);
+        }
+        squareOffClaimed = true;
+        return (true);
+    }
+
+    // Called by PositionFlattener if square off order could not be placed after claiming
+    synchronized void releaseSquareOff() {
+        squareOffClaimed = false;
+    }
+
+    synchronized boolean isSquareOffClaimed() {
+        return (squareOffClaimed);
+    }
+
+    // Called by PositionFlattener once square off order of this leg is placed. Wakes up monitoring thread to take it over
+    void handOverSquareOffOrder(int orderId) {
+        flattenOrderId = orderId;
+        Thread waitingThread = monitoringThread;
+        if (waitingThread != null) {
+            LockSupport.unpark(waitingThread);
+        }
+    }
+
+    Contract getSquareOffContract() {
+        return (ibInteractionClient.getContract(legObj.contractType, legObj.symbol, legObj.futExpiry, legObj.rightType, legObj.strikePrice));
+    }
+
+    // flatten all always exits at market, as is done at EOD
+    Order getSquareOffMarketOrder() {
+        return (ibInteractionClient.getMarketOrder(Math.abs(legObj.lotSize), (legObj.qty > 0) ? "SELL" : "BUY", strategyName));
+    }
+
 
     void setOpenPositionSlotOrderStatus(String orderStatus) {
 
         if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag)) {
             // Since position exists, get position details
-            TradingObject myTradingObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag));
+            TradingObject myTradingObject = myUtils.getPositionFromRedis(jedisPool, openPositionsQueueKeyName, slotNumber, debugFlag);
             myTradingObject.setOrderState(orderStatus);
 
             Jedis jedis = jedisPool.getResource();
-            jedis.hset(openPositionsQueueKeyName, Integer.toString(slotNumber), myTradingObject.getCompleteTradingObjectString());
+            myUtils.putPositionInRedis(jedis, openPositionsQueueKeyName, slotNumber, myTradingObject);
             jedisPool.returnResource(jedis);
         }
 
@@ -904,7 +1015,7 @@ public class SingleLegExit implements Runnable {
 
         if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag)) {
             // Since position exists, get position details
-            TradingObject myTradingObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag));
+            TradingObject myTradingObject = myUtils.getPositionFromRedis(jedisPool, openPositionsQueueKeyName, slotNumber, debugFlag);
             returnOrderStatus = myTradingObject.getOrderState();
         }
 
@@ -915,7 +1026,7 @@ public class SingleLegExit implements Runnable {
 
         if (myUtils.checkIfExistsHashMapField(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag)) {
             // Since position exists, get position details
-            TradingObject myTradingObject = new TradingObject(myUtils.getHashMapValueFromRedis(jedisPool, openPositionsQueueKeyName, Integer.toString(slotNumber), debugFlag));
+            TradingObject myTradingObject = myUtils.getPositionFromRedis(jedisPool, openPositionsQueueKeyName, slotNumber, debugFlag);
 
             double legLastPrice;
             if ((tickObj.lastPriceUpdateTime > 0) && (tickObj.lastPriceUpdateTime >= tickObj.closePriceUpdateTime)) {
@@ -930,7 +1041,7 @@ public class SingleLegExit implements Runnable {
             myTradingObject.setLastUpdatedTimeStamp(timeWhenUpdated);
 
             Jedis jedis = jedisPool.getResource();
-            jedis.hset(openPositionsQueueKeyName, Integer.toString(slotNumber), myTradingObject.getCompleteTradingObjectString());
+            myUtils.putPositionInRedis(jedis, openPositionsQueueKeyName, slotNumber, myTradingObject);
             jedisPool.returnResource(jedis);
         }
     }
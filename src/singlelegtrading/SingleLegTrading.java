@@ -27,6 +27,8 @@ package singlelegtrading;
 /**
  * @author Manish Kumar Singh
  */
+import java.io.File;
+import java.io.IOException;
 import redis.clients.jedis.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,6 +47,8 @@ public class SingleLegTrading {
     private static String exchangeHolidayListKeyName;
 
     public ConcurrentHashMap<String, MyManualInterventionClass> myMIDetails;
+    // exit monitor of each open position slot
+    public ConcurrentHashMap<Integer, SingleLegExit> myExitMonitors;
 
     private static MyExchangeClass myExchangeObj;
 
@@ -71,10 +75,95 @@ public class SingleLegTrading {
         ibOrderIDKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ORDERIDFIELDKEYNAME", false);
         exchangeHolidayListKeyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "EXCHANGEHOLIDAYLISTKEYNAME", false);
         ibInteractionClient = new IBInteraction(jedisPool, ibOrderIDKeyName, ibIP, ibPort, ibClientID, myUtils, myExchangeObj);
+        // Optional - number of order Ids reserved from ORDERIDFIELDKEYNAME at a time
+        String orderIdBlockSize = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ORDERIDBLOCKSIZE", false);
+        if ((orderIdBlockSize != null) && (orderIdBlockSize.length() > 0)) {
+            int blockSize = OrderIdAllocator.DEFAULTBLOCKSIZE;
+            try {
+                blockSize = Integer.parseInt(orderIdBlockSize.trim());
+            } catch (NumberFormatException ex) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Ignoring invalid value " + orderIdBlockSize + " of ORDERIDBLOCKSIZE in strategy configuration");
+            }
+            ibInteractionClient.orderIdAllocator = new OrderIdAllocator(jedisPool, ibOrderIDKeyName, myUtils, blockSize);
+        }
+        // Optional - "NIO" selects the buffered socket decoder, anything else keeps the default IB reader
+        String ibReaderMode = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "IBAPIREADERMODE", false);
+        if ((ibReaderMode != null) && (ibReaderMode.equalsIgnoreCase("NIO"))) {
+            ibInteractionClient.ibClient.setUseNioReader(true);
+        }
+        // Optional - directory where raw TWS traffic is journaled, one file per connection, for offline replay
+        String ibCaptureDirectory = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "IBAPICAPTUREDIRECTORY", false);
+        if ((ibCaptureDirectory != null) && (ibCaptureDirectory.length() > 0)) {
+            ibInteractionClient.ibClient.setCaptureDirectory(new File(ibCaptureDirectory));
+        }
+
+        // Optional - seconds without ticks after which a market data subscription is renewed
+        int mktDataStaleSeconds = (int) getOptionalConfigValue("MKTDATASTALESECONDS", 0);
+        // Optional - console logging of IB callbacks : OFF, ORDERS (order status only) or TICKS (order status and bid/ask ticks)
+        String callbackLogLevel = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "IBCALLBACKLOGLEVEL", false);
+        if ((callbackLogLevel != null) && (callbackLogLevel.equalsIgnoreCase("OFF"))) {
+            ibInteractionClient.callbackLog.setLogLevel(CallbackLogger.LEVELOFF);
+        } else if ((callbackLogLevel != null) && (callbackLogLevel.equalsIgnoreCase("ORDERS"))) {
+            ibInteractionClient.callbackLog.setLogLevel(CallbackLogger.LEVELORDERS);
+        }
+        // Optional - log only one out of every N bid/ask ticks
+        ibInteractionClient.callbackLog.setTickSamplingRate((int) getOptionalConfigValue("IBCALLBACKLOGTICKSAMPLING", 1));
+
+        // Optional - message rate and burst allowed towards TWS; TWS disconnects above 50 messages a second
+        ibInteractionClient.outboundScheduler.setRateLimit(getOptionalConfigValue("IBMAXMESSAGESPERSECOND", OutboundScheduler.DEFAULTMESSAGESPERSECOND),
+                (int) getOptionalConfigValue("IBMESSAGEBURSTSIZE", OutboundScheduler.DEFAULTBURSTSIZE));
+
+        // Optional - re-pricing of relative orders : seconds between steps, number of steps before converting to market,
+        // offset added per step (0 is the initial offset) and farthest limit from the price at placement (0 is no limit)
+        ibInteractionClient.orderChaser.setChaseLimits((int) getOptionalConfigValue("CHASEINTERVALSECONDS", OrderChaser.DEFAULTCHASEINTERVALSECONDS),
+                (int) getOptionalConfigValue("CHASEMAXSTEPS", OrderChaser.DEFAULTMAXCHASESTEPS),
+                getOptionalConfigValue("CHASESTEPAMOUNT", 0.0),
+                getOptionalConfigValue("CHASEMAXAMOUNT", 0.0));
+
+        // Optional - number of completed orders and hours for which their status is kept in memory
+        int orderStatusArchiveSize = (int) getOptionalConfigValue("ORDERSTATUSARCHIVESIZE", OrderStatusStore.DEFAULTMAXARCHIVEDORDERS);
+        double orderStatusArchiveHours = getOptionalConfigValue("ORDERSTATUSARCHIVEHOURS", OrderStatusStore.DEFAULTMAXARCHIVEAGEMILLIS / (60 * 60 * 1000.0));
+        ibInteractionClient.myOrderStatusDetails.setArchiveLimits(orderStatusArchiveSize, (long) (orderStatusArchiveHours * 60 * 60 * 1000));
+        // Optional - file to which order status evicted from memory is appended
+        String orderStatusSpillFile = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "ORDERSTATUSSPILLFILE", false);
+        if ((orderStatusSpillFile != null) && (orderStatusSpillFile.length() > 0)) {
+            try {
+                ibInteractionClient.myOrderStatusDetails.setSpillFile(new File(orderStatusSpillFile));
+            } catch (IOException ex) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Could not open order status spill file " + orderStatusSpillFile + " : " + ex.getMessage());
+            }
+        }
+        // Optional - csv (default) or binary. Format positions are written in; records of both formats are read
+        myUtils.setPositionRecordFormat(TradingObjectCodec.getFormat(myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "POSITIONRECORDFORMAT", false)));
+
+        String strategyName = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, "STRATEGYNAME", false);
+        ibInteractionClient.executionSync = new ExecutionSync("SyncingExecutionsThread", jedisPool, strategyName, ibInteractionClient, myUtils, myExchangeObj, debugFlag);
+        // Holiday list is read once here and shared through the calendar by all threads
+        ibInteractionClient.exchangeCalendar = new ExchangeCalendar(myExchangeObj, myUtils.getKeyValueFromRedis(jedisPool, exchangeHolidayListKeyName, false));
+        ibInteractionClient.strategyConfig = new StrategyConfig("WatchingStrategyConfigThread", jedisPool, redisConfigurationKey, myExchangeObj.getExchangeTimeZone(), debugFlag);
+        ibInteractionClient.riskEngine = new RiskEngine(jedisPool, myUtils, myExchangeObj.getExchangeTimeZone());
+
+        ibInteractionClient.mktDataSubscriptions = new MarketDataSubscriptionManager("MonitoringMarketDataFeedsThread", ibInteractionClient, myUtils, myExchangeObj, mktDataStaleSeconds, debugFlag);
 
         myMIDetails = new ConcurrentHashMap<String, MyManualInterventionClass>();
+        myExitMonitors = new ConcurrentHashMap<Integer, SingleLegExit>();
     }
 
+    // Value of an optional numeric field of the strategy configuration. defaultValue if it is unset or not a number
+    private double getOptionalConfigValue(String fieldName, double defaultValue) {
+
+        String configValue = myUtils.getHashMapValueFromRedis(jedisPool, redisConfigurationKey, fieldName, false);
+        if ((configValue == null) || (configValue.trim().length() == 0)) {
+            return (defaultValue);
+        }
+        try {
+            return (Double.parseDouble(configValue.trim()));
+        } catch (NumberFormatException ex) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())) + "Ignoring invalid value " + configValue + " of " + fieldName + " in strategy configuration");
+            return (defaultValue);
+        }
+    } // End of getOptionalConfigValue()
+
     /**
      * @param args the command line arguments
      */
@@ -103,14 +192,21 @@ public class SingleLegTrading {
 
         // Set default timezone
         TimeZone.setDefault(myExchangeObj.getExchangeTimeZone());
-        // Consolidate all open positions to serial from first position        
+        // Consolidate all open positions to serial from first position, rewriting them in the configured record format
         myUtils.defragmentOpenPositionsQueue(jedisPool, redisConfigurationKey, true);
                 
-        if ((!myUtils.fallsOnExchangeHoliday("Exchange is closed today", myUtils.getKeyValueFromRedis(jedisPool, exchangeHolidayListKeyName, false), Calendar.getInstance(myExchangeObj.getExchangeTimeZone()), debugFlag))) {
+        if (!myComboTradingSystem.ibInteractionClient.exchangeCalendar.isHoliday(Calendar.getInstance(myExchangeObj.getExchangeTimeZone()))) {
             // Check if current time is outside Exchange Operating hours, then keep waiting for exchange to open
 
             myUtils.waitForStartTime(myExchangeObj.getExchangeStartTimeHHMM(), myExchangeObj.getExchangeTimeZone(), "Exchange to open", debugFlag);
 
+            // Spawn a thread to write the console log of IB callbacks
+            myComboTradingSystem.ibInteractionClient.callbackLog.start();
+            // Spawn a thread to send requests to IB within its message rate
+            myComboTradingSystem.ibInteractionClient.outboundScheduler.start();
+            // Spawn a thread to reload the strategy configuration snapshot whenever its hash changes
+            myComboTradingSystem.ibInteractionClient.strategyConfig.start();
+
             // Keep trying to establish Connection with IB Client till 15 minutes to market closing time 
             while ((!myComboTradingSystem.ibInteractionClient.connectToIB(120))
                     && (Integer.parseInt(String.format("%1$tH%1$tM", Calendar.getInstance(myExchangeObj.getExchangeTimeZone()))) < (myExchangeObj.getExchangeCloseTimeHHMM() - 12))) {
@@ -123,10 +219,21 @@ public class SingleLegTrading {
             }
 
             //Get order details of executed order from IB to redis hashmap - will help construct reports anytime irrespective of IB being available or not  
-            myUtils.getOrderDetails2LocalDB(jedisPool, redisConfigurationKey, myComboTradingSystem.ibInteractionClient, true);
+            // Only executions after the last synced one are requested
+            myComboTradingSystem.ibInteractionClient.executionSync.syncNow(300);
+            // Spawn a thread to keep writing executions to redis hashmap as they arrive
+            myComboTradingSystem.ibInteractionClient.executionSync.start();
+
+            // Load exposure of open positions and PnL of positions closed today for pre-trade risk checks
+            StrategyConfig.MyStrategyConfigClass strategyConfig = myComboTradingSystem.ibInteractionClient.strategyConfig.getConfig();
+            myComboTradingSystem.ibInteractionClient.riskEngine.refreshLimits(strategyConfig.getConfigMap());
+            myComboTradingSystem.ibInteractionClient.riskEngine.loadPositions(strategyConfig.openPositionsQueueKeyName, strategyConfig.closedPositionsQueueKeyName);
             
+            // Spawn a thread to resubscribe market data feeds which stop ticking
+            myComboTradingSystem.ibInteractionClient.mktDataSubscriptions.start();
+
             // Spawn a thread to monitor the manual intervention signals queue
-            MonitorManualInterventionSignals monitorManualInterventionSignalsQueue = new MonitorManualInterventionSignals("MonitoringManualInterventionsSignalsThread", jedisPool, redisConfigurationKey, myUtils, myExchangeObj, myComboTradingSystem.myMIDetails, debugFlag);
+            MonitorManualInterventionSignals monitorManualInterventionSignalsQueue = new MonitorManualInterventionSignals("MonitoringManualInterventionsSignalsThread", jedisPool, redisConfigurationKey, myUtils, myExchangeObj, myComboTradingSystem.ibInteractionClient, myComboTradingSystem.myExitMonitors, myComboTradingSystem.myMIDetails, debugFlag);
             monitorManualInterventionSignalsQueue.start();
 
             // Spawn a thread to monitor the entry signal queue
@@ -139,7 +246,7 @@ public class SingleLegTrading {
             
             // Spawn a thread to read the current open positions from Redis queue
             // For each open position, spawn another monitoring thread is spawned.
-            MonitorOpenPositions4Exit monitorOpenPositionsQueue = new MonitorOpenPositions4Exit("MonitoringOpenPositionsForExitThread", jedisPool, redisConfigurationKey, myUtils, myExchangeObj, myComboTradingSystem.ibInteractionClient, myComboTradingSystem.myMIDetails, debugFlag);
+            MonitorOpenPositions4Exit monitorOpenPositionsQueue = new MonitorOpenPositions4Exit("MonitoringOpenPositionsForExitThread", jedisPool, redisConfigurationKey, myUtils, myExchangeObj, myComboTradingSystem.ibInteractionClient, myComboTradingSystem.myExitMonitors, myComboTradingSystem.myMIDetails, debugFlag);
             monitorOpenPositionsQueue.start();
 
             // Spawn a thread to read the current open positions from Redis queue
@@ -165,9 +272,17 @@ public class SingleLegTrading {
                 }
             }
             //Get order details of executed order from IB to redis hashmap - will help construct reports anytime irrespective of IB being available or not
-            myUtils.getOrderDetails2LocalDB(jedisPool, redisConfigurationKey, myComboTradingSystem.ibInteractionClient, true);
+            myComboTradingSystem.ibInteractionClient.executionSync.syncNow(300);
+            myComboTradingSystem.ibInteractionClient.outboundScheduler.flush(5000);
+            System.out.println("Outbound requests " + myComboTradingSystem.ibInteractionClient.outboundScheduler.getMetricsSummary());
+            System.out.println("Relative orders " + myComboTradingSystem.ibInteractionClient.orderChaser.getStatsSummary());
             // Disconnect IB 
             myComboTradingSystem.ibInteractionClient.disconnectFromIB();
+            myComboTradingSystem.ibInteractionClient.callbackLog.flush(5000);
+            myComboTradingSystem.ibInteractionClient.myOrderStatusDetails.close();
+            myComboTradingSystem.ibInteractionClient.strategyConfig.terminate();
+        } else if (debugFlag) {
+            System.out.println("Exchange is closed today Date today :" + String.format("%1$tY%1$tm%1$td", Calendar.getInstance(myExchangeObj.getExchangeTimeZone())));
         }
 
         // Consolidate all open positions to serial from first position
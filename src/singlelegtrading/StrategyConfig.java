@@ -0,0 +1,324 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Holds the strategy configuration hash as an immutable, typed snapshot read
+ * with one HGETALL, so that hot paths read plain fields instead of querying
+ * Redis for every signal or every second. The snapshot is replaced as a whole
+ * when the hash changes, which is learnt from Redis keyspace notifications of
+ * the configuration key (needs notify-keyspace-events to include "Kh") or from
+ * a message on the configuration change channel, which is published to by the
+ * strategy itself after it updates the hash. The hash is also read again
+ * every PERIODICRELOADMILLIS, so changes made by hand are picked up even
+ * when keyspace notifications are not enabled on the Redis server.
+ *
+ * @author Manish Kumar Singh
+ */
+public class StrategyConfig extends Thread {
+
+    private static final long RESUBSCRIBEWAITMILLIS = 5000;
+    private static final long PERIODICRELOADMILLIS = 60000;
+    // patterns subscribed : keyspace notifications of the hash and the change channel
+    private static final int NUMSUBSCRIBEDPATTERNS = 2;
+
+    private Thread t;
+    private String threadName;
+    private boolean debugFlag;
+
+    private JedisPool jedisPool;
+    private String redisConfigurationKey;
+    private TimeZone exchangeTimeZone;
+
+    private volatile MyStrategyConfigClass currentConfig;
+    private volatile boolean quit = false;
+    private long configVersion = 0;
+    private final ConfigChangeListener configChangeListener = new ConfigChangeListener();
+    private Thread periodicReloader;
+
+    // Define class to hold one immutable snapshot of the strategy configuration
+    static final class MyStrategyConfigClass {
+
+        final long version;
+        final String strategyName;
+        final String openPositionsQueueKeyName;
+        final String closedPositionsQueueKeyName;
+        final String entrySignalsQueueKeyName;
+        final String entryOrderType;
+        final int maxNumEntriesInADay;
+        final int legSizeMultiple;
+        final int firstEntryOrderTime;
+        final int lastEntryOrderTime;
+        final int lastExitOrderTime;
+        final int eodExitTime;
+        // null when not configured
+        final String initialStopLossType;
+        final double initialStopLossAmount;
+        final double initialStopLossSigmaFactor;
+        private final Map<String, String> configMap;
+
+        private MyStrategyConfigClass(long configVersion, Map<String, String> configValues, TimeZone timeZone) {
+
+            version = configVersion;
+            configMap = Collections.unmodifiableMap(new HashMap<String, String>(configValues));
+            strategyName = configMap.get("STRATEGYNAME");
+            openPositionsQueueKeyName = configMap.get("OPENPOSITIONSQUEUE");
+            closedPositionsQueueKeyName = configMap.get("CLOSEDPOSITIONSQUEUE");
+            entrySignalsQueueKeyName = configMap.get("ENTRYSIGNALSQUEUE");
+            entryOrderType = configMap.get("ENTRYORDERTYPE");
+            maxNumEntriesInADay = (int) parseValue(configMap, "MAXNUMENTRIESINADAY", 15, timeZone);
+            legSizeMultiple = (int) parseValue(configMap, "LEGSIZEMULTIPLE", 1, timeZone);
+            firstEntryOrderTime = (int) parseValue(configMap, "FIRSTENTRYORDERTIME", 940, timeZone);
+            lastEntryOrderTime = (int) parseValue(configMap, "LASTENTRYORDERTIME", 1521, timeZone);
+            lastExitOrderTime = (int) parseValue(configMap, "LASTEXITORDERTIME", 1528, timeZone);
+            eodExitTime = (int) parseValue(configMap, "EODEXITTIME", 1530, timeZone);
+            initialStopLossType = configMap.get("INITIALSTOPLOSSTYPE");
+            initialStopLossAmount = parseValue(configMap, "INITIALSTOPLOSSAMOUNT", 10000, timeZone);
+            initialStopLossSigmaFactor = parseValue(configMap, "INITIALSTOPLOSSSIGMAFACTOR", 1, timeZone);
+        }
+
+        boolean hasField(String fieldName) {
+            return (configMap.containsKey(fieldName));
+        }
+
+        String getValue(String fieldName) {
+            return (configMap.get(fieldName));
+        }
+
+        // Read only view of all fields. Same instance for the life of the snapshot
+        Map<String, String> getConfigMap() {
+            return (configMap);
+        }
+
+        private static double parseValue(Map<String, String> configValues, String fieldName, double defaultValue, TimeZone timeZone) {
+
+            String configValue = configValues.get(fieldName);
+            if ((configValue == null) || (configValue.length() == 0)) {
+                return (defaultValue);
+            }
+            try {
+                return (Double.parseDouble(configValue));
+            } catch (NumberFormatException ex) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(timeZone)) + "Ignoring invalid value " + configValue + " of " + fieldName + " in strategy configuration");
+                return (defaultValue);
+            }
+        } // End of parseValue()
+    }
+
+    // Reloads the snapshot on every notification of the configuration hash or change channel
+    private class ConfigChangeListener extends JedisPubSub {
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            if (debugFlag) {
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Strategy configuration change notified on " + channel + " : " + message);
+            }
+            reload();
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            // changes made while not subscribed were not notified, so read the hash again once subscribed
+            if (subscribedChannels == NUMSUBSCRIBEDPATTERNS) {
+                reload();
+            }
+        }
+    }
+
+    // Reloads the snapshot every PERIODICRELOADMILLIS in case a change was not notified
+    private class PeriodicReloader implements Runnable {
+
+        @Override
+        public void run() {
+            while (!quit) {
+                try {
+                    Thread.sleep(PERIODICRELOADMILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (!quit) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    StrategyConfig(String name, JedisPool redisConnectionPool, String redisConfigKey, TimeZone timeZone, boolean debugIndicator) {
+
+        threadName = name;
+        debugFlag = debugIndicator;
+        jedisPool = redisConnectionPool;
+        redisConfigurationKey = redisConfigKey;
+        exchangeTimeZone = timeZone;
+
+        currentConfig = new MyStrategyConfigClass(0, new HashMap<String, String>(), exchangeTimeZone);
+        reload();
+        checkKeyspaceNotifications();
+    }
+
+    // Warns if the Redis server does not send keyspace notifications of hash commands; changes then take up to
+    // PERIODICRELOADMILLIS to be picked up unless they are published on the change channel
+    private void checkKeyspaceNotifications() {
+
+        List<String> configValue = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            configValue = jedis.configGet("notify-keyspace-events");
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        if ((configValue == null) || (configValue.size() < 2)) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Warning : Could not read notify-keyspace-events of Redis server. Changes to " + redisConfigurationKey + " may take " + PERIODICRELOADMILLIS / 1000 + " seconds to be picked up");
+            return;
+        }
+        String notifyEvents = configValue.get(1);
+        // "A" is an alias that includes "h"
+        if ((notifyEvents.indexOf('K') < 0) || ((notifyEvents.indexOf('h') < 0) && (notifyEvents.indexOf('A') < 0))) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Warning : notify-keyspace-events of Redis server is \"" + notifyEvents + "\" and does not include Kh. Changes to " + redisConfigurationKey + " may take " + PERIODICRELOADMILLIS / 1000 + " seconds to be picked up");
+        }
+
+    } // End of checkKeyspaceNotifications()
+
+    // Channel on which a change of the configuration hash is announced
+    static String getConfigChangeChannel(String redisConfigKey) {
+        return (redisConfigKey + "CONFIGCHANGED");
+    }
+
+    // To be called by code updating the configuration hash, so the change is picked up even without keyspace notifications
+    static void publishConfigChange(Jedis jedis, String redisConfigKey) {
+        jedis.publish(getConfigChangeChannel(redisConfigKey), redisConfigKey);
+    }
+
+    MyStrategyConfigClass getConfig() {
+        return (currentConfig);
+    }
+
+    // Reads the whole hash with one HGETALL and swaps in a new snapshot. Keeps the current snapshot if Redis cannot be read
+    synchronized void reload() {
+
+        Map<String, String> configMap = null;
+        Jedis jedis = jedisPool.getResource();
+        try {
+            configMap = jedis.hgetAll(redisConfigurationKey);
+        } catch (JedisException e) {
+            //if something wrong happen, return it back to the pool
+            if (null != jedis) {
+                jedisPool.returnBrokenResource(jedis);
+                jedis = null;
+            }
+        } finally {
+            //Return the Jedis instance to the pool once finished using it  
+            if (null != jedis) {
+                jedisPool.returnResource(jedis);
+            }
+        }
+        if ((configMap == null) || (configMap.isEmpty())) {
+            System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Could not read strategy configuration " + redisConfigurationKey + ". Keeping version " + currentConfig.version);
+            return;
+        }
+        if (configMap.equals(currentConfig.getConfigMap())) {
+            return;
+        }
+        configVersion++;
+        currentConfig = new MyStrategyConfigClass(configVersion, configMap, exchangeTimeZone);
+        System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Info : Loaded strategy configuration " + redisConfigurationKey + " version " + configVersion + " with " + configMap.size() + " fields");
+
+    } // End of reload()
+
+    void terminate() {
+        quit = true;
+        if (periodicReloader != null) {
+            periodicReloader.interrupt();
+        }
+        if (configChangeListener.isSubscribed()) {
+            configChangeListener.punsubscribe();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (!quit) {
+            Jedis jedis = jedisPool.getResource();
+            try {
+                // blocks till unsubscribed or the connection breaks
+                jedis.psubscribe(configChangeListener, "__keyspace@*__:" + redisConfigurationKey, getConfigChangeChannel(redisConfigurationKey));
+            } catch (JedisException e) {
+                //if something wrong happen, return it back to the pool
+                if (null != jedis) {
+                    jedisPool.returnBrokenResource(jedis);
+                    jedis = null;
+                }
+                System.out.println(String.format("%1$tY%1$tm%1$td:%1$tH:%1$tM:%1$tS ", Calendar.getInstance(exchangeTimeZone)) + "Lost subscription to strategy configuration changes. Subscribing again. " + e.getMessage());
+            } finally {
+                //Return the Jedis instance to the pool once finished using it  
+                if (null != jedis) {
+                    jedisPool.returnResource(jedis);
+                }
+            }
+            if (!quit) {
+                try {
+                    Thread.sleep(RESUBSCRIBEWAITMILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        this.setName(threadName);
+        if (t == null) {
+            t = new Thread(this, threadName);
+            t.setDaemon(true);
+            t.start();
+            periodicReloader = new Thread(new PeriodicReloader(), threadName + "Reload");
+            periodicReloader.setDaemon(true);
+            periodicReloader.start();
+        }
+    }
+
+}
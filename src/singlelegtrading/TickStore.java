@@ -0,0 +1,201 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import com.ib.client.TickType;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest bid, ask, last, close and volume of every streaming market data
+ * subscription, indexed directly by request Id. Each request Id owns a block
+ * of RECORDSIZE longs (doubles as raw bits) guarded by a sequence counter :
+ * writers make it odd while updating and even when done, readers retry until
+ * they see the same even value before and after copying the block. Updates
+ * do not allocate and readers always get prices and times from one moment.
+ *
+ * @author Manish Kumar Singh
+ */
+public class TickStore {
+
+    // record layout; RECORDSIZE of 16 longs keeps each request Id on its own pair of cache lines
+    private static final int SEQUENCE = 0;
+    private static final int ACTIVE = 1;
+    private static final int BIDPRICE = 2;
+    private static final int ASKPRICE = 3;
+    private static final int LASTPRICE = 4;
+    private static final int CLOSEPRICE = 5;
+    private static final int LASTVOLUME = 6;
+    private static final int BIDTIME = 7;
+    private static final int ASKTIME = 8;
+    private static final int LASTTIME = 9;
+    private static final int CLOSETIME = 10;
+    private static final int VOLUMETIME = 11;
+    private static final int RECORDSIZE = 16;
+
+    private final int capacity;
+    private final AtomicLongArray records;
+
+    // Define class to hold one consistent copy of a record; owned and reused by the reader
+    public static class TickSnapshot {
+
+        public double bidPrice, askPrice, lastPrice, closePrice;
+        public int lastVolume;
+        public long bidPriceUpdateTime, askPriceUpdateTime, lastPriceUpdateTime, closePriceUpdateTime, lastVolumeUpdateTime;
+
+        public long getLatestUpdateTime() {
+            return (Math.max(Math.max(lastPriceUpdateTime, bidPriceUpdateTime), askPriceUpdateTime));
+        }
+    }
+
+    TickStore(int numRequestIds) {
+        capacity = numRequestIds;
+        records = new AtomicLongArray(capacity * RECORDSIZE);
+    }
+
+    boolean holds(int requestId) {
+        return ((requestId >= 0) && (requestId < capacity));
+    }
+
+    boolean isActive(int requestId) {
+        return (holds(requestId) && (records.get(requestId * RECORDSIZE + ACTIVE) != 0));
+    }
+
+    // Clears previous prices of the request Id and starts accepting ticks for it
+    void activate(int requestId) {
+
+        if (!(holds(requestId))) {
+            return;
+        }
+        int base = beginWrite(requestId);
+        for (int field = ACTIVE + 1; field < RECORDSIZE; field++) {
+            records.lazySet(base + field, (field >= BIDTIME) ? -1 : 0);
+        }
+        records.lazySet(base + ACTIVE, 1);
+        endWrite(base);
+
+    } // End of activate()
+
+    void deactivate(int requestId) {
+
+        if (!(holds(requestId))) {
+            return;
+        }
+        int base = beginWrite(requestId);
+        records.lazySet(base + ACTIVE, 0);
+        endWrite(base);
+
+    } // End of deactivate()
+
+    // Records a price tick; returns false if request Id is not active or field is not stored
+    boolean updatePrice(int requestId, int field, double price, long updateTime) {
+
+        int priceField, timeField;
+        if (field == TickType.BID) {
+            priceField = BIDPRICE;
+            timeField = BIDTIME;
+        } else if (field == TickType.ASK) {
+            priceField = ASKPRICE;
+            timeField = ASKTIME;
+        } else if (field == TickType.LAST) {
+            priceField = LASTPRICE;
+            timeField = LASTTIME;
+        } else if (field == TickType.CLOSE) {
+            priceField = CLOSEPRICE;
+            timeField = CLOSETIME;
+        } else {
+            return (false);
+        }
+        if (!(isActive(requestId))) {
+            return (false);
+        }
+        int base = beginWrite(requestId);
+        records.lazySet(base + priceField, Double.doubleToRawLongBits(price));
+        records.lazySet(base + timeField, updateTime);
+        endWrite(base);
+
+        return (true);
+    } // End of updatePrice()
+
+    boolean updateVolume(int requestId, int volume, long updateTime) {
+
+        if (!(isActive(requestId))) {
+            return (false);
+        }
+        int base = beginWrite(requestId);
+        records.lazySet(base + LASTVOLUME, volume);
+        records.lazySet(base + VOLUMETIME, updateTime);
+        endWrite(base);
+
+        return (true);
+    } // End of updateVolume()
+
+    // Copies the record of request Id into snapshot; returns false if request Id is not active
+    boolean readSnapshot(int requestId, TickSnapshot snapshot) {
+
+        if (!(holds(requestId))) {
+            return (false);
+        }
+        int base = requestId * RECORDSIZE;
+        while (true) {
+            long sequenceBefore = records.get(base + SEQUENCE);
+            if ((sequenceBefore & 1) == 0) {
+                boolean active = records.get(base + ACTIVE) != 0;
+                snapshot.bidPrice = Double.longBitsToDouble(records.get(base + BIDPRICE));
+                snapshot.askPrice = Double.longBitsToDouble(records.get(base + ASKPRICE));
+                snapshot.lastPrice = Double.longBitsToDouble(records.get(base + LASTPRICE));
+                snapshot.closePrice = Double.longBitsToDouble(records.get(base + CLOSEPRICE));
+                snapshot.lastVolume = (int) records.get(base + LASTVOLUME);
+                snapshot.bidPriceUpdateTime = records.get(base + BIDTIME);
+                snapshot.askPriceUpdateTime = records.get(base + ASKTIME);
+                snapshot.lastPriceUpdateTime = records.get(base + LASTTIME);
+                snapshot.closePriceUpdateTime = records.get(base + CLOSETIME);
+                snapshot.lastVolumeUpdateTime = records.get(base + VOLUMETIME);
+                if (records.get(base + SEQUENCE) == sequenceBefore) {
+                    return (active);
+                }
+            }
+            // writer is in the middle of an update; it never holds the record for more than a few stores
+        }
+    } // End of readSnapshot()
+
+    // Makes the sequence odd. Ticks come from the EReader thread only, but activate/deactivate come
+    // from subscribing threads, so ownership is taken with a compare and set rather than assumed.
+    private int beginWrite(int requestId) {
+
+        int base = requestId * RECORDSIZE;
+        while (true) {
+            long sequence = records.get(base + SEQUENCE);
+            if (((sequence & 1) == 0) && (records.compareAndSet(base + SEQUENCE, sequence, sequence + 1))) {
+                return (base);
+            }
+        }
+    } // End of beginWrite()
+
+    private void endWrite(int base) {
+        // ordered store; fields written above become visible no later than the even sequence
+        records.lazySet(base + SEQUENCE, records.get(base + SEQUENCE) + 1);
+    } // End of endWrite()
+
+}
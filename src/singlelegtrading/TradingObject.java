@@ -24,9 +24,19 @@
  */
 package singlelegtrading;
 
-import java.text.DecimalFormat;
-
 /**
+ * One position or signal in the comma separated format kept in the open /
+ * closed positions queues and the signal queues. The CSV text is split once;
+ * numeric fields and the contract structure are decoded the first time they
+ * are read and kept as primitives, so scans over positions are plain field
+ * reads. Numeric setters only store the value; it is encoded back to text,
+ * in the same format as before, when the field text or the whole object
+ * string is asked for. The object string is written by the FixedPointEncoder
+ * of the calling thread and kept till a field changes. TradingObjectCodec
+ * reads and writes the same object in a binary layout; fields it decodes
+ * from fixed point slots are held as values and encoded to text on demand.
+ * Not thread safe - each thread works on its own instance.
+ *
  * @author Manish Kumar Singh
  */
 public class TradingObject {
@@ -58,7 +68,29 @@ public class TradingObject {
 
     public static final int MAX_NUM_ELEMENTS = 23;
 
+    // State of each field
+    private static final byte FIELDTEXT = 0;        // only text is known, not decoded yet
+    private static final byte FIELDDECODED = 1;     // text and value agree
+    private static final byte FIELDVALUE = 2;       // value set, text encoded when asked for
+    private static final byte FIELDNOTNUMBER = 3;   // text is missing or not a number
+
+    // Encoding of a value set through a numeric setter
+    private static final byte ENCODEPLAIN = 0;      // Double.toString()
+    private static final byte ENCODETWODECIMALS = 1; // DecimalFormat 0.00, written by FixedPointEncoder
+    private static final byte ENCODEFIXEDPOINT = 2; // unscaled value and decimals from a binary record
+
     private String[] tradeObjectStructure;
+    private double[] fieldValues = new double[MAX_NUM_ELEMENTS];
+    private byte[] fieldStates = new byte[MAX_NUM_ELEMENTS];
+    private byte[] fieldEncodings = new byte[MAX_NUM_ELEMENTS];
+    // unscaled value and decimals of fields encoded as fixed point
+    private long[] fieldUnscaledValues = new long[MAX_NUM_ELEMENTS];
+    private byte[] fieldScales = new byte[MAX_NUM_ELEMENTS];
+    // complete object string, null once any field has changed since it was built
+    private String completeObjectString;
+
+    private boolean sideAndSizeDecoded = false;
+    private int sideAndSize = 0;
 
     // Index Values for contractStructure
     // contractStructure is <underlyingSymbol>_<lotSize>_<contractType>_<optionType>_<optionStrike>
@@ -71,6 +103,14 @@ public class TradingObject {
     public static final int CONTRACT_STRUCT_OPTIONRIGHT_INDEX = 3;
     public static final int CONTRACT_STRUCT_OPTIONSTRIKE_INDEX = 4;    
 
+    // contract structure decoded on first use
+    private boolean contractStructureDecoded = false;
+    private String contractUnderlyingName = "UNDERLYING";
+    private int contractLotSize = 0;
+    private String contractType = "FUT";
+    private String contractOptionRightType = "CALL";
+    private double contractOptionStrike = 0.0;
+
     TradingObject(String incomingTradeObject) {
 
         tradeObjectStructure = new String[MAX_NUM_ELEMENTS];
@@ -82,162 +122,253 @@ public class TradingObject {
                     tradeObjectStructure[index] = tempTradeObjectStructure[index];                    
                 }
             }
+            if (tempTradeObjectStructure.length == MAX_NUM_ELEMENTS) {
+                // every field came from the incoming string. Serializing without a change gives it back as it was
+                completeObjectString = incomingTradeObject;
+            }
         }
     }
 
     // assemble and return Structure
     public String getCompleteTradingObjectString() {
-        String returnString = "";
 
-        for (int index = 0; index < (tradeObjectStructure.length - 1); index++) {
-            returnString = returnString + tradeObjectStructure[index] + ",";
+        if (completeObjectString == null) {
+            FixedPointEncoder encoder = FixedPointEncoder.getThreadEncoder().reset();
+            for (int index = 0; index < MAX_NUM_ELEMENTS; index++) {
+                if (index > 0) {
+                    encoder.append(',');
+                }
+                appendField(encoder, index);
+            }
+            completeObjectString = encoder.toString();
         }
 
-        returnString = returnString + tradeObjectStructure[tradeObjectStructure.length - 1];
-
-        return (returnString);
+        return (completeObjectString);
     }
 
-    public void initiateAndValidate() {
+    // Writes text of a field into encoder. A value set through a numeric setter is written straight from the value
+    void appendField(FixedPointEncoder encoder, int index) {
 
-        if ((tradeObjectStructure[ENTRY_ZSCORE_INDEX] != null) && (tradeObjectStructure[ENTRY_ZSCORE_INDEX].length() > 0)) {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[ENTRY_ZSCORE_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[ENTRY_ZSCORE_INDEX]));
+        if (fieldStates[index] != FIELDVALUE) {
+            encoder.append(tradeObjectStructure[index]);
+        } else if (fieldEncodings[index] == ENCODETWODECIMALS) {
+            encoder.appendTwoDecimals(fieldValues[index]);
+        } else if (fieldEncodings[index] == ENCODEFIXEDPOINT) {
+            encoder.appendFixedPoint(fieldUnscaledValues[index], fieldScales[index]);
+        } else {
+            encoder.appendPlain(fieldValues[index]);
         }
+    }
 
-        if ((tradeObjectStructure[ENTRY_MEAN_INDEX] != null)
-                && (tradeObjectStructure[ENTRY_MEAN_INDEX].length() > 0)) {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[ENTRY_MEAN_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[ENTRY_MEAN_INDEX]));
+    // Text of a field, encoding a value set through a numeric setter if needed
+    private String getFieldText(int index) {
+
+        if (fieldStates[index] == FIELDVALUE) {
+            if (fieldEncodings[index] == ENCODETWODECIMALS) {
+                tradeObjectStructure[index] = FixedPointEncoder.getThreadEncoder().formatTwoDecimals(fieldValues[index]);
+                // value is what the text reads back as, the same as if it had been parsed
+                fieldStates[index] = FIELDTEXT;
+            } else if (fieldEncodings[index] == ENCODEFIXEDPOINT) {
+                tradeObjectStructure[index] = FixedPointEncoder.getThreadEncoder().formatFixedPoint(fieldUnscaledValues[index], fieldScales[index]);
+                fieldStates[index] = FIELDDECODED;
+            } else {
+                tradeObjectStructure[index] = Double.toString(fieldValues[index]);
+                fieldStates[index] = FIELDDECODED;
+            }
         }
+        return (tradeObjectStructure[index]);
+    }
+
+    // Value of a numeric field, decoding its text on first use. defaultValue if missing or not a number
+    private double getFieldValue(int index, double defaultValue) {
 
-        if ((tradeObjectStructure[ENTRY_HALFLIFE_INDEX] != null)
-                && (tradeObjectStructure[ENTRY_HALFLIFE_INDEX].length() > 0)) {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[ENTRY_HALFLIFE_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[ENTRY_HALFLIFE_INDEX]));
+        if ((fieldStates[index] == FIELDVALUE) && (fieldEncodings[index] != ENCODEFIXEDPOINT)) {
+            getFieldText(index);
+        }
+        if (fieldStates[index] == FIELDTEXT) {
+            try {
+                fieldValues[index] = Double.parseDouble(tradeObjectStructure[index]);
+                fieldStates[index] = FIELDDECODED;
+            } catch (NumberFormatException | NullPointerException ex) {
+                fieldStates[index] = FIELDNOTNUMBER;
+            }
+        }
+        if (fieldStates[index] == FIELDNOTNUMBER) {
+            return (defaultValue);
         }
+        return (fieldValues[index]);
+    }
+
+    private void setFieldText(int index, String newText) {
+        tradeObjectStructure[index] = newText;
+        fieldStates[index] = FIELDTEXT;
+        completeObjectString = null;
+    }
+
+    private void setFieldValue(int index, double newValue, byte encoding) {
+        fieldValues[index] = newValue;
+        fieldStates[index] = FIELDVALUE;
+        fieldEncodings[index] = encoding;
+        completeObjectString = null;
+    }
+
+    // Used by TradingObjectCodec. true if the field has a value or any text
+    boolean hasField(int index) {
+        return ((fieldStates[index] == FIELDVALUE) || (tradeObjectStructure[index] != null));
+    }
+
+    String getField(int index) {
+        return (getFieldText(index));
+    }
+
+    void setDecodedField(int index, String text) {
+        setFieldText(index, text);
+    }
+
+    // true if the field still holds the unscaled value it was decoded with
+    boolean isFixedPointField(int index) {
+        return ((fieldStates[index] == FIELDVALUE) && (fieldEncodings[index] == ENCODEFIXEDPOINT));
+    }
 
-        if ((tradeObjectStructure[ENTRY_STDDEV_INDEX] != null)
-                && (tradeObjectStructure[ENTRY_STDDEV_INDEX].length() > 0)) {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[ENTRY_STDDEV_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[ENTRY_STDDEV_INDEX]));
+    long getFixedPointUnscaledValue(int index) {
+        return (fieldUnscaledValues[index]);
+    }
+
+    int getFixedPointScale(int index) {
+        return (fieldScales[index]);
+    }
+
+    // Value of field is unscaledValue / 10^scale. Its text is written with scale decimals
+    void setDecodedField(int index, long unscaledValue, int scale) {
+        fieldUnscaledValues[index] = unscaledValue;
+        fieldScales[index] = (byte) scale;
+        setFieldValue(index, FixedPointEncoder.fixedPointValue(unscaledValue, scale), ENCODEFIXEDPOINT);
+    }
+
+    // Keeps value of field, to be encoded with two decimals. Leaves missing fields as they are
+    private void reformatFieldWithTwoDecimals(int index) {
+        String fieldText = getFieldText(index);
+        if ((fieldText != null) && (fieldText.length() > 0)) {
+            setFieldValue(index, Double.valueOf(fieldText), ENCODETWODECIMALS);
         }
+    }
+
+    public void initiateAndValidate() {
+
+        reformatFieldWithTwoDecimals(ENTRY_ZSCORE_INDEX);
+        reformatFieldWithTwoDecimals(ENTRY_MEAN_INDEX);
+        reformatFieldWithTwoDecimals(ENTRY_HALFLIFE_INDEX);
+        reformatFieldWithTwoDecimals(ENTRY_STDDEV_INDEX);
 
-        if ((tradeObjectStructure[ENTRY_SPREAD_INDEX] == null)
-                || (tradeObjectStructure[ENTRY_SPREAD_INDEX].length() <= 0)) {
-            tradeObjectStructure[ENTRY_SPREAD_INDEX] = String.format("%.2f", 0.0);
+        if ((getFieldText(ENTRY_SPREAD_INDEX) == null)
+                || (getFieldText(ENTRY_SPREAD_INDEX).length() <= 0)) {
+            setFieldText(ENTRY_SPREAD_INDEX, String.format("%.2f", 0.0));
         } else {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[ENTRY_SPREAD_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[ENTRY_SPREAD_INDEX]));
+            reformatFieldWithTwoDecimals(ENTRY_SPREAD_INDEX);
         }
 
-        if ((tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX] == null)
-                || (tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX].length() <= 0)) {
-            tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX] = String.format("%.2f", 0.0);
+        if ((getFieldText(LAST_KNOWN_SPREAD_INDEX) == null)
+                || (getFieldText(LAST_KNOWN_SPREAD_INDEX).length() <= 0)) {
+            setFieldText(LAST_KNOWN_SPREAD_INDEX, String.format("%.2f", 0.0));
         } else {
-            DecimalFormat myDf = new DecimalFormat("0.00");
-            tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX] = myDf.format(Double.valueOf(tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX]));
+            reformatFieldWithTwoDecimals(LAST_KNOWN_SPREAD_INDEX);
         }
 
-        if ((tradeObjectStructure[LAST_UPDATED_TIMESTAMP_INDEX] == null)
-                || (tradeObjectStructure[LAST_UPDATED_TIMESTAMP_INDEX].length() <= 0)) {
-            tradeObjectStructure[LAST_UPDATED_TIMESTAMP_INDEX] = String.format("%d", -1);
+        if ((getFieldText(LAST_UPDATED_TIMESTAMP_INDEX) == null)
+                || (getFieldText(LAST_UPDATED_TIMESTAMP_INDEX).length() <= 0)) {
+            setFieldText(LAST_UPDATED_TIMESTAMP_INDEX, String.format("%d", -1));
         }
 
     }
 
     public void setEntryTimeStamp(String newTimeStamp) {
-        tradeObjectStructure[ENTRY_TIMESTAMP_INDEX] = newTimeStamp;
+        setFieldText(ENTRY_TIMESTAMP_INDEX, newTimeStamp);
     }
 
     public void setSideAndSize(int side, int size) {
-        String sideAndSize = "1";
-        sideAndSize = Integer.toString(size * side);
-        tradeObjectStructure[SIDE_SIZE_INDEX] = sideAndSize;
+        sideAndSize = size * side;
+        sideAndSizeDecoded = true;
+        setFieldText(SIDE_SIZE_INDEX, Integer.toString(sideAndSize));
     }
 
     public void setEntryBidAskFillDetails(String newBidAskFillDetails) {
-        tradeObjectStructure[ENTRY_BID_ASK_FILL_INDEX] = newBidAskFillDetails;
+        setFieldText(ENTRY_BID_ASK_FILL_INDEX, newBidAskFillDetails);
     }
 
     public void setOrderState(String newState) {
-        tradeObjectStructure[ORDER_STATE_INDEX] = newState;
+        setFieldText(ORDER_STATE_INDEX, newState);
     }
 
     public void setEntrySpread(double newSpread) {
-        DecimalFormat myDf = new DecimalFormat("0.00");
-        tradeObjectStructure[ENTRY_SPREAD_INDEX] = myDf.format(Double.valueOf(newSpread));
+        setFieldValue(ENTRY_SPREAD_INDEX, newSpread, ENCODETWODECIMALS);
     }
 
     public void setExpiry(int expiry) {
-        tradeObjectStructure[EXPIRY_INDEX] = Integer.toString(expiry);
+        setFieldText(EXPIRY_INDEX, Integer.toString(expiry));
     }
 
     public void setExpiry(String expiry) {
-        tradeObjectStructure[EXPIRY_INDEX] = expiry;
+        setFieldText(EXPIRY_INDEX, expiry);
     }
 
     public void setEntryOrderIDs(int entryOrderID) {
-        tradeObjectStructure[ENTRY_ORDERIDS_INDEX] = Integer.toString(entryOrderID);
+        setFieldText(ENTRY_ORDERIDS_INDEX, Integer.toString(entryOrderID));
     }
 
     public void setEntryOrderIDs(String newOrderIDs) {
-        tradeObjectStructure[ENTRY_ORDERIDS_INDEX] = newOrderIDs;
+        setFieldText(ENTRY_ORDERIDS_INDEX, newOrderIDs);
     }
 
     public void setLowerBreach(int newBreach) {
-        tradeObjectStructure[LOWER_BREACH_INDEX] = Integer.toString(newBreach);
+        setFieldText(LOWER_BREACH_INDEX, Integer.toString(newBreach));
     }
 
     public void setLowerBreach(double newBreach) {
-        DecimalFormat myDf = new DecimalFormat("0.00");
-        tradeObjectStructure[LOWER_BREACH_INDEX] = myDf.format(Double.valueOf(newBreach));
+        setFieldValue(LOWER_BREACH_INDEX, newBreach, ENCODETWODECIMALS);
     }
 
     public void setUpperBreach(int newBreach) {
-        tradeObjectStructure[UPPER_BREACH_INDEX] = Integer.toString(newBreach);
+        setFieldText(UPPER_BREACH_INDEX, Integer.toString(newBreach));
     }
 
     public void setUpperBreach(double newBreach) {
-        DecimalFormat myDf = new DecimalFormat("0.00");
-        tradeObjectStructure[UPPER_BREACH_INDEX] = myDf.format(Double.valueOf(newBreach));
+        setFieldValue(UPPER_BREACH_INDEX, newBreach, ENCODETWODECIMALS);
     }
 
     public void setEntryStdDev(double newEntryStdDev) {
-        tradeObjectStructure[ENTRY_STDDEV_INDEX] = Double.toString(newEntryStdDev);
+        setFieldValue(ENTRY_STDDEV_INDEX, newEntryStdDev, ENCODEPLAIN);
     }
 
     public void setLastKnownSpread(double newSpread) {
-        tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX] = Double.toString(newSpread);
+        setFieldValue(LAST_KNOWN_SPREAD_INDEX, newSpread, ENCODEPLAIN);
     }
 
     public void setLastUpdatedTimeStamp(String newTimeStamp) {
-        tradeObjectStructure[LAST_UPDATED_TIMESTAMP_INDEX] = newTimeStamp;
+        setFieldText(LAST_UPDATED_TIMESTAMP_INDEX, newTimeStamp);
     }
 
     public void setExitSpread(double newSpread) {
-        DecimalFormat myDf = new DecimalFormat("0.00");
-        tradeObjectStructure[EXIT_SPREAD_INDEX] = myDf.format(Double.valueOf(newSpread));
+        setFieldValue(EXIT_SPREAD_INDEX, newSpread, ENCODETWODECIMALS);
     }
 
     public void setExitTimeStamp(String newTimeStamp) {
-        tradeObjectStructure[EXIT_TIMESTAMP_INDEX] = newTimeStamp;
+        setFieldText(EXIT_TIMESTAMP_INDEX, newTimeStamp);
     }
 
     public void setExitOrderIDs(int exitOrderID) {
-        tradeObjectStructure[EXIT_ORDERIDS_INDEX] = Integer.toString(exitOrderID);
+        setFieldText(EXIT_ORDERIDS_INDEX, Integer.toString(exitOrderID));
     }
 
     public void setExitOrderIDs(String newOrderIDs) {
-        tradeObjectStructure[EXIT_ORDERIDS_INDEX] = newOrderIDs;
+        setFieldText(EXIT_ORDERIDS_INDEX, newOrderIDs);
     }
 
     public void setExitBidAskFillDetails(String newBidAskFillDetails) {
-        tradeObjectStructure[EXIT_BID_ASK_FILL_INDEX] = newBidAskFillDetails;
+        setFieldText(EXIT_BID_ASK_FILL_INDEX, newBidAskFillDetails);
     }
 
     public String getEntryTimeStamp() {
-        return (tradeObjectStructure[ENTRY_TIMESTAMP_INDEX]);
+        return (getFieldText(ENTRY_TIMESTAMP_INDEX));
     }
 
     public String getTradingObjectName() {
@@ -246,13 +377,19 @@ public class TradingObject {
 
     public int getSideAndSize() {
         
-        int sideAndSize = 0; // Default value
-     
-        try {
-            sideAndSize = Integer.parseInt(tradeObjectStructure[SIDE_SIZE_INDEX]);
-        } catch (NumberFormatException | NullPointerException ex) {
-            sideAndSize = 0;
-        }            
+        if (!sideAndSizeDecoded) {
+            try {
+                if (isFixedPointField(SIDE_SIZE_INDEX)) {
+                    // integer slot of a binary record
+                    sideAndSize = (int) fieldUnscaledValues[SIDE_SIZE_INDEX];
+                } else {
+                    sideAndSize = Integer.parseInt(getFieldText(SIDE_SIZE_INDEX));
+                }
+            } catch (NumberFormatException | NullPointerException ex) {
+                sideAndSize = 0; // Default value
+            }
+            sideAndSizeDecoded = true;
+        }
         return (sideAndSize);
     }        
 
@@ -270,28 +407,51 @@ public class TradingObject {
         return (tradeObjectStructure[STRUCTURE_INDEX]);
     }   
 
+    // Splits contract structure once. Parts missing or not a number keep their default values
+    private void decodeContractStructure() {
+
+        contractStructureDecoded = true;
+        if (tradeObjectStructure[STRUCTURE_INDEX] == null) {
+            return;
+        }
+        String[] contractStructure = tradeObjectStructure[STRUCTURE_INDEX].split("_");
+        if (contractStructure.length > CONTRACT_STRUCT_UNDERLYING_INDEX) {
+            contractUnderlyingName = contractStructure[CONTRACT_STRUCT_UNDERLYING_INDEX];
+        }
+        if (contractStructure.length > CONTRACT_STRUCT_LOTSIZE_INDEX) {
+            try {
+                contractLotSize = Integer.parseInt(contractStructure[CONTRACT_STRUCT_LOTSIZE_INDEX]);
+            } catch (NumberFormatException ex) {
+                contractLotSize = 0;
+            }
+        }
+        if (contractStructure.length > CONTRACT_STRUCT_TYPE_INDEX) {
+            contractType = contractStructure[CONTRACT_STRUCT_TYPE_INDEX];
+        }
+        if (contractStructure.length > CONTRACT_STRUCT_OPTIONRIGHT_INDEX) {
+            contractOptionRightType = contractStructure[CONTRACT_STRUCT_OPTIONRIGHT_INDEX];
+        }
+        if (contractStructure.length > CONTRACT_STRUCT_OPTIONSTRIKE_INDEX) {
+            try {
+                contractOptionStrike = Double.parseDouble(contractStructure[CONTRACT_STRUCT_OPTIONSTRIKE_INDEX]);
+            } catch (NumberFormatException ex) {
+                contractOptionStrike = 0.0;
+            }
+        }
+    } // End of decodeContractStructure()
+
     public String getContractUnderlyingName() {
-        
-        String underlyingName = "UNDERLYING"; // Default value
-        String[] contractStructure = this.getContractStructure().split("_");
-        if (contractStructure.length >= CONTRACT_STRUCT_UNDERLYING_INDEX) {
-            underlyingName = contractStructure[CONTRACT_STRUCT_UNDERLYING_INDEX];
+        if (!contractStructureDecoded) {
+            decodeContractStructure();
         }
-        return (underlyingName);
+        return (contractUnderlyingName);
     }    
     
     public int getContractLotSize() {
-        
-        int lotSize = 0; // Default value
-        String[] contractStructure = this.getContractStructure().split("_");
-        if (contractStructure.length >= CONTRACT_STRUCT_LOTSIZE_INDEX) {          
-            try {
-                lotSize = Integer.parseInt(contractStructure[CONTRACT_STRUCT_LOTSIZE_INDEX]);
-            } catch (NumberFormatException | NullPointerException ex) {
-                lotSize = 0;
-            }            
+        if (!contractStructureDecoded) {
+            decodeContractStructure();
         }
-        return (lotSize);
+        return (contractLotSize);
     }
 
     public String getTradingContractType() {
@@ -299,11 +459,8 @@ public class TradingObject {
     } 
     
     public String getContractType() {
-        
-        String contractType = "FUT"; // Default value
-        String[] contractStructure = this.getContractStructure().split("_");
-        if (contractStructure.length >= CONTRACT_STRUCT_TYPE_INDEX) {
-            contractType = contractStructure[CONTRACT_STRUCT_TYPE_INDEX];
+        if (!contractStructureDecoded) {
+            decodeContractStructure();
         }
         return (contractType);
     }     
@@ -313,43 +470,33 @@ public class TradingObject {
     }   
     
     public String getContractOptionRightType() {
-        
-        String optionRightType = "CALL"; // Default value
-        String[] contractStructure = this.getContractStructure().split("_");
-        if (contractStructure.length >= CONTRACT_STRUCT_OPTIONRIGHT_INDEX) {
-            optionRightType = contractStructure[CONTRACT_STRUCT_OPTIONRIGHT_INDEX];
+        if (!contractStructureDecoded) {
+            decodeContractStructure();
         }
-        return (optionRightType);
+        return (contractOptionRightType);
     }    
 
     public double getContractOptionStrike() {
-        
-        double optionStrike = 0.0; // Default value
-        String[] contractStructure = this.getContractStructure().split("_");
-        if (contractStructure.length >= CONTRACT_STRUCT_OPTIONSTRIKE_INDEX) {          
-            try {
-                optionStrike = Double.parseDouble(contractStructure[CONTRACT_STRUCT_OPTIONSTRIKE_INDEX]);
-            } catch (NumberFormatException | NullPointerException ex) {
-                optionStrike = 0.0;
-            }          
+        if (!contractStructureDecoded) {
+            decodeContractStructure();
         }
-        return (optionStrike);
+        return (contractOptionStrike);
     }
     
     public String getZScore() {
-        return (tradeObjectStructure[ENTRY_ZSCORE_INDEX]);
+        return (getFieldText(ENTRY_ZSCORE_INDEX));
     }
 
     public String getEntryMean() {
-        return (tradeObjectStructure[ENTRY_MEAN_INDEX]);
+        return (getFieldText(ENTRY_MEAN_INDEX));
     }
 
     public String getHalfLife() {
-        return (tradeObjectStructure[ENTRY_HALFLIFE_INDEX]);
+        return (getFieldText(ENTRY_HALFLIFE_INDEX));
     }
 
     public String getEntryStdDev() {
-        return (tradeObjectStructure[ENTRY_STDDEV_INDEX]);
+        return (getFieldText(ENTRY_STDDEV_INDEX));
     }
 
     public String getEntryBidAskFillDetails() {
@@ -361,11 +508,11 @@ public class TradingObject {
     }
 
     public String getEntrySpread() {
-        return (tradeObjectStructure[ENTRY_SPREAD_INDEX]);
+        return (getFieldText(ENTRY_SPREAD_INDEX));
     }
 
     public String getExpiry() {
-        return (tradeObjectStructure[EXPIRY_INDEX]);
+        return (getFieldText(EXPIRY_INDEX));
     }
 
     public String getEntryOrderIDs() {
@@ -373,27 +520,27 @@ public class TradingObject {
     }
 
     public String getLowerBreach() {
-        return (tradeObjectStructure[LOWER_BREACH_INDEX]);
+        return (getFieldText(LOWER_BREACH_INDEX));
     }
 
     public String getUpperBreach() {
-        return (tradeObjectStructure[UPPER_BREACH_INDEX]);
+        return (getFieldText(UPPER_BREACH_INDEX));
     }
 
     public String getLastKnownSpread() {
-        return (tradeObjectStructure[LAST_KNOWN_SPREAD_INDEX]);
+        return (getFieldText(LAST_KNOWN_SPREAD_INDEX));
     }
 
     public String getLastUpdatedTimeStamp() {
-        return (tradeObjectStructure[LAST_UPDATED_TIMESTAMP_INDEX]);
+        return (getFieldText(LAST_UPDATED_TIMESTAMP_INDEX));
     }
 
     public String getExitSpread() {
-        return (tradeObjectStructure[EXIT_SPREAD_INDEX]);
+        return (getFieldText(EXIT_SPREAD_INDEX));
     }
 
     public String getExitTimeStamp() {
-        return (tradeObjectStructure[EXIT_TIMESTAMP_INDEX]);
+        return (getFieldText(EXIT_TIMESTAMP_INDEX));
     }
 
     public String getExitOrderIDs() {
@@ -404,4 +551,34 @@ public class TradingObject {
         return (tradeObjectStructure[EXIT_BID_ASK_FILL_INDEX]);
     }
 
+    // Decoded values of numeric fields. 0.0 if the field is missing or not a number
+    public double getEntrySpreadValue() {
+        return (getFieldValue(ENTRY_SPREAD_INDEX, 0.0));
+    }
+
+    public double getEntryStdDevValue() {
+        return (getFieldValue(ENTRY_STDDEV_INDEX, 0.0));
+    }
+
+    public double getLowerBreachValue() {
+        return (getFieldValue(LOWER_BREACH_INDEX, 0.0));
+    }
+
+    public double getUpperBreachValue() {
+        return (getFieldValue(UPPER_BREACH_INDEX, 0.0));
+    }
+
+    public double getLastKnownSpreadValue() {
+        return (getFieldValue(LAST_KNOWN_SPREAD_INDEX, 0.0));
+    }
+
+    public double getExitSpreadValue() {
+        return (getFieldValue(EXIT_SPREAD_INDEX, 0.0));
+    }
+
+    // -1 if the position has never been updated, as written by initiateAndValidate()
+    public long getLastUpdatedTimeStampValue() {
+        return ((long) getFieldValue(LAST_UPDATED_TIMESTAMP_INDEX, -1));
+    }
+
 }
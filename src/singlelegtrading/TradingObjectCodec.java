@@ -0,0 +1,327 @@
+/*
+ The MIT License (MIT)
+
+ Copyright (c) 2015 Manish Kumar Singh
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.
+ 
+ */
+package singlelegtrading;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Versioned binary layout of a TradingObject for the open, closed and past
+ * closed positions queues. A record is a fixed part followed by a variable
+ * part :
+ * byte MAGIC, byte FORMATVERSION, int presentFields, int textFields, then
+ * one slot per numeric field in index order - long for time stamps, int for
+ * side and size and expiry, byte decimals and int unscaled value for prices
+ * and statistics - then, for every present text field and every numeric
+ * field stored as text, a short length and the UTF-8 bytes of the field.
+ * A numeric field goes into its slot only when its text is the plain fixed
+ * point form of the slot value, so decoding gives back the same text and
+ * the same value as the comma separated format, without parsing any text.
+ * Other numeric text, e.g. exponent forms, is kept as text.
+ * decode() takes both formats, so queues can hold a mix of them while
+ * positions are migrated. Records have to be read and written with the
+ * byte[] commands of Jedis; the String commands would mangle binary values.
+ *
+ * @author Manish Kumar Singh
+ */
+public class TradingObjectCodec {
+
+    // Format of new and rewritten position records
+    public static final int FORMATCSV = 0;
+    public static final int FORMATBINARY = 1;
+
+    // First byte of a binary record. Never the first byte of UTF-8 text, so a comma separated record can not start with it
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte FORMATVERSION = 1;
+
+    // Kind of slot of each field
+    private static final byte SLOTTEXT = 0;
+    private static final byte SLOTLONG = 1;
+    private static final byte SLOTINT = 2;
+    private static final byte SLOTDECIMAL = 3;
+
+    private static final byte[] SLOTKINDS = new byte[TradingObject.MAX_NUM_ELEMENTS];
+
+    static {
+        SLOTKINDS[TradingObject.ENTRY_TIMESTAMP_INDEX] = SLOTLONG;
+        SLOTKINDS[TradingObject.SIDE_SIZE_INDEX] = SLOTINT;
+        SLOTKINDS[TradingObject.ENTRY_ZSCORE_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.ENTRY_MEAN_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.ENTRY_HALFLIFE_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.ENTRY_STDDEV_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.ENTRY_REGRESSION_SLOPE_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.ENTRY_SPREAD_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.EXPIRY_INDEX] = SLOTINT;
+        SLOTKINDS[TradingObject.LOWER_BREACH_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.UPPER_BREACH_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.LAST_KNOWN_SPREAD_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.LAST_UPDATED_TIMESTAMP_INDEX] = SLOTLONG;
+        SLOTKINDS[TradingObject.EXIT_SPREAD_INDEX] = SLOTDECIMAL;
+        SLOTKINDS[TradingObject.EXIT_TIMESTAMP_INDEX] = SLOTLONG;
+    }
+
+    // Bytes taken by each kind of slot in the fixed part
+    private static final int[] SLOTSIZES = {0, 8, 4, 5};
+
+    private static final int HEADERSIZE = 10;
+    // Largest number of decimals of a decimal slot
+    private static final int MAXSCALE = 9;
+    // Long slots hold values a double keeps exactly
+    private static final long MAXEXACTLONG = 1L << 53;
+    private static final long NOTFIXEDPOINT = Long.MIN_VALUE;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int FIXEDPARTSIZE;
+
+    static {
+        int size = HEADERSIZE;
+        for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+            size += SLOTSIZES[SLOTKINDS[index]];
+        }
+        FIXEDPARTSIZE = size;
+    }
+
+    private TradingObjectCodec() {
+    }
+
+    // Format named by the POSITIONRECORDFORMAT configuration value. Comma separated if missing or not known
+    public static int getFormat(String formatName) {
+        if ((formatName != null) && (formatName.trim().equalsIgnoreCase("binary"))) {
+            return (FORMATBINARY);
+        }
+        return (FORMATCSV);
+    }
+
+    public static boolean isBinary(byte[] record) {
+        return ((record != null) && (record.length > 0) && (record[0] == MAGIC));
+    }
+
+    // Record of tradingObject in the given format
+    public static byte[] encode(TradingObject tradingObject, int format) {
+        if (format == FORMATBINARY) {
+            return (encodeBinary(tradingObject));
+        }
+        return (tradingObject.getCompleteTradingObjectString().getBytes(UTF8));
+    }
+
+    // Trading object of a record in either format. null if record is null
+    public static TradingObject decode(byte[] record) {
+        if (record == null) {
+            return (null);
+        }
+        if (isBinary(record)) {
+            return (decodeBinary(record));
+        }
+        return (new TradingObject(new String(record, UTF8)));
+    }
+
+    public static byte[] encodeBinary(TradingObject tradingObject) {
+
+        FixedPointEncoder encoder = FixedPointEncoder.getThreadEncoder();
+        long[] unscaledValues = new long[TradingObject.MAX_NUM_ELEMENTS];
+        byte[] scales = new byte[TradingObject.MAX_NUM_ELEMENTS];
+        byte[][] textBytes = new byte[TradingObject.MAX_NUM_ELEMENTS][];
+        int presentFields = 0;
+        int textFields = 0;
+        int recordSize = FIXEDPARTSIZE;
+
+        for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+            if (!tradingObject.hasField(index)) {
+                continue;
+            }
+            presentFields |= (1 << index);
+            byte slotKind = SLOTKINDS[index];
+            if (tradingObject.isFixedPointField(index)) {
+                // unchanged since decoded from a binary record
+                unscaledValues[index] = tradingObject.getFixedPointUnscaledValue(index);
+                scales[index] = (byte) tradingObject.getFixedPointScale(index);
+                continue;
+            }
+            if (slotKind != SLOTTEXT) {
+                // numeric text is looked at in the encoder buffer, without making a string of it
+                tradingObject.appendField(encoder.reset(), index);
+                long unscaledValue = parseFixedPoint(encoder, (slotKind == SLOTDECIMAL) ? MAXSCALE : 0,
+                        (slotKind == SLOTLONG) ? MAXEXACTLONG : Integer.MAX_VALUE);
+                if (unscaledValue != NOTFIXEDPOINT) {
+                    unscaledValues[index] = unscaledValue;
+                    scales[index] = (byte) scaleOf(encoder);
+                    continue;
+                }
+                textFields |= (1 << index);
+            }
+            textBytes[index] = tradingObject.getField(index).getBytes(UTF8);
+            if (textBytes[index].length > 0xFFFF) {
+                throw new IllegalArgumentException("Field " + index + " of trading object is too long for binary record");
+            }
+            recordSize += 2 + textBytes[index].length;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.put(MAGIC);
+        record.put(FORMATVERSION);
+        record.putInt(presentFields);
+        record.putInt(textFields);
+        // fixed part. Slots of missing fields and of fields stored as text are left zero
+        for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+            switch (SLOTKINDS[index]) {
+                case SLOTLONG:
+                    record.putLong(unscaledValues[index]);
+                    break;
+                case SLOTINT:
+                    record.putInt((int) unscaledValues[index]);
+                    break;
+                case SLOTDECIMAL:
+                    record.put(scales[index]);
+                    record.putInt((int) unscaledValues[index]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        // variable part
+        for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+            if (textBytes[index] != null) {
+                record.putShort((short) textBytes[index].length);
+                record.put(textBytes[index]);
+            }
+        }
+
+        return (record.array());
+    } // End of encodeBinary()
+
+    public static TradingObject decodeBinary(byte[] bytes) {
+
+        if (!isBinary(bytes) || (bytes.length < FIXEDPARTSIZE)) {
+            throw new IllegalArgumentException("Not a binary trading object record");
+        }
+        if (bytes[1] != FORMATVERSION) {
+            throw new IllegalArgumentException("Binary trading object record version " + bytes[1] + " is not supported");
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        record.position(2);
+        int presentFields = record.getInt();
+        int textFields = record.getInt();
+        TradingObject tradingObject = new TradingObject("");
+
+        try {
+            for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+                byte slotKind = SLOTKINDS[index];
+                if (slotKind == SLOTTEXT) {
+                    continue;
+                }
+                int scale = 0;
+                long unscaledValue;
+                if (slotKind == SLOTLONG) {
+                    unscaledValue = record.getLong();
+                } else if (slotKind == SLOTINT) {
+                    unscaledValue = record.getInt();
+                } else {
+                    scale = record.get();
+                    unscaledValue = record.getInt();
+                    if ((scale < 0) || (scale > MAXSCALE)) {
+                        throw new IllegalArgumentException("Binary trading object record has " + scale + " decimals in field " + index);
+                    }
+                }
+                if (((presentFields & (1 << index)) != 0) && ((textFields & (1 << index)) == 0)) {
+                    tradingObject.setDecodedField(index, unscaledValue, scale);
+                }
+            }
+            for (int index = 0; index < TradingObject.MAX_NUM_ELEMENTS; index++) {
+                if (((presentFields & (1 << index)) != 0)
+                        && ((SLOTKINDS[index] == SLOTTEXT) || ((textFields & (1 << index)) != 0))) {
+                    int textLength = record.getShort() & 0xFFFF;
+                    tradingObject.setDecodedField(index, new String(bytes, record.position(), textLength, UTF8));
+                    record.position(record.position() + textLength);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Binary trading object record is corrupt", ex);
+        }
+
+        return (tradingObject);
+    } // End of decodeBinary()
+
+    // Unscaled value of text written as -?(0|[1-9][0-9]*)(.[0-9]+)? with at most maxScale decimals and
+    // unscaled value within +-maxUnscaled. NOTFIXEDPOINT for any other text, including -0 and -0.00,
+    // whose sign the unscaled value can not keep
+    private static long parseFixedPoint(CharSequence text, int maxScale, long maxUnscaled) {
+
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if ((length > 0) && (text.charAt(0) == '-')) {
+            negative = true;
+            position++;
+        }
+        int integerStart = position;
+        long unscaledValue = 0;
+        int scale = -1;
+        for (; position < length; position++) {
+            char character = text.charAt(position);
+            if ((character == '.') && (scale < 0)) {
+                scale = 0;
+                continue;
+            }
+            if ((character < '0') || (character > '9')) {
+                return (NOTFIXEDPOINT);
+            }
+            int digit = character - '0';
+            if (unscaledValue > (maxUnscaled - digit) / 10) {
+                return (NOTFIXEDPOINT);
+            }
+            unscaledValue = unscaledValue * 10 + digit;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+
+        int integerDigits = ((scale < 0) ? length : (length - scale - 1)) - integerStart;
+        if ((integerDigits <= 0) || (scale == 0) || (scale > maxScale)) {
+            return (NOTFIXEDPOINT);
+        }
+        if ((integerDigits > 1) && (text.charAt(integerStart) == '0')) {
+            return (NOTFIXEDPOINT);
+        }
+        if (negative && (unscaledValue == 0)) {
+            return (NOTFIXEDPOINT);
+        }
+
+        return (negative ? -unscaledValue : unscaledValue);
+    } // End of parseFixedPoint()
+
+    // Number of decimals of text accepted by parseFixedPoint()
+    private static int scaleOf(CharSequence text) {
+        for (int position = text.length() - 1; position >= 0; position--) {
+            if (text.charAt(position) == '.') {
+                return (text.length() - position - 1);
+            }
+        }
+        return (0);
+    }
+
+}